@@ -1,9 +1,34 @@
 package cn.airpassport.lib;
 
+import cn.airpassport.lib.phone.LibPhone;
+
+import java.util.Arrays;
+import java.util.Map;
+
 
 public class LibApplication
 {
+	/**
+	 *	warm up LibPhone and print the time taken by each region, a smoke test of the packaged library
+	 *	@param	args	regions to warm up, all supported regions if none
+	 */
 	public static void main( String[] args )
 	{
+		long lnStart			= System.nanoTime();
+		Map<String,Long> mapTimings	= LibPhone.warmUp( Arrays.asList( args ) ).join();
+		long lnTotal			= System.nanoTime() - lnStart;
+
+		for ( Map.Entry<String,Long> entry : mapTimings.entrySet() )
+		{
+			if ( entry.getValue() < 0 )
+			{
+				System.out.printf( "%s\tnot supported%n", entry.getKey() );
+			}
+			else
+			{
+				System.out.printf( "%s\t%.3f ms%n", entry.getKey(), entry.getValue() / 1e6 );
+			}
+		}
+		System.out.printf( "%d regions warmed up in %.3f ms%n", mapTimings.size(), lnTotal / 1e6 );
 	}
-}
\ No newline at end of file
+}
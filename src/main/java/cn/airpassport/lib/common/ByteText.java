@@ -0,0 +1,78 @@
+package cn.airpassport.lib.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ *	@class	ByteText
+ *	reusable view of bytes of a buffer as a CharSequence, one byte per char as in ISO-8859-1, so parsers and validators
+ *	read ASCII text straight out of I/O buffers and mapped files without a copy.
+ *	a byte of a UTF-8 sequence becomes a char of 0x80 - 0xff, which the parsers of LibTime never accept.
+ */
+public class ByteText implements CharSequence
+{
+	private ByteBuffer buffer;
+	private int start;
+	private int length;
+
+
+	/**
+	 *	move the view to the bytes [ nStart, nStart + nLength ) of a buffer, without touching its position
+	 *	@param	buffer	-
+	 *	@param	nStart	-
+	 *	@param	nLength	-
+	 *	@return	ByteText, this
+	 */
+	public ByteText reset( ByteBuffer buffer, int nStart, int nLength )
+	{
+		this.buffer	= buffer;
+		this.start	= nStart;
+		this.length	= nLength;
+
+		return this;
+	}
+
+	@Override
+	public int length()
+	{
+		return this.length;
+	}
+
+	@Override
+	public char charAt( int nIndex )
+	{
+		if ( nIndex < 0 || nIndex >= this.length )
+		{
+			throw new IndexOutOfBoundsException( String.valueOf( nIndex ) );
+		}
+
+		return ( char )( this.buffer.get( this.start + nIndex ) & 0xff );
+	}
+
+	/**
+	 *	copy a part of the text, the copy stays valid after the view has moved
+	 */
+	@Override
+	public CharSequence subSequence( int nStart, int nEnd )
+	{
+		if ( nStart < 0 || nEnd > this.length || nStart > nEnd )
+		{
+			throw new IndexOutOfBoundsException( nStart + ", " + nEnd );
+		}
+
+		byte[] arrBytes = new byte[ nEnd - nStart ];
+		for ( int i = 0; i < arrBytes.length; i ++ )
+		{
+			arrBytes[ i ] = this.buffer.get( this.start + nStart + i );
+		}
+
+		return new String( arrBytes, StandardCharsets.ISO_8859_1 );
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.subSequence( 0, this.length ).toString();
+	}
+}
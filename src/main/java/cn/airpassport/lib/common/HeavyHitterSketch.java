@@ -0,0 +1,409 @@
+package cn.airpassport.lib.common;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+
+/**
+ *	@class	HeavyHitterSketch
+ *
+ *	constant memory stream statistics of string keys, such as the domains of EMail addresses:
+ *	how often a key was seen recently, and which keys were seen most.
+ *
+ *	time is cut into windows of lnWindowMillis, the last nWindows of them are kept in a ring,
+ *	each with a count-min sketch of nDepth rows of nWidth counters.
+ *	an estimate sums the windows, the one of age a weighted by dbDecay^a, so 1 makes a plain sliding window.
+ *	a window is cleared when the ring wraps onto it, adds racing with the clearing may be lost.
+ *
+ *	candidates of the top keys are kept in a set associative table of WAYS entries per set.
+ *	a key missing from its set replaces the entry with the lowest count of the current window
+ *	if its own count is higher, so a burst of random keys can not push out a steady heavy hitter.
+ *
+ *	keys are hashed case-insensitively for ASCII letters and without allocation,
+ *	the String of a key, with ASCII letters in lower case, is only made when it becomes a candidate.
+ *	add and estimate take no lock, any number of threads may add and query at the same time.
+ */
+public class HeavyHitterSketch
+{
+	public static final int DEFAULT_DEPTH	= 4;
+	public static final int DEFAULT_WIDTH	= 1 << 12;
+
+	//	entries per set of the candidate table
+	private static final int WAYS		= 4;
+
+	private final int depth;
+	private final int widthMask;
+	private final int topK;
+	private final long windowMillis;
+	private final int windows;
+	private final double decay;
+	private final LongSupplier clock;
+
+	//	counters of window w, row r and column c at ( w * depth + r ) * width + c
+	private final AtomicLongArray counters;
+
+	//	number of the window held by each slot of the ring, and its number of adds
+	private final AtomicLongArray windowNumbers;
+	private final AtomicLongArray windowTotals;
+
+	private final int setMask;
+	private final AtomicReferenceArray<Candidate> candidates;
+
+
+	/**
+	 *	@param	nTopK		number of heavy hitters reported by getTopK
+	 *	@param	lnWindowMillis	length of a window
+	 *	@param	nWindows	number of windows kept
+	 *	@param	dbDecay		weight of a window relative to the next newer one, in ( 0, 1 ]
+	 */
+	public HeavyHitterSketch( int nTopK, long lnWindowMillis, int nWindows, double dbDecay )
+	{
+		this( DEFAULT_DEPTH, DEFAULT_WIDTH, nTopK, lnWindowMillis, nWindows, dbDecay, System::currentTimeMillis );
+	}
+
+	/**
+	 *	@param	nDepth		rows of a count-min sketch, the error holds with probability 1 - e^-nDepth
+	 *	@param	nWidth		counters of a row, a power of 2, a count is over by at most e / nWidth of all adds
+	 *	@param	nTopK		number of heavy hitters reported by getTopK
+	 *	@param	lnWindowMillis	length of a window
+	 *	@param	nWindows	number of windows kept
+	 *	@param	dbDecay		weight of a window relative to the next newer one, in ( 0, 1 ]
+	 *	@param	clock		current time in milliseconds
+	 */
+	public HeavyHitterSketch
+		(
+			int nDepth,
+			int nWidth,
+			int nTopK,
+			long lnWindowMillis,
+			int nWindows,
+			double dbDecay,
+			LongSupplier clock
+		)
+	{
+		if ( nDepth <= 0 || nDepth > 16 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nDepth" ) );
+		}
+		if ( nWidth <= 0 || 0 != ( nWidth & ( nWidth - 1 ) ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nWidth" ) );
+		}
+		if ( nTopK <= 0 || nTopK > nWidth )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nTopK" ) );
+		}
+		if ( lnWindowMillis <= 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.lnWindowMillis" ) );
+		}
+		if ( nWindows <= 0 || ( long ) nWindows * nDepth * nWidth > Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nWindows" ) );
+		}
+		if ( ! ( dbDecay > 0 && dbDecay <= 1 ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.dbDecay" ) );
+		}
+		if ( null == clock )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.clock" ) );
+		}
+
+		this.depth		= nDepth;
+		this.widthMask		= nWidth - 1;
+		this.topK		= nTopK;
+		this.windowMillis	= lnWindowMillis;
+		this.windows		= nWindows;
+		this.decay		= dbDecay;
+		this.clock		= clock;
+		this.counters		= new AtomicLongArray( nWindows * nDepth * nWidth );
+		this.windowNumbers	= new AtomicLongArray( nWindows );
+		this.windowTotals	= new AtomicLongArray( nWindows );
+
+		//	twice the top keys as candidates, rounded up to a power of 2 of sets
+		int nSets = 1;
+		while ( nSets * WAYS < 2 * nTopK )
+		{
+			nSets <<= 1;
+		}
+		this.setMask	= nSets - 1;
+		this.candidates	= new AtomicReferenceArray<>( nSets * WAYS );
+
+		//	the slot of the current window starts out cleared, the others hold windows too old to be read
+		long lnWindowNumber = this.getWindowNumber();
+		for ( int i = 0; i < nWindows; i ++ )
+		{
+			this.windowNumbers.set( i, lnWindowNumber - nWindows );
+		}
+		this.windowNumbers.set( ( int ) Math.floorMod( lnWindowNumber, ( long ) nWindows ), lnWindowNumber );
+	}
+
+	/**
+	 *	candidate of the top keys
+	 */
+	private static class Candidate
+	{
+		final long hash;
+		final String key;
+
+		Candidate( long lnHash, String sKey )
+		{
+			this.hash	= lnHash;
+			this.key	= sKey;
+		}
+	}
+
+	/**
+	 *	count a key
+	 *	@param	sKey	-
+	 */
+	public void add( CharSequence sKey )
+	{
+		if ( null == sKey )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.sKey" ) );
+		}
+
+		this.add( sKey, 0, sKey.length() );
+	}
+
+	/**
+	 *	count the key sText[ nStart, nEnd )
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	exclusive
+	 */
+	public void add( CharSequence sText, int nStart, int nEnd )
+	{
+		long lnHash		= HeavyHitterSketch.hash( sText, nStart, nEnd );
+		long lnHash2		= LibHash.mix( lnHash ) | 1;
+		int nSlot		= this.getCurrentSlot();
+		int nBase		= nSlot * this.depth;
+		long lnCount		= Long.MAX_VALUE;
+
+		for ( int r = 0; r < this.depth; r ++ )
+		{
+			int nIndex	= this.counterIndex( nBase + r, lnHash + r * lnHash2 );
+			lnCount		= Math.min( lnCount, this.counters.incrementAndGet( nIndex ) );
+		}
+		this.windowTotals.incrementAndGet( nSlot );
+
+		this.offerCandidate( sText, nStart, nEnd, lnHash, lnHash2, nSlot, lnCount );
+	}
+
+	/**
+	 *	estimate how often a key was added in the kept windows, weighted by age, never below the true weighted count
+	 *	@param	sKey	-
+	 *	@return	long
+	 */
+	public long estimate( CharSequence sKey )
+	{
+		if ( null == sKey )
+		{
+			return 0;
+		}
+
+		long lnHash	= HeavyHitterSketch.hash( sKey, 0, sKey.length() );
+		long lnHash2	= LibHash.mix( lnHash ) | 1;
+
+		return this.estimate( lnHash, lnHash2 );
+	}
+
+	/**
+	 *	get the number of adds in the kept windows, weighted by age
+	 *	@return	long
+	 */
+	public long getTotal()
+	{
+		long lnWindowNumber	= this.getWindowNumber();
+		double dbTotal		= 0;
+		for ( int w = 0; w < this.windows; w ++ )
+		{
+			double dbWeight = this.getWeight( w, lnWindowNumber );
+			if ( dbWeight > 0 )
+			{
+				dbTotal += dbWeight * this.windowTotals.get( w );
+			}
+		}
+
+		return ( long ) dbTotal;
+	}
+
+	/**
+	 *	get the keys seen most in the kept windows, with their estimates, the highest first
+	 *	@return	List, at most nTopK entries
+	 */
+	public List<Map.Entry<String,Long>> getTopK()
+	{
+		List<Map.Entry<String,Long>> listEntries	= new ArrayList<>();
+		Set<String> setKeys				= new HashSet<>();
+		for ( int i = 0; i < this.candidates.length(); i ++ )
+		{
+			//	racing adds may have put a key into two ways of its set
+			Candidate candidate = this.candidates.get( i );
+			if ( null != candidate && setKeys.add( candidate.key ) )
+			{
+				long lnEstimate = this.estimate( candidate.hash, LibHash.mix( candidate.hash ) | 1 );
+				if ( lnEstimate > 0 )
+				{
+					listEntries.add( new AbstractMap.SimpleImmutableEntry<>( candidate.key, lnEstimate ) );
+				}
+			}
+		}
+
+		listEntries.sort( ( a, b ) -> Long.compare( b.getValue(), a.getValue() ) );
+
+		return listEntries.size() > this.topK ? new ArrayList<>( listEntries.subList( 0, this.topK ) ) : listEntries;
+	}
+
+
+	private long estimate( long lnHash, long lnHash2 )
+	{
+		long lnWindowNumber	= this.getWindowNumber();
+		double dbEstimate	= 0;
+		for ( int w = 0; w < this.windows; w ++ )
+		{
+			double dbWeight = this.getWeight( w, lnWindowNumber );
+			if ( dbWeight > 0 )
+			{
+				dbEstimate += dbWeight * this.windowEstimate( w, lnHash, lnHash2 );
+			}
+		}
+
+		return ( long ) dbEstimate;
+	}
+
+	/**
+	 *	count-min estimate of a key in the window of a slot
+	 */
+	private long windowEstimate( int nSlot, long lnHash, long lnHash2 )
+	{
+		int nBase	= nSlot * this.depth;
+		long lnCount	= Long.MAX_VALUE;
+		for ( int r = 0; r < this.depth; r ++ )
+		{
+			lnCount = Math.min( lnCount, this.counters.get( this.counterIndex( nBase + r, lnHash + r * lnHash2 ) ) );
+		}
+
+		return lnCount;
+	}
+
+	/**
+	 *	@return	double, the weight of the window in a slot, 0 if it is not one of the kept windows
+	 */
+	private double getWeight( int nSlot, long lnWindowNumber )
+	{
+		long lnAge = lnWindowNumber - this.windowNumbers.get( nSlot );
+		if ( lnAge < 0 || lnAge >= this.windows )
+		{
+			return 0;
+		}
+
+		return Math.pow( this.decay, lnAge );
+	}
+
+	/**
+	 *	find the slot of the current window, clearing it if the ring has wrapped onto it
+	 */
+	private int getCurrentSlot()
+	{
+		long lnWindowNumber	= this.getWindowNumber();
+		int nSlot		= ( int ) Math.floorMod( lnWindowNumber, ( long ) this.windows );
+		long lnSlotNumber	= this.windowNumbers.get( nSlot );
+
+		if ( lnSlotNumber < lnWindowNumber && this.windowNumbers.compareAndSet( nSlot, lnSlotNumber, lnWindowNumber ) )
+		{
+			int nFrom	= nSlot * this.depth * ( this.widthMask + 1 );
+			int nTo		= nFrom + this.depth * ( this.widthMask + 1 );
+			for ( int i = nFrom; i < nTo; i ++ )
+			{
+				this.counters.set( i, 0 );
+			}
+			this.windowTotals.set( nSlot, 0 );
+		}
+
+		return nSlot;
+	}
+
+	private void offerCandidate( CharSequence sText, int nStart, int nEnd, long lnHash, long lnHash2, int nSlot, long lnCount )
+	{
+		int nFirst		= ( int )( lnHash >>> 40 & this.setMask ) * WAYS;
+		int nVictim		= -1;
+		long lnVictimCount	= Long.MAX_VALUE;
+		Candidate victim	= null;
+
+		for ( int i = nFirst; i < nFirst + WAYS; i ++ )
+		{
+			Candidate candidate = this.candidates.get( i );
+			if ( null == candidate )
+			{
+				if ( lnVictimCount > 0 )
+				{
+					nVictim		= i;
+					lnVictimCount	= 0;
+					victim		= null;
+				}
+				continue;
+			}
+			if ( lnHash == candidate.hash )
+			{
+				return;
+			}
+
+			long lnCandidateCount = this.windowEstimate( nSlot, candidate.hash, LibHash.mix( candidate.hash ) | 1 );
+			if ( lnCandidateCount < lnVictimCount )
+			{
+				nVictim		= i;
+				lnVictimCount	= lnCandidateCount;
+				victim		= candidate;
+			}
+		}
+
+		if ( nVictim >= 0 && lnCount > lnVictimCount )
+		{
+			String sKey = HeavyHitterSketch.toAsciiLowerCase( sText, nStart, nEnd );
+			this.candidates.compareAndSet( nVictim, victim, new Candidate( lnHash, sKey ) );
+		}
+	}
+
+	private long getWindowNumber()
+	{
+		return Math.floorDiv( this.clock.getAsLong(), this.windowMillis );
+	}
+
+	private int counterIndex( int nRow, long lnHash )
+	{
+		return ( nRow * ( this.widthMask + 1 ) ) + ( int )( ( lnHash >>> 17 ) & this.widthMask );
+	}
+
+	/**
+	 *	the key of a candidate, folded the same way as hash folds it: ASCII letters only
+	 */
+	private static String toAsciiLowerCase( CharSequence sText, int nStart, int nEnd )
+	{
+		char[] arrKey = new char[ nEnd - nStart ];
+		for ( int i = nStart; i < nEnd; i ++ )
+		{
+			char c = sText.charAt( i );
+			arrKey[ i - nStart ] = ( c >= 'A' && c <= 'Z' ) ? ( char )( c + 'a' - 'A' ) : c;
+		}
+
+		return new String( arrKey );
+	}
+
+	/**
+	 *	64-bit FNV-1a of the chars with ASCII letters in lower case, spread by LibHash.mix
+	 */
+	private static long hash( CharSequence sText, int nStart, int nEnd )
+	{
+		return LibHash.mix( LibHash.fnv1aIgnoreAsciiCase( sText, nStart, nEnd ) );
+	}
+}
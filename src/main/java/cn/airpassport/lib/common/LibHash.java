@@ -0,0 +1,76 @@
+package cn.airpassport.lib.common;
+
+
+/**
+ *	@class	LibHash
+ *
+ *	64-bit hashes shared by the sketches, filters and tables of the library, none of them allocates.
+ *	fnv1a hashes each char as its low byte then its high byte, so chars of the Latin-1 range hash like bytes followed by 0.
+ */
+public class LibHash
+{
+	//	constants of the 64-bit FNV-1a hash
+	private static final long FNV_OFFSET_BASIS	= 0xcbf29ce484222325L;
+	private static final long FNV_PRIME		= 0x100000001b3L;
+
+
+	/**
+	 *	64-bit FNV-1a of the chars [ nStart, nEnd ) of a text
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	-
+	 *	@return	long
+	 */
+	public static long fnv1a( CharSequence sText, int nStart, int nEnd )
+	{
+		long lnHash = FNV_OFFSET_BASIS;
+		for ( int i = nStart; i < nEnd; i ++ )
+		{
+			char c = sText.charAt( i );
+			lnHash = ( lnHash ^ ( c & 0xff ) ) * FNV_PRIME;
+			lnHash = ( lnHash ^ ( c >>> 8 ) ) * FNV_PRIME;
+		}
+
+		return lnHash;
+	}
+
+	/**
+	 *	64-bit FNV-1a of the chars [ nStart, nEnd ) of a text with ASCII letters in lower case
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	-
+	 *	@return	long, the same as fnv1a of the text with its ASCII letters in lower case
+	 */
+	public static long fnv1aIgnoreAsciiCase( CharSequence sText, int nStart, int nEnd )
+	{
+		long lnHash = FNV_OFFSET_BASIS;
+		for ( int i = nStart; i < nEnd; i ++ )
+		{
+			char c = sText.charAt( i );
+			if ( c >= 'A' && c <= 'Z' )
+			{
+				c += 'a' - 'A';
+			}
+			lnHash = ( lnHash ^ ( c & 0xff ) ) * FNV_PRIME;
+			lnHash = ( lnHash ^ ( c >>> 8 ) ) * FNV_PRIME;
+		}
+
+		return lnHash;
+	}
+
+	/**
+	 *	finalizer of MurmurHash3, spreads a weak hash or a key differing in a few bits over all 64 bits
+	 *	@param	lnValue	-
+	 *	@return	long
+	 */
+	public static long mix( long lnValue )
+	{
+		lnValue ^= lnValue >>> 33;
+		lnValue *= 0xff51afd7ed558ccdL;
+		lnValue ^= lnValue >>> 33;
+		lnValue *= 0xc4ceb9fe1a85ec53L;
+		lnValue ^= lnValue >>> 33;
+
+		return lnValue;
+	}
+}
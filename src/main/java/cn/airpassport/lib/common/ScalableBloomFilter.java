@@ -0,0 +1,396 @@
+package cn.airpassport.lib.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ *	@class	ScalableBloomFilter
+ *
+ *	lock-free scalable Bloom filter of 64-bit hashes, after Almeida et al., "Scalable Bloom Filters".
+ *	keys go to the last stage until it holds its capacity, then a stage of twice the capacity
+ *	and half the false positive probability is appended, so the total stays below the configured one:
+ *		stage i		capacity = nInitialCapacity * 2^i,	probability = dbFalsePositiveProbability / 2^( i + 1 )
+ *	bits are set by compare-and-set on an AtomicLongArray, so add and mightContain take no lock
+ *	and allocate nothing, only appending a stage allocates.
+ *	two threads adding the same new key at once may both be told the key is new.
+ *
+ *	a snapshot written by writeTo holds every key added before writeTo was called:
+ *		long	MAGIC
+ *		long	initial capacity
+ *		double	false positive probability
+ *		int	stages
+ *		stages of
+ *			long	capacity
+ *			long	count
+ *			int	hashes
+ *			int	words
+ *			long[ words ]	bits
+ *	all values are big-endian.
+ */
+public class ScalableBloomFilter
+{
+	private static final long MAGIC		= 0x4150424C4D303031L;	//	"APBLM001"
+	private static final int MAX_STAGES	= 32;
+	private static final int MAX_WORDS	= Integer.MAX_VALUE - 8;
+	private static final int MAX_HASHES	= 64;
+
+	//	words a snapshot is read by before the rest of a stage is trusted to exist
+	private static final int READ_CHUNK_WORDS	= 1 << 16;
+	private static final double LN2		= Math.log( 2 );
+
+	private final long initialCapacity;
+	private final double falsePositiveProbability;
+
+	//	replaced by a longer copy when a stage is appended
+	private final AtomicReference<Stage[]> stages;
+
+
+	/**
+	 *	@param	lnInitialCapacity		keys of the first stage
+	 *	@param	dbFalsePositiveProbability	bound of the false positive probability of all stages together, in ( 0, 1 )
+	 */
+	public ScalableBloomFilter( long lnInitialCapacity, double dbFalsePositiveProbability )
+	{
+		if ( lnInitialCapacity <= 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.lnInitialCapacity" ) );
+		}
+		if ( ! ( dbFalsePositiveProbability > 0 && dbFalsePositiveProbability < 1 ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.dbFalsePositiveProbability" ) );
+		}
+
+		this.initialCapacity		= lnInitialCapacity;
+		this.falsePositiveProbability	= dbFalsePositiveProbability;
+		this.stages			= new AtomicReference<>( new Stage[]{ this.createStage( 0 ) } );
+	}
+
+	private ScalableBloomFilter( long lnInitialCapacity, double dbFalsePositiveProbability, Stage[] arrStages )
+	{
+		this.initialCapacity		= lnInitialCapacity;
+		this.falsePositiveProbability	= dbFalsePositiveProbability;
+		this.stages			= new AtomicReference<>( arrStages );
+	}
+
+	/**
+	 *	one Bloom filter of a fixed capacity
+	 */
+	private static class Stage
+	{
+		final long capacity;
+		final int hashes;
+		final AtomicLongArray words;
+		final long bits;
+		final AtomicLong count;
+
+		Stage( long lnCapacity, int nHashes, AtomicLongArray words, long lnCount )
+		{
+			this.capacity	= lnCapacity;
+			this.hashes	= nHashes;
+			this.words	= words;
+			this.bits	= ( long ) words.length() * Long.SIZE;
+			this.count	= new AtomicLong( lnCount );
+		}
+
+		boolean contains( long lnHash1, long lnHash2 )
+		{
+			long lnCombined = lnHash1;
+			for ( int i = 0; i < this.hashes; i ++ )
+			{
+				long lnBit = ( lnCombined & Long.MAX_VALUE ) % this.bits;
+				if ( 0 == ( this.words.get( ( int )( lnBit >>> 6 ) ) & ( 1L << lnBit ) ) )
+				{
+					return false;
+				}
+				lnCombined += lnHash2;
+			}
+
+			return true;
+		}
+
+		/**
+		 *	@return	boolean, true if a bit was not set before
+		 */
+		boolean add( long lnHash1, long lnHash2 )
+		{
+			boolean bChanged	= false;
+			long lnCombined		= lnHash1;
+			for ( int i = 0; i < this.hashes; i ++ )
+			{
+				long lnBit	= ( lnCombined & Long.MAX_VALUE ) % this.bits;
+				int nWord	= ( int )( lnBit >>> 6 );
+				long lnMask	= 1L << lnBit;
+				long lnWord	= this.words.get( nWord );
+				while ( 0 == ( lnWord & lnMask ) )
+				{
+					if ( this.words.compareAndSet( nWord, lnWord, lnWord | lnMask ) )
+					{
+						bChanged = true;
+						break;
+					}
+					lnWord = this.words.get( nWord );
+				}
+				lnCombined += lnHash2;
+			}
+
+			return bChanged;
+		}
+	}
+
+	/**
+	 *	add a key
+	 *	@param	lnHash	64-bit hash of the key, such as LibMail.hashCanonicalEMail
+	 *	@return	boolean, true if the key was not in the filter, false if it was or is a false positive
+	 */
+	public boolean add( long lnHash )
+	{
+		long lnHash1	= LibHash.mix( lnHash );
+		long lnHash2	= LibHash.mix( lnHash1 ) | 1;
+		Stage[] arrStages = this.stages.get();
+
+		for ( Stage stage : arrStages )
+		{
+			if ( stage.contains( lnHash1, lnHash2 ) )
+			{
+				return false;
+			}
+		}
+
+		Stage stage = arrStages[ arrStages.length - 1 ];
+		if ( stage.count.get() >= stage.capacity )
+		{
+			stage = this.appendStage( arrStages );
+		}
+		if ( ! stage.add( lnHash1, lnHash2 ) )
+		{
+			//	a racing add of the same key, or of keys covering all its bits
+			return false;
+		}
+		stage.count.incrementAndGet();
+
+		return true;
+	}
+
+	/**
+	 *	check if a key may have been added
+	 *	@param	lnHash	-
+	 *	@return	boolean, false if the key was never added
+	 */
+	public boolean mightContain( long lnHash )
+	{
+		long lnHash1	= LibHash.mix( lnHash );
+		long lnHash2	= LibHash.mix( lnHash1 ) | 1;
+
+		for ( Stage stage : this.stages.get() )
+		{
+			if ( stage.contains( lnHash1, lnHash2 ) )
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 *	get the number of keys added, false positives of add excluded
+	 *	@return	long
+	 */
+	public long getCount()
+	{
+		long lnCount = 0;
+		for ( Stage stage : this.stages.get() )
+		{
+			lnCount += stage.count.get();
+		}
+
+		return lnCount;
+	}
+
+	/**
+	 *	get the number of stages
+	 *	@return	int
+	 */
+	public int getStageCount()
+	{
+		return this.stages.get().length;
+	}
+
+	/**
+	 *	get the number of bits of all stages, the memory used is an eighth of it in bytes
+	 *	@return	long
+	 */
+	public long getBitCount()
+	{
+		long lnBits = 0;
+		for ( Stage stage : this.stages.get() )
+		{
+			lnBits += stage.bits;
+		}
+
+		return lnBits;
+	}
+
+	/**
+	 *	get the configured bound of the false positive probability
+	 *	@return	double
+	 */
+	public double getFalsePositiveProbability()
+	{
+		return this.falsePositiveProbability;
+	}
+
+	/**
+	 *	write a snapshot of the bits, new keys may be added meanwhile
+	 *	@param	outputStream	-
+	 *	@throws	IOException	if writing fails
+	 */
+	public void writeTo( OutputStream outputStream ) throws IOException
+	{
+		if ( null == outputStream )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.outputStream" ) );
+		}
+
+		DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+		Stage[] arrStages = this.stages.get();
+
+		dataOutputStream.writeLong( MAGIC );
+		dataOutputStream.writeLong( this.initialCapacity );
+		dataOutputStream.writeDouble( this.falsePositiveProbability );
+		dataOutputStream.writeInt( arrStages.length );
+		for ( Stage stage : arrStages )
+		{
+			dataOutputStream.writeLong( stage.capacity );
+			dataOutputStream.writeLong( stage.count.get() );
+			dataOutputStream.writeInt( stage.hashes );
+			dataOutputStream.writeInt( stage.words.length() );
+			for ( int i = 0; i < stage.words.length(); i ++ )
+			{
+				dataOutputStream.writeLong( stage.words.get( i ) );
+			}
+		}
+		dataOutputStream.flush();
+	}
+
+	/**
+	 *	read a snapshot written by writeTo
+	 *	@param	inputStream	-
+	 *	@return	ScalableBloomFilter
+	 *	@throws	IOException	if reading fails or the snapshot is not valid
+	 */
+	public static ScalableBloomFilter readFrom( InputStream inputStream ) throws IOException
+	{
+		if ( null == inputStream )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.inputStream" ) );
+		}
+
+		DataInputStream dataInputStream		= new DataInputStream( inputStream );
+		long lnMagic				= dataInputStream.readLong();
+		long lnInitialCapacity			= dataInputStream.readLong();
+		double dbFalsePositiveProbability	= dataInputStream.readDouble();
+		int nStages				= dataInputStream.readInt();
+		if ( MAGIC != lnMagic ||
+			lnInitialCapacity <= 0 ||
+			! ( dbFalsePositiveProbability > 0 && dbFalsePositiveProbability < 1 ) ||
+			nStages <= 0 || nStages > MAX_STAGES )
+		{
+			throw new IOException( LibCommon.calcErrorCode( new Object(){}, "invalid.header" ) );
+		}
+
+		Stage[] arrStages = new Stage[ nStages ];
+		for ( int i = 0; i < nStages; i ++ )
+		{
+			long lnCapacity	= dataInputStream.readLong();
+			long lnCount	= dataInputStream.readLong();
+			int nHashes	= dataInputStream.readInt();
+			int nWords	= dataInputStream.readInt();
+			if ( lnCapacity <= 0 || lnCount < 0 || nHashes <= 0 || nHashes > MAX_HASHES || nWords <= 0 || nWords > MAX_WORDS )
+			{
+				throw new IOException( LibCommon.calcErrorCode( new Object(){}, "invalid.stage" ) );
+			}
+
+			arrStages[ i ] = new Stage( lnCapacity, nHashes, ScalableBloomFilter.readWords( dataInputStream, nWords ), lnCount );
+		}
+
+		return new ScalableBloomFilter( lnInitialCapacity, dbFalsePositiveProbability, arrStages );
+	}
+
+
+	/**
+	 *	read the bits of a stage, the array grows with the words actually read
+	 *	so a corrupt word count can not allocate more than the stream holds
+	 *	@param	dataInputStream	-
+	 *	@param	nWords		words announced by the snapshot
+	 *	@return	AtomicLongArray
+	 *	@throws	IOException	EOFException if the stream ends before nWords words
+	 */
+	private static AtomicLongArray readWords( DataInputStream dataInputStream, int nWords ) throws IOException
+	{
+		long[] arrWords = new long[ Math.min( nWords, READ_CHUNK_WORDS ) ];
+		for ( int j = 0; j < nWords; j ++ )
+		{
+			if ( j == arrWords.length )
+			{
+				arrWords = Arrays.copyOf( arrWords, ( int ) Math.min( nWords, 2L * arrWords.length ) );
+			}
+			arrWords[ j ] = dataInputStream.readLong();
+		}
+
+		return new AtomicLongArray( arrWords );
+	}
+
+	private Stage appendStage( Stage[] arrStages )
+	{
+		while ( true )
+		{
+			Stage[] arrCurrent = this.stages.get();
+			if ( arrCurrent != arrStages )
+			{
+				//	another thread appended a stage
+				return arrCurrent[ arrCurrent.length - 1 ];
+			}
+			if ( arrStages.length >= MAX_STAGES )
+			{
+				throw new IllegalStateException( LibCommon.calcErrorCode( new Object(){}, "too.many.stages" ) );
+			}
+
+			Stage[] arrNew = new Stage[ arrStages.length + 1 ];
+			System.arraycopy( arrStages, 0, arrNew, 0, arrStages.length );
+			arrNew[ arrStages.length ] = this.createStage( arrStages.length );
+			if ( this.stages.compareAndSet( arrStages, arrNew ) )
+			{
+				return arrNew[ arrStages.length ];
+			}
+		}
+	}
+
+	/**
+	 *	the optimal bits and hashes of a stage: m = -n ln p / ( ln 2 )^2,	k = m / n ln 2
+	 */
+	private Stage createStage( int nIndex )
+	{
+		long lnCapacity		= this.initialCapacity << nIndex;
+		double dbProbability	= this.falsePositiveProbability / ( 2L << nIndex );
+		double dbBits		= Math.ceil( -lnCapacity * Math.log( dbProbability ) / ( LN2 * LN2 ) );
+		double dbWords		= Math.ceil( dbBits / Long.SIZE );
+		if ( lnCapacity <= 0 || dbWords > MAX_WORDS )
+		{
+			throw new IllegalStateException( LibCommon.calcErrorCode( new Object(){}, "too.many.bits" ) );
+		}
+
+		int nWords	= ( int ) dbWords;
+		int nHashes	= ( int ) Math.min( MAX_HASHES, Math.max( 1, Math.round( ( double ) nWords * Long.SIZE / lnCapacity * LN2 ) ) );
+
+		return new Stage( lnCapacity, nHashes, new AtomicLongArray( nWords ), 0 );
+	}
+}
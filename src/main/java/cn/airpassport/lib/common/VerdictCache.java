@@ -0,0 +1,312 @@
+package cn.airpassport.lib.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+
+/**
+ *	@class	VerdictCache
+ *
+ *	size-bounded, lock-striped cache of boolean verdicts keyed by String.
+ *	positive and negative verdicts are kept apart with their own caps,
+ *	so a flood of invalid keys can only evict other negative verdicts.
+ *	each cap is split exactly over the stripes, a cap below 16 gets fewer stripes so each one holds an entry.
+ *	verdicts may be given a time to live, an expired verdict is dropped when it is read or evicted.
+ */
+public class VerdictCache
+{
+	public enum Eviction
+	{
+		//	evict the least recently read entry
+		LRU,
+
+		//	evict the oldest inserted entry
+		FIFO
+	}
+
+	//	stripes of a cap of at least STRIPES, a power of 2
+	private static final int STRIPES = 16;
+
+	private final Stripe[] positives;
+	private final Stripe[] negatives;
+	private final LongSupplier clock;
+	private final boolean expiring;
+
+	private final LongAdder hits		= new LongAdder();
+	private final LongAdder misses		= new LongAdder();
+	private final LongAdder evictions	= new LongAdder();
+
+
+	public VerdictCache( int nMaxPositives, int nMaxNegatives )
+	{
+		this( nMaxPositives, nMaxNegatives, Eviction.LRU );
+	}
+	public VerdictCache( int nMaxPositives, int nMaxNegatives, Eviction eviction )
+	{
+		this( nMaxPositives, nMaxNegatives, eviction, 0, 0, System::nanoTime );
+	}
+
+	/**
+	 *	@param	nMaxPositives		positive verdicts cached at most
+	 *	@param	nMaxNegatives		negative verdicts cached at most
+	 *	@param	eviction		-
+	 *	@param	lnPositiveTtlMillis	time to keep a positive verdict, 0 to keep it until evicted
+	 *	@param	lnNegativeTtlMillis	time to keep a negative verdict, 0 to keep it until evicted
+	 *	@param	clock			current time in nanoseconds, for the time to live
+	 */
+	public VerdictCache
+		(
+			int nMaxPositives,
+			int nMaxNegatives,
+			Eviction eviction,
+			long lnPositiveTtlMillis,
+			long lnNegativeTtlMillis,
+			LongSupplier clock
+		)
+	{
+		if ( nMaxPositives < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nMaxPositives" ) );
+		}
+		if ( nMaxNegatives < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nMaxNegatives" ) );
+		}
+		if ( null == eviction )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.eviction" ) );
+		}
+		if ( lnPositiveTtlMillis < 0 || lnNegativeTtlMillis < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.ttl" ) );
+		}
+		if ( null == clock )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.clock" ) );
+		}
+
+		this.positives	= VerdictCache.createStripes( nMaxPositives, eviction, TimeUnit.MILLISECONDS.toNanos( lnPositiveTtlMillis ), this.evictions );
+		this.negatives	= VerdictCache.createStripes( nMaxNegatives, eviction, TimeUnit.MILLISECONDS.toNanos( lnNegativeTtlMillis ), this.evictions );
+		this.clock	= clock;
+		this.expiring	= lnPositiveTtlMillis > 0 || lnNegativeTtlMillis > 0;
+	}
+
+	/**
+	 *	get the cached verdict of sKey
+	 *	@param	sKey	-
+	 *	@return	Boolean, null if not cached
+	 */
+	public Boolean get( String sKey )
+	{
+		if ( null == sKey )
+		{
+			return null;
+		}
+
+		int nHash	= VerdictCache.spread( sKey );
+		long lnNow	= this.now();
+		if ( VerdictCache.stripeOf( this.positives, nHash ).contains( sKey, lnNow ) )
+		{
+			this.hits.increment();
+			return Boolean.TRUE;
+		}
+		if ( VerdictCache.stripeOf( this.negatives, nHash ).contains( sKey, lnNow ) )
+		{
+			this.hits.increment();
+			return Boolean.FALSE;
+		}
+
+		this.misses.increment();
+		return null;
+	}
+
+	/**
+	 *	cache the verdict of sKey
+	 *	@param	sKey		-
+	 *	@param	bVerdict	-
+	 */
+	public void put( String sKey, boolean bVerdict )
+	{
+		if ( null == sKey )
+		{
+			return;
+		}
+
+		int nHash = VerdictCache.spread( sKey );
+		VerdictCache.stripeOf( bVerdict ? this.positives : this.negatives, nHash ).put( sKey, this.now() );
+		VerdictCache.stripeOf( bVerdict ? this.negatives : this.positives, nHash ).remove( sKey );
+	}
+
+	/**
+	 *	remove all entries, the counters are kept
+	 */
+	public void clear()
+	{
+		for ( Stripe stripe : this.positives )
+		{
+			stripe.clear();
+		}
+		for ( Stripe stripe : this.negatives )
+		{
+			stripe.clear();
+		}
+	}
+
+	public int getPositiveSize()
+	{
+		return VerdictCache.sizeOf( this.positives );
+	}
+	public int getNegativeSize()
+	{
+		return VerdictCache.sizeOf( this.negatives );
+	}
+
+	public long getHitCount()
+	{
+		return this.hits.sum();
+	}
+	public long getMissCount()
+	{
+		return this.misses.sum();
+	}
+	public long getEvictionCount()
+	{
+		return this.evictions.sum();
+	}
+
+	/**
+	 *	get the share of lookups answered by the cache
+	 *	@return	double, 0 - 1, 0 before the first lookup
+	 */
+	public double getHitRate()
+	{
+		long lnHits	= this.hits.sum();
+		long lnLookups	= lnHits + this.misses.sum();
+
+		return 0 == lnLookups ? 0 : (double) lnHits / lnLookups;
+	}
+
+
+	/**
+	 *	the time in nanoseconds, only read if verdicts expire
+	 */
+	private long now()
+	{
+		return this.expiring ? this.clock.getAsLong() : 0;
+	}
+
+	private static Stripe[] createStripes( int nMaxEntries, Eviction eviction, long lnTtlNanos, LongAdder evictions )
+	{
+		//	spread the cap over the stripes, the first nMaxEntries % nStripes of them hold one more, so the total is nMaxEntries
+		int nStripes		= nMaxEntries >= STRIPES ? STRIPES : Integer.highestOneBit( Math.max( 1, nMaxEntries ) );
+		int nStripeCap		= nMaxEntries / nStripes;
+		int nLarger		= nMaxEntries % nStripes;
+		Stripe[] arrStripes	= new Stripe[ nStripes ];
+
+		for ( int i = 0; i < nStripes; i ++ )
+		{
+			arrStripes[ i ] = new Stripe( nStripeCap + ( i < nLarger ? 1 : 0 ), Eviction.LRU == eviction, lnTtlNanos, evictions );
+		}
+
+		return arrStripes;
+	}
+
+	private static int spread( String sKey )
+	{
+		int nHash = sKey.hashCode();
+		return nHash ^ ( nHash >>> 16 );
+	}
+
+	/**
+	 *	the number of stripes is a power of 2
+	 */
+	private static Stripe stripeOf( Stripe[] arrStripes, int nHash )
+	{
+		return arrStripes[ nHash & ( arrStripes.length - 1 ) ];
+	}
+
+	private static int sizeOf( Stripe[] arrStripes )
+	{
+		int nSize = 0;
+		for ( Stripe stripe : arrStripes )
+		{
+			nSize += stripe.size();
+		}
+
+		return nSize;
+	}
+
+
+	/**
+	 *	one lock and one bounded map of the keys to the time their verdict expires
+	 */
+	private static class Stripe
+	{
+		private final int cap;
+		private final long ttlNanos;
+		private final LinkedHashMap<String, Long> entries;
+
+		Stripe( int nCap, boolean bAccessOrder, long lnTtlNanos, LongAdder evictions )
+		{
+			this.cap	= nCap;
+			this.ttlNanos	= lnTtlNanos;
+			this.entries	= new LinkedHashMap<String, Long>( 16, 0.75f, bAccessOrder )
+			{
+				@Override
+				protected boolean removeEldestEntry( Map.Entry<String, Long> eldest )
+				{
+					if ( size() > cap )
+					{
+						evictions.increment();
+						return true;
+					}
+
+					return false;
+				}
+			};
+		}
+
+		synchronized boolean contains( String sKey, long lnNow )
+		{
+			//	get() rather than containsKey() to update the access order
+			Long lnExpiresAt = this.entries.get( sKey );
+			if ( null == lnExpiresAt )
+			{
+				return false;
+			}
+			if ( this.ttlNanos > 0 && lnExpiresAt - lnNow <= 0 )
+			{
+				this.entries.remove( sKey );
+				return false;
+			}
+
+			return true;
+		}
+
+		synchronized void put( String sKey, long lnNow )
+		{
+			if ( this.cap > 0 )
+			{
+				this.entries.put( sKey, lnNow + this.ttlNanos );
+			}
+		}
+
+		synchronized void remove( String sKey )
+		{
+			this.entries.remove( sKey );
+		}
+
+		synchronized void clear()
+		{
+			this.entries.clear();
+		}
+
+		synchronized int size()
+		{
+			return this.entries.size();
+		}
+	}
+}
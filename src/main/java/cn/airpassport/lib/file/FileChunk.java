@@ -0,0 +1,152 @@
+package cn.airpassport.lib.file;
+
+import cn.airpassport.lib.common.ByteText;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ *	@class	FileChunk
+ *	line aligned range of a file, mapped on its own while a task of LibFile.validateLines works on it.
+ *	every chunk but the last ends with '\n', so no line spans two chunks.
+ */
+class FileChunk
+{
+	//	SWAR constants of the '\n' counter
+	private static final long NEW_LINES	= 0x0a0a0a0a0a0a0a0aL;
+	private static final long LOW_7_BITS	= 0x7f7f7f7f7f7f7f7fL;
+
+	private final long start;
+	private final int length;
+
+
+	FileChunk( long lnStart, int nLength )
+	{
+		this.start	= lnStart;
+		this.length	= nLength;
+	}
+
+	long getStart()
+	{
+		return this.start;
+	}
+
+	/**
+	 *	first pass, count the lines of the chunk, 8 bytes at a time
+	 *	@param	channel	-
+	 *	@return	long
+	 *	@throws	IOException	if mapping fails
+	 */
+	long countLines( FileChannel channel ) throws IOException
+	{
+		if ( 0 == this.length )
+		{
+			return 0;
+		}
+
+		MappedByteBuffer buffer	= channel.map( FileChannel.MapMode.READ_ONLY, this.start, this.length );
+		long lnLines		= 0;
+		int nWordsEnd		= this.length & ~7;
+		int i			= 0;
+
+		for ( ; i < nWordsEnd; i += 8 )
+		{
+			//	the high bit of a byte of lnFound is set exactly if the byte is '\n'
+			long lnXor	= buffer.getLong( i ) ^ NEW_LINES;
+			long lnFound	= ~( ( ( lnXor & LOW_7_BITS ) + LOW_7_BITS ) | lnXor | LOW_7_BITS );
+			lnLines		+= Long.bitCount( lnFound );
+		}
+		for ( ; i < this.length; i ++ )
+		{
+			if ( '\n' == buffer.get( i ) )
+			{
+				lnLines ++;
+			}
+		}
+
+		//	a last line without a line break
+		if ( '\n' != buffer.get( this.length - 1 ) )
+		{
+			lnLines ++;
+		}
+
+		return lnLines;
+	}
+
+	/**
+	 *	second pass, validate the lines of the chunk
+	 *	@param	channel		-
+	 *	@param	lnFirstLine	number of the first line of the chunk, 1 based
+	 *	@param	validator	-
+	 *	@param	sink		-
+	 *	@return	long, the number of invalid lines
+	 *	@throws	IOException	if mapping fails
+	 */
+	long validate( FileChannel channel, long lnFirstLine, LineValidator validator, InvalidLineSink sink ) throws IOException
+	{
+		if ( 0 == this.length )
+		{
+			return 0;
+		}
+
+		MappedByteBuffer buffer	= channel.map( FileChannel.MapMode.READ_ONLY, this.start, this.length );
+		ByteText line		= new ByteText();
+		long lnLineNumber	= lnFirstLine;
+		long lnInvalid		= 0;
+		int nLineStart		= 0;
+		int nBits		= 0;
+
+		for ( int i = 0; i <= this.length; i ++ )
+		{
+			byte b = i < this.length ? buffer.get( i ) : ( byte ) '\n';
+			if ( '\n' != b )
+			{
+				nBits |= b;
+				continue;
+			}
+			if ( i == this.length && i == nLineStart )
+			{
+				//	the chunk ended with a line break
+				break;
+			}
+
+			int nLineEnd = i;
+			if ( nLineEnd > nLineStart && '\r' == buffer.get( nLineEnd - 1 ) )
+			{
+				nLineEnd --;
+			}
+
+			boolean bValid;
+			if ( 0 == ( nBits & 0x80 ) )
+			{
+				line.reset( buffer, nLineStart, nLineEnd - nLineStart );
+				bValid = validator.isValid( line );
+			}
+			else
+			{
+				//	only lines with non-ASCII bytes are copied, to decode their UTF-8
+				byte[] arrBytes = new byte[ nLineEnd - nLineStart ];
+				for ( int j = 0; j < arrBytes.length; j ++ )
+				{
+					arrBytes[ j ] = buffer.get( nLineStart + j );
+				}
+				bValid = validator.isValid( new String( arrBytes, StandardCharsets.UTF_8 ) );
+			}
+
+			if ( ! bValid )
+			{
+				sink.onInvalidLine( lnLineNumber, this.start + nLineStart );
+				lnInvalid ++;
+			}
+
+			lnLineNumber ++;
+			nLineStart	= i + 1;
+			nBits		= 0;
+		}
+
+		return lnInvalid;
+	}
+}
@@ -0,0 +1,89 @@
+package cn.airpassport.lib.file;
+
+
+/**
+ *	@class	FileValidationReport
+ *	result of LibFile.validateLines
+ */
+public class FileValidationReport
+{
+	private final long bytes;
+	private final long lines;
+	private final long invalidLines;
+	private final int chunks;
+	private final long nanos;
+
+
+	FileValidationReport( long lnBytes, long lnLines, long lnInvalidLines, int nChunks, long lnNanos )
+	{
+		this.bytes		= lnBytes;
+		this.lines		= lnLines;
+		this.invalidLines	= lnInvalidLines;
+		this.chunks		= nChunks;
+		this.nanos		= lnNanos;
+	}
+
+	/**
+	 *	get the size of the file
+	 *	@return	long
+	 */
+	public long getBytes()
+	{
+		return this.bytes;
+	}
+
+	/**
+	 *	get the number of lines, a last line without a line break included
+	 *	@return	long
+	 */
+	public long getLines()
+	{
+		return this.lines;
+	}
+
+	/**
+	 *	get the number of lines reported to the sink
+	 *	@return	long
+	 */
+	public long getInvalidLines()
+	{
+		return this.invalidLines;
+	}
+
+	/**
+	 *	get the number of chunks validated in parallel
+	 *	@return	int
+	 */
+	public int getChunks()
+	{
+		return this.chunks;
+	}
+
+	/**
+	 *	get the time taken, both passes included
+	 *	@return	long
+	 */
+	public long getNanos()
+	{
+		return this.nanos;
+	}
+
+	/**
+	 *	get the throughput
+	 *	@return	double
+	 */
+	public double getLinesPerSecond()
+	{
+		return this.nanos > 0 ? this.lines * 1e9 / this.nanos : 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format
+			(
+				"%d lines, %d invalid, %d bytes in %d chunks, %.3f ms, %.0f lines/sec",
+				this.lines, this.invalidLines, this.bytes, this.chunks, this.nanos / 1e6, this.getLinesPerSecond()
+			);
+	}
+}
@@ -0,0 +1,18 @@
+package cn.airpassport.lib.file;
+
+
+/**
+ *	@interface	InvalidLineSink
+ *	receives the invalid lines found by LibFile.validateLines.
+ *	chunks are validated in parallel, so it is called from several threads at once and not in line order.
+ */
+@FunctionalInterface
+public interface InvalidLineSink
+{
+	/**
+	 *	called for each invalid line
+	 *	@param	lnLineNumber	1 based
+	 *	@param	lnByteOffset	offset of the first byte of the line in the file
+	 */
+	void onInvalidLine( long lnLineNumber, long lnByteOffset );
+}
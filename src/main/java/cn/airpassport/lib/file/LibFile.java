@@ -0,0 +1,241 @@
+package cn.airpassport.lib.file;
+
+import cn.airpassport.lib.common.LibCommon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+/**
+ *	@class	LibFile
+ */
+public class LibFile
+{
+	//	bytes per chunk, before it is extended to the end of its last line
+	public static final int DEFAULT_CHUNK_SIZE	= 32 << 20;
+	private static final int MAX_CHUNK_SIZE		= 1 << 30;
+
+	//	bytes read at a time while looking for the end of the last line of a chunk
+	private static final int BOUNDARY_BUFFER_SIZE	= 8192;
+
+
+	/**
+	 *	check every line of a file, one EMail address, phone number or ip address per line, see LineValidator.
+	 *	the file is memory mapped in line aligned chunks validated in parallel on the common fork-join pool,
+	 *	so memory use does not grow with the file.
+	 *	a line ends with "\n" or "\r\n", is decoded as UTF-8, and an empty line is handed to the validator as well.
+	 *	@param	file		-
+	 *	@param	validator	-
+	 *	@param	sink		receives the invalid lines
+	 *	@return	FileValidationReport
+	 *	@throws	IOException	if reading fails
+	 */
+	public static FileValidationReport validateLines( File file, LineValidator validator, InvalidLineSink sink ) throws IOException
+	{
+		return LibFile.validateLines( file, validator, sink, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE );
+	}
+
+	/**
+	 *	check every line of a file on the given pool
+	 *	@param	file		-
+	 *	@param	validator	-
+	 *	@param	sink		receives the invalid lines
+	 *	@param	pool		-
+	 *	@param	nChunkSize	bytes per chunk, 1 - 2^30
+	 *	@return	FileValidationReport
+	 *	@throws	IOException	if reading fails
+	 */
+	public static FileValidationReport validateLines
+		(
+			File file,
+			LineValidator validator,
+			InvalidLineSink sink,
+			ForkJoinPool pool,
+			int nChunkSize
+		)
+		throws IOException
+	{
+		if ( null == file )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.file" ) );
+		}
+		if ( null == validator )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.validator" ) );
+		}
+		if ( null == sink )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.sink" ) );
+		}
+		if ( null == pool )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.pool" ) );
+		}
+		if ( nChunkSize <= 0 || nChunkSize > MAX_CHUNK_SIZE )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nChunkSize" ) );
+		}
+
+		long lnStart = System.nanoTime();
+
+		try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) )
+		{
+			long lnSize			= channel.size();
+			List<FileChunk> listChunks	= LibFile.splitChunks( channel, lnSize, nChunkSize );
+
+			//
+			//	first pass, count the lines of every chunk to number the lines of the second pass
+			//
+			List<Callable<Long>> listCounts = new ArrayList<>( listChunks.size() );
+			for ( FileChunk chunk : listChunks )
+			{
+				listCounts.add( () -> LibFile.uncheck( () -> chunk.countLines( channel ) ) );
+			}
+			List<Long> listLines = LibFile.invokeAll( pool, listCounts );
+
+			//
+			//	second pass, validate
+			//
+			List<Callable<Long>> listValidations	= new ArrayList<>( listChunks.size() );
+			long lnLines				= 0;
+			for ( int i = 0; i < listChunks.size(); i ++ )
+			{
+				FileChunk chunk		= listChunks.get( i );
+				long lnFirstLine	= lnLines + 1;
+				listValidations.add( () -> LibFile.uncheck( () -> chunk.validate( channel, lnFirstLine, validator, sink ) ) );
+				lnLines += listLines.get( i );
+			}
+
+			long lnInvalidLines = 0;
+			for ( Long lnInvalid : LibFile.invokeAll( pool, listValidations ) )
+			{
+				lnInvalidLines += lnInvalid;
+			}
+
+			return new FileValidationReport( lnSize, lnLines, lnInvalidLines, listChunks.size(), System.nanoTime() - lnStart );
+		}
+	}
+
+
+	/**
+	 *	task of a chunk, which may throw IOException
+	 */
+	@FunctionalInterface
+	private interface ChunkTask
+	{
+		long run() throws IOException;
+	}
+
+	private static long uncheck( ChunkTask task )
+	{
+		try
+		{
+			return task.run();
+		}
+		catch ( IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	private static List<Long> invokeAll( ForkJoinPool pool, List<Callable<Long>> listTasks ) throws IOException
+	{
+		List<Long> listResults = new ArrayList<>( listTasks.size() );
+		for ( Future<Long> future : pool.invokeAll( listTasks ) )
+		{
+			try
+			{
+				listResults.add( future.get() );
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException( e );
+			}
+			catch ( ExecutionException e )
+			{
+				Throwable cause = e.getCause();
+				if ( cause instanceof UncheckedIOException )
+				{
+					throw ( ( UncheckedIOException ) cause ).getCause();
+				}
+				if ( cause instanceof RuntimeException )
+				{
+					throw ( RuntimeException ) cause;
+				}
+				if ( cause instanceof Error )
+				{
+					throw ( Error ) cause;
+				}
+				throw new IOException( cause );
+			}
+		}
+
+		return listResults;
+	}
+
+	/**
+	 *	split the file every nChunkSize bytes, each chunk extended to the end of its last line
+	 */
+	private static List<FileChunk> splitChunks( FileChannel channel, long lnSize, int nChunkSize ) throws IOException
+	{
+		List<FileChunk> listChunks	= new ArrayList<>();
+		ByteBuffer buffer		= ByteBuffer.allocate( BOUNDARY_BUFFER_SIZE );
+		long lnStart			= 0;
+
+		while ( lnStart < lnSize )
+		{
+			long lnEnd = Math.min( lnStart + nChunkSize, lnSize );
+			if ( lnEnd < lnSize )
+			{
+				lnEnd = LibFile.findLineEnd( channel, buffer, lnEnd - 1, lnSize );
+			}
+			if ( lnEnd - lnStart > Integer.MAX_VALUE )
+			{
+				throw new IOException( LibCommon.calcErrorCode( new Object(){}, "line.too.long" ) );
+			}
+
+			listChunks.add( new FileChunk( lnStart, ( int )( lnEnd - lnStart ) ) );
+			lnStart = lnEnd;
+		}
+
+		return listChunks;
+	}
+
+	/**
+	 *	find the offset after the first '\n' at or after lnFrom, or the end of the file
+	 */
+	private static long findLineEnd( FileChannel channel, ByteBuffer buffer, long lnFrom, long lnSize ) throws IOException
+	{
+		long lnPosition = lnFrom;
+		while ( lnPosition < lnSize )
+		{
+			buffer.clear();
+			int nRead = channel.read( buffer, lnPosition );
+			if ( nRead <= 0 )
+			{
+				break;
+			}
+			for ( int i = 0; i < nRead; i ++ )
+			{
+				if ( '\n' == buffer.get( i ) )
+				{
+					return lnPosition + i + 1;
+				}
+			}
+			lnPosition += nRead;
+		}
+
+		return lnSize;
+	}
+}
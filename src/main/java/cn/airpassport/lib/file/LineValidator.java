@@ -0,0 +1,68 @@
+package cn.airpassport.lib.file;
+
+import cn.airpassport.lib.common.LibCommon;
+import cn.airpassport.lib.mail.LibMail;
+import cn.airpassport.lib.network.LibNetwork;
+import cn.airpassport.lib.phone.ChinaMobilePrefixTable;
+import cn.airpassport.lib.phone.LibPhone;
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ *	@interface	LineValidator
+ *	checks one line of a file given to LibFile.validateLines.
+ *	the line is a view over the mapped bytes, without its line break, and is only valid during the call.
+ *	it must be copied, by toString, to be kept, and the validator must be safe to call from several threads.
+ */
+@FunctionalInterface
+public interface LineValidator
+{
+	/**
+	 *	check a line
+	 *	@param	sLine	-
+	 *	@return	boolean
+	 */
+	boolean isValid( CharSequence sLine );
+
+
+	/**
+	 *	lines of EMail addresses, see LibMail.isValidEMail, ASCII addresses are checked without copying them
+	 *	@return	LineValidator
+	 */
+	static LineValidator eMail()
+	{
+		return LibMail::isValidEMail;
+	}
+
+	/**
+	 *	lines of Global Mobile Numbers, see LibPhone.isValidMobileNumber.
+	 *	China Mobile Numbers are looked up in the current ChinaMobilePrefixTable without copying them,
+	 *	so they are not counted by LibPhone.getValidationStats.
+	 *	@param	sCountryRegion	-
+	 *	@return	LineValidator
+	 */
+	static LineValidator mobileNumber( String sCountryRegion )
+	{
+		if ( StringUtils.isBlank( sCountryRegion ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "blank.sCountryRegion" ) );
+		}
+
+		if ( "CN".equalsIgnoreCase( sCountryRegion ) )
+		{
+			return sLine -> ChinaMobilePrefixTable.getCurrent().isValid( sLine );
+		}
+
+		return sLine -> LibPhone.isValidMobileNumber( sLine.toString(), sCountryRegion );
+	}
+
+	/**
+	 *	lines of IpV4 or IpV6 addresses, see LibNetwork.isValidIpAddress, parsed without copying them
+	 *	@return	LineValidator
+	 */
+	static LineValidator ipAddress()
+	{
+		return sLine -> LibNetwork.INVALID_IP_V4 != LibNetwork.parseIpV4Address( sLine ) ||
+			LibNetwork.parseIpV6Address( sLine, null );
+	}
+}
@@ -0,0 +1,394 @@
+package cn.airpassport.lib.mail;
+
+import cn.airpassport.lib.common.LibCommon;
+import cn.airpassport.lib.common.VerdictCache;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+
+/**
+ *	@class	DomainChecker
+ *
+ *	asynchronous check that the domain of an address exists, behind LibMail.isValidEMailAsync.
+ *		1, answers from a VerdictCache, positive and negative verdicts with their own time to live and half of the size each
+ *		2, joins a lookup of the same domain already running, so a burst of signups costs one lookup
+ *		3, starts a lookup on the DomainResolver if fewer than nMaxConcurrent run, or else queues it
+ *		   if fewer than nMaxQueued wait
+ *	a lookup which fails, finds the queue full or takes longer than the timeout is answered with true,
+ *	as the domain may well exist, and is not cached. the timeout counts from the call of exists, time in the queue included.
+ *	a timed out lookup gives its permit back, so a hung resolver can not hold all of them.
+ *	the caller thread never blocks, the timeouts run on a single daemon thread.
+ */
+public class DomainChecker
+{
+	private static final String THREAD_NAME = "LibMail-domain-timeout";
+
+	private static final ScheduledThreadPoolExecutor TIMER = DomainChecker.createTimer();
+
+	private final DomainResolver resolver;
+	private final long timeoutMillis;
+
+	private final int maxQueued;
+
+	private final Semaphore permits;
+	private final Queue<Lookup> queue		= new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queued		= new AtomicInteger();
+	private final Map<String,Lookup> lookups	= new ConcurrentHashMap<>();
+	private final VerdictCache cache;
+
+	//	calls of drain not yet served, only the call which raised it from 0 runs the loop
+	private final AtomicInteger drains = new AtomicInteger();
+
+	private final LongAdder coalesced	= new LongAdder();
+	private final LongAdder resolved	= new LongAdder();
+	private final LongAdder failures	= new LongAdder();
+
+
+	/**
+	 *	@param	resolver		-
+	 *	@param	lnTimeoutMillis		time given to a lookup
+	 *	@param	nMaxConcurrent		lookups running on the resolver at once
+	 *	@param	nMaxQueued		lookups waiting for one of them at most
+	 *	@param	lnPositiveTtlMillis	time to keep a domain which exists
+	 *	@param	lnNegativeTtlMillis	time to keep a domain which does not exist
+	 *	@param	nMaxCacheSize		domains cached at most
+	 */
+	public DomainChecker
+		(
+			DomainResolver resolver,
+			long lnTimeoutMillis,
+			int nMaxConcurrent,
+			int nMaxQueued,
+			long lnPositiveTtlMillis,
+			long lnNegativeTtlMillis,
+			int nMaxCacheSize
+		)
+	{
+		this( resolver, lnTimeoutMillis, nMaxConcurrent, nMaxQueued, lnPositiveTtlMillis, lnNegativeTtlMillis, nMaxCacheSize, System::nanoTime );
+	}
+
+	/**
+	 *	@param	resolver		-
+	 *	@param	lnTimeoutMillis		time given to a lookup
+	 *	@param	nMaxConcurrent		lookups running on the resolver at once
+	 *	@param	nMaxQueued		lookups waiting for one of them at most
+	 *	@param	lnPositiveTtlMillis	time to keep a domain which exists
+	 *	@param	lnNegativeTtlMillis	time to keep a domain which does not exist
+	 *	@param	nMaxCacheSize		domains cached at most
+	 *	@param	clock			current time in nanoseconds, for the time to live
+	 */
+	public DomainChecker
+		(
+			DomainResolver resolver,
+			long lnTimeoutMillis,
+			int nMaxConcurrent,
+			int nMaxQueued,
+			long lnPositiveTtlMillis,
+			long lnNegativeTtlMillis,
+			int nMaxCacheSize,
+			LongSupplier clock
+		)
+	{
+		if ( null == resolver )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.resolver" ) );
+		}
+		if ( lnTimeoutMillis <= 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.lnTimeoutMillis" ) );
+		}
+		if ( nMaxConcurrent <= 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nMaxConcurrent" ) );
+		}
+		if ( nMaxQueued < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nMaxQueued" ) );
+		}
+		if ( lnPositiveTtlMillis < 0 || lnNegativeTtlMillis < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.ttl" ) );
+		}
+		if ( nMaxCacheSize < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nMaxCacheSize" ) );
+		}
+		if ( null == clock )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.clock" ) );
+		}
+
+		//	a time to live of 0 caches no verdict of its kind, and leaves the whole size to the other kind
+		int nMaxPositives	= 0 == lnPositiveTtlMillis ? 0 : 0 == lnNegativeTtlMillis ? nMaxCacheSize : nMaxCacheSize - nMaxCacheSize / 2;
+		int nMaxNegatives	= 0 == lnNegativeTtlMillis ? 0 : nMaxCacheSize - nMaxPositives;
+
+		this.resolver		= resolver;
+		this.timeoutMillis	= lnTimeoutMillis;
+		this.maxQueued		= nMaxQueued;
+		this.permits		= new Semaphore( nMaxConcurrent );
+		this.cache		= new VerdictCache
+			(
+				nMaxPositives,
+				nMaxNegatives,
+				VerdictCache.Eviction.LRU,
+				lnPositiveTtlMillis,
+				lnNegativeTtlMillis,
+				clock
+			);
+	}
+
+	/**
+	 *	check if a domain exists
+	 *	@param	sDomain	ASCII domain, internationalized ones in punycode
+	 *	@return	CompletableFuture, completed with false only if the resolver said the domain does not exist
+	 */
+	public CompletableFuture<Boolean> exists( String sDomain )
+	{
+		if ( null == sDomain )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.sDomain" ) );
+		}
+
+		String sKey = sDomain.toLowerCase( Locale.ROOT );
+		if ( sKey.endsWith( "." ) )
+		{
+			sKey = sKey.substring( 0, sKey.length() - 1 );
+		}
+
+		Boolean bCached = this.cache.get( sKey );
+		if ( null != bCached )
+		{
+			return CompletableFuture.completedFuture( bCached );
+		}
+
+		Lookup lookup	= new Lookup( sKey );
+		Lookup running	= this.lookups.putIfAbsent( sKey, lookup );
+		if ( null != running )
+		{
+			this.coalesced.increment();
+
+			//	a copy, so a caller completing its future can not answer the others
+			return running.future.thenApply( bExists -> bExists );
+		}
+
+		//	a lookup a free permit takes at once passes through the queue, and does not count against nMaxQueued
+		if ( this.queued.incrementAndGet() > this.maxQueued + this.permits.availablePermits() )
+		{
+			this.queued.decrementAndGet();
+			this.finish( lookup, null );
+		}
+		else
+		{
+			//	no one else can finish the lookup before it is queued
+			lookup.timeout = TIMER.schedule( () -> this.finish( lookup, null ), this.timeoutMillis, TimeUnit.MILLISECONDS );
+			this.queue.add( lookup );
+			this.drain();
+		}
+
+		return lookup.future.thenApply( bExists -> bExists );
+	}
+
+	/**
+	 *	drop all cached verdicts
+	 */
+	public void clearCache()
+	{
+		this.cache.clear();
+	}
+
+	/**
+	 *	get the number of verdicts cached, expired ones included until they are read or evicted
+	 *	@return	int
+	 */
+	public int getCacheSize()
+	{
+		return this.cache.getPositiveSize() + this.cache.getNegativeSize();
+	}
+	public long getCacheHitCount()
+	{
+		return this.cache.getHitCount();
+	}
+	public long getCoalescedCount()
+	{
+		return this.coalesced.sum();
+	}
+	public long getResolvedCount()
+	{
+		return this.resolved.sum();
+	}
+
+	/**
+	 *	get the number of lookups which failed, found the queue full or timed out, and were answered with true
+	 *	@return	long
+	 */
+	public long getFailureCount()
+	{
+		return this.failures.sum();
+	}
+
+	/**
+	 *	get the number of lookups waiting for a permit, timed out ones included until a permit is free
+	 *	@return	int
+	 */
+	public int getQueuedCount()
+	{
+		return this.queued.get();
+	}
+
+
+	/**
+	 *	a lookup of a domain, QUEUED then RUNNING while it holds a permit, and DONE once answered
+	 */
+	private static class Lookup
+	{
+		static final int QUEUED		= 0;
+		static final int RUNNING	= 1;
+		static final int DONE		= 2;
+
+		final String domain;
+		final CompletableFuture<Boolean> future	= new CompletableFuture<>();
+		final AtomicInteger state		= new AtomicInteger( QUEUED );
+		volatile ScheduledFuture<?> timeout	= null;
+
+		Lookup( String sDomain )
+		{
+			this.domain = sDomain;
+		}
+	}
+
+
+	/**
+	 *	a single daemon thread, timeouts cancelled by their answer leave its queue at once
+	 */
+	private static ScheduledThreadPoolExecutor createTimer()
+	{
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor( 1, runnable ->
+		{
+			Thread thread = new Thread( runnable, THREAD_NAME );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		timer.setRemoveOnCancelPolicy( true );
+
+		return timer;
+	}
+
+	/**
+	 *	start queued lookups while permits are free.
+	 *	a resolver answering at once finishes its lookup inside start, whose drain only asks the running loop
+	 *	to go round again, so the stack does not grow with the queue.
+	 */
+	private void drain()
+	{
+		if ( 0 != this.drains.getAndIncrement() )
+		{
+			return;
+		}
+
+		int nMissed = 1;
+		do
+		{
+			while ( ! this.queue.isEmpty() && this.permits.tryAcquire() )
+			{
+				Lookup lookup = this.queue.poll();
+				if ( null == lookup )
+				{
+					this.permits.release();
+					continue;
+				}
+				this.queued.decrementAndGet();
+				if ( ! lookup.state.compareAndSet( Lookup.QUEUED, Lookup.RUNNING ) )
+				{
+					//	timed out while queued
+					this.permits.release();
+					continue;
+				}
+				this.start( lookup );
+			}
+			nMissed = this.drains.addAndGet( - nMissed );
+		}
+		while ( 0 != nMissed );
+	}
+
+	private void start( Lookup lookup )
+	{
+		CompletableFuture<Boolean> resolving;
+		try
+		{
+			resolving = this.resolver.resolve( lookup.domain );
+		}
+		catch ( RuntimeException e )
+		{
+			resolving = null;
+		}
+		if ( null == resolving )
+		{
+			resolving = new CompletableFuture<>();
+			resolving.completeExceptionally( new IllegalStateException( lookup.domain ) );
+		}
+
+		resolving.whenComplete( ( bExists, e ) -> this.finish( lookup, null == e ? bExists : null ) );
+	}
+
+	/**
+	 *	answer a lookup once, by the resolver, the timeout or a full queue, and give its permit back if it holds one
+	 *	@param	bExists	null if the answer is unknown
+	 */
+	private void finish( Lookup lookup, Boolean bExists )
+	{
+		int nState;
+		do
+		{
+			nState = lookup.state.get();
+			if ( Lookup.DONE == nState )
+			{
+				return;
+			}
+		}
+		while ( ! lookup.state.compareAndSet( nState, Lookup.DONE ) );
+
+		try
+		{
+			ScheduledFuture<?> timeout = lookup.timeout;
+			if ( null != timeout )
+			{
+				timeout.cancel( false );
+			}
+
+			if ( null == bExists )
+			{
+				this.failures.increment();
+			}
+			else
+			{
+				this.resolved.increment();
+				this.cache.put( lookup.domain, bExists );
+			}
+
+			//	the lookup is removed before it completes, so a later call either joins it or finds the cached verdict
+			this.lookups.remove( lookup.domain, lookup );
+		}
+		finally
+		{
+			if ( Lookup.RUNNING == nState )
+			{
+				this.permits.release();
+			}
+		}
+		lookup.future.complete( null == bExists ? Boolean.TRUE : bExists );
+
+		this.drain();
+	}
+}
@@ -0,0 +1,20 @@
+package cn.airpassport.lib.mail;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ *	@interface	DomainResolver
+ *	tells DomainChecker if a domain exists, such as JndiDomainResolver asking DNS, or a stub in tests
+ */
+@FunctionalInterface
+public interface DomainResolver
+{
+	/**
+	 *	look a domain up without blocking the caller
+	 *	@param	sDomain	lower case ASCII domain, internationalized ones in punycode
+	 *	@return	CompletableFuture, completed with true if the domain can receive mail, false if it does not exist,
+	 *		or exceptionally if the answer is unknown
+	 */
+	CompletableFuture<Boolean> resolve( String sDomain );
+}
@@ -0,0 +1,166 @@
+package cn.airpassport.lib.mail;
+
+import cn.airpassport.lib.common.LibCommon;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.util.Hashtable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ *	@class	JndiDomainResolver
+ *	resolves domains with the DNS provider of JNDI: a domain exists if it has an MX record,
+ *	or else an A or AAAA record, which RFC 5321 takes as an implicit MX.
+ *	JNDI blocks, so lookups run on a fixed number of daemon threads of its own with as many waiting at most.
+ *	DomainChecker bounds how many run at once, but gives the permit of a timed out lookup back while its thread
+ *	may still hang, so lookups beyond the threads and the queue are rejected, and answered as unknown.
+ *	the DNS provider is told to give up on a server after half the timeout of the checker and not to retry it,
+ *	so the MX and address queries of a lookup free their thread near the time the checker gives up.
+ */
+public class JndiDomainResolver implements DomainResolver
+{
+	private static final String THREAD_NAME = "LibMail-dns";
+
+	private static final String[] MX_RECORDS	= new String[]{ "MX" };
+	private static final String[] ADDRESS_RECORDS	= new String[]{ "A", "AAAA" };
+
+	//	idle threads end after this time
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	//	settings of the DNS provider of JNDI, in milliseconds and in tries of each server
+	private static final String DNS_TIMEOUT	= "com.sun.jndi.dns.timeout.initial";
+	private static final String DNS_RETRIES	= "com.sun.jndi.dns.timeout.retries";
+
+	private final ThreadPoolExecutor executor;
+	private final String dnsTimeoutMillis;
+	private final LongAdder rejected = new LongAdder();
+
+
+	/**
+	 *	@param	nMaxConcurrent		threads looking up at once, and lookups waiting for a thread at most,
+	 *					such as the nMaxConcurrent of the DomainChecker
+	 *	@param	lnTimeoutMillis		time given to a lookup, such as the lnTimeoutMillis of the DomainChecker
+	 */
+	public JndiDomainResolver( int nMaxConcurrent, long lnTimeoutMillis )
+	{
+		if ( nMaxConcurrent <= 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nMaxConcurrent" ) );
+		}
+		if ( lnTimeoutMillis <= 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.lnTimeoutMillis" ) );
+		}
+
+		//	a lookup asks for MX records, and then maybe for A and AAAA records
+		this.dnsTimeoutMillis = String.valueOf( Math.max( 1, lnTimeoutMillis / 2 ) );
+
+		this.executor = new ThreadPoolExecutor
+			(
+				nMaxConcurrent,
+				nMaxConcurrent,
+				KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>( nMaxConcurrent ),
+				runnable ->
+				{
+					Thread thread = new Thread( runnable, THREAD_NAME );
+					thread.setDaemon( true );
+					return thread;
+				},
+				new ThreadPoolExecutor.AbortPolicy()
+			);
+		this.executor.allowCoreThreadTimeOut( true );
+	}
+
+	@Override
+	public CompletableFuture<Boolean> resolve( String sDomain )
+	{
+		try
+		{
+			return CompletableFuture.supplyAsync( () ->
+			{
+				try
+				{
+					return this.lookUp( sDomain );
+				}
+				catch ( NamingException e )
+				{
+					throw new IllegalStateException( e );
+				}
+			}, this.executor );
+		}
+		catch ( RejectedExecutionException e )
+		{
+			//	all threads hang and the queue is full, the answer is unknown
+			this.rejected.increment();
+
+			CompletableFuture<Boolean> future = new CompletableFuture<>();
+			future.completeExceptionally( e );
+			return future;
+		}
+	}
+
+	/**
+	 *	get the number of lookups rejected as all threads were busy and the queue was full
+	 *	@return	long
+	 */
+	public long getRejectedCount()
+	{
+		return this.rejected.sum();
+	}
+
+
+	private boolean lookUp( String sDomain ) throws NamingException
+	{
+		Hashtable<String,String> mapEnvironment = new Hashtable<>();
+		mapEnvironment.put( Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory" );
+		mapEnvironment.put( DNS_TIMEOUT, this.dnsTimeoutMillis );
+		mapEnvironment.put( DNS_RETRIES, "1" );
+
+		DirContext context = new InitialDirContext( mapEnvironment );
+		try
+		{
+			if ( JndiDomainResolver.hasRecord( context.getAttributes( sDomain, MX_RECORDS ) ) )
+			{
+				return true;
+			}
+
+			return JndiDomainResolver.hasRecord( context.getAttributes( sDomain, ADDRESS_RECORDS ) );
+		}
+		catch ( NameNotFoundException e )
+		{
+			//	NXDOMAIN
+			return false;
+		}
+		finally
+		{
+			context.close();
+		}
+	}
+
+	private static boolean hasRecord( Attributes attributes )
+	{
+		for ( String sType : new String[]{ "MX", "A", "AAAA" } )
+		{
+			Attribute attribute = attributes.get( sType );
+			if ( null != attribute && attribute.size() > 0 )
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -1,21 +1,315 @@
 package cn.airpassport.lib.mail;
 
+import cn.airpassport.lib.common.HeavyHitterSketch;
+import cn.airpassport.lib.common.LibCommon;
+import cn.airpassport.lib.common.LibHash;
+import cn.airpassport.lib.common.VerdictCache;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.validator.routines.EmailValidator;
 
+import java.net.IDN;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
 /**
  *	@class	LibMail
  */
 public class LibMail
 {
+	//	domains ignoring dots in the user, and their canonical name
+	private static final String GMAIL_DOMAIN	= "gmail.com";
+	private static final String GOOGLEMAIL_DOMAIN	= "googlemail.com";
+
+	//	defaults of the domain checker
+	private static final long DEFAULT_DOMAIN_TIMEOUT_MILLIS		= 2000;
+	private static final int DEFAULT_DOMAIN_CONCURRENCY		= 64;
+	private static final int DEFAULT_DOMAIN_QUEUE_SIZE		= 10000;
+	private static final long DEFAULT_DOMAIN_POSITIVE_TTL_MILLIS	= 60 * 60 * 1000;
+	private static final long DEFAULT_DOMAIN_NEGATIVE_TTL_MILLIS	= 5 * 60 * 1000;
+	private static final int DEFAULT_DOMAIN_CACHE_SIZE		= 100000;
+
+	//	top level domains accepted for ASCII addresses
+	private static volatile TldTrie tldTrie = TldTrie.getDefault();
+
+	//	optional cache of domain verdicts, null to disable
+	private static volatile VerdictCache domainCache = null;
+
+	//	checks the domains of isValidEMailAsync, created on first use
+	private static volatile DomainChecker domainChecker = null;
+
+	//	optional statistics of the domains of valid addresses, null to disable
+	private static volatile HeavyHitterSketch domainSketch = null;
+
 	/**
-	 *	check for EMail address
+	 *	check for EMail address, with the same verdict as EmailValidator of commons-validator.
+	 *	ASCII addresses are checked by MailScanner in a single pass against the current TldTrie,
+	 *	others by EmailValidator with its own list of top level domains.
 	 *	@param	sEMail		-
 	 *	@return	boolean
 	 */
 	public static boolean isValidEMail( String sEMail )
 	{
-		return ! StringUtils.isBlank( sEMail ) &&
-			EmailValidator.getInstance().isValid( sEMail );
+		return LibMail.isValidEMail( ( CharSequence ) sEMail );
+	}
+
+	/**
+	 *	check for EMail address held in any char sequence, such as a line of a mapped file.
+	 *	ASCII addresses are checked without copying them, unless a domain cache is set.
+	 *	@param	sEMail		only read during the call
+	 *	@return	boolean
+	 */
+	public static boolean isValidEMail( CharSequence sEMail )
+	{
+		if ( StringUtils.isBlank( sEMail ) )
+		{
+			return false;
+		}
+
+		boolean bValid;
+		switch ( MailScanner.scan( sEMail, tldTrie, domainCache ) )
+		{
+			case MailScanner.VALID:
+				bValid = true;
+				break;
+			case MailScanner.NOT_ASCII:
+				bValid = EmailValidator.getInstance().isValid( sEMail.toString() );
+				break;
+			default:
+				bValid = false;
+				break;
+		}
+
+		HeavyHitterSketch sketch = domainSketch;
+		if ( bValid && null != sketch )
+		{
+			LibMail.addDomain( sketch, sEMail );
+		}
+
+		return bValid;
+	}
+
+	/**
+	 *	check for EMail address whose domain exists, without blocking the caller.
+	 *	the syntax is checked at once by isValidEMail, the domain by the DomainChecker, see setDomainChecker.
+	 *	domains of address literals such as "user@[127.0.0.1]" are not looked up.
+	 *	@param	sEMail		-
+	 *	@return	CompletableFuture, completed with false if the syntax is not valid or the domain does not exist
+	 */
+	public static CompletableFuture<Boolean> isValidEMailAsync( String sEMail )
+	{
+		if ( ! LibMail.isValidEMail( sEMail ) )
+		{
+			return CompletableFuture.completedFuture( false );
+		}
+
+		String sDomain = sEMail.substring( sEMail.lastIndexOf( '@' ) + 1 ).trim();
+		if ( sDomain.startsWith( "[" ) )
+		{
+			return CompletableFuture.completedFuture( true );
+		}
+
+		try
+		{
+			sDomain = IDN.toASCII( sDomain );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			return CompletableFuture.completedFuture( false );
+		}
+
+		return LibMail.getDomainChecker().exists( sDomain );
+	}
+
+	/**
+	 *	replace the checker of isValidEMailAsync, such as one with a stub DomainResolver in tests
+	 *	@param	checker	-
+	 */
+	public static void setDomainChecker( DomainChecker checker )
+	{
+		if ( null == checker )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.checker" ) );
+		}
+
+		domainChecker = checker;
+	}
+
+	/**
+	 *	get the checker of isValidEMailAsync, by default asking DNS through JndiDomainResolver
+	 *	@return	DomainChecker
+	 */
+	public static DomainChecker getDomainChecker()
+	{
+		DomainChecker checker = domainChecker;
+		if ( null == checker )
+		{
+			synchronized ( LibMail.class )
+			{
+				checker = domainChecker;
+				if ( null == checker )
+				{
+					checker = new DomainChecker
+						(
+							new JndiDomainResolver( DEFAULT_DOMAIN_CONCURRENCY, DEFAULT_DOMAIN_TIMEOUT_MILLIS ),
+							DEFAULT_DOMAIN_TIMEOUT_MILLIS,
+							DEFAULT_DOMAIN_CONCURRENCY,
+							DEFAULT_DOMAIN_QUEUE_SIZE,
+							DEFAULT_DOMAIN_POSITIVE_TTL_MILLIS,
+							DEFAULT_DOMAIN_NEGATIVE_TTL_MILLIS,
+							DEFAULT_DOMAIN_CACHE_SIZE
+						);
+					domainChecker = checker;
+				}
+			}
+		}
+
+		return checker;
+	}
+
+	/**
+	 *	replace the top level domains accepted for ASCII addresses, readers see either the old or the new trie
+	 *	@param	trie	-
+	 */
+	public static void setTldTrie( TldTrie trie )
+	{
+		if ( null == trie )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.trie" ) );
+		}
+
+		tldTrie = trie;
+
+		//	verdicts of the old trie can not be hit any more, free them
+		VerdictCache cache = domainCache;
+		if ( null != cache )
+		{
+			cache.clear();
+		}
+	}
+
+	/**
+	 *	get the top level domains accepted for ASCII addresses
+	 *	@return	TldTrie
+	 */
+	public static TldTrie getTldTrie()
+	{
+		return tldTrie;
+	}
+
+	/**
+	 *	set the cache of domain verdicts used by isValidEMail
+	 *	@param	cache	null to disable caching
+	 */
+	public static void setDomainCache( VerdictCache cache )
+	{
+		domainCache = cache;
+	}
+
+	/**
+	 *	get the cache of domain verdicts, its counters tell the hit rate and size
+	 *	@return	VerdictCache, null if caching is disabled
+	 */
+	public static VerdictCache getDomainCache()
+	{
+		return domainCache;
+	}
+
+	/**
+	 *	set the sketch counting the domains of the addresses isValidEMail finds valid, to spot spiking domains
+	 *	@param	sketch	null to stop counting
+	 */
+	public static void setDomainSketch( HeavyHitterSketch sketch )
+	{
+		domainSketch = sketch;
+	}
+
+	/**
+	 *	get the sketch counting the domains of valid addresses
+	 *	@return	HeavyHitterSketch, null if domains are not counted
+	 */
+	public static HeavyHitterSketch getDomainSketch()
+	{
+		return domainSketch;
+	}
+
+	/**
+	 *	canonicalize an EMail address to spot duplicate signups:
+	 *		white space around the address is removed and the address is lower cased,
+	 *		a +tag is removed from an unquoted user, such as "name+news@example.com" to "name@example.com",
+	 *		dots are removed from the user and googlemail.com becomes gmail.com for Gmail addresses.
+	 *	@param	sEMail	-
+	 *	@return	String, null if the address is not valid
+	 */
+	public static String canonicalizeEMail( String sEMail )
+	{
+		if ( ! LibMail.isValidEMail( sEMail ) )
+		{
+			return null;
+		}
+
+		String sAddress	= sEMail.trim().toLowerCase( Locale.ROOT );
+		int nAt		= sAddress.lastIndexOf( '@' );
+		String sUser	= sAddress.substring( 0, nAt );
+		String sDomain	= sAddress.substring( nAt + 1 );
+
+		if ( GOOGLEMAIL_DOMAIN.equals( sDomain ) )
+		{
+			sDomain = GMAIL_DOMAIN;
+		}
+
+		if ( ! sUser.startsWith( "\"" ) )
+		{
+			int nPlus = sUser.indexOf( '+' );
+			if ( nPlus > 0 )
+			{
+				sUser = sUser.substring( 0, nPlus );
+			}
+			if ( GMAIL_DOMAIN.equals( sDomain ) )
+			{
+				String sWithoutDots = sUser.replace( ".", "" );
+				if ( ! sWithoutDots.isEmpty() )
+				{
+					sUser = sWithoutDots;
+				}
+			}
+		}
+
+		return sUser + '@' + sDomain;
+	}
+
+	/**
+	 *	hash an address returned by canonicalizeEMail into 64 bits, without allocation, for ScalableBloomFilter
+	 *	@param	sCanonicalEMail	-
+	 *	@return	long, 64-bit FNV-1a of the chars
+	 */
+	public static long hashCanonicalEMail( CharSequence sCanonicalEMail )
+	{
+		if ( null == sCanonicalEMail )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.sCanonicalEMail" ) );
+		}
+
+		return LibHash.fnv1a( sCanonicalEMail, 0, sCanonicalEMail.length() );
+	}
+
+
+	/**
+	 *	count the domain of a valid address, the text after the last '@' without the trailing white space
+	 */
+	private static void addDomain( HeavyHitterSketch sketch, CharSequence sEMail )
+	{
+		int nEnd = sEMail.length();
+		while ( nEnd > 0 && Character.isWhitespace( sEMail.charAt( nEnd - 1 ) ) )
+		{
+			nEnd --;
+		}
+
+		int nAt = nEnd - 1;
+		while ( nAt >= 0 && '@' != sEMail.charAt( nAt ) )
+		{
+			nAt --;
+		}
+
+		sketch.add( sEMail, nAt + 1, nEnd );
 	}
-}
\ No newline at end of file
+}
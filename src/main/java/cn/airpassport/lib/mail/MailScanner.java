@@ -0,0 +1,309 @@
+package cn.airpassport.lib.mail;
+
+import cn.airpassport.lib.common.VerdictCache;
+import org.apache.commons.validator.routines.InetAddressValidator;
+
+
+/**
+ *	@class	MailScanner
+ *
+ *	single pass over an ASCII address with the same verdict as EmailValidator.getInstance() of commons-validator 1.6,
+ *	without its regexes, substrings and lower case copies.
+ *
+ *	EmailValidator matches "^\s*?(.+)@(.+?)\s*$", so for ASCII input:
+ *		the user is the text before the last '@', from the char after the last line break of the leading white space,
+ *		the domain is the text after the last '@', without the trailing white space,
+ *		and neither may hold a line break, as '.' does not match one.
+ *	the user is matched against "^\s*WORD(\.WORD)*$" with a small nondeterministic automaton, see USER_*.
+ *	the domain is either an address literal in brackets, left to InetAddressValidator,
+ *	or labels of 1 - 63 alphanumeric chars and inner hyphens, at least two, the last one starting with a letter
+ *	and listed by the TldTrie, which by default holds the top level domains of DomainValidator.
+ *	verdicts of domains may be cached, so an address on a known domain costs a scan of the user and a lookup.
+ */
+class MailScanner
+{
+	static final int INVALID	= 0;
+	static final int VALID		= 1;
+	static final int NOT_ASCII	= 2;
+
+	//	the same as EmailValidator.MAX_USERNAME_LEN and DomainValidator.MAX_DOMAIN_LENGTH
+	private static final int MAX_USER_LENGTH	= 64;
+	private static final int MAX_DOMAIN_LENGTH	= 253;
+	private static final int MAX_LABEL_LENGTH	= 63;
+
+	//
+	//	states of the user automaton
+	//
+	private static final int USER_LEADING_SPACE	= 1;		//	in "^\s*"
+	private static final int USER_WORD_START	= 1 << 1;	//	before a WORD
+	private static final int USER_ATOM		= 1 << 2;	//	after a char of an unquoted WORD, accepting
+	private static final int USER_ESCAPE		= 1 << 3;	//	after '\' of an unquoted WORD
+	private static final int USER_QUOTED		= 1 << 4;	//	inside a quoted WORD
+	private static final int USER_QUOTED_BACKSLASH	= 1 << 5;	//	inside a quoted WORD, after '\'
+	private static final int USER_QUOTE_CLOSED	= 1 << 6;	//	after the closing '"' of a quoted WORD, accepting
+
+	//	ASCII chars of EmailValidator.VALID_CHARS: no white space, control or special char
+	private static final boolean[] ATOM_CHARS = new boolean[ 128 ];
+
+	static
+	{
+		for ( int c = 0x21; c < 0x7f; c ++ )
+		{
+			ATOM_CHARS[ c ] = true;
+		}
+		for ( char c : "()<>@,;:'\\\".[]".toCharArray() )
+		{
+			ATOM_CHARS[ c ] = false;
+		}
+	}
+
+
+	/**
+	 *	check an email address
+	 *	@param	sEMail		not null, only read during the call
+	 *	@param	tldTrie		-
+	 *	@param	domainCache	optional cache of domain verdicts
+	 *	@return	int, VALID, INVALID or NOT_ASCII if the address has a non-ASCII char and was not checked
+	 */
+	static int scan( CharSequence sEMail, TldTrie tldTrie, VerdictCache domainCache )
+	{
+		int nLength = sEMail.length();
+		if ( 0 == nLength || '.' == sEMail.charAt( nLength - 1 ) )
+		{
+			return INVALID;
+		}
+
+		//
+		//	one pass to find the last '@', the first and last non-white-space chars and the line breaks
+		//
+		int nAt			= -1;
+		int nFirstNonSpace	= -1;
+		int nLastNonSpace	= -1;
+		int nUserStart		= 0;
+		boolean bBreakPending	= false;
+		boolean bInnerBreak	= false;
+
+		for ( int i = 0; i < nLength; i ++ )
+		{
+			char c = sEMail.charAt( i );
+			if ( c >= 0x80 )
+			{
+				return NOT_ASCII;
+			}
+
+			if ( '\n' == c || '\r' == c )
+			{
+				if ( nFirstNonSpace < 0 )
+				{
+					nUserStart = i + 1;
+				}
+				else
+				{
+					bBreakPending = true;
+				}
+			}
+			else if ( ! MailScanner.isSpace( c ) )
+			{
+				if ( nFirstNonSpace < 0 )
+				{
+					nFirstNonSpace = i;
+				}
+				nLastNonSpace	= i;
+				bInnerBreak	|= bBreakPending;
+				if ( '@' == c )
+				{
+					nAt = i;
+				}
+			}
+		}
+
+		if ( nAt < 0 || nAt <= nUserStart || nAt == nLastNonSpace || bInnerBreak )
+		{
+			return INVALID;
+		}
+
+		if ( ! MailScanner.isValidUser( sEMail, nUserStart, nAt ) )
+		{
+			return INVALID;
+		}
+
+		if ( null == domainCache )
+		{
+			return MailScanner.isValidDomain( sEMail, nAt + 1, nLastNonSpace + 1, tldTrie ) ? VALID : INVALID;
+		}
+
+		//	the generation keeps verdicts of a replaced trie from being read
+		String sCacheKey	= tldTrie.getGeneration() + ":" + sEMail.subSequence( nAt + 1, nLastNonSpace + 1 );
+		Boolean bCached		= domainCache.get( sCacheKey );
+		if ( null != bCached )
+		{
+			return bCached ? VALID : INVALID;
+		}
+
+		boolean bValid = MailScanner.isValidDomain( sEMail, nAt + 1, nLastNonSpace + 1, tldTrie );
+		domainCache.put( sCacheKey, bValid );
+
+		return bValid ? VALID : INVALID;
+	}
+
+	/**
+	 *	check a domain of ASCII letters, digits, hyphens and dots, the same as DomainValidator.getInstance().isValid
+	 *	@param	sText		-
+	 *	@param	nStart		-
+	 *	@param	nEnd		exclusive
+	 *	@param	tldTrie		-
+	 *	@return	boolean
+	 */
+	static boolean isValidDomainName( CharSequence sText, int nStart, int nEnd, TldTrie tldTrie )
+	{
+		if ( nEnd - nStart > MAX_DOMAIN_LENGTH )
+		{
+			return false;
+		}
+
+		//	one trailing dot is allowed
+		if ( nEnd > nStart && '.' == sText.charAt( nEnd - 1 ) )
+		{
+			nEnd --;
+		}
+
+		int nLabels	= 0;
+		int nLabelStart	= nStart;
+		int nTopStart	= nStart;
+		for ( int i = nStart; i <= nEnd; i ++ )
+		{
+			if ( i < nEnd && '.' != sText.charAt( i ) )
+			{
+				continue;
+			}
+
+			if ( ! MailScanner.isValidLabel( sText, nLabelStart, i ) )
+			{
+				return false;
+			}
+			nLabels ++;
+			nTopStart	= nLabelStart;
+			nLabelStart	= i + 1;
+		}
+
+		return nLabels >= 2 &&
+			MailScanner.isAsciiLetter( sText.charAt( nTopStart ) ) &&
+			tldTrie.contains( sText, nTopStart, nEnd );
+	}
+
+
+	private static boolean isValidUser( CharSequence sEMail, int nStart, int nEnd )
+	{
+		if ( nEnd - nStart > MAX_USER_LENGTH )
+		{
+			return false;
+		}
+
+		int nStates = USER_LEADING_SPACE | USER_WORD_START;
+		for ( int i = nStart; i < nEnd && 0 != nStates; i ++ )
+		{
+			char c		= sEMail.charAt( i );
+			boolean bAtom	= ATOM_CHARS[ c ] || '\'' == c;
+			int nNext	= 0;
+
+			if ( 0 != ( nStates & USER_LEADING_SPACE ) && MailScanner.isSpace( c ) )
+			{
+				nNext |= USER_LEADING_SPACE | USER_WORD_START;
+			}
+			if ( 0 != ( nStates & ( USER_WORD_START | USER_ATOM ) ) )
+			{
+				if ( bAtom )
+				{
+					nNext |= USER_ATOM;
+				}
+				else if ( '\\' == c )
+				{
+					nNext |= USER_ESCAPE;
+				}
+			}
+			if ( 0 != ( nStates & USER_WORD_START ) && '"' == c )
+			{
+				nNext |= USER_QUOTED;
+			}
+			if ( 0 != ( nStates & USER_ESCAPE ) )
+			{
+				//	"\\." takes any char but a line break, there is none in the user
+				nNext |= USER_ATOM;
+			}
+			if ( 0 != ( nStates & ( USER_QUOTED | USER_QUOTED_BACKSLASH ) ) )
+			{
+				if ( '"' == c )
+				{
+					//	after '\', '"' may be escaped or may close the WORD
+					nNext |= 0 != ( nStates & USER_QUOTED_BACKSLASH ) ? USER_QUOTED | USER_QUOTE_CLOSED : USER_QUOTE_CLOSED;
+				}
+				else
+				{
+					nNext |= '\\' == c ? USER_QUOTED_BACKSLASH : USER_QUOTED;
+				}
+			}
+			if ( 0 != ( nStates & ( USER_ATOM | USER_QUOTE_CLOSED ) ) && '.' == c )
+			{
+				nNext |= USER_WORD_START;
+			}
+
+			nStates = nNext;
+		}
+
+		return 0 != ( nStates & ( USER_ATOM | USER_QUOTE_CLOSED ) );
+	}
+
+	private static boolean isValidDomain( CharSequence sEMail, int nStart, int nEnd, TldTrie tldTrie )
+	{
+		if ( '[' == sEMail.charAt( nStart ) && ']' == sEMail.charAt( nEnd - 1 ) && nEnd - nStart >= 2 )
+		{
+			//	address literals are rare, EmailValidator hands them to InetAddressValidator as well
+			return InetAddressValidator.getInstance().isValid( sEMail.subSequence( nStart + 1, nEnd - 1 ).toString() );
+		}
+
+		return MailScanner.isValidDomainName( sEMail, nStart, nEnd, tldTrie );
+	}
+
+	/**
+	 *	a label is 1 - 63 letters, digits and hyphens, starting and ending with a letter or digit
+	 */
+	private static boolean isValidLabel( CharSequence sText, int nStart, int nEnd )
+	{
+		if ( nEnd <= nStart || nEnd - nStart > MAX_LABEL_LENGTH )
+		{
+			return false;
+		}
+		if ( ! MailScanner.isAsciiLetterOrDigit( sText.charAt( nStart ) ) || ! MailScanner.isAsciiLetterOrDigit( sText.charAt( nEnd - 1 ) ) )
+		{
+			return false;
+		}
+		for ( int i = nStart + 1; i < nEnd - 1; i ++ )
+		{
+			char c = sText.charAt( i );
+			if ( '-' != c && ! MailScanner.isAsciiLetterOrDigit( c ) )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 *	the ASCII chars of \s
+	 */
+	private static boolean isSpace( char c )
+	{
+		return ' ' == c || '\t' == c || '\n' == c || 0x0b == c || '\f' == c || '\r' == c;
+	}
+
+	private static boolean isAsciiLetter( char c )
+	{
+		return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' );
+	}
+
+	private static boolean isAsciiLetterOrDigit( char c )
+	{
+		return MailScanner.isAsciiLetter( c ) || ( c >= '0' && c <= '9' );
+	}
+}
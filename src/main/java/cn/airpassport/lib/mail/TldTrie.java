@@ -0,0 +1,304 @@
+package cn.airpassport.lib.mail;
+
+import cn.airpassport.lib.common.LibCommon;
+import org.apache.commons.validator.routines.DomainValidator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ *	@class	TldTrie
+ *
+ *	immutable trie of top level domains, looked up in any case without allocation.
+ *	the nodes are numbered breadth first, so the children of a node are contiguous and sorted:
+ *		labels[ i ]		char on the edge into node i
+ *		firstChildren[ i ]	first child of node i, the children end at firstChildren[ i + 1 ]
+ *		terminals[ i ]		a top level domain ends at node i
+ *
+ *	the text of a trie has one top level domain per line, lines starting with # are comments.
+ *	domains are ASCII, internationalized ones in punycode such as "xn--fiqs8s".
+ */
+public class TldTrie
+{
+	//	tells tries apart in keys of the domain verdict cache
+	private static final AtomicInteger GENERATIONS = new AtomicInteger();
+
+	private static final TldTrie DEFAULT = TldTrie.build( TldTrie.collectDomainValidatorTlds() );
+
+	private final char[] labels;
+	private final int[] firstChildren;
+	private final boolean[] terminals;
+	private final int size;
+	private final int generation;
+
+
+	private TldTrie( char[] labels, int[] firstChildren, boolean[] terminals, int nSize )
+	{
+		this.labels		= labels;
+		this.firstChildren	= firstChildren;
+		this.terminals		= terminals;
+		this.size		= nSize;
+		this.generation		= GENERATIONS.incrementAndGet();
+	}
+
+	/**
+	 *	get the trie of the top level domains accepted by DomainValidator, overrides included
+	 *	@return	TldTrie
+	 */
+	public static TldTrie getDefault()
+	{
+		return DEFAULT;
+	}
+
+	/**
+	 *	parse a trie from text
+	 *	@param	sText	-
+	 *	@return	TldTrie
+	 */
+	public static TldTrie parse( String sText )
+	{
+		if ( null == sText )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.sText" ) );
+		}
+
+		try
+		{
+			return TldTrie.load( new StringReader( sText ) );
+		}
+		catch ( IOException e )
+		{
+			//	StringReader never throws
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 *	load a trie from text
+	 *	@param	reader	-
+	 *	@return	TldTrie
+	 *	@throws	IOException	if reading fails
+	 */
+	public static TldTrie load( Reader reader ) throws IOException
+	{
+		if ( null == reader )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.reader" ) );
+		}
+
+		TreeSet<String> setTlds = new TreeSet<>();
+
+		BufferedReader bufferedReader = new BufferedReader( reader );
+		String sLine;
+		while ( null != ( sLine = bufferedReader.readLine() ) )
+		{
+			sLine = sLine.trim();
+			if ( sLine.isEmpty() || sLine.startsWith( "#" ) )
+			{
+				continue;
+			}
+
+			String sTld = sLine.toLowerCase( Locale.ENGLISH );
+			for ( int i = 0; i < sTld.length(); i ++ )
+			{
+				char c = sTld.charAt( i );
+				if ( ! ( c >= 'a' && c <= 'z' ) && ! ( c >= '0' && c <= '9' ) && '-' != c )
+				{
+					throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.tld" ) );
+				}
+			}
+			setTlds.add( sTld );
+		}
+
+		return TldTrie.build( setTlds );
+	}
+
+	/**
+	 *	check if sText[ nStart, nEnd ) is a top level domain, in any case
+	 *	@param	sText		-
+	 *	@param	nStart		-
+	 *	@param	nEnd		exclusive
+	 *	@return	boolean
+	 */
+	public boolean contains( CharSequence sText, int nStart, int nEnd )
+	{
+		int nNode = 0;
+		for ( int i = nStart; i < nEnd; i ++ )
+		{
+			char c = sText.charAt( i );
+			if ( c >= 'A' && c <= 'Z' )
+			{
+				c += 'a' - 'A';
+			}
+
+			nNode = this.findChild( nNode, c );
+			if ( nNode < 0 )
+			{
+				return false;
+			}
+		}
+
+		return this.terminals[ nNode ];
+	}
+
+	/**
+	 *	check if sTld is a top level domain, in any case
+	 *	@param	sTld	-
+	 *	@return	boolean
+	 */
+	public boolean contains( String sTld )
+	{
+		return null != sTld && this.contains( sTld, 0, sTld.length() );
+	}
+
+	/**
+	 *	get the number of top level domains
+	 *	@return	int
+	 */
+	public int getSize()
+	{
+		return this.size;
+	}
+
+	/**
+	 *	get the number of nodes, the root included
+	 *	@return	int
+	 */
+	public int getNodeCount()
+	{
+		return this.labels.length;
+	}
+
+	int getGeneration()
+	{
+		return this.generation;
+	}
+
+
+	private int findChild( int nNode, char c )
+	{
+		int nLow	= this.firstChildren[ nNode ];
+		int nHigh	= this.firstChildren[ nNode + 1 ] - 1;
+		while ( nLow <= nHigh )
+		{
+			int nMiddle = ( nLow + nHigh ) >>> 1;
+			if ( this.labels[ nMiddle ] < c )
+			{
+				nLow = nMiddle + 1;
+			}
+			else if ( this.labels[ nMiddle ] > c )
+			{
+				nHigh = nMiddle - 1;
+			}
+			else
+			{
+				return nMiddle;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 *	temporary node of build
+	 */
+	private static class Node
+	{
+		final TreeMap<Character,Node> mapChildren = new TreeMap<>();
+		boolean bTerminal = false;
+	}
+
+	private static TldTrie build( TreeSet<String> setTlds )
+	{
+		Node root	= new Node();
+		int nNodes	= 1;
+		for ( String sTld : setTlds )
+		{
+			Node node = root;
+			for ( int i = 0; i < sTld.length(); i ++ )
+			{
+				Node child = node.mapChildren.get( sTld.charAt( i ) );
+				if ( null == child )
+				{
+					child = new Node();
+					node.mapChildren.put( sTld.charAt( i ), child );
+					nNodes ++;
+				}
+				node = child;
+			}
+			node.bTerminal = true;
+		}
+
+		//
+		//	number the nodes breadth first
+		//
+		char[] arrLabels		= new char[ nNodes ];
+		int[] arrFirstChildren		= new int[ nNodes + 1 ];
+		boolean[] arrTerminals		= new boolean[ nNodes ];
+		List<Node> listQueue		= new ArrayList<>( nNodes );
+		listQueue.add( root );
+
+		for ( int i = 0; i < listQueue.size(); i ++ )
+		{
+			Node node			= listQueue.get( i );
+			arrTerminals[ i ]		= node.bTerminal;
+			arrFirstChildren[ i ]		= listQueue.size();
+			for ( Character c : node.mapChildren.keySet() )
+			{
+				arrLabels[ listQueue.size() ] = c;
+				listQueue.add( node.mapChildren.get( c ) );
+			}
+		}
+		arrFirstChildren[ nNodes ] = nNodes;
+
+		return new TldTrie( arrLabels, arrFirstChildren, arrTerminals, setTlds.size() );
+	}
+
+	/**
+	 *	collect the top level domains DomainValidator.isValidTld accepts without local ones, in lower case
+	 */
+	private static TreeSet<String> collectDomainValidatorTlds()
+	{
+		TreeSet<String> setTlds = TldTrie.collectTlds( DomainValidator.ArrayType.INFRASTRUCTURE_RO, null, null );
+		setTlds.addAll( TldTrie.collectTlds( DomainValidator.ArrayType.GENERIC_RO, DomainValidator.ArrayType.GENERIC_PLUS, DomainValidator.ArrayType.GENERIC_MINUS ) );
+		setTlds.addAll( TldTrie.collectTlds( DomainValidator.ArrayType.COUNTRY_CODE_RO, DomainValidator.ArrayType.COUNTRY_CODE_PLUS, DomainValidator.ArrayType.COUNTRY_CODE_MINUS ) );
+
+		return setTlds;
+	}
+
+	/**
+	 *	collect the entries of a table in lower case, with the entries of its overrides added and removed
+	 */
+	private static TreeSet<String> collectTlds( DomainValidator.ArrayType type, DomainValidator.ArrayType typePlus, DomainValidator.ArrayType typeMinus )
+	{
+		TreeSet<String> setTlds = new TreeSet<>();
+		for ( DomainValidator.ArrayType typeAdded : new DomainValidator.ArrayType[]{ type, typePlus } )
+		{
+			if ( null != typeAdded )
+			{
+				for ( String sTld : DomainValidator.getTLDEntries( typeAdded ) )
+				{
+					setTlds.add( sTld.toLowerCase( Locale.ENGLISH ) );
+				}
+			}
+		}
+		if ( null != typeMinus )
+		{
+			for ( String sTld : DomainValidator.getTLDEntries( typeMinus ) )
+			{
+				setTlds.remove( sTld.toLowerCase( Locale.ENGLISH ) );
+			}
+		}
+
+		return setTlds;
+	}
+}
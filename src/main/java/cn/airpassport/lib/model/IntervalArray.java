@@ -0,0 +1,246 @@
+package cn.airpassport.lib.model;
+
+import cn.airpassport.lib.common.LibCommon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+
+/**
+ *	@class	IntervalArray
+ *
+ *	growable columnar array of date intervals, two int columns of epoch days instead of three objects per interval.
+ *	scans read the columns front to back, LocalDateIntervals are only made on demand by get and toList.
+ *	intervals follow PackedDateInterval, an array is not thread safe.
+ */
+public class IntervalArray
+{
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] beginDays;
+	private int[] endDays;
+	private int size = 0;
+
+
+	public IntervalArray()
+	{
+		this( DEFAULT_CAPACITY );
+	}
+
+	/**
+	 *	@param	nCapacity	number of intervals held before growing
+	 */
+	public IntervalArray( int nCapacity )
+	{
+		if ( nCapacity < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nCapacity" ) );
+		}
+
+		this.beginDays	= new int[ nCapacity ];
+		this.endDays	= new int[ nCapacity ];
+	}
+
+	/**
+	 *	make an array of LocalDateIntervals
+	 *	@param	collection	valid intervals, see LocalDateInterval.isValid
+	 *	@return	IntervalArray
+	 */
+	public static IntervalArray from( Collection<LocalDateInterval> collection )
+	{
+		if ( null == collection )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.collection" ) );
+		}
+
+		IntervalArray array = new IntervalArray( collection.size() );
+		for ( LocalDateInterval interval : collection )
+		{
+			array.add( interval );
+		}
+
+		return array;
+	}
+
+	/**
+	 *	append an interval
+	 *	@param	interval	valid interval, see LocalDateInterval.isValid
+	 *	@return	int, its index
+	 */
+	public int add( LocalDateInterval interval )
+	{
+		long lnPacked = PackedDateInterval.fromInterval( interval );
+		if ( PackedDateInterval.NONE == lnPacked )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.interval" ) );
+		}
+
+		return this.addPacked( lnPacked );
+	}
+
+	/**
+	 *	append a packed interval
+	 *	@param	lnPacked	-
+	 *	@return	int, its index
+	 */
+	public int addPacked( long lnPacked )
+	{
+		if ( ! PackedDateInterval.isValid( lnPacked ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.lnPacked" ) );
+		}
+
+		if ( this.size == this.beginDays.length )
+		{
+			int nCapacity	= Math.max( DEFAULT_CAPACITY, this.size + ( this.size >> 1 ) );
+			this.beginDays	= Arrays.copyOf( this.beginDays, nCapacity );
+			this.endDays	= Arrays.copyOf( this.endDays, nCapacity );
+		}
+
+		this.beginDays[ this.size ]	= PackedDateInterval.getBeginDay( lnPacked );
+		this.endDays[ this.size ]	= PackedDateInterval.getEndDay( lnPacked );
+
+		return this.size ++;
+	}
+
+	/**
+	 *	get the number of intervals
+	 *	@return	int
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	public int getBeginDay( int nIndex )
+	{
+		this.checkIndex( nIndex );
+		return this.beginDays[ nIndex ];
+	}
+
+	public int getEndDay( int nIndex )
+	{
+		this.checkIndex( nIndex );
+		return this.endDays[ nIndex ];
+	}
+
+	/**
+	 *	get an interval as a PackedDateInterval
+	 *	@param	nIndex	-
+	 *	@return	long
+	 */
+	public long getPacked( int nIndex )
+	{
+		this.checkIndex( nIndex );
+		return PackedDateInterval.pack( this.beginDays[ nIndex ], this.endDays[ nIndex ] );
+	}
+
+	/**
+	 *	get an interval as a new LocalDateInterval
+	 *	@param	nIndex	-
+	 *	@return	LocalDateInterval
+	 */
+	public LocalDateInterval get( int nIndex )
+	{
+		return PackedDateInterval.toInterval( this.getPacked( nIndex ) );
+	}
+
+	/**
+	 *	get all intervals as new LocalDateIntervals
+	 *	@return	List
+	 */
+	public List<LocalDateInterval> toList()
+	{
+		List<LocalDateInterval> listIntervals = new ArrayList<>( this.size );
+		for ( int i = 0; i < this.size; i ++ )
+		{
+			listIntervals.add( this.get( i ) );
+		}
+
+		return listIntervals;
+	}
+
+	/**
+	 *	visit the indexes of the intervals overlapping another one, in index order, see PackedDateInterval.isOverlapped
+	 *	@param	lnPacked	-
+	 *	@param	consumer	-
+	 */
+	public void forEachOverlapping( long lnPacked, IntConsumer consumer )
+	{
+		if ( null == consumer )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.consumer" ) );
+		}
+		if ( ! PackedDateInterval.isValid( lnPacked ) )
+		{
+			return;
+		}
+
+		int nBeginDay	= PackedDateInterval.getBeginDay( lnPacked );
+		int nEndDay	= PackedDateInterval.getEndDay( lnPacked );
+		for ( int i = 0; i < this.size; i ++ )
+		{
+			if ( this.beginDays[ i ] < nEndDay && nBeginDay < this.endDays[ i ] )
+			{
+				consumer.accept( i );
+			}
+		}
+	}
+
+	/**
+	 *	count the intervals overlapping another one, see PackedDateInterval.isOverlapped
+	 *	@param	lnPacked	-
+	 *	@return	int
+	 */
+	public int countOverlapping( long lnPacked )
+	{
+		if ( ! PackedDateInterval.isValid( lnPacked ) )
+		{
+			return 0;
+		}
+
+		int nBeginDay	= PackedDateInterval.getBeginDay( lnPacked );
+		int nEndDay	= PackedDateInterval.getEndDay( lnPacked );
+		int nCount	= 0;
+		for ( int i = 0; i < this.size; i ++ )
+		{
+			if ( this.beginDays[ i ] < nEndDay && nBeginDay < this.endDays[ i ] )
+			{
+				nCount ++;
+			}
+		}
+
+		return nCount;
+	}
+
+	/**
+	 *	count the intervals containing a day, see PackedDateInterval.containsDay
+	 *	@param	lnDay	epoch day
+	 *	@return	int
+	 */
+	public int countContaining( long lnDay )
+	{
+		int nCount = 0;
+		for ( int i = 0; i < this.size; i ++ )
+		{
+			if ( this.beginDays[ i ] <= lnDay && lnDay <= this.endDays[ i ] )
+			{
+				nCount ++;
+			}
+		}
+
+		return nCount;
+	}
+
+
+	private void checkIndex( int nIndex )
+	{
+		if ( nIndex < 0 || nIndex >= this.size )
+		{
+			throw new IndexOutOfBoundsException( String.valueOf( nIndex ) );
+		}
+	}
+}
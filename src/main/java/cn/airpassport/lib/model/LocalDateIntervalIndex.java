@@ -0,0 +1,456 @@
+package cn.airpassport.lib.model;
+
+import cn.airpassport.lib.common.LibCommon;
+import cn.airpassport.lib.common.LibHash;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+
+/**
+ *	@class	LocalDateIntervalIndex
+ *
+ *	index of LocalDateIntervals with a value each, for overlap, containment and stabbing queries in O( log n + k ).
+ *	the entries are kept in a treap ordered by the epoch day of their begin and their id,
+ *	each node holding the latest and the earliest end of its subtree, so subtrees ending too early,
+ *	or for findContainedIn too late, are skipped.
+ *	findContainedIn also walks the entries beginning in the interval but ending after it whose subtree
+ *	holds an entry ending in time, it is O( log n + k ) when few intervals straddle the end of the query.
+ *
+ *	the treap is persistent: add and remove copy the O( log n ) nodes on the path they change
+ *	and publish the new root through a volatile field, nodes are never modified.
+ *	readers take no lock and see the index as it was when their query started,
+ *	writers are serialized by the lock of the index.
+ *
+ *	overlapping has the meaning of LibTime.isDateIntervalsOverlapped, begin1 < end2 and begin2 < end1,
+ *	containing and contained are inclusive, begin1 <= begin2 and end2 <= end1.
+ */
+public class LocalDateIntervalIndex<T>
+{
+	private volatile Node<T> root = null;
+
+	//	entries by id, only read and written by writers
+	private final Map<Long,Entry<T>> entries = new HashMap<>();
+	private long lastId = 0;
+
+
+	/**
+	 *	an interval of the index with its value
+	 */
+	public static class Entry<T>
+	{
+		private final long id;
+		private final LocalDate begin;
+		private final LocalDate end;
+		private final long beginDay;
+		private final long endDay;
+		private final T value;
+
+		private Entry( long lnId, LocalDate begin, LocalDate end, T value )
+		{
+			this.id		= lnId;
+			this.begin	= begin;
+			this.end	= end;
+			this.beginDay	= begin.toEpochDay();
+			this.endDay	= end.toEpochDay();
+			this.value	= value;
+		}
+
+		public long getId()
+		{
+			return this.id;
+		}
+
+		public LocalDate getBegin()
+		{
+			return this.begin;
+		}
+
+		public LocalDate getEnd()
+		{
+			return this.end;
+		}
+
+		public LocalDateInterval getInterval()
+		{
+			return LocalDateInterval.create( this.begin, this.end );
+		}
+
+		public T getValue()
+		{
+			return this.value;
+		}
+	}
+
+	/**
+	 *	immutable node of the treap
+	 */
+	private static class Node<T>
+	{
+		final Entry<T> entry;
+		final Node<T> left;
+		final Node<T> right;
+		final int priority;
+		final long maxEndDay;
+		final long minEndDay;
+		final int size;
+
+		Node( Entry<T> entry, Node<T> left, Node<T> right )
+		{
+			this.entry	= entry;
+			this.left	= left;
+			this.right	= right;
+			this.priority	= Node.priorityOf( entry.id );
+
+			long lnMaxEndDay	= entry.endDay;
+			long lnMinEndDay	= entry.endDay;
+			int nSize		= 1;
+			if ( null != left )
+			{
+				lnMaxEndDay	= Math.max( lnMaxEndDay, left.maxEndDay );
+				lnMinEndDay	= Math.min( lnMinEndDay, left.minEndDay );
+				nSize		+= left.size;
+			}
+			if ( null != right )
+			{
+				lnMaxEndDay	= Math.max( lnMaxEndDay, right.maxEndDay );
+				lnMinEndDay	= Math.min( lnMinEndDay, right.minEndDay );
+				nSize		+= right.size;
+			}
+			this.maxEndDay	= lnMaxEndDay;
+			this.minEndDay	= lnMinEndDay;
+			this.size	= nSize;
+		}
+
+		/**
+		 *	the priority of the treap is a hash of the id, so no random generator is shared by writers
+		 */
+		static int priorityOf( long lnId )
+		{
+			return ( int ) LibHash.mix( lnId );
+		}
+
+		/**
+		 *	order of the treap, by begin and then by id
+		 */
+		boolean isBefore( Entry<T> entryOther )
+		{
+			return this.entry.beginDay < entryOther.beginDay ||
+				( this.entry.beginDay == entryOther.beginDay && this.entry.id < entryOther.id );
+		}
+	}
+
+
+	/**
+	 *	add an interval
+	 *	@param	interval	valid interval, see LocalDateInterval.isValid
+	 *	@param	value		optional
+	 *	@return	long, id of the entry, for remove
+	 */
+	public long add( LocalDateInterval interval, T value )
+	{
+		if ( ! LocalDateInterval.isValid( interval ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.interval" ) );
+		}
+
+		return this.add( interval.getBegin(), interval.getEnd(), value );
+	}
+
+	/**
+	 *	add an interval
+	 *	@param	begin	-
+	 *	@param	end	not before begin
+	 *	@param	value	optional
+	 *	@return	long, id of the entry, for remove
+	 */
+	public synchronized long add( LocalDate begin, LocalDate end, T value )
+	{
+		if ( null == begin )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.begin" ) );
+		}
+		if ( null == end )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.end" ) );
+		}
+		if ( begin.isAfter( end ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.begin-end" ) );
+		}
+
+		Entry<T> entry = new Entry<>( ++ this.lastId, begin, end, value );
+		this.entries.put( entry.id, entry );
+		this.root = LocalDateIntervalIndex.insert( this.root, entry );
+
+		return entry.id;
+	}
+
+	/**
+	 *	remove an entry
+	 *	@param	lnId	as returned by add
+	 *	@return	boolean, false if there is no such entry
+	 */
+	public synchronized boolean remove( long lnId )
+	{
+		Entry<T> entry = this.entries.remove( lnId );
+		if ( null == entry )
+		{
+			return false;
+		}
+
+		this.root = LocalDateIntervalIndex.delete( this.root, entry );
+
+		return true;
+	}
+
+	/**
+	 *	get an entry
+	 *	@param	lnId	as returned by add
+	 *	@return	Entry, null if there is no such entry
+	 */
+	public synchronized Entry<T> get( long lnId )
+	{
+		return this.entries.get( lnId );
+	}
+
+	/**
+	 *	get the number of entries
+	 *	@return	int
+	 */
+	public int size()
+	{
+		Node<T> node = this.root;
+		return null == node ? 0 : node.size;
+	}
+
+	/**
+	 *	find the entries overlapping an interval, in the order of their begin
+	 *	@param	begin	-
+	 *	@param	end	-
+	 *	@return	List, empty if begin or end is null
+	 */
+	public List<Entry<T>> findOverlapping( LocalDate begin, LocalDate end )
+	{
+		List<Entry<T>> listEntries = new ArrayList<>();
+		this.forEachOverlapping( begin, end, listEntries::add );
+
+		return listEntries;
+	}
+
+	/**
+	 *	find the entries overlapping an interval, in the order of their begin
+	 *	@param	interval	-
+	 *	@return	List, empty if the interval is not valid
+	 */
+	public List<Entry<T>> findOverlapping( LocalDateInterval interval )
+	{
+		if ( ! LocalDateInterval.isValid( interval ) )
+		{
+			return new ArrayList<>();
+		}
+
+		return this.findOverlapping( interval.getBegin(), interval.getEnd() );
+	}
+
+	/**
+	 *	visit the entries overlapping an interval, in the order of their begin, without a list
+	 *	@param	begin		-
+	 *	@param	end		-
+	 *	@param	consumer	-
+	 */
+	public void forEachOverlapping( LocalDate begin, LocalDate end, Consumer<Entry<T>> consumer )
+	{
+		if ( null == consumer )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.consumer" ) );
+		}
+		if ( null == begin || null == end )
+		{
+			return;
+		}
+
+		LocalDateIntervalIndex.visitOverlapping( this.root, begin.toEpochDay(), end.toEpochDay(), consumer );
+	}
+
+	/**
+	 *	find the entries containing an interval, in the order of their begin
+	 *	@param	begin	-
+	 *	@param	end	-
+	 *	@return	List, empty if begin or end is null
+	 */
+	public List<Entry<T>> findContaining( LocalDate begin, LocalDate end )
+	{
+		List<Entry<T>> listEntries = new ArrayList<>();
+		if ( null != begin && null != end )
+		{
+			LocalDateIntervalIndex.visitContaining( this.root, begin.toEpochDay(), end.toEpochDay(), listEntries::add );
+		}
+
+		return listEntries;
+	}
+
+	/**
+	 *	find the entries containing a date, from their begin to their end inclusive, in the order of their begin
+	 *	@param	date	-
+	 *	@return	List, empty if date is null
+	 */
+	public List<Entry<T>> findContaining( LocalDate date )
+	{
+		return this.findContaining( date, date );
+	}
+
+	/**
+	 *	find the entries contained in an interval, in the order of their begin
+	 *	@param	begin	-
+	 *	@param	end	-
+	 *	@return	List, empty if begin or end is null
+	 */
+	public List<Entry<T>> findContainedIn( LocalDate begin, LocalDate end )
+	{
+		List<Entry<T>> listEntries = new ArrayList<>();
+		if ( null != begin && null != end )
+		{
+			LocalDateIntervalIndex.visitContainedIn( this.root, begin.toEpochDay(), end.toEpochDay(), listEntries::add );
+		}
+
+		return listEntries;
+	}
+
+
+	/**
+	 *	entries with begin < lnEndDay and lnBeginDay < end
+	 */
+	private static <T> void visitOverlapping( Node<T> node, long lnBeginDay, long lnEndDay, Consumer<Entry<T>> consumer )
+	{
+		while ( null != node && node.maxEndDay > lnBeginDay )
+		{
+			LocalDateIntervalIndex.visitOverlapping( node.left, lnBeginDay, lnEndDay, consumer );
+
+			//	the right subtree begins no earlier than this node
+			if ( node.entry.beginDay >= lnEndDay )
+			{
+				return;
+			}
+			if ( node.entry.endDay > lnBeginDay )
+			{
+				consumer.accept( node.entry );
+			}
+			node = node.right;
+		}
+	}
+
+	/**
+	 *	entries with begin <= lnBeginDay and lnEndDay <= end
+	 */
+	private static <T> void visitContaining( Node<T> node, long lnBeginDay, long lnEndDay, Consumer<Entry<T>> consumer )
+	{
+		while ( null != node && node.maxEndDay >= lnEndDay )
+		{
+			LocalDateIntervalIndex.visitContaining( node.left, lnBeginDay, lnEndDay, consumer );
+			if ( node.entry.beginDay > lnBeginDay )
+			{
+				return;
+			}
+			if ( node.entry.endDay >= lnEndDay )
+			{
+				consumer.accept( node.entry );
+			}
+			node = node.right;
+		}
+	}
+
+	/**
+	 *	entries with lnBeginDay <= begin and end <= lnEndDay
+	 */
+	private static <T> void visitContainedIn( Node<T> node, long lnBeginDay, long lnEndDay, Consumer<Entry<T>> consumer )
+	{
+		//	no entry of a subtree ending after lnEndDay is contained
+		while ( null != node && node.minEndDay <= lnEndDay )
+		{
+			if ( node.entry.beginDay < lnBeginDay )
+			{
+				//	only the right subtree may begin late enough
+				node = node.right;
+				continue;
+			}
+
+			LocalDateIntervalIndex.visitContainedIn( node.left, lnBeginDay, lnEndDay, consumer );
+			if ( node.entry.beginDay > lnEndDay )
+			{
+				return;
+			}
+			if ( node.entry.endDay <= lnEndDay )
+			{
+				consumer.accept( node.entry );
+			}
+			node = node.right;
+		}
+	}
+
+	private static <T> Node<T> insert( Node<T> node, Entry<T> entry )
+	{
+		if ( null == node )
+		{
+			return new Node<>( entry, null, null );
+		}
+
+		if ( node.isBefore( entry ) )
+		{
+			Node<T> right = LocalDateIntervalIndex.insert( node.right, entry );
+			if ( right.priority > node.priority )
+			{
+				//	rotate left
+				return new Node<>( right.entry, new Node<>( node.entry, node.left, right.left ), right.right );
+			}
+			return new Node<>( node.entry, node.left, right );
+		}
+
+		Node<T> left = LocalDateIntervalIndex.insert( node.left, entry );
+		if ( left.priority > node.priority )
+		{
+			//	rotate right
+			return new Node<>( left.entry, left.left, new Node<>( node.entry, left.right, node.right ) );
+		}
+		return new Node<>( node.entry, left, node.right );
+	}
+
+	private static <T> Node<T> delete( Node<T> node, Entry<T> entry )
+	{
+		if ( null == node )
+		{
+			return null;
+		}
+		if ( node.entry == entry )
+		{
+			return LocalDateIntervalIndex.merge( node.left, node.right );
+		}
+
+		return node.isBefore( entry ) ?
+			new Node<>( node.entry, node.left, LocalDateIntervalIndex.delete( node.right, entry ) ) :
+			new Node<>( node.entry, LocalDateIntervalIndex.delete( node.left, entry ), node.right );
+	}
+
+	/**
+	 *	join two treaps, every entry of left is before every entry of right
+	 */
+	private static <T> Node<T> merge( Node<T> left, Node<T> right )
+	{
+		if ( null == left )
+		{
+			return right;
+		}
+		if ( null == right )
+		{
+			return left;
+		}
+
+		return left.priority > right.priority ?
+			new Node<>( left.entry, left.left, LocalDateIntervalIndex.merge( left.right, right ) ) :
+			new Node<>( right.entry, LocalDateIntervalIndex.merge( left, right.left ), right.right );
+	}
+}
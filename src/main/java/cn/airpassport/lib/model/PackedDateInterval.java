@@ -0,0 +1,218 @@
+package cn.airpassport.lib.model;
+
+import cn.airpassport.lib.common.LibCommon;
+
+import java.time.LocalDate;
+
+
+/**
+ *	@class	PackedDateInterval
+ *
+ *	a date interval packed in a long, so it can be held in primitive arrays and compared without allocation.
+ *		bits 32 - 63	epoch day of the begin, as an int
+ *		bits 0 - 31	epoch day of the end, as an int with its sign bit flipped
+ *	packed intervals sort as longs by begin first, then by end.
+ *	Integer.MIN_VALUE is not a day, so NONE, packing it as begin and end, is never an interval and stands for "no interval".
+ *
+ *	overlapping has the meaning of LibTime.isDateIntervalsOverlapped, begin1 < end2 and begin2 < end1,
+ *	containing is inclusive, begin1 <= begin2 and end2 <= end1.
+ */
+public class PackedDateInterval
+{
+	public static final long NONE = Long.MIN_VALUE;
+
+	private static final long END_SIGN = 0x80000000L;
+
+
+	/**
+	 *	check if the epoch days fit in a packed interval
+	 *	@param	lnBeginDay	-
+	 *	@param	lnEndDay	-
+	 *	@return	boolean
+	 */
+	public static boolean canPack( long lnBeginDay, long lnEndDay )
+	{
+		return lnBeginDay > Integer.MIN_VALUE && lnEndDay <= Integer.MAX_VALUE && lnBeginDay <= lnEndDay;
+	}
+
+	/**
+	 *	pack an interval of epoch days
+	 *	@param	lnBeginDay	-
+	 *	@param	lnEndDay	not before lnBeginDay
+	 *	@return	long
+	 */
+	public static long pack( long lnBeginDay, long lnEndDay )
+	{
+		if ( ! PackedDateInterval.canPack( lnBeginDay, lnEndDay ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.days" ) );
+		}
+
+		return ( lnBeginDay << 32 ) | ( ( lnEndDay ^ END_SIGN ) & 0xffffffffL );
+	}
+
+	/**
+	 *	pack an interval of dates
+	 *	@param	begin	-
+	 *	@param	end	not before begin
+	 *	@return	long
+	 */
+	public static long pack( LocalDate begin, LocalDate end )
+	{
+		if ( null == begin )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.begin" ) );
+		}
+		if ( null == end )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.end" ) );
+		}
+
+		return PackedDateInterval.pack( begin.toEpochDay(), end.toEpochDay() );
+	}
+
+	/**
+	 *	pack a LocalDateInterval
+	 *	@param	interval	-
+	 *	@return	long, NONE if the interval is not valid
+	 */
+	public static long fromInterval( LocalDateInterval interval )
+	{
+		if ( ! LocalDateInterval.isValid( interval ) )
+		{
+			return NONE;
+		}
+
+		long lnBeginDay	= interval.getBegin().toEpochDay();
+		long lnEndDay	= interval.getEnd().toEpochDay();
+
+		return PackedDateInterval.canPack( lnBeginDay, lnEndDay ) ? PackedDateInterval.pack( lnBeginDay, lnEndDay ) : NONE;
+	}
+
+	/**
+	 *	unpack into a LocalDateInterval
+	 *	@param	lnPacked	-
+	 *	@return	LocalDateInterval, null for NONE or what is not a packed interval
+	 */
+	public static LocalDateInterval toInterval( long lnPacked )
+	{
+		if ( ! PackedDateInterval.isValid( lnPacked ) )
+		{
+			return null;
+		}
+
+		return LocalDateInterval.create( PackedDateInterval.getBeginDate( lnPacked ), PackedDateInterval.getEndDate( lnPacked ) );
+	}
+
+	/**
+	 *	check if lnPacked is a packed interval
+	 *	@param	lnPacked	-
+	 *	@return	boolean
+	 */
+	public static boolean isValid( long lnPacked )
+	{
+		return PackedDateInterval.canPack( PackedDateInterval.getBeginDay( lnPacked ), PackedDateInterval.getEndDay( lnPacked ) );
+	}
+
+	public static int getBeginDay( long lnPacked )
+	{
+		return ( int ) ( lnPacked >> 32 );
+	}
+
+	public static int getEndDay( long lnPacked )
+	{
+		return ( int ) ( lnPacked ^ END_SIGN );
+	}
+
+	public static LocalDate getBeginDate( long lnPacked )
+	{
+		return LocalDate.ofEpochDay( PackedDateInterval.getBeginDay( lnPacked ) );
+	}
+
+	public static LocalDate getEndDate( long lnPacked )
+	{
+		return LocalDate.ofEpochDay( PackedDateInterval.getEndDay( lnPacked ) );
+	}
+
+	/**
+	 *	check if two intervals overlap, the same as LibTime.isDateIntervalsOverlapped
+	 *	@param	lnPacked1	-
+	 *	@param	lnPacked2	-
+	 *	@return	boolean, false if either is NONE
+	 */
+	public static boolean isOverlapped( long lnPacked1, long lnPacked2 )
+	{
+		if ( NONE == lnPacked1 || NONE == lnPacked2 )
+		{
+			return false;
+		}
+
+		return PackedDateInterval.getBeginDay( lnPacked1 ) < PackedDateInterval.getEndDay( lnPacked2 ) &&
+			PackedDateInterval.getBeginDay( lnPacked2 ) < PackedDateInterval.getEndDay( lnPacked1 );
+	}
+
+	/**
+	 *	get the overlapped interval, the same as LibTime.getOverlapped
+	 *	@param	lnPacked1	-
+	 *	@param	lnPacked2	-
+	 *	@return	long, NONE if the intervals do not overlap
+	 */
+	public static long getOverlapped( long lnPacked1, long lnPacked2 )
+	{
+		if ( ! PackedDateInterval.isOverlapped( lnPacked1, lnPacked2 ) )
+		{
+			return NONE;
+		}
+
+		return PackedDateInterval.pack
+			(
+				Math.max( PackedDateInterval.getBeginDay( lnPacked1 ), PackedDateInterval.getBeginDay( lnPacked2 ) ),
+				Math.min( PackedDateInterval.getEndDay( lnPacked1 ), PackedDateInterval.getEndDay( lnPacked2 ) )
+			);
+	}
+
+	/**
+	 *	check if an interval contains another one
+	 *	@param	lnPacked	-
+	 *	@param	lnPackedOther	-
+	 *	@return	boolean, false if either is NONE
+	 */
+	public static boolean contains( long lnPacked, long lnPackedOther )
+	{
+		if ( NONE == lnPacked || NONE == lnPackedOther )
+		{
+			return false;
+		}
+
+		return PackedDateInterval.getBeginDay( lnPacked ) <= PackedDateInterval.getBeginDay( lnPackedOther ) &&
+			PackedDateInterval.getEndDay( lnPackedOther ) <= PackedDateInterval.getEndDay( lnPacked );
+	}
+
+	/**
+	 *	check if an interval contains a day, from its begin to its end inclusive
+	 *	@param	lnPacked	-
+	 *	@param	lnDay		epoch day
+	 *	@return	boolean, false for NONE
+	 */
+	public static boolean containsDay( long lnPacked, long lnDay )
+	{
+		return NONE != lnPacked &&
+			PackedDateInterval.getBeginDay( lnPacked ) <= lnDay &&
+			lnDay <= PackedDateInterval.getEndDay( lnPacked );
+	}
+
+	/**
+	 *	format as "yyyy-mm-dd/yyyy-mm-dd"
+	 *	@param	lnPacked	-
+	 *	@return	String, "NONE" for what is not a packed interval
+	 */
+	public static String format( long lnPacked )
+	{
+		if ( ! PackedDateInterval.isValid( lnPacked ) )
+		{
+			return "NONE";
+		}
+
+		return PackedDateInterval.getBeginDate( lnPacked ) + "/" + PackedDateInterval.getEndDate( lnPacked );
+	}
+}
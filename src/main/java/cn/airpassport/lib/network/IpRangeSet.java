@@ -0,0 +1,472 @@
+package cn.airpassport.lib.network;
+
+import cn.airpassport.lib.common.LibCommon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ *	@class	IpRangeSet
+ *
+ *	immutable set of IpV4 and IpV6 ranges in CIDR notation, such as "10.0.0.0/8" or "2001:db8::/32",
+ *	kept in a compressed binary (Patricia) trie over the 128-bit IpV6 space.
+ *	IpV4 ranges are stored as IpV4-mapped IpV6 ranges ::ffff:a.b.c.d/96+n,
+ *	so "::ffff:10.1.2.3" is in "10.0.0.0/8" as well.
+ *
+ *	the nodes are flattened into arrays, a lookup follows at most 129 nodes, usually a few dozen,
+ *	compares a masked key per node and allocates nothing for packed addresses:
+ *		keyHighs[ i ], keyLows[ i ]	prefix of node i, its bits past prefixLengths[ i ] are 0
+ *		prefixLengths[ i ]		-
+ *		children[ 2 * i + b ]		child of node i whose next bit is b, -1 if none
+ *		ranges[ i ]			index of the range ending at node i, -1 if none
+ *
+ *	the text of a set has one range per line, a bare address is a range of one address,
+ *	host bits past the prefix length are ignored, lines starting with # are comments.
+ */
+public class IpRangeSet
+{
+	private static final int IP_V6_BITS	= 128;
+	private static final int IP_V4_BITS	= 32;
+
+	private static final IpRangeSet EMPTY = IpRangeSet.build( new ArrayList<>() );
+
+	private final long[] keyHighs;
+	private final long[] keyLows;
+	private final int[] prefixLengths;
+	private final int[] children;
+	private final int[] ranges;
+
+	//	canonical CIDR text of each range, in the order given
+	private final String[] rangeTexts;
+
+
+	private IpRangeSet( long[] keyHighs, long[] keyLows, int[] prefixLengths, int[] children, int[] ranges, String[] rangeTexts )
+	{
+		this.keyHighs		= keyHighs;
+		this.keyLows		= keyLows;
+		this.prefixLengths	= prefixLengths;
+		this.children		= children;
+		this.ranges		= ranges;
+		this.rangeTexts		= rangeTexts;
+	}
+
+	/**
+	 *	get the set without ranges
+	 *	@return	IpRangeSet
+	 */
+	public static IpRangeSet empty()
+	{
+		return EMPTY;
+	}
+
+	/**
+	 *	build a set of ranges
+	 *	@param	listRanges	ranges in CIDR notation or bare addresses
+	 *	@return	IpRangeSet
+	 */
+	public static IpRangeSet build( Collection<String> listRanges )
+	{
+		if ( null == listRanges )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.listRanges" ) );
+		}
+
+		Node root		= null;
+		List<String> listTexts	= new ArrayList<>( listRanges.size() );
+		long[] arrAddress	= new long[ 2 ];
+
+		for ( String sRange : listRanges )
+		{
+			int nPrefixLength = IpRangeSet.parseRange( null == sRange ? "" : sRange.trim(), arrAddress );
+			if ( nPrefixLength < 0 )
+			{
+				throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.range" ) );
+			}
+
+			root = IpRangeSet.insert( root, arrAddress[ 0 ], arrAddress[ 1 ], nPrefixLength, listTexts.size() );
+			listTexts.add( IpRangeSet.formatRange( arrAddress[ 0 ], arrAddress[ 1 ], nPrefixLength ) );
+		}
+
+		return IpRangeSet.flatten( root, listTexts.toArray( new String[ 0 ] ) );
+	}
+
+	/**
+	 *	parse a set from text
+	 *	@param	sText	-
+	 *	@return	IpRangeSet
+	 */
+	public static IpRangeSet parse( String sText )
+	{
+		if ( null == sText )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.sText" ) );
+		}
+
+		try
+		{
+			return IpRangeSet.load( new StringReader( sText ) );
+		}
+		catch ( IOException e )
+		{
+			//	StringReader never throws
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 *	load a set from text
+	 *	@param	reader	-
+	 *	@return	IpRangeSet
+	 *	@throws	IOException	if reading fails
+	 */
+	public static IpRangeSet load( Reader reader ) throws IOException
+	{
+		if ( null == reader )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.reader" ) );
+		}
+
+		List<String> listRanges		= new ArrayList<>();
+		BufferedReader bufferedReader	= new BufferedReader( reader );
+		String sLine;
+		while ( null != ( sLine = bufferedReader.readLine() ) )
+		{
+			sLine = sLine.trim();
+			if ( ! sLine.isEmpty() && ! sLine.startsWith( "#" ) )
+			{
+				listRanges.add( sLine );
+			}
+		}
+
+		return IpRangeSet.build( listRanges );
+	}
+
+	/**
+	 *	find the longest range holding an address
+	 *	@param	lnHigh	high 64 bits of the IpV6 address, see LibNetwork.parseIpV6Address
+	 *	@param	lnLow	low 64 bits
+	 *	@return	int, the index of the range in the order given, -1 if no range holds the address
+	 */
+	public int longestPrefixMatch( long lnHigh, long lnLow )
+	{
+		int nMatch	= -1;
+		int nNode	= this.prefixLengths.length > 0 ? 0 : -1;
+
+		while ( nNode >= 0 )
+		{
+			int nLength = this.prefixLengths[ nNode ];
+			if ( IpRangeSet.maskHigh( lnHigh, nLength ) != this.keyHighs[ nNode ] ||
+				IpRangeSet.maskLow( lnLow, nLength ) != this.keyLows[ nNode ] )
+			{
+				break;
+			}
+			if ( this.ranges[ nNode ] >= 0 )
+			{
+				nMatch = this.ranges[ nNode ];
+			}
+			if ( IP_V6_BITS == nLength )
+			{
+				break;
+			}
+			nNode = this.children[ 2 * nNode + IpRangeSet.bitAt( lnHigh, lnLow, nLength ) ];
+		}
+
+		return nMatch;
+	}
+
+	/**
+	 *	find the longest range holding an IpV4 address
+	 *	@param	nAddress	address packed into an int, see LibNetwork.parseIpV4Address
+	 *	@return	int, the index of the range in the order given, -1 if no range holds the address
+	 */
+	public int longestPrefixMatchIpV4( int nAddress )
+	{
+		return this.longestPrefixMatch( 0, LibNetwork.IP_V4_MAPPED_LOW | ( nAddress & 0xffffffffL ) );
+	}
+
+	/**
+	 *	check if a range holds an address
+	 *	@param	lnHigh	high 64 bits of the IpV6 address
+	 *	@param	lnLow	low 64 bits
+	 *	@return	boolean
+	 */
+	public boolean contains( long lnHigh, long lnLow )
+	{
+		return this.longestPrefixMatch( lnHigh, lnLow ) >= 0;
+	}
+
+	/**
+	 *	check if a range holds an IpV4 address
+	 *	@param	nAddress	address packed into an int
+	 *	@return	boolean
+	 */
+	public boolean containsIpV4( int nAddress )
+	{
+		return this.longestPrefixMatchIpV4( nAddress ) >= 0;
+	}
+
+	/**
+	 *	check if a range holds an address in text
+	 *	@param	sAddress	IpV4 or IpV6 address
+	 *	@return	boolean, false if sAddress is not a valid address
+	 */
+	public boolean contains( CharSequence sAddress )
+	{
+		long lnIpV4 = LibNetwork.parseIpV4Address( sAddress );
+		if ( LibNetwork.INVALID_IP_V4 != lnIpV4 )
+		{
+			return this.containsIpV4( ( int ) lnIpV4 );
+		}
+
+		long[] arrAddress = new long[ 2 ];
+		return LibNetwork.parseIpV6Address( sAddress, arrAddress ) && this.contains( arrAddress[ 0 ], arrAddress[ 1 ] );
+	}
+
+	/**
+	 *	get a range in canonical CIDR notation, IpV4 ranges as IpV4
+	 *	@param	nIndex	as returned by longestPrefixMatch
+	 *	@return	String
+	 */
+	public String getRange( int nIndex )
+	{
+		return this.rangeTexts[ nIndex ];
+	}
+
+	/**
+	 *	get the number of ranges, duplicates included
+	 *	@return	int
+	 */
+	public int getSize()
+	{
+		return this.rangeTexts.length;
+	}
+
+	/**
+	 *	get the number of nodes of the trie
+	 *	@return	int
+	 */
+	public int getNodeCount()
+	{
+		return this.prefixLengths.length;
+	}
+
+
+	/**
+	 *	temporary node of build
+	 */
+	private static class Node
+	{
+		final long keyHigh;
+		final long keyLow;
+		final int prefixLength;
+		int range = -1;
+		final Node[] children = new Node[ 2 ];
+
+		Node( long lnKeyHigh, long lnKeyLow, int nPrefixLength )
+		{
+			this.keyHigh		= IpRangeSet.maskHigh( lnKeyHigh, nPrefixLength );
+			this.keyLow		= IpRangeSet.maskLow( lnKeyLow, nPrefixLength );
+			this.prefixLength	= nPrefixLength;
+		}
+	}
+
+	/**
+	 *	insert a range below node
+	 *	@return	Node, the node taking the place of node
+	 */
+	private static Node insert( Node node, long lnHigh, long lnLow, int nPrefixLength, int nRange )
+	{
+		if ( null == node )
+		{
+			Node leaf	= new Node( lnHigh, lnLow, nPrefixLength );
+			leaf.range	= nRange;
+			return leaf;
+		}
+
+		int nCommon = Math.min( IpRangeSet.commonPrefixLength( node.keyHigh, node.keyLow, lnHigh, lnLow ), Math.min( node.prefixLength, nPrefixLength ) );
+		if ( nCommon < node.prefixLength )
+		{
+			//	split node at the first differing bit, or above it if the new range is shorter
+			Node parent = new Node( lnHigh, lnLow, nCommon );
+			parent.children[ IpRangeSet.bitAt( node.keyHigh, node.keyLow, nCommon ) ] = node;
+			if ( nCommon == nPrefixLength )
+			{
+				parent.range = nRange;
+			}
+			else
+			{
+				parent.children[ IpRangeSet.bitAt( lnHigh, lnLow, nCommon ) ] = IpRangeSet.insert( null, lnHigh, lnLow, nPrefixLength, nRange );
+			}
+			return parent;
+		}
+
+		if ( nPrefixLength == node.prefixLength )
+		{
+			//	the first of duplicate ranges is kept
+			if ( node.range < 0 )
+			{
+				node.range = nRange;
+			}
+			return node;
+		}
+
+		int nBit = IpRangeSet.bitAt( lnHigh, lnLow, node.prefixLength );
+		node.children[ nBit ] = IpRangeSet.insert( node.children[ nBit ], lnHigh, lnLow, nPrefixLength, nRange );
+
+		return node;
+	}
+
+	/**
+	 *	number the nodes breadth first into arrays
+	 */
+	private static IpRangeSet flatten( Node root, String[] arrRangeTexts )
+	{
+		List<Node> listNodes = new ArrayList<>();
+		if ( null != root )
+		{
+			listNodes.add( root );
+		}
+		for ( int i = 0; i < listNodes.size(); i ++ )
+		{
+			for ( Node child : listNodes.get( i ).children )
+			{
+				if ( null != child )
+				{
+					listNodes.add( child );
+				}
+			}
+		}
+
+		int nNodes		= listNodes.size();
+		long[] arrKeyHighs	= new long[ nNodes ];
+		long[] arrKeyLows	= new long[ nNodes ];
+		int[] arrPrefixLengths	= new int[ nNodes ];
+		int[] arrChildren	= new int[ 2 * nNodes ];
+		int[] arrRanges		= new int[ nNodes ];
+		int nNext		= 1;
+
+		for ( int i = 0; i < nNodes; i ++ )
+		{
+			Node node		= listNodes.get( i );
+			arrKeyHighs[ i ]	= node.keyHigh;
+			arrKeyLows[ i ]		= node.keyLow;
+			arrPrefixLengths[ i ]	= node.prefixLength;
+			arrRanges[ i ]		= node.range;
+			for ( int b = 0; b < 2; b ++ )
+			{
+				arrChildren[ 2 * i + b ] = null == node.children[ b ] ? -1 : nNext ++;
+			}
+		}
+
+		return new IpRangeSet( arrKeyHighs, arrKeyLows, arrPrefixLengths, arrChildren, arrRanges, arrRangeTexts );
+	}
+
+	/**
+	 *	parse "address/length" or a bare address into the IpV6 space, IpV4 addresses as IpV4-mapped ones,
+	 *	shared with IpRegionTable
+	 *	@param	sRange		-
+	 *	@param	arrAddress	receives the high and low long of the address, its host bits as written
+	 *	@return	int, the prefix length in the IpV6 space, -1 if not valid
+	 */
+	static int parseRange( String sRange, long[] arrAddress )
+	{
+		int nSlash	= sRange.indexOf( '/' );
+		int nEnd	= nSlash < 0 ? sRange.length() : nSlash;
+		int nLength	= -1;
+
+		if ( nSlash >= 0 )
+		{
+			String sLength = sRange.substring( nSlash + 1 );
+			if ( sLength.isEmpty() || sLength.length() > 3 || ! sLength.chars().allMatch( c -> c >= '0' && c <= '9' ) )
+			{
+				return -1;
+			}
+			nLength = Integer.parseInt( sLength );
+		}
+
+		long lnIpV4 = LibNetwork.parseIpV4Address( sRange, 0, nEnd );
+		if ( LibNetwork.INVALID_IP_V4 != lnIpV4 )
+		{
+			if ( nLength > IP_V4_BITS )
+			{
+				return -1;
+			}
+			arrAddress[ 0 ] = 0;
+			arrAddress[ 1 ] = LibNetwork.IP_V4_MAPPED_LOW | lnIpV4;
+			return IP_V6_BITS - IP_V4_BITS + ( nLength < 0 ? IP_V4_BITS : nLength );
+		}
+
+		if ( ! LibNetwork.parseIpV6Address( sRange, 0, nEnd, false, arrAddress ) || nLength > IP_V6_BITS )
+		{
+			return -1;
+		}
+
+		return nLength < 0 ? IP_V6_BITS : nLength;
+	}
+
+	private static String formatRange( long lnHigh, long lnLow, int nPrefixLength )
+	{
+		long lnMaskedHigh	= IpRangeSet.maskHigh( lnHigh, nPrefixLength );
+		long lnMaskedLow	= IpRangeSet.maskLow( lnLow, nPrefixLength );
+		long lnIpV4		= LibNetwork.toIpV4Address( lnMaskedHigh, lnMaskedLow );
+
+		if ( LibNetwork.INVALID_IP_V4 != lnIpV4 && nPrefixLength >= IP_V6_BITS - IP_V4_BITS )
+		{
+			return LibNetwork.formatIpV4Address( ( int ) lnIpV4 ) + '/' + ( nPrefixLength - ( IP_V6_BITS - IP_V4_BITS ) );
+		}
+
+		return LibNetwork.formatIpV6Address( lnMaskedHigh, lnMaskedLow ) + '/' + nPrefixLength;
+	}
+
+	/**
+	 *	@return	long, the high 64 bits with the bits past nPrefixLength cleared
+	 */
+	private static long maskHigh( long lnHigh, int nPrefixLength )
+	{
+		if ( nPrefixLength >= 64 )
+		{
+			return lnHigh;
+		}
+
+		return 0 == nPrefixLength ? 0 : lnHigh & ( -1L << ( 64 - nPrefixLength ) );
+	}
+
+	/**
+	 *	@return	long, the low 64 bits with the bits past nPrefixLength cleared
+	 */
+	private static long maskLow( long lnLow, int nPrefixLength )
+	{
+		if ( nPrefixLength <= 64 )
+		{
+			return 0;
+		}
+
+		return IP_V6_BITS == nPrefixLength ? lnLow : lnLow & ( -1L << ( IP_V6_BITS - nPrefixLength ) );
+	}
+
+	/**
+	 *	@return	int, bit nIndex of the 128 bits, 0 is the highest
+	 */
+	private static int bitAt( long lnHigh, long lnLow, int nIndex )
+	{
+		return nIndex < 64 ?
+			( int )( lnHigh >>> ( 63 - nIndex ) ) & 1 :
+			( int )( lnLow >>> ( 127 - nIndex ) ) & 1;
+	}
+
+	private static int commonPrefixLength( long lnHigh1, long lnLow1, long lnHigh2, long lnLow2 )
+	{
+		if ( lnHigh1 != lnHigh2 )
+		{
+			return Long.numberOfLeadingZeros( lnHigh1 ^ lnHigh2 );
+		}
+
+		return 64 + Long.numberOfLeadingZeros( lnLow1 ^ lnLow2 );
+	}
+}
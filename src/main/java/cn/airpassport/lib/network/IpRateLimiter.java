@@ -0,0 +1,398 @@
+package cn.airpassport.lib.network;
+
+import cn.airpassport.lib.common.LibCommon;
+import cn.airpassport.lib.common.LibHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+
+/**
+ *	@class	IpRateLimiter
+ *
+ *	token bucket per ip address in a table of a fixed number of slots, without a lock or an object per address.
+ *	addresses are the 128-bit pairs of LibNetwork.parseIpV6Address, IpV4 mapped to ::ffff:0:0/96,
+ *	and IpV6 addresses are cut to a prefix, by default /64, as a host usually owns a whole /64.
+ *
+ *	the slots are cut into stripes of STRIPE_SLOTS, an address hashes to one stripe and may take any slot of it.
+ *	a slot is 2 longs of an AtomicLongArray, next to each other:
+ *		key	64-bit hash of the address, 0 for an empty slot
+ *		state	milliseconds since the start of the limiter << TOKEN_BITS | tokens in 1/256
+ *	a bucket is updated by a CAS of its state. a slot is taken over by a CAS of its state to LOCKED,
+ *	then its key and state are written, so an update racing with the take over fails and looks again.
+ *
+ *	a bucket full again holds nothing a new bucket would not, so its slot is reused by the next address of the stripe.
+ *	if every slot of the stripe is in use, the one touched longest ago is evicted and counted by getEvictedCount.
+ *	two addresses of the same 64-bit hash share a bucket, and two threads racing for a new address
+ *	may rarely take two slots of a stripe, which only splits its bucket.
+ */
+public class IpRateLimiter
+{
+	public static final int DEFAULT_IP_V6_PREFIX_LENGTH = 64;
+
+	//	slots of a stripe, 2 cache lines of longs
+	static final int STRIPE_SLOTS		= 8;
+
+	//	tokens are counted in 1/256, up to 65535 tokens
+	private static final int TOKEN_BITS	= 24;
+	private static final long TOKEN_MASK	= ( 1L << TOKEN_BITS ) - 1;
+	private static final long TOKEN_UNIT	= 256;
+	private static final long MAX_BURST	= TOKEN_MASK / TOKEN_UNIT;
+
+	//	state of a slot being taken over, beyond any time of 40 bits
+	private static final long LOCKED	= -1L;
+
+	private final int stripeMask;
+	private final long unitsPerSecond;
+	private final long burstUnits;
+	private final long fullMillis;
+	private final long highMask;
+	private final long lowMask;
+	private final LongSupplier clock;
+	private final long startMillis;
+
+	//	key of slot i at 2 * i, state at 2 * i + 1
+	private final AtomicLongArray slots;
+
+	private final LongAdder allowed		= new LongAdder();
+	private final LongAdder denied		= new LongAdder();
+	private final LongAdder evicted		= new LongAdder();
+
+
+	/**
+	 *	@param	nSlots			number of buckets, rounded up to a power of 2
+	 *	@param	dbTokensPerSecond	-
+	 *	@param	nBurst			tokens of a full bucket, 1 - 65535
+	 */
+	public IpRateLimiter( int nSlots, double dbTokensPerSecond, int nBurst )
+	{
+		this( nSlots, dbTokensPerSecond, nBurst, DEFAULT_IP_V6_PREFIX_LENGTH, System::currentTimeMillis );
+	}
+
+	/**
+	 *	@param	nSlots			number of buckets, rounded up to a power of 2
+	 *	@param	dbTokensPerSecond	-
+	 *	@param	nBurst			tokens of a full bucket, 1 - 65535
+	 *	@param	nIpV6PrefixLength	leading bits of an IpV6 address which share a bucket, 1 - 128
+	 *	@param	clock			current time in milliseconds
+	 */
+	public IpRateLimiter( int nSlots, double dbTokensPerSecond, int nBurst, int nIpV6PrefixLength, LongSupplier clock )
+	{
+		if ( nSlots <= 0 || nSlots > 1 << 28 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nSlots" ) );
+		}
+		if ( ! ( dbTokensPerSecond * TOKEN_UNIT >= 1 ) || dbTokensPerSecond > 1e9 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.dbTokensPerSecond" ) );
+		}
+		if ( nBurst <= 0 || nBurst > MAX_BURST )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nBurst" ) );
+		}
+		if ( nIpV6PrefixLength <= 0 || nIpV6PrefixLength > 128 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nIpV6PrefixLength" ) );
+		}
+		if ( null == clock )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.clock" ) );
+		}
+
+		int nStripes = 1;
+		while ( nStripes * STRIPE_SLOTS < nSlots )
+		{
+			nStripes <<= 1;
+		}
+
+		this.stripeMask		= nStripes - 1;
+		this.unitsPerSecond	= Math.round( dbTokensPerSecond * TOKEN_UNIT );
+		this.burstUnits		= nBurst * TOKEN_UNIT;
+		this.fullMillis		= ( this.burstUnits * 1000 + this.unitsPerSecond - 1 ) / this.unitsPerSecond;
+		this.highMask		= nIpV6PrefixLength >= 64 ? -1L : -1L << ( 64 - nIpV6PrefixLength );
+		this.lowMask		= nIpV6PrefixLength >= 128 ? -1L : nIpV6PrefixLength <= 64 ? 0 : -1L << ( 128 - nIpV6PrefixLength );
+		this.clock		= clock;
+		this.startMillis	= clock.getAsLong();
+		this.slots		= new AtomicLongArray( 2 * nStripes * STRIPE_SLOTS );
+	}
+
+	/**
+	 *	take a token for an address
+	 *	@param	sAddress	IpV4 or IpV6 address
+	 *	@return	boolean, false if the bucket is empty or the address is not valid
+	 */
+	public boolean tryAcquire( CharSequence sAddress )
+	{
+		if ( null == sAddress )
+		{
+			this.denied.increment();
+			return false;
+		}
+
+		long lnIpV4 = LibNetwork.parseIpV4Address( sAddress );
+		if ( LibNetwork.INVALID_IP_V4 != lnIpV4 )
+		{
+			return this.tryAcquireIpV4( ( int ) lnIpV4 );
+		}
+
+		long[] arrAddress = new long[ 2 ];
+		if ( ! LibNetwork.parseIpV6Address( sAddress, arrAddress ) )
+		{
+			this.denied.increment();
+			return false;
+		}
+
+		return this.tryAcquire( arrAddress[ 0 ], arrAddress[ 1 ] );
+	}
+
+	/**
+	 *	take a token for an IpV4 address
+	 *	@param	nAddress	-
+	 *	@return	boolean, false if the bucket is empty
+	 */
+	public boolean tryAcquireIpV4( int nAddress )
+	{
+		return this.tryAcquire( 0L, LibNetwork.IP_V4_MAPPED_LOW | ( nAddress & 0xffffffffL ) );
+	}
+
+	/**
+	 *	take a token for an address
+	 *	@param	lnHigh	high 64 bits of the address
+	 *	@param	lnLow	low 64 bits of the address, IpV4 mapped to ::ffff:0:0/96
+	 *	@return	boolean, false if the bucket is empty
+	 */
+	public boolean tryAcquire( long lnHigh, long lnLow )
+	{
+		boolean bAllowed = this.take( this.hash( lnHigh, lnLow ), TOKEN_UNIT );
+		( bAllowed ? this.allowed : this.denied ).increment();
+
+		return bAllowed;
+	}
+
+	/**
+	 *	get the tokens left for an address without taking one
+	 *	@param	lnHigh	-
+	 *	@param	lnLow	-
+	 *	@return	double, the burst for an address without a bucket
+	 */
+	public double getTokens( long lnHigh, long lnLow )
+	{
+		long lnKey	= this.hash( lnHigh, lnLow );
+		long lnNow	= this.now();
+		int nFirst	= this.stripeOf( lnKey );
+		for ( int i = nFirst; i < nFirst + STRIPE_SLOTS; i ++ )
+		{
+			long lnState = this.slots.get( 2 * i + 1 );
+			if ( LOCKED != lnState && lnKey == this.slots.get( 2 * i ) )
+			{
+				return ( double ) this.refill( lnState, lnNow ) / TOKEN_UNIT;
+			}
+		}
+
+		return ( double ) this.burstUnits / TOKEN_UNIT;
+	}
+
+	/**
+	 *	get the number of requests allowed
+	 *	@return	long
+	 */
+	public long getAllowedCount()
+	{
+		return this.allowed.sum();
+	}
+
+	/**
+	 *	get the number of requests denied, invalid addresses included
+	 *	@return	long
+	 */
+	public long getDeniedCount()
+	{
+		return this.denied.sum();
+	}
+
+	/**
+	 *	get the number of buckets dropped before they were full again, as their stripe was in use
+	 *	@return	long
+	 */
+	public long getEvictedCount()
+	{
+		return this.evicted.sum();
+	}
+
+	/**
+	 *	get the number of buckets not yet full again, by a scan of the table
+	 *	@return	int
+	 */
+	public int getActiveCount()
+	{
+		long lnNow	= this.now();
+		int nActive	= 0;
+		for ( int i = 0; i < this.slots.length() / 2; i ++ )
+		{
+			long lnState = this.slots.get( 2 * i + 1 );
+			if ( 0 != lnState && LOCKED != lnState && ! this.isIdle( lnState, lnNow ) )
+			{
+				nActive ++;
+			}
+		}
+
+		return nActive;
+	}
+
+	/**
+	 *	get the number of slots
+	 *	@return	int
+	 */
+	public int getCapacity()
+	{
+		return this.slots.length() / 2;
+	}
+
+
+	private boolean take( long lnKey, long lnUnits )
+	{
+		int nFirst = this.stripeOf( lnKey );
+		while ( true )
+		{
+			long lnNow		= this.now();
+			int nVictim		= -1;
+			long lnVictimState	= 0;
+			boolean bLocked		= false;
+
+			for ( int i = nFirst; i < nFirst + STRIPE_SLOTS; i ++ )
+			{
+				long lnState = this.slots.get( 2 * i + 1 );
+				if ( LOCKED == lnState )
+				{
+					//	may be taken over for this very key
+					bLocked = true;
+					continue;
+				}
+				if ( 0 != lnState && lnKey == this.slots.get( 2 * i ) )
+				{
+					long lnTokens = this.refill( lnState, lnNow );
+					if ( lnTokens < lnUnits )
+					{
+						return false;
+					}
+					if ( this.slots.compareAndSet( 2 * i + 1, lnState, this.pack( lnState, lnNow, lnTokens - lnUnits ) ) )
+					{
+						return true;
+					}
+
+					//	updated or taken over meanwhile
+					i --;
+					continue;
+				}
+
+				//	an empty slot first, then a full bucket, then the one touched longest ago
+				if ( -1 == nVictim || this.isBetterVictim( lnState, lnVictimState, lnNow ) )
+				{
+					nVictim		= i;
+					lnVictimState	= lnState;
+				}
+			}
+
+			if ( bLocked )
+			{
+				Thread.yield();
+				continue;
+			}
+			if ( this.slots.compareAndSet( 2 * nVictim + 1, lnVictimState, LOCKED ) )
+			{
+				if ( 0 != lnVictimState && ! this.isIdle( lnVictimState, lnNow ) )
+				{
+					this.evicted.increment();
+				}
+				this.slots.set( 2 * nVictim, lnKey );
+				this.slots.set( 2 * nVictim + 1, ( lnNow << TOKEN_BITS ) | ( this.burstUnits - lnUnits ) );
+
+				return true;
+			}
+		}
+	}
+
+	private boolean isBetterVictim( long lnState, long lnVictimState, long lnNow )
+	{
+		if ( 0 == lnVictimState )
+		{
+			return false;
+		}
+		if ( 0 == lnState || this.isIdle( lnState, lnNow ) )
+		{
+			return ! this.isIdle( lnVictimState, lnNow );
+		}
+
+		return ( lnState >>> TOKEN_BITS ) < ( lnVictimState >>> TOKEN_BITS ) && ! this.isIdle( lnVictimState, lnNow );
+	}
+
+	private boolean isIdle( long lnState, long lnNow )
+	{
+		return this.refill( lnState, lnNow ) >= this.burstUnits;
+	}
+
+	/**
+	 *	tokens of a bucket at lnNow, in 1/256
+	 */
+	private long refill( long lnState, long lnNow )
+	{
+		long lnElapsed = lnNow - ( lnState >>> TOKEN_BITS );
+		if ( lnElapsed <= 0 )
+		{
+			return lnState & TOKEN_MASK;
+		}
+		if ( lnElapsed >= this.fullMillis )
+		{
+			return this.burstUnits;
+		}
+
+		return Math.min( this.burstUnits, ( lnState & TOKEN_MASK ) + lnElapsed * this.unitsPerSecond / 1000 );
+	}
+
+	/**
+	 *	the time of the bucket only moves by the milliseconds turned into whole units,
+	 *	so slow rates are not lost to rounding when a bucket is hit every millisecond
+	 */
+	private long pack( long lnState, long lnNow, long lnTokens )
+	{
+		long lnTime	= lnState >>> TOKEN_BITS;
+		long lnElapsed	= lnNow - lnTime;
+		if ( lnElapsed >= this.fullMillis )
+		{
+			lnTime = lnNow;
+		}
+		else if ( lnElapsed > 0 )
+		{
+			long lnRefilled	= lnElapsed * this.unitsPerSecond / 1000;
+			lnTime		= ( lnState & TOKEN_MASK ) + lnRefilled >= this.burstUnits ? lnNow : lnTime + lnRefilled * 1000 / this.unitsPerSecond;
+		}
+
+		return ( lnTime << TOKEN_BITS ) | lnTokens;
+	}
+
+	/**
+	 *	milliseconds since the start, from 1 so no state is 0
+	 */
+	private long now()
+	{
+		return Math.max( 1, this.clock.getAsLong() - this.startMillis + 1 );
+	}
+
+	private int stripeOf( long lnKey )
+	{
+		return ( int ) ( ( lnKey >>> 32 ) & this.stripeMask ) * STRIPE_SLOTS;
+	}
+
+	/**
+	 *	murmur3 finalizer over the masked address, never 0
+	 */
+	private long hash( long lnHigh, long lnLow )
+	{
+		boolean bIpV4 = 0 == lnHigh && LibNetwork.IP_V4_MAPPED_LOW == ( lnLow & 0xffffffff00000000L );
+		long lnHash = ( bIpV4 ? lnHigh : lnHigh & this.highMask ) * 0x9e3779b97f4a7c15L + ( bIpV4 ? lnLow : lnLow & this.lowMask );
+		lnHash = LibHash.mix( lnHash );
+
+		return 0 == lnHash ? 1 : lnHash;
+	}
+}
@@ -0,0 +1,426 @@
+package cn.airpassport.lib.network;
+
+import cn.airpassport.lib.common.LibCommon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ *	@class	IpRegionTable
+ *
+ *	immutable table of ip ranges and their ISO 3166-1 region codes, such as "CN",
+ *	compiled from CSV into a file of sorted fixed width records and mapped back read-only.
+ *	a lookup is a binary search over the mapped records and allocates nothing,
+ *	the region codes are the strings of a shared table, so the heap does not grow with the file,
+ *	and mapping a file costs the same whatever its size.
+ *
+ *	the CSV has one range per line, lines starting with # are comments:
+ *		first address,last address,region	such as "1.0.1.0,1.0.3.255,CN"
+ *		range,region				such as "2001:db8::/32,US" or "1.2.3.4,AU"
+ *	IpV4 addresses are stored as IpV4-mapped IpV6 addresses ::ffff:a.b.c.d.
+ *	ranges must not overlap, adjacent ranges of the same region are merged.
+ *
+ *	the file:
+ *		long	MAGIC
+ *		long	count of records
+ *		records of RECORD_BYTES
+ *			long	first address, high 64 bits
+ *			long	first address, low 64 bits
+ *			long	last address, high 64 bits
+ *			long	last address, low 64 bits
+ *			short	region, ( first letter - 'A' ) * 26 + second letter - 'A'
+ *	sorted by first address, all values are big-endian.
+ */
+public class IpRegionTable
+{
+	private static final long MAGIC		= 0x4150495052303031L;	//	"APIPR001"
+	private static final int HEADER_BYTES	= 2 * Long.BYTES;
+	private static final int RECORD_BYTES	= 4 * Long.BYTES + Short.BYTES;
+	private static final int MAX_RECORDS	= ( Integer.MAX_VALUE - HEADER_BYTES ) / RECORD_BYTES;
+	private static final int WRITE_BUFFER_SIZE	= 64 * 1024;
+
+	//	all region codes "AA" - "ZZ", shared by all tables
+	private static final String[] REGIONS = new String[ 26 * 26 ];
+
+	static
+	{
+		for ( int i = 0; i < REGIONS.length; i ++ )
+		{
+			REGIONS[ i ] = new String( new char[]{ ( char )( 'A' + i / 26 ), ( char )( 'A' + i % 26 ) } ).intern();
+		}
+	}
+
+	private static volatile IpRegionTable current = new IpRegionTable( ByteBuffer.allocate( HEADER_BYTES ), 0 );
+
+	//	the whole file, read with absolute gets only
+	private final ByteBuffer buffer;
+	private final int count;
+
+
+	private IpRegionTable( ByteBuffer buffer, int nCount )
+	{
+		this.buffer	= buffer;
+		this.count	= nCount;
+	}
+
+	/**
+	 *	get the table used by LibNetwork.getRegionByIpAddress
+	 *	@return	IpRegionTable, empty until setCurrent is called
+	 */
+	public static IpRegionTable getCurrent()
+	{
+		return current;
+	}
+
+	/**
+	 *	replace the table used by LibNetwork.getRegionByIpAddress, readers see either the old or the new table
+	 *	@param	table	-
+	 */
+	public static void setCurrent( IpRegionTable table )
+	{
+		if ( null == table )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.table" ) );
+		}
+
+		current = table;
+	}
+
+	/**
+	 *	compile CSV into a file for map, the file is replaced at once by renaming a temporary file
+	 *	@param	reader	CSV
+	 *	@param	file	-
+	 *	@return	int, the number of records written
+	 *	@throws	IOException	if reading or writing fails
+	 */
+	public static int compile( Reader reader, File file ) throws IOException
+	{
+		if ( null == reader )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.reader" ) );
+		}
+		if ( null == file )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.file" ) );
+		}
+
+		List<long[]> listRecords = IpRegionTable.readRecords( reader );
+
+		File fileTemp = new File( file.getPath() + ".tmp" );
+		try
+		{
+			try ( RandomAccessFile randomAccessFile = new RandomAccessFile( fileTemp, "rw" );
+				FileChannel channel = randomAccessFile.getChannel() )
+			{
+				channel.truncate( 0 );
+
+				ByteBuffer buffer = ByteBuffer.allocate( WRITE_BUFFER_SIZE );
+				buffer.putLong( MAGIC ).putLong( listRecords.size() );
+				for ( long[] arrRecord : listRecords )
+				{
+					if ( buffer.remaining() < RECORD_BYTES )
+					{
+						IpRegionTable.flush( buffer, channel );
+					}
+					buffer.putLong( arrRecord[ 0 ] ).putLong( arrRecord[ 1 ] ).putLong( arrRecord[ 2 ] ).putLong( arrRecord[ 3 ] );
+					buffer.putShort( ( short ) arrRecord[ 4 ] );
+				}
+				IpRegionTable.flush( buffer, channel );
+				channel.force( true );
+			}
+
+			Files.move( fileTemp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		catch ( IOException | RuntimeException e )
+		{
+			//	a half written table is of no use
+			fileTemp.delete();
+			throw e;
+		}
+
+		return listRecords.size();
+	}
+
+	/**
+	 *	map a file written by compile, read-only.
+	 *	the mapping outlives the file name, so a new table should be written by compile
+	 *	and never by changing the mapped file in place.
+	 *	@param	file	-
+	 *	@return	IpRegionTable
+	 *	@throws	IOException	if reading fails
+	 */
+	public static IpRegionTable map( File file ) throws IOException
+	{
+		if ( null == file )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.file" ) );
+		}
+
+		try ( RandomAccessFile randomAccessFile = new RandomAccessFile( file, "r" );
+			FileChannel channel = randomAccessFile.getChannel() )
+		{
+			long lnFileSize = channel.size();
+			if ( lnFileSize < HEADER_BYTES || lnFileSize > HEADER_BYTES + ( long ) MAX_RECORDS * RECORD_BYTES )
+			{
+				throw new IOException( LibCommon.calcErrorCode( new Object(){}, "invalid.size" ) );
+			}
+
+			MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, lnFileSize );
+			long lnMagic	= buffer.getLong( 0 );
+			long lnCount	= buffer.getLong( Long.BYTES );
+			if ( MAGIC != lnMagic || lnCount < 0 || lnFileSize != HEADER_BYTES + lnCount * RECORD_BYTES )
+			{
+				throw new IOException( LibCommon.calcErrorCode( new Object(){}, "invalid.header" ) );
+			}
+
+			return new IpRegionTable( buffer, ( int ) lnCount );
+		}
+	}
+
+	/**
+	 *	get the region of an address
+	 *	@param	lnHigh	high 64 bits of the IpV6 address, see LibNetwork.parseIpV6Address
+	 *	@param	lnLow	low 64 bits
+	 *	@return	String, null if no range holds the address
+	 */
+	public String getRegion( long lnHigh, long lnLow )
+	{
+		//	find the last record starting at or before the address
+		int nLow	= 0;
+		int nHigh	= this.count - 1;
+		int nFound	= -1;
+		while ( nLow <= nHigh )
+		{
+			int nMiddle	= ( nLow + nHigh ) >>> 1;
+			int nOffset	= HEADER_BYTES + nMiddle * RECORD_BYTES;
+			if ( IpRegionTable.compare( this.buffer.getLong( nOffset ), this.buffer.getLong( nOffset + 8 ), lnHigh, lnLow ) <= 0 )
+			{
+				nFound	= nMiddle;
+				nLow	= nMiddle + 1;
+			}
+			else
+			{
+				nHigh = nMiddle - 1;
+			}
+		}
+		if ( nFound < 0 )
+		{
+			return null;
+		}
+
+		int nOffset = HEADER_BYTES + nFound * RECORD_BYTES;
+		if ( IpRegionTable.compare( lnHigh, lnLow, this.buffer.getLong( nOffset + 16 ), this.buffer.getLong( nOffset + 24 ) ) > 0 )
+		{
+			return null;
+		}
+
+		int nRegion = this.buffer.getShort( nOffset + 32 );
+		return nRegion >= 0 && nRegion < REGIONS.length ? REGIONS[ nRegion ] : null;
+	}
+
+	/**
+	 *	get the region of an IpV4 address
+	 *	@param	nAddress	address packed into an int, see LibNetwork.parseIpV4Address
+	 *	@return	String, null if no range holds the address
+	 */
+	public String getRegionIpV4( int nAddress )
+	{
+		return this.getRegion( 0, LibNetwork.IP_V4_MAPPED_LOW | ( nAddress & 0xffffffffL ) );
+	}
+
+	/**
+	 *	get the region of an address in text
+	 *	@param	sAddress	IpV4 or IpV6 address
+	 *	@return	String, null if sAddress is not a valid address or no range holds it
+	 */
+	public String getRegion( CharSequence sAddress )
+	{
+		long lnIpV4 = LibNetwork.parseIpV4Address( sAddress );
+		if ( LibNetwork.INVALID_IP_V4 != lnIpV4 )
+		{
+			return this.getRegionIpV4( ( int ) lnIpV4 );
+		}
+
+		long[] arrAddress = new long[ 2 ];
+		return LibNetwork.parseIpV6Address( sAddress, arrAddress ) ? this.getRegion( arrAddress[ 0 ], arrAddress[ 1 ] ) : null;
+	}
+
+	/**
+	 *	get the number of records, after merging adjacent ranges
+	 *	@return	int
+	 */
+	public int getSize()
+	{
+		return this.count;
+	}
+
+
+	/**
+	 *	read the ranges of CSV, sorted and merged
+	 *	@return	List of { first high, first low, last high, last low, region }
+	 */
+	private static List<long[]> readRecords( Reader reader ) throws IOException
+	{
+		List<long[]> listRecords	= new ArrayList<>();
+		BufferedReader bufferedReader	= new BufferedReader( reader );
+		long[] arrFirst			= new long[ 2 ];
+		long[] arrLast			= new long[ 2 ];
+		String sLine;
+
+		while ( null != ( sLine = bufferedReader.readLine() ) )
+		{
+			sLine = sLine.trim();
+			if ( sLine.isEmpty() || sLine.startsWith( "#" ) )
+			{
+				continue;
+			}
+
+			String[] arrColumns	= sLine.split( ",", -1 );
+			int nRegion		= IpRegionTable.regionIndexOf( arrColumns[ arrColumns.length - 1 ].trim() );
+			boolean bValid		= nRegion >= 0;
+			if ( bValid && 2 == arrColumns.length )
+			{
+				bValid = IpRegionTable.parseRange( arrColumns[ 0 ].trim(), arrFirst, arrLast );
+			}
+			else if ( bValid && 3 == arrColumns.length )
+			{
+				int nFirstFamily	= IpRegionTable.parseAddress( arrColumns[ 0 ].trim(), arrFirst );
+				int nLastFamily		= IpRegionTable.parseAddress( arrColumns[ 1 ].trim(), arrLast );
+				bValid			= nFirstFamily > 0 && nFirstFamily == nLastFamily &&
+							IpRegionTable.compare( arrFirst[ 0 ], arrFirst[ 1 ], arrLast[ 0 ], arrLast[ 1 ] ) <= 0;
+			}
+			else
+			{
+				bValid = false;
+			}
+			if ( ! bValid )
+			{
+				throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.line" ) );
+			}
+
+			listRecords.add( new long[]{ arrFirst[ 0 ], arrFirst[ 1 ], arrLast[ 0 ], arrLast[ 1 ], nRegion } );
+		}
+
+		listRecords.sort( ( a, b ) -> IpRegionTable.compare( a[ 0 ], a[ 1 ], b[ 0 ], b[ 1 ] ) );
+
+		List<long[]> listMerged = new ArrayList<>( listRecords.size() );
+		for ( long[] arrRecord : listRecords )
+		{
+			long[] arrPrevious = listMerged.isEmpty() ? null : listMerged.get( listMerged.size() - 1 );
+			if ( null != arrPrevious )
+			{
+				if ( IpRegionTable.compare( arrRecord[ 0 ], arrRecord[ 1 ], arrPrevious[ 2 ], arrPrevious[ 3 ] ) <= 0 )
+				{
+					throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "overlapping.ranges" ) );
+				}
+
+				//	the previous range ends right before this one
+				long lnNextLow	= arrPrevious[ 3 ] + 1;
+				long lnNextHigh	= 0 == lnNextLow ? arrPrevious[ 2 ] + 1 : arrPrevious[ 2 ];
+				if ( arrPrevious[ 4 ] == arrRecord[ 4 ] && lnNextHigh == arrRecord[ 0 ] && lnNextLow == arrRecord[ 1 ] )
+				{
+					arrPrevious[ 2 ] = arrRecord[ 2 ];
+					arrPrevious[ 3 ] = arrRecord[ 3 ];
+					continue;
+				}
+			}
+			listMerged.add( arrRecord );
+		}
+		if ( listMerged.size() > MAX_RECORDS )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "too.many.ranges" ) );
+		}
+
+		return listMerged;
+	}
+
+	/**
+	 *	parse an address into the IpV6 space
+	 *	@return	int, 4 or 6 for the family of the address, -1 if not valid
+	 */
+	private static int parseAddress( String sAddress, long[] arrAddress )
+	{
+		long lnIpV4 = LibNetwork.parseIpV4Address( sAddress );
+		if ( LibNetwork.INVALID_IP_V4 != lnIpV4 )
+		{
+			arrAddress[ 0 ] = 0;
+			arrAddress[ 1 ] = LibNetwork.IP_V4_MAPPED_LOW | lnIpV4;
+			return 4;
+		}
+
+		return LibNetwork.parseIpV6Address( sAddress, arrAddress ) ? 6 : -1;
+	}
+
+	/**
+	 *	parse a range in CIDR notation or a bare address into its first and last address
+	 */
+	private static boolean parseRange( String sRange, long[] arrFirst, long[] arrLast )
+	{
+		int nLength = IpRangeSet.parseRange( sRange, arrFirst );
+		if ( nLength < 0 )
+		{
+			return false;
+		}
+
+		//	host bits past the prefix are cleared in the first address and set in the last
+		int nHostBits	= 128 - nLength;
+		long lnHighMask	= nHostBits <= 64 ? 0 : ( nHostBits >= 128 ? -1L : -1L >>> ( 128 - nHostBits ) );
+		long lnLowMask	= nHostBits >= 64 ? -1L : ( 0 == nHostBits ? 0 : -1L >>> ( 64 - nHostBits ) );
+		arrFirst[ 0 ]	&= ~lnHighMask;
+		arrFirst[ 1 ]	&= ~lnLowMask;
+		arrLast[ 0 ]	= arrFirst[ 0 ] | lnHighMask;
+		arrLast[ 1 ]	= arrFirst[ 1 ] | lnLowMask;
+
+		return true;
+	}
+
+	/**
+	 *	@return	int, the index of a region code "AA" - "ZZ" in REGIONS, -1 if not valid
+	 */
+	private static int regionIndexOf( String sRegion )
+	{
+		if ( 2 != sRegion.length() )
+		{
+			return -1;
+		}
+
+		char c1 = Character.toUpperCase( sRegion.charAt( 0 ) );
+		char c2 = Character.toUpperCase( sRegion.charAt( 1 ) );
+		if ( c1 < 'A' || c1 > 'Z' || c2 < 'A' || c2 > 'Z' )
+		{
+			return -1;
+		}
+
+		return ( c1 - 'A' ) * 26 + ( c2 - 'A' );
+	}
+
+	/**
+	 *	compare two 128-bit addresses as unsigned values
+	 */
+	private static int compare( long lnHigh1, long lnLow1, long lnHigh2, long lnLow2 )
+	{
+		int nCompare = Long.compareUnsigned( lnHigh1, lnHigh2 );
+		return 0 != nCompare ? nCompare : Long.compareUnsigned( lnLow1, lnLow2 );
+	}
+
+	private static void flush( ByteBuffer buffer, FileChannel channel ) throws IOException
+	{
+		buffer.flip();
+		while ( buffer.hasRemaining() )
+		{
+			channel.write( buffer );
+		}
+		buffer.clear();
+	}
+}
@@ -1,7 +1,6 @@
 package cn.airpassport.lib.network;
 
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.validator.routines.InetAddressValidator;
+import cn.airpassport.lib.common.LibCommon;
 
 
 /**
@@ -9,6 +8,24 @@ import org.apache.commons.validator.routines.InetAddressValidator;
  */
 public class LibNetwork
 {
+	//	returned by parseIpV4Address for text which is not an IpV4 address
+	public static final long INVALID_IP_V4 = -1L;
+
+	//	"255.255.255.255"
+	private static final int MAX_IP_V4_LENGTH = 15;
+
+	//	"ffff:ffff:ffff:ffff:ffff:ffff:255.255.255.255"
+	private static final int MAX_IP_V6_LENGTH = 45;
+	private static final int IP_V6_GROUPS = 8;
+
+	//	::ffff:0:0/96, the range of IpV4-mapped addresses, as the low long of an address with its low 32 bits cleared
+	static final long IP_V4_MAPPED_LOW = 0xffffL << 32;
+
+	//	ranges checked by isAllowedIpAddress and isDeniedIpAddress, replaced as a whole
+	private static volatile IpRangeSet allowList	= IpRangeSet.empty();
+	private static volatile IpRangeSet denyList	= IpRangeSet.empty();
+
+
 	/**
 	 *	check if the sAddress is a valid IpV4 or IpV6 internet address
 	 *	@param	sAddress	-
@@ -16,8 +33,7 @@ public class LibNetwork
 	 */
 	public static boolean isValidIpAddress( String sAddress )
 	{
-		return ! StringUtils.isBlank( sAddress ) &&
-			InetAddressValidator.getInstance().isValid( sAddress );
+		return LibNetwork.isValidIpV4Address( sAddress ) || LibNetwork.isValidIpV6Address( sAddress );
 	}
 
 	/**
@@ -27,18 +43,518 @@ public class LibNetwork
 	 */
 	public static boolean isValidIpV4Address( String sAddress )
 	{
-		return ! StringUtils.isBlank( sAddress ) &&
-			InetAddressValidator.getInstance().isValidInet4Address( sAddress );
+		return INVALID_IP_V4 != LibNetwork.parseIpV4Address( sAddress );
 	}
 
 	/**
-	 *	check if the sAddress is a valid IpV6 internet address
+	 *	check if the sAddress is a valid IpV6 internet address, without a zone id
 	 *	@param	sAddress	-
 	 *	@return	boolean
 	 */
 	public static boolean isValidIpV6Address( String sAddress )
 	{
-		return ! StringUtils.isBlank( sAddress ) &&
-			InetAddressValidator.getInstance().isValidInet6Address( sAddress );
+		return null != sAddress && LibNetwork.parseIpV6Address( sAddress, 0, sAddress.length(), false, null );
+	}
+
+	/**
+	 *	check if the sAddress is in a range of the allow list
+	 *	@param	sAddress	-
+	 *	@return	boolean, false if the address is not valid
+	 */
+	public static boolean isAllowedIpAddress( String sAddress )
+	{
+		return allowList.contains( sAddress );
+	}
+
+	/**
+	 *	check if the sAddress is in a range of the deny list
+	 *	@param	sAddress	-
+	 *	@return	boolean, false if the address is not valid
+	 */
+	public static boolean isDeniedIpAddress( String sAddress )
+	{
+		return denyList.contains( sAddress );
+	}
+
+	/**
+	 *	replace the allow list, readers see either the old or the new list
+	 *	@param	set	-
+	 */
+	public static void setAllowList( IpRangeSet set )
+	{
+		if ( null == set )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.set" ) );
+		}
+
+		allowList = set;
+	}
+
+	/**
+	 *	get the allow list, to look up packed addresses without allocation
+	 *	@return	IpRangeSet, empty until setAllowList is called
+	 */
+	public static IpRangeSet getAllowList()
+	{
+		return allowList;
+	}
+
+	/**
+	 *	replace the deny list, readers see either the old or the new list
+	 *	@param	set	-
+	 */
+	public static void setDenyList( IpRangeSet set )
+	{
+		if ( null == set )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.set" ) );
+		}
+
+		denyList = set;
+	}
+
+	/**
+	 *	get the deny list, to look up packed addresses without allocation
+	 *	@return	IpRangeSet, empty until setDenyList is called
+	 */
+	public static IpRangeSet getDenyList()
+	{
+		return denyList;
+	}
+
+	/**
+	 *	get the region of an ip address from the current IpRegionTable, such as a default region for LibPhone
+	 *	@param	sAddress	-
+	 *	@return	String, ISO 3166-1 region code, null if the address is not valid or not in the table
+	 */
+	public static String getRegionByIpAddress( String sAddress )
+	{
+		return IpRegionTable.getCurrent().getRegion( sAddress );
+	}
+
+	/**
+	 *	parse an IpV4 address in a single pass without allocation.
+	 *	accepts exactly what InetAddressValidator.isValidInet4Address accepts:
+	 *	four decimal octets of 1 - 3 ASCII digits up to 255, without leading zeros, and nothing else.
+	 *	@param	sAddress	-
+	 *	@return	long, the address as an unsigned 32-bit value, cast to int for a packed key, or INVALID_IP_V4
+	 */
+	public static long parseIpV4Address( CharSequence sAddress )
+	{
+		if ( null == sAddress )
+		{
+			return INVALID_IP_V4;
+		}
+
+		return LibNetwork.parseIpV4Address( sAddress, 0, sAddress.length() );
+	}
+
+	/**
+	 *	parse the IpV4 address sText[ nStart, nEnd )
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	exclusive
+	 *	@return	long, the address as an unsigned 32-bit value or INVALID_IP_V4
+	 */
+	public static long parseIpV4Address( CharSequence sText, int nStart, int nEnd )
+	{
+		if ( nEnd - nStart > MAX_IP_V4_LENGTH )
+		{
+			return INVALID_IP_V4;
+		}
+
+		long lnAddress	= 0;
+		int nOctets	= 0;
+		int nOctet	= 0;
+		int nDigits	= 0;
+
+		for ( int i = nStart; i <= nEnd; i ++ )
+		{
+			char c = i < nEnd ? sText.charAt( i ) : '.';
+			if ( c >= '0' && c <= '9' )
+			{
+				//	a leading zero is only allowed as the whole octet
+				if ( 3 == nDigits || ( 1 == nDigits && 0 == nOctet ) )
+				{
+					return INVALID_IP_V4;
+				}
+				nOctet = nOctet * 10 + ( c - '0' );
+				nDigits ++;
+			}
+			else if ( '.' == c && nDigits > 0 && nOctet <= 255 && nOctets < 4 )
+			{
+				lnAddress	= ( lnAddress << 8 ) | nOctet;
+				nOctets		++;
+				nOctet		= 0;
+				nDigits		= 0;
+			}
+			else
+			{
+				return INVALID_IP_V4;
+			}
+		}
+
+		return 4 == nOctets ? lnAddress : INVALID_IP_V4;
+	}
+
+	/**
+	 *	format an IpV4 address in dotted decimal
+	 *	@param	nAddress	address packed into an int, such as ( int ) parseIpV4Address( s )
+	 *	@return	String
+	 */
+	public static String formatIpV4Address( int nAddress )
+	{
+		return LibNetwork.appendIpV4Address( new StringBuilder( MAX_IP_V4_LENGTH ), nAddress ).toString();
+	}
+
+	/**
+	 *	append an IpV4 address in dotted decimal
+	 *	@param	sbText		-
+	 *	@param	nAddress	address packed into an int
+	 *	@return	StringBuilder, sbText
+	 */
+	public static StringBuilder appendIpV4Address( StringBuilder sbText, int nAddress )
+	{
+		for ( int nShift = 24; nShift >= 0; nShift -= 8 )
+		{
+			sbText.append( ( nAddress >>> nShift ) & 0xff );
+			if ( nShift > 0 )
+			{
+				sbText.append( '.' );
+			}
+		}
+
+		return sbText;
+	}
+
+	/**
+	 *	parse an IpV6 address without a zone id, see parseIpV6Address( CharSequence, int, int, boolean, long[] )
+	 *	@param	sAddress	-
+	 *	@param	arrAddress	receives the high and the low 64 bits
+	 *	@return	boolean, false if sAddress is not an IpV6 address
+	 */
+	public static boolean parseIpV6Address( CharSequence sAddress, long[] arrAddress )
+	{
+		return null != sAddress && LibNetwork.parseIpV6Address( sAddress, 0, sAddress.length(), false, arrAddress );
+	}
+
+	/**
+	 *	parse the IpV6 address sText[ nStart, nEnd ) in a single pass without regexes or allocation.
+	 *	accepts 8 groups of 1 - 4 hex digits, or fewer with one "::" standing for at least one zero group,
+	 *	the last two groups may be an IpV4 address as accepted by parseIpV4Address.
+	 *	unlike InetAddressValidator, which parses groups with Integer.parseInt, groups with a sign
+	 *	or non-ASCII digits are rejected.
+	 *	@param	sText		-
+	 *	@param	nStart		-
+	 *	@param	nEnd		exclusive
+	 *	@param	bAllowZone	accept a zone id such as "%eth0" after the address, which is skipped
+	 *	@param	arrAddress	optional, receives the high 64 bits at [ 0 ] and the low 64 bits at [ 1 ]
+	 *	@return	boolean, false if the text is not an IpV6 address
+	 */
+	public static boolean parseIpV6Address( CharSequence sText, int nStart, int nEnd, boolean bAllowZone, long[] arrAddress )
+	{
+		if ( bAllowZone )
+		{
+			for ( int i = nStart; i < nEnd; i ++ )
+			{
+				if ( '%' == sText.charAt( i ) )
+				{
+					if ( ! LibNetwork.isValidZone( sText, i + 1, nEnd ) )
+					{
+						return false;
+					}
+					nEnd = i;
+					break;
+				}
+			}
+		}
+		if ( nEnd - nStart < 2 || nEnd - nStart > MAX_IP_V6_LENGTH )
+		{
+			return false;
+		}
+
+		//	groups before and after "::", shifted in 16 bits at a time
+		long lnHeadHigh		= 0;
+		long lnHeadLow		= 0;
+		long lnTailHigh		= 0;
+		long lnTailLow		= 0;
+		int nHeadGroups		= 0;
+		int nTailGroups		= 0;
+		boolean bCompressed	= false;
+		int i			= nStart;
+
+		if ( ':' == sText.charAt( i ) )
+		{
+			if ( ':' != sText.charAt( i + 1 ) )
+			{
+				return false;
+			}
+			bCompressed	= true;
+			i		+= 2;
+		}
+
+		while ( i < nEnd )
+		{
+			int nGroup	= 0;
+			int nDigits	= 0;
+			int j		= i;
+			for ( ; j < nEnd; j ++ )
+			{
+				int nDigit = LibNetwork.hexDigit( sText.charAt( j ) );
+				if ( nDigit < 0 )
+				{
+					break;
+				}
+				if ( 4 == nDigits )
+				{
+					return false;
+				}
+				nGroup = ( nGroup << 4 ) | nDigit;
+				nDigits ++;
+			}
+
+			int nGroups	= 1;
+			long lnValue	= nGroup;
+			if ( j < nEnd && '.' == sText.charAt( j ) )
+			{
+				//	an IpV4 address takes the rest of the text as two groups
+				lnValue = LibNetwork.parseIpV4Address( sText, i, nEnd );
+				if ( INVALID_IP_V4 == lnValue )
+				{
+					return false;
+				}
+				nGroups	= 2;
+				j	= nEnd;
+			}
+			else if ( 0 == nDigits )
+			{
+				return false;
+			}
+
+			int nShift = 16 * nGroups;
+			if ( bCompressed )
+			{
+				lnTailHigh	= ( lnTailHigh << nShift ) | ( lnTailLow >>> ( 64 - nShift ) );
+				lnTailLow	= ( lnTailLow << nShift ) | lnValue;
+				nTailGroups	+= nGroups;
+			}
+			else
+			{
+				lnHeadHigh	= ( lnHeadHigh << nShift ) | ( lnHeadLow >>> ( 64 - nShift ) );
+				lnHeadLow	= ( lnHeadLow << nShift ) | lnValue;
+				nHeadGroups	+= nGroups;
+			}
+			if ( nHeadGroups + nTailGroups > IP_V6_GROUPS )
+			{
+				return false;
+			}
+
+			if ( j == nEnd )
+			{
+				break;
+			}
+			if ( ':' != sText.charAt( j ) || j + 1 == nEnd )
+			{
+				//	no group after a single trailing ':'
+				return false;
+			}
+			j ++;
+			if ( ':' == sText.charAt( j ) )
+			{
+				if ( bCompressed )
+				{
+					return false;
+				}
+				bCompressed = true;
+				j ++;
+			}
+			i = j;
+		}
+
+		//	"::" stands for at least one group
+		int nGroups = nHeadGroups + nTailGroups;
+		if ( bCompressed ? nGroups > IP_V6_GROUPS - 1 : nGroups != IP_V6_GROUPS )
+		{
+			return false;
+		}
+
+		if ( null != arrAddress )
+		{
+			//	move the head groups up to the top of the 128 bits
+			int nShift = 16 * ( IP_V6_GROUPS - nHeadGroups );
+			if ( nShift >= 64 )
+			{
+				lnHeadHigh	= 128 == nShift ? 0 : lnHeadLow << ( nShift - 64 );
+				lnHeadLow	= 0;
+			}
+			else if ( nShift > 0 )
+			{
+				lnHeadHigh	= ( lnHeadHigh << nShift ) | ( lnHeadLow >>> ( 64 - nShift ) );
+				lnHeadLow	= lnHeadLow << nShift;
+			}
+			arrAddress[ 0 ] = lnHeadHigh | lnTailHigh;
+			arrAddress[ 1 ] = lnHeadLow | lnTailLow;
+		}
+
+		return true;
+	}
+
+	/**
+	 *	format an IpV6 address in the canonical text of RFC 5952:
+	 *	lower case, no leading zeros, the longest run of two or more zero groups as "::", the first of equal runs,
+	 *	and IpV4-mapped addresses as "::ffff:" and the IpV4 address
+	 *	@param	lnHigh	high 64 bits
+	 *	@param	lnLow	low 64 bits
+	 *	@return	String
+	 */
+	public static String formatIpV6Address( long lnHigh, long lnLow )
+	{
+		return LibNetwork.appendIpV6Address( new StringBuilder( MAX_IP_V6_LENGTH ), lnHigh, lnLow ).toString();
+	}
+
+	/**
+	 *	append an IpV6 address in the canonical text of RFC 5952
+	 *	@param	sbText	-
+	 *	@param	lnHigh	high 64 bits
+	 *	@param	lnLow	low 64 bits
+	 *	@return	StringBuilder, sbText
+	 */
+	public static StringBuilder appendIpV6Address( StringBuilder sbText, long lnHigh, long lnLow )
+	{
+		if ( INVALID_IP_V4 != LibNetwork.toIpV4Address( lnHigh, lnLow ) )
+		{
+			return LibNetwork.appendIpV4Address( sbText.append( "::ffff:" ), ( int ) lnLow );
+		}
+
+		//	find the longest run of zero groups
+		int nRunStart		= -1;
+		int nRunLength		= 1;
+		int nCurrentStart	= -1;
+		for ( int g = 0; g <= IP_V6_GROUPS; g ++ )
+		{
+			if ( g < IP_V6_GROUPS && 0 == LibNetwork.getGroup( lnHigh, lnLow, g ) )
+			{
+				if ( nCurrentStart < 0 )
+				{
+					nCurrentStart = g;
+				}
+				continue;
+			}
+			if ( nCurrentStart >= 0 && g - nCurrentStart > nRunLength )
+			{
+				nRunStart	= nCurrentStart;
+				nRunLength	= g - nCurrentStart;
+			}
+			nCurrentStart = -1;
+		}
+
+		for ( int g = 0; g < IP_V6_GROUPS; g ++ )
+		{
+			if ( g == nRunStart )
+			{
+				sbText.append( "::" );
+				g += nRunLength - 1;
+				continue;
+			}
+			if ( g > 0 && g != nRunStart + nRunLength )
+			{
+				sbText.append( ':' );
+			}
+			sbText.append( Integer.toHexString( LibNetwork.getGroup( lnHigh, lnLow, g ) ) );
+		}
+
+		return sbText;
+	}
+
+	/**
+	 *	get the IpV4 address of an IpV4-mapped IpV6 address ::ffff:a.b.c.d
+	 *	@param	lnHigh	high 64 bits
+	 *	@param	lnLow	low 64 bits
+	 *	@return	long, the IpV4 address as an unsigned 32-bit value, or INVALID_IP_V4 if the address is not IpV4-mapped
+	 */
+	public static long toIpV4Address( long lnHigh, long lnLow )
+	{
+		return 0 == lnHigh && IP_V4_MAPPED_LOW == ( lnLow & 0xffffffff00000000L ) ? lnLow & 0xffffffffL : INVALID_IP_V4;
+	}
+
+	/**
+	 *	canonicalize an ip address into a key for per address accounting:
+	 *	IpV4 addresses and IpV4-mapped IpV6 addresses in dotted decimal, other IpV6 addresses as RFC 5952 text
+	 *	@param	sAddress	-
+	 *	@return	String, null if sAddress is not a valid ip address
+	 */
+	public static String canonicalizeIpAddress( CharSequence sAddress )
+	{
+		long lnIpV4 = LibNetwork.parseIpV4Address( sAddress );
+		if ( INVALID_IP_V4 != lnIpV4 )
+		{
+			return LibNetwork.formatIpV4Address( ( int ) lnIpV4 );
+		}
+
+		long[] arrAddress = new long[ 2 ];
+		if ( ! LibNetwork.parseIpV6Address( sAddress, arrAddress ) )
+		{
+			return null;
+		}
+
+		lnIpV4 = LibNetwork.toIpV4Address( arrAddress[ 0 ], arrAddress[ 1 ] );
+		if ( INVALID_IP_V4 != lnIpV4 )
+		{
+			return LibNetwork.formatIpV4Address( ( int ) lnIpV4 );
+		}
+
+		return LibNetwork.formatIpV6Address( arrAddress[ 0 ], arrAddress[ 1 ] );
+	}
+
+
+	/**
+	 *	@return	int, the value of an ASCII hex digit, -1 for other chars
+	 */
+	private static int hexDigit( char c )
+	{
+		if ( c >= '0' && c <= '9' )
+		{
+			return c - '0';
+		}
+		if ( c >= 'a' && c <= 'f' )
+		{
+			return c - 'a' + 10;
+		}
+		if ( c >= 'A' && c <= 'F' )
+		{
+			return c - 'A' + 10;
+		}
+
+		return -1;
+	}
+
+	/**
+	 *	a zone id is at least one char, without white space or '%'
+	 */
+	private static boolean isValidZone( CharSequence sText, int nStart, int nEnd )
+	{
+		if ( nStart >= nEnd )
+		{
+			return false;
+		}
+		for ( int i = nStart; i < nEnd; i ++ )
+		{
+			char c = sText.charAt( i );
+			if ( '%' == c || Character.isWhitespace( c ) || Character.isISOControl( c ) )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 *	@return	int, the 16-bit group g of an IpV6 address, 0 is the highest
+	 */
+	private static int getGroup( long lnHigh, long lnLow, int g )
+	{
+		long lnHalf = g < 4 ? lnHigh : lnLow;
+		return ( int )( lnHalf >>> ( 16 * ( 3 - ( g & 3 ) ) ) ) & 0xffff;
 	}
-}
\ No newline at end of file
+}
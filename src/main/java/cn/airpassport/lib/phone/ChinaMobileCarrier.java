@@ -0,0 +1,24 @@
+package cn.airpassport.lib.phone;
+
+
+/**
+ *	@class	ChinaMobileCarrier
+ *	the carrier a China mobile number range is allocated to
+ */
+public enum ChinaMobileCarrier
+{
+	//	中国移动
+	CHINA_MOBILE,
+
+	//	中国联通
+	CHINA_UNICOM,
+
+	//	中国电信
+	CHINA_TELECOM,
+
+	//	虚拟运营商
+	VIRTUAL,
+
+	//	valid number range, but the carrier is not recorded in the prefix table
+	UNKNOWN
+}
@@ -0,0 +1,247 @@
+package cn.airpassport.lib.phone;
+
+import cn.airpassport.lib.common.LibCommon;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+
+/**
+ *	@class	ChinaMobilePrefixTable
+ *
+ *	carrier table for China mobile numbers, indexed by the first 4 digits of the number.
+ *	a number is valid if it has 11 ASCII digits and its prefix is allocated in the table,
+ *	so validating is a single scan over the chars without any allocation.
+ *
+ *	the table text has one entry per line:
+ *		130,131,132	CHINA_UNICOM
+ *		1718		VIRTUAL
+ *	a 3-digit prefix covers all 10 of its 4-digit prefixes, a 4-digit entry overrides it.
+ *	lines starting with # are comments.
+ */
+public class ChinaMobilePrefixTable
+{
+	/**
+	 * 运营商号段如下：
+	 * 中国联通号码：130、131、132、145（无线上网卡）、155、156、185（iPhone5上市后开放）、186、176（4G号段）、166
+	 * 中国移动号码：134、135、136、137、138、139、147（无线上网卡）、150、151、152、157、158、159、187、188、178、184、198
+	 * 中国电信号码：133、153、180、189、177、173、191、199
+	 * 虚拟运营商：170、171（1718、1719）、162、165、167
+	 *
+	 * 149、175、181、182、183 are not opened by the table, keep it the same as the former regex:
+	 * "^((13[0-9])|(14[5|7])|(15([0-3]|[5-9]))|(16[0-9])|(17[013678])|(18[0,4-9])|(19[0-9]))\\d{8}$"
+	 */
+	private static final String DEFAULT_TABLE =
+		"130,131,132,145,155,156,166,176,185,186	CHINA_UNICOM\n" +
+		"134,135,136,137,138,139,147,150,151,152,157,158,159,178,184,187,188,198	CHINA_MOBILE\n" +
+		"133,153,173,177,180,189,191,199	CHINA_TELECOM\n" +
+		"162,165,167,170,171	VIRTUAL\n" +
+		"160,161,163,164,168,169,190,192,193,194,195,196,197	UNKNOWN\n";
+
+	private static final int NUMBER_LENGTH	= 11;
+	private static final int PREFIX_BASE	= 1000;
+	private static final int PREFIX_COUNT	= 1000;
+
+	private static final ChinaMobileCarrier[] CARRIERS = ChinaMobileCarrier.values();
+
+	private static volatile ChinaMobilePrefixTable current = ChinaMobilePrefixTable.parse( DEFAULT_TABLE );
+
+	//	0 for not allocated, otherwise ordinal of the carrier + 1
+	private final byte[] carriers;
+
+
+	private ChinaMobilePrefixTable( byte[] carriers )
+	{
+		this.carriers = carriers;
+	}
+
+	/**
+	 *	get the table used by LibPhone
+	 *	@return	ChinaMobilePrefixTable
+	 */
+	public static ChinaMobilePrefixTable getCurrent()
+	{
+		return current;
+	}
+
+	/**
+	 *	replace the table used by LibPhone, readers see either the old or the new table
+	 *	@param	table	-
+	 */
+	public static void setCurrent( ChinaMobilePrefixTable table )
+	{
+		if ( null == table )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.table" ) );
+		}
+
+		current = table;
+	}
+
+	/**
+	 *	get the built-in table
+	 *	@return	ChinaMobilePrefixTable
+	 */
+	public static ChinaMobilePrefixTable getDefault()
+	{
+		return ChinaMobilePrefixTable.parse( DEFAULT_TABLE );
+	}
+
+	/**
+	 *	build a table from its text form
+	 *	@param	sTable	-
+	 *	@return	ChinaMobilePrefixTable
+	 */
+	public static ChinaMobilePrefixTable parse( String sTable )
+	{
+		if ( null == sTable )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.table" ) );
+		}
+
+		try
+		{
+			return ChinaMobilePrefixTable.load( new StringReader( sTable ) );
+		}
+		catch ( IOException e )
+		{
+			//	StringReader never throws
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 *	build a table from its text form
+	 *	@param	reader	-
+	 *	@return	ChinaMobilePrefixTable
+	 *	@throws	IOException	if reading fails
+	 */
+	public static ChinaMobilePrefixTable load( Reader reader ) throws IOException
+	{
+		if ( null == reader )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.reader" ) );
+		}
+
+		byte[] arrShort	= new byte[ PREFIX_COUNT ];
+		byte[] arrLong	= new byte[ PREFIX_COUNT ];
+
+		BufferedReader bufferedReader = new BufferedReader( reader );
+		String sLine;
+		while ( null != ( sLine = bufferedReader.readLine() ) )
+		{
+			sLine = sLine.trim();
+			if ( sLine.isEmpty() || sLine.startsWith( "#" ) )
+			{
+				continue;
+			}
+
+			String[] arrParts = StringUtils.split( sLine );
+			if ( 2 != arrParts.length )
+			{
+				throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.line" ) );
+			}
+
+			byte nCode = ChinaMobilePrefixTable.toCode( arrParts[ 1 ] );
+			for ( String sPrefix : StringUtils.split( arrParts[ 0 ], ',' ) )
+			{
+				if ( ! StringUtils.isNumeric( sPrefix ) || ! sPrefix.startsWith( "1" ) )
+				{
+					throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.prefix" ) );
+				}
+
+				int nPrefix = Integer.parseInt( sPrefix );
+				if ( 3 == sPrefix.length() )
+				{
+					int nFirst = nPrefix * 10 - PREFIX_BASE;
+					for ( int i = 0; i < 10; i ++ )
+					{
+						arrShort[ nFirst + i ] = nCode;
+					}
+				}
+				else if ( 4 == sPrefix.length() )
+				{
+					arrLong[ nPrefix - PREFIX_BASE ] = nCode;
+				}
+				else
+				{
+					throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.prefix" ) );
+				}
+			}
+		}
+
+		//
+		//	4-digit entries override the 3-digit ranges they belong to
+		//
+		for ( int i = 0; i < PREFIX_COUNT; i ++ )
+		{
+			if ( 0 != arrLong[ i ] )
+			{
+				arrShort[ i ] = arrLong[ i ];
+			}
+		}
+
+		return new ChinaMobilePrefixTable( arrShort );
+	}
+
+	/**
+	 *	check for China Mobile Number
+	 *	@param	sPhoneNumber	-
+	 *	@return	boolean
+	 */
+	public boolean isValid( CharSequence sPhoneNumber )
+	{
+		return null != this.getCarrier( sPhoneNumber );
+	}
+
+	/**
+	 *	get the carrier of a China Mobile Number
+	 *	@param	sPhoneNumber	-
+	 *	@return	ChinaMobileCarrier, null if the number is not valid
+	 */
+	public ChinaMobileCarrier getCarrier( CharSequence sPhoneNumber )
+	{
+		if ( null == sPhoneNumber || NUMBER_LENGTH != sPhoneNumber.length() )
+		{
+			return null;
+		}
+
+		int nPrefix = 0;
+		for ( int i = 0; i < NUMBER_LENGTH; i ++ )
+		{
+			int nDigit = sPhoneNumber.charAt( i ) - '0';
+			if ( nDigit < 0 || nDigit > 9 )
+			{
+				return null;
+			}
+			if ( i < 4 )
+			{
+				nPrefix = nPrefix * 10 + nDigit;
+			}
+		}
+
+		if ( nPrefix < PREFIX_BASE || nPrefix >= PREFIX_BASE + PREFIX_COUNT )
+		{
+			return null;
+		}
+
+		int nCode = this.carriers[ nPrefix - PREFIX_BASE ];
+		return 0 == nCode ? null : CARRIERS[ nCode - 1 ];
+	}
+
+
+	private static byte toCode( String sCarrier )
+	{
+		try
+		{
+			return (byte)( ChinaMobileCarrier.valueOf( sCarrier ).ordinal() + 1 );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.carrier" ) );
+		}
+	}
+}
@@ -1,12 +1,20 @@
 package cn.airpassport.lib.phone;
 
+import cn.airpassport.lib.common.LibCommon;
+import cn.airpassport.lib.common.VerdictCache;
 import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber;
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -14,6 +22,53 @@ import java.util.regex.Pattern;
  */
 public class LibPhone
 {
+	//	PhoneNumberUtil.getInstance() is synchronized, keep the instance
+	private static final PhoneNumberUtil PHONE_NUMBER_UTIL = PhoneNumberUtil.getInstance();
+
+	//	the same as PhoneNumberUtil.UNKNOWN_REGION
+	private static final String UNKNOWN_REGION = "ZZ";
+
+	//	country calling codes have at most 3 digits
+	private static final int MAX_COUNTRY_CODE = 999;
+
+	//	country calling code of each 2-letter region, indexed by ( letter1 - 'A' ) * 26 + ( letter2 - 'A' ), 0 if unknown
+	private static final int[] REGION_COUNTRY_CODES = new int[ 26 * 26 ];
+
+	//	main region of each country calling code, UNKNOWN_REGION if unknown
+	private static final String[] COUNTRY_CODE_REGIONS = new String[ MAX_COUNTRY_CODE + 1 ];
+
+	//	time taken to build the lookup tables above
+	private static final long LOOKUP_TABLES_BUILD_NANOS;
+
+	//	stage counters of isValidMobileNumber
+	private static final PhoneValidationStats VALIDATION_STATS = new PhoneValidationStats();
+
+	//	optional cache of libphonenumber verdicts, null to disable
+	private static volatile VerdictCache validationCache = null;
+
+	//	the last warm-up started by warmUp, null if none
+	private static volatile CompletableFuture<Map<String,Long>> warmUpFuture = null;
+
+	static
+	{
+		long lnStart = System.nanoTime();
+
+		for ( String sRegion : PHONE_NUMBER_UTIL.getSupportedRegions() )
+		{
+			int nIndex = LibPhone.regionIndexOf( sRegion );
+			if ( nIndex >= 0 )
+			{
+				REGION_COUNTRY_CODES[ nIndex ] = PHONE_NUMBER_UTIL.getCountryCodeForRegion( sRegion );
+			}
+		}
+		for ( int nCountryCode = 0; nCountryCode <= MAX_COUNTRY_CODE; nCountryCode ++ )
+		{
+			COUNTRY_CODE_REGIONS[ nCountryCode ] = PHONE_NUMBER_UTIL.getRegionCodeForCountryCode( nCountryCode );
+		}
+
+		LOOKUP_TABLES_BUILD_NANOS = System.nanoTime() - lnStart;
+	}
+
 	/**
 	 * 	check for China Mobile Number
 	 *	@param	sPhoneNumber	-
@@ -24,6 +79,16 @@ public class LibPhone
 		return LibPhone.isValidMobileNumber( sPhoneNumber, "CN" );
 	}
 
+	/**
+	 * 	get the carrier of China Mobile Number
+	 *	@param	sPhoneNumber	-
+	 *	@return	ChinaMobileCarrier, null if the number is not a valid China Mobile Number
+	 */
+	public static ChinaMobileCarrier getChinaMobileCarrier( String sPhoneNumber )
+	{
+		return ChinaMobilePrefixTable.getCurrent().getCarrier( sPhoneNumber );
+	}
+
 
 	/**
 	 *	check for Global Mobile Number
@@ -46,135 +111,396 @@ public class LibPhone
 	 */
 	public static boolean isValidMobileNumber( String sPhoneNumber, String sCountryRegion )
 	{
-		if ( StringUtils.isBlank( sPhoneNumber ) )
+		return LibPhone.isValidMobileNumber( sPhoneNumber, sCountryRegion, null );
+	}
+
+	/**
+	 *	check for Global Mobile Numbers in bulk, the work is split across the common fork-join pool
+	 *	@param	listPhoneNumbers	-
+	 *	@param	sCountryRegion		-
+	 *	@return	BitSet of the indexes of valid numbers
+	 */
+	public static BitSet isValidMobileNumbers( List<String> listPhoneNumbers, String sCountryRegion )
+	{
+		if ( null == listPhoneNumbers )
 		{
-			return false;
+			return new BitSet();
 		}
-		if ( StringUtils.isBlank( sCountryRegion ) )
+
+		return LibPhone.isValidMobileNumbers( listPhoneNumbers.toArray( new String[ 0 ] ), sCountryRegion, null );
+	}
+
+	/**
+	 *	check for Global Mobile Numbers in bulk, the work is split across the common fork-join pool
+	 *	@param	arrPhoneNumbers		-
+	 *	@param	sCountryRegion		-
+	 *	@param	arrNormalized		optional, receives the E.164 form of valid numbers and null for invalid ones
+	 *	@return	BitSet of the indexes of valid numbers
+	 */
+	public static BitSet isValidMobileNumbers( String[] arrPhoneNumbers, String sCountryRegion, String[] arrNormalized )
+	{
+		return LibPhone.isValidMobileNumbers( arrPhoneNumbers, sCountryRegion, null, arrNormalized, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 *	check for Global Mobile Numbers in bulk, each number has its own region
+	 *	@param	arrPhoneNumbers		-
+	 *	@param	arrCountryRegions	region of the number at the same index
+	 *	@param	arrNormalized		optional, receives the E.164 form of valid numbers and null for invalid ones
+	 *	@return	BitSet of the indexes of valid numbers
+	 */
+	public static BitSet isValidMobileNumbers( String[] arrPhoneNumbers, String[] arrCountryRegions, String[] arrNormalized )
+	{
+		if ( null == arrCountryRegions )
 		{
-			return false;
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.arrCountryRegions" ) );
 		}
 
-		boolean bValid = false;
+		return LibPhone.isValidMobileNumbers( arrPhoneNumbers, null, arrCountryRegions, arrNormalized, ForkJoinPool.commonPool() );
+	}
 
-		if ( "CN".equalsIgnoreCase( sCountryRegion ) )
+	/**
+	 *	check for Global Mobile Numbers in bulk on the given pool
+	 *	@param	arrPhoneNumbers		-
+	 *	@param	sCountryRegion		region of all numbers, used if arrCountryRegions is null
+	 *	@param	arrCountryRegions	optional, region of the number at the same index
+	 *	@param	arrNormalized		optional, receives the E.164 form of valid numbers and null for invalid ones
+	 *	@param	pool			-
+	 *	@return	BitSet of the indexes of valid numbers
+	 */
+	public static BitSet isValidMobileNumbers
+		(
+			String[] arrPhoneNumbers,
+			String sCountryRegion,
+			String[] arrCountryRegions,
+			String[] arrNormalized,
+			ForkJoinPool pool
+		)
+	{
+		if ( null == arrPhoneNumbers || 0 == arrPhoneNumbers.length )
 		{
-			/**
-			 * 运营商号段如下：
-			 * 中国联通号码：130、131、132、145（无线上网卡）、155、156、185（iPhone5上市后开放）、186、176（4G号段）、
-			 *               175（2015年9月10日正式启用，暂只对北京、上海和广东投放办理）
-			 * 中国移动号码：134、135、136、137、138、139、147（无线上网卡）、150、151、152、157、158、159、182、183、187、188、178
-			 * 中国电信号码：133、153、180、181、189、177、173、149 虚拟运营商：170、1718、1719
-			 * 手机号前3位的数字包括：
-			 * 1 :1
-			 * 2 :3,4,5,7,8
-			 * 3 :0,1,2,3,4,5,6,7,8,9
-			 * 总结： 目前java手机号码正则表达式有：
-			 * a :"^1[3|4|5|7|8][0-9]\\d{4,8}$"    一般验证情况下这个就可以了
-			 * b :"^((13[0-9])|(14[5|7])|(15([0-3]|[5-9]))|(17[013678])|(18[0,4-9]))\\d{8}$"
-			 * Pattern和Matcher详解（字符串匹配和字节码）http://blog.csdn.net/u010700335/article/details/44616451
-			 */
-			if( 11 == sPhoneNumber.length() )
-			{
-				String sRegex = "^((13[0-9])|(14[5|7])|(15([0-3]|[5-9]))|(16[0-9])|(17[013678])|(18[0,4-9])|(19[0-9]))\\d{8}$";
-				Pattern pattern = Pattern.compile( sRegex );
-				Matcher matcher = pattern.matcher( sPhoneNumber );
-				bValid = matcher.matches();
-			}
+			return new BitSet();
 		}
-		else
+		if ( null != arrCountryRegions && arrCountryRegions.length != arrPhoneNumbers.length )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.arrCountryRegions" ) );
+		}
+		if ( null != arrNormalized && arrNormalized.length < arrPhoneNumbers.length )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.arrNormalized" ) );
+		}
+		if ( null == pool )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.pool" ) );
+		}
+
+		long[] arrWords = new long[ ( arrPhoneNumbers.length + 63 ) >>> 6 ];
+		pool.invoke( new PhoneBatchTask( arrPhoneNumbers, sCountryRegion, arrCountryRegions, arrNormalized, arrWords, 0, arrPhoneNumbers.length ) );
+
+		return BitSet.valueOf( arrWords );
+	}
+
+	/**
+	 *	check for Global Mobile Number
+	 *	@param	sPhoneNumber		-
+	 *	@param	sCountryRegion		-
+	 *	@param	oNumber			optional, reused as the parse target of libphonenumber.
+	 *					the validation cache is only used without it, as a cached verdict leaves it empty
+	 *	@return	boolean
+	 */
+	static boolean isValidMobileNumber( String sPhoneNumber, String sCountryRegion, Phonenumber.PhoneNumber oNumber )
+	{
+		if ( StringUtils.isBlank( sPhoneNumber ) || StringUtils.isBlank( sCountryRegion ) )
+		{
+			VALIDATION_STATS.increment( PhoneValidationStats.Stage.REJECTED_BLANK );
+			return false;
+		}
+
+		if ( "CN".equalsIgnoreCase( sCountryRegion ) )
 		{
 			//
-			//	Use the libphonenumber library to validate Number
+			//	carrier prefix table, see ChinaMobilePrefixTable
 			//
-			PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
-			Phonenumber.PhoneNumber swissNumberProto = null;
+			return LibPhone.count( ChinaMobilePrefixTable.getCurrent().isValid( sPhoneNumber ) );
+		}
+
+		//
+		//	reject garbage before it reaches libphonenumber and its exceptions
+		//
+		switch ( PhonePreFilter.check( sPhoneNumber, sCountryRegion ) )
+		{
+			case PhonePreFilter.REJECTED_CHARACTERS:
+				VALIDATION_STATS.increment( PhoneValidationStats.Stage.REJECTED_CHARACTERS );
+				return false;
+			case PhonePreFilter.REJECTED_LENGTH:
+				VALIDATION_STATS.increment( PhoneValidationStats.Stage.REJECTED_LENGTH );
+				return false;
+			default:
+				break;
+		}
 
-			try
+		VerdictCache cache	= null == oNumber ? validationCache : null;
+		String sCacheKey	= null;
+		if ( null != cache )
+		{
+			sCacheKey = sCountryRegion + ':' + sPhoneNumber;
+			Boolean bCached = cache.get( sCacheKey );
+			if ( null != bCached )
 			{
-				swissNumberProto = phoneUtil.parse( sPhoneNumber, sCountryRegion );
-				if ( phoneUtil.isValidNumber( swissNumberProto ) )
-				{
-					bValid = true;
-				}
+				VALIDATION_STATS.increment( PhoneValidationStats.Stage.CACHE_HIT );
+				return bCached;
 			}
-			catch ( NumberParseException e )
+		}
+
+		//
+		//	parse with libphonenumber, then match the mobile patterns of the metadata, see PhoneMobileMatcher
+		//
+		boolean bValid = false;
+
+		try
+		{
+			if ( null == oNumber )
 			{
+				oNumber = new Phonenumber.PhoneNumber();
 			}
+			else
+			{
+				oNumber.clear();
+			}
+
+			PHONE_NUMBER_UTIL.parse( sPhoneNumber, sCountryRegion, oNumber );
+			bValid = LibPhone.count( PhoneMobileMatcher.isMobileNumber( PHONE_NUMBER_UTIL, oNumber ) );
+		}
+		catch ( NumberParseException e )
+		{
+			VALIDATION_STATS.increment( PhoneValidationStats.Stage.PARSE_ERROR );
+		}
+
+		if ( null != cache )
+		{
+			cache.put( sCacheKey, bValid );
 		}
 
 		return bValid;
 	}
 
-	public static int getCountryCodeByRegion( String sRegion )
+	/**
+	 *	get the counters of the stages at which isValidMobileNumber decided its inputs
+	 *	@return	PhoneValidationStats
+	 */
+	public static PhoneValidationStats getValidationStats()
+	{
+		return VALIDATION_STATS;
+	}
+
+	/**
+	 *	normalize a Global Mobile Number into a packed long, see PackedPhoneNumber
+	 *	@param	sPhoneNumber		-
+	 *	@param	sCountryRegion		-
+	 *	@return	long, PackedPhoneNumber.INVALID if the number is not valid or does not fit
+	 */
+	public static long toPackedNumber( String sPhoneNumber, String sCountryRegion )
 	{
-		if ( StringUtils.isBlank( sRegion ) ||
-			2 != sRegion.length() )
+		Phonenumber.PhoneNumber oNumber = new Phonenumber.PhoneNumber();
+		if ( ! LibPhone.isValidMobileNumber( sPhoneNumber, sCountryRegion, oNumber ) )
 		{
-			return 0;
+			return PackedPhoneNumber.INVALID;
 		}
 
-		//	...
-		int nCountryCode = 0;
+		int nCountryCode;
+		long lnNationalNumber;
+		int nLeadingZeros;
 
-		try
+		if ( "CN".equalsIgnoreCase( sCountryRegion ) )
+		{
+			//	11 ASCII digits, checked by the prefix table
+			nCountryCode		= 86;
+			lnNationalNumber	= Long.parseLong( sPhoneNumber );
+			nLeadingZeros		= 0;
+		}
+		else
 		{
-			nCountryCode = PhoneNumberUtil.getInstance().getCountryCodeForRegion( sRegion );
+			nCountryCode		= oNumber.getCountryCode();
+			lnNationalNumber	= oNumber.getNationalNumber();
+			nLeadingZeros		= oNumber.isItalianLeadingZero() ? oNumber.getNumberOfLeadingZeros() : 0;
 		}
-		catch ( Exception e )
+
+		if ( ! PackedPhoneNumber.canPack( nCountryCode, lnNationalNumber, nLeadingZeros ) )
 		{
-			//	don't care
+			return PackedPhoneNumber.INVALID;
 		}
 
-		return nCountryCode;
+		return PackedPhoneNumber.pack( nCountryCode, lnNationalNumber, nLeadingZeros );
 	}
 
+	/**
+	 *	format a packed number in E.164
+	 *	@param	lnPackedNumber	-
+	 *	@return	String, null if lnPackedNumber is not a packed number
+	 */
+	public static String fromPackedNumber( long lnPackedNumber )
+	{
+		return PackedPhoneNumber.formatE164( lnPackedNumber );
+	}
 
-	public static String getRegionByCountryCode( int nCountryCode )
+	/**
+	 *	load the metadata of all supported regions on a background thread
+	 *	@return	CompletableFuture, see warmUp( Collection )
+	 */
+	public static CompletableFuture<Map<String,Long>> warmUp()
 	{
-		String sRegion = "";
+		return LibPhone.warmUp( null );
+	}
 
-		try
+	/**
+	 *	load the metadata of regions on a background daemon thread,
+	 *	so the first requests after startup do not wait for libphonenumber to load it
+	 *	@param	listRegions	regions such as "CN", null or empty for all supported regions
+	 *	@return	CompletableFuture, completed with the nanoseconds taken by each region in order,
+	 *		-1 for regions which are not supported
+	 */
+	public static synchronized CompletableFuture<Map<String,Long>> warmUp( Collection<String> listRegions )
+	{
+		Collection<String> listUpperCase;
+		if ( null == listRegions || listRegions.isEmpty() )
 		{
-			sRegion = PhoneNumberUtil.getInstance().getRegionCodeForCountryCode( nCountryCode );
+			listUpperCase = new TreeSet<>( PHONE_NUMBER_UTIL.getSupportedRegions() );
 		}
-		catch ( Exception e )
+		else
 		{
-			//	don't care
+			listUpperCase = new ArrayList<>( listRegions.size() );
+			for ( String sRegion : listRegions )
+			{
+				if ( StringUtils.isBlank( sRegion ) )
+				{
+					throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "blank.region" ) );
+				}
+				listUpperCase.add( StringUtils.upperCase( sRegion.trim() ) );
+			}
 		}
 
-		return sRegion;
+		warmUpFuture = PhoneWarmUp.start( PHONE_NUMBER_UTIL, listUpperCase );
+		return warmUpFuture;
+	}
+
+	/**
+	 *	get the readiness of the last warm-up
+	 *	@return	CompletableFuture, null if warmUp was never called
+	 */
+	public static CompletableFuture<Map<String,Long>> getWarmUpFuture()
+	{
+		return warmUpFuture;
+	}
+
+	/**
+	 *	set the cache of libphonenumber verdicts used by isValidMobileNumber
+	 *	@param	cache	null to disable caching
+	 */
+	public static void setValidationCache( VerdictCache cache )
+	{
+		validationCache = cache;
 	}
 
+	/**
+	 *	get the cache of libphonenumber verdicts
+	 *	@return	VerdictCache, null if caching is disabled
+	 */
+	public static VerdictCache getValidationCache()
+	{
+		return validationCache;
+	}
 
 	/**
-	 * 	check if the sRegion is valid
+	 *	format a valid number in E.164
+	 *	@param	sPhoneNumber		number accepted by isValidMobileNumber
+	 *	@param	sCountryRegion		-
+	 *	@param	oNumber			the parse target passed to isValidMobileNumber
+	 *	@return	String
+	 */
+	static String formatE164( String sPhoneNumber, String sCountryRegion, Phonenumber.PhoneNumber oNumber )
+	{
+		if ( "CN".equalsIgnoreCase( sCountryRegion ) )
+		{
+			return "+86" + sPhoneNumber;
+		}
+
+		return PHONE_NUMBER_UTIL.format( oNumber, PhoneNumberUtil.PhoneNumberFormat.E164 );
+	}
+
+	/**
+	 * 	get the country calling code of a region, case-insensitive
 	 *	@param	sRegion		-
-	 *	@return	boolean
+	 *	@return	int, 0 if the region is unknown
 	 */
-	public static boolean isValidRegion( String sRegion )
+	public static int getCountryCodeByRegion( String sRegion )
+	{
+		int nIndex = LibPhone.regionIndexOf( sRegion );
+		return nIndex >= 0 ? REGION_COUNTRY_CODES[ nIndex ] : 0;
+	}
+
+
+	/**
+	 * 	get the main region of a country calling code
+	 *	@param	nCountryCode	-
+	 *	@return	String, "ZZ" if the country calling code is unknown
+	 */
+	public static String getRegionByCountryCode( int nCountryCode )
 	{
-		if ( StringUtils.isBlank( sRegion ) ||
-			2 != sRegion.length() )
+		if ( nCountryCode < 0 || nCountryCode > MAX_COUNTRY_CODE )
 		{
-			return false;
+			return UNKNOWN_REGION;
 		}
 
-		//	...
-		boolean isValidRegion = false;
+		return COUNTRY_CODE_REGIONS[ nCountryCode ];
+	}
 
-		try
+
+	/**
+	 * 	check if the sRegion is valid, case-insensitive
+	 *	@param	sRegion		-
+	 *	@return	boolean
+	 */
+	public static boolean isValidRegion( String sRegion )
+	{
+		return LibPhone.getCountryCodeByRegion( sRegion ) > 0;
+	}
+
+
+	/**
+	 * 	get the time taken to build the region and country calling code tables at class init
+	 *	@return	long	nanoseconds
+	 */
+	public static long getLookupTablesBuildNanos()
+	{
+		return LOOKUP_TABLES_BUILD_NANOS;
+	}
+
+
+	private static boolean count( boolean bValid )
+	{
+		VALIDATION_STATS.increment( bValid ? PhoneValidationStats.Stage.VALID : PhoneValidationStats.Stage.INVALID );
+		return bValid;
+	}
+
+	/**
+	 *	index of a 2-letter region in REGION_COUNTRY_CODES
+	 *	@return	int, -1 if sRegion is not 2 ASCII letters
+	 */
+	private static int regionIndexOf( String sRegion )
+	{
+		if ( null == sRegion || 2 != sRegion.length() )
 		{
-			int nCountryCode = PhoneNumberUtil.getInstance().getCountryCodeForRegion( sRegion );
-			if ( nCountryCode > 0 )
-			{
-				isValidRegion = true;
-			}
+			return -1;
 		}
-		catch ( Exception e )
+
+		//	| 0x20 folds upper case ASCII letters to lower case
+		int nFirst	= ( sRegion.charAt( 0 ) | 0x20 ) - 'a';
+		int nSecond	= ( sRegion.charAt( 1 ) | 0x20 ) - 'a';
+		if ( nFirst < 0 || nFirst >= 26 || nSecond < 0 || nSecond >= 26 )
 		{
+			return -1;
 		}
 
-		return isValidRegion;
+		return nFirst * 26 + nSecond;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package cn.airpassport.lib.phone;
+
+import cn.airpassport.lib.common.LibCommon;
+
+
+/**
+ *	@class	PackedPhoneNumber
+ *
+ *	a phone number packed in a long, so it can be held in primitive arrays and compared or hashed without allocation.
+ *		bit  63		0, packed numbers are positive
+ *		bits 53 - 62	country calling code, 1 - 999
+ *		bits 50 - 52	number of leading zeros of the national number (Italian leading zero), 0 - 7
+ *		bits 0 - 49	national number, up to 15 digits
+ *	packed numbers sort by country calling code first.
+ *	0 is never a packed number and stands for "invalid".
+ */
+public class PackedPhoneNumber
+{
+	public static final long INVALID = 0L;
+
+	private static final int NATIONAL_NUMBER_BITS	= 50;
+	private static final int LEADING_ZEROS_BITS	= 3;
+	private static final int COUNTRY_CODE_SHIFT	= NATIONAL_NUMBER_BITS + LEADING_ZEROS_BITS;
+
+	private static final long NATIONAL_NUMBER_MASK	= ( 1L << NATIONAL_NUMBER_BITS ) - 1;
+	private static final int LEADING_ZEROS_MASK	= ( 1 << LEADING_ZEROS_BITS ) - 1;
+
+	//	the largest national number with 15 digits
+	private static final long MAX_NATIONAL_NUMBER	= 999999999999999L;
+	private static final int MAX_COUNTRY_CODE	= 999;
+
+
+	/**
+	 *	check if the parts fit in a packed number
+	 *	@param	nCountryCode		-
+	 *	@param	lnNationalNumber	-
+	 *	@param	nLeadingZeros		-
+	 *	@return	boolean
+	 */
+	public static boolean canPack( int nCountryCode, long lnNationalNumber, int nLeadingZeros )
+	{
+		return nCountryCode > 0 && nCountryCode <= MAX_COUNTRY_CODE &&
+			lnNationalNumber >= 0 && lnNationalNumber <= MAX_NATIONAL_NUMBER &&
+			nLeadingZeros >= 0 && nLeadingZeros <= LEADING_ZEROS_MASK;
+	}
+
+	/**
+	 *	pack a phone number
+	 *	@param	nCountryCode		-
+	 *	@param	lnNationalNumber	-
+	 *	@param	nLeadingZeros		-
+	 *	@return	long
+	 */
+	public static long pack( int nCountryCode, long lnNationalNumber, int nLeadingZeros )
+	{
+		if ( ! PackedPhoneNumber.canPack( nCountryCode, lnNationalNumber, nLeadingZeros ) )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.parts" ) );
+		}
+
+		return ( (long) nCountryCode << COUNTRY_CODE_SHIFT ) |
+			( (long) nLeadingZeros << NATIONAL_NUMBER_BITS ) |
+			lnNationalNumber;
+	}
+
+	/**
+	 *	check if lnPacked is a packed number
+	 *	@param	lnPacked	-
+	 *	@return	boolean
+	 */
+	public static boolean isValid( long lnPacked )
+	{
+		return lnPacked > 0 &&
+			PackedPhoneNumber.getCountryCode( lnPacked ) > 0 &&
+			PackedPhoneNumber.getCountryCode( lnPacked ) <= MAX_COUNTRY_CODE &&
+			PackedPhoneNumber.getNationalNumber( lnPacked ) <= MAX_NATIONAL_NUMBER;
+	}
+
+	public static int getCountryCode( long lnPacked )
+	{
+		return (int)( lnPacked >>> COUNTRY_CODE_SHIFT );
+	}
+	public static long getNationalNumber( long lnPacked )
+	{
+		return lnPacked & NATIONAL_NUMBER_MASK;
+	}
+	public static int getLeadingZeros( long lnPacked )
+	{
+		return (int)( lnPacked >>> NATIONAL_NUMBER_BITS ) & LEADING_ZEROS_MASK;
+	}
+
+	/**
+	 *	format a packed number in E.164, such as "+8613810550569"
+	 *	@param	lnPacked	-
+	 *	@return	String, null if lnPacked is not a packed number
+	 */
+	public static String formatE164( long lnPacked )
+	{
+		if ( ! PackedPhoneNumber.isValid( lnPacked ) )
+		{
+			return null;
+		}
+
+		return PackedPhoneNumber.appendE164( lnPacked, new StringBuilder( 20 ) ).toString();
+	}
+
+	/**
+	 *	append a packed number in E.164 to sb
+	 *	@param	lnPacked	a valid packed number
+	 *	@param	sb		-
+	 *	@return	StringBuilder	sb
+	 */
+	public static StringBuilder appendE164( long lnPacked, StringBuilder sb )
+	{
+		sb.append( '+' ).append( PackedPhoneNumber.getCountryCode( lnPacked ) );
+		for ( int i = PackedPhoneNumber.getLeadingZeros( lnPacked ); i > 0; i -- )
+		{
+			sb.append( '0' );
+		}
+
+		return sb.append( PackedPhoneNumber.getNationalNumber( lnPacked ) );
+	}
+}
@@ -0,0 +1,93 @@
+package cn.airpassport.lib.phone;
+
+import com.google.i18n.phonenumbers.Phonenumber;
+
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ *	@class	PhoneBatchTask
+ *	fork-join task behind LibPhone.isValidMobileNumbers.
+ *	ranges are split on 64-entry boundaries, so every leaf owns whole words of the result bitmap.
+ */
+class PhoneBatchTask extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+
+	//	entries per leaf, must be a multiple of 64
+	private static final int LEAF_SIZE = 1024;
+
+	private final String[] arrPhoneNumbers;
+	private final String sCountryRegion;
+	private final String[] arrCountryRegions;
+	private final String[] arrNormalized;
+	private final long[] arrWords;
+	private final int nFrom;
+	private final int nTo;
+
+
+	PhoneBatchTask
+		(
+			String[] arrPhoneNumbers,
+			String sCountryRegion,
+			String[] arrCountryRegions,
+			String[] arrNormalized,
+			long[] arrWords,
+			int nFrom,
+			int nTo
+		)
+	{
+		this.arrPhoneNumbers	= arrPhoneNumbers;
+		this.sCountryRegion	= sCountryRegion;
+		this.arrCountryRegions	= arrCountryRegions;
+		this.arrNormalized	= arrNormalized;
+		this.arrWords		= arrWords;
+		this.nFrom		= nFrom;
+		this.nTo		= nTo;
+	}
+
+	@Override
+	protected void compute()
+	{
+		if ( this.nTo - this.nFrom <= LEAF_SIZE )
+		{
+			this.computeLeaf();
+			return;
+		}
+
+		//	split in the middle, rounded down to a word boundary
+		int nMiddle = ( ( this.nFrom + this.nTo ) >>> 1 ) & ~63;
+		if ( nMiddle <= this.nFrom )
+		{
+			nMiddle = this.nFrom + LEAF_SIZE;
+		}
+
+		RecursiveAction.invokeAll
+			(
+				new PhoneBatchTask( arrPhoneNumbers, sCountryRegion, arrCountryRegions, arrNormalized, arrWords, nFrom, nMiddle ),
+				new PhoneBatchTask( arrPhoneNumbers, sCountryRegion, arrCountryRegions, arrNormalized, arrWords, nMiddle, nTo )
+			);
+	}
+
+	private void computeLeaf()
+	{
+		//	one parse target for the whole leaf, only needed to normalize
+		Phonenumber.PhoneNumber oNumber = null == this.arrNormalized ? null : new Phonenumber.PhoneNumber();
+
+		for ( int i = this.nFrom; i < this.nTo; i ++ )
+		{
+			String sPhoneNumber	= this.arrPhoneNumbers[ i ];
+			String sRegion		= null == this.arrCountryRegions ? this.sCountryRegion : this.arrCountryRegions[ i ];
+			boolean bValid		= LibPhone.isValidMobileNumber( sPhoneNumber, sRegion, oNumber );
+
+			if ( bValid )
+			{
+				this.arrWords[ i >>> 6 ] |= 1L << i;
+			}
+			if ( null != this.arrNormalized )
+			{
+				this.arrNormalized[ i ] = bValid ? LibPhone.formatE164( sPhoneNumber, sRegion, oNumber ) : null;
+			}
+		}
+	}
+}
@@ -0,0 +1,330 @@
+package cn.airpassport.lib.phone;
+
+import cn.airpassport.lib.common.LibCommon;
+import cn.airpassport.lib.common.LibHash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+
+
+/**
+ *	@class	PhoneBlocklist
+ *
+ *	immutable set of packed phone numbers, see PackedPhoneNumber.
+ *	the numbers are kept in an open addressing hash table of longs with linear probing,
+ *	0 marks an empty slot and the table is at most half full.
+ *	a lookup reads a few longs and allocates nothing, any number of threads may look up at the same time.
+ *
+ *	the table can be written to a file and mapped back read-only, so a restart does not rebuild it:
+ *		long	MAGIC
+ *		long	capacity, a power of 2
+ *		long	size
+ *		long[ capacity ]	slots
+ *	all values are big-endian.
+ */
+public class PhoneBlocklist
+{
+	private static final long MAGIC		= 0x4150424C4B303031L;	//	"APBLK001"
+	private static final int HEADER_LONGS	= 3;
+	private static final int MAX_CAPACITY	= 1 << 27;		//	slots of a 1 GiB file
+	private static final int WRITE_BUFFER_SIZE	= 64 * 1024;
+
+	private static volatile PhoneBlocklist current = new PhoneBlocklist( LongBuffer.wrap( new long[ 2 ] ), 0 );
+
+	//	slots of the hash table, read with absolute gets only
+	private final LongBuffer slots;
+	private final int mask;
+	private final int size;
+
+
+	private PhoneBlocklist( LongBuffer slots, int nSize )
+	{
+		this.slots	= slots;
+		this.mask	= slots.capacity() - 1;
+		this.size	= nSize;
+	}
+
+	/**
+	 *	get the blocklist used by isBlocked
+	 *	@return	PhoneBlocklist, empty until setCurrent is called
+	 */
+	public static PhoneBlocklist getCurrent()
+	{
+		return current;
+	}
+
+	/**
+	 *	replace the blocklist used by isBlocked, readers see either the old or the new blocklist
+	 *	@param	blocklist	-
+	 */
+	public static void setCurrent( PhoneBlocklist blocklist )
+	{
+		if ( null == blocklist )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.blocklist" ) );
+		}
+
+		current = blocklist;
+	}
+
+	/**
+	 *	check if a packed number is in the current blocklist
+	 *	@param	lnPackedNumber	-
+	 *	@return	boolean
+	 */
+	public static boolean isBlocked( long lnPackedNumber )
+	{
+		return current.contains( lnPackedNumber );
+	}
+
+	/**
+	 *	check if a phone number is in the current blocklist
+	 *	@param	sPhoneNumber		-
+	 *	@param	sCountryRegion		-
+	 *	@return	boolean, false for numbers which are not valid
+	 */
+	public static boolean isBlocked( String sPhoneNumber, String sCountryRegion )
+	{
+		return current.contains( LibPhone.toPackedNumber( sPhoneNumber, sCountryRegion ) );
+	}
+
+	/**
+	 *	build a blocklist from packed numbers, PackedPhoneNumber.INVALID and duplicates are skipped
+	 *	@param	arrPackedNumbers	-
+	 *	@return	PhoneBlocklist
+	 */
+	public static PhoneBlocklist build( long[] arrPackedNumbers )
+	{
+		if ( null == arrPackedNumbers )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.numbers" ) );
+		}
+
+		int nCapacity = PhoneBlocklist.calcCapacity( arrPackedNumbers.length );
+		if ( nCapacity < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "too.many.numbers" ) );
+		}
+
+		long[] arrSlots	= new long[ nCapacity ];
+		int nMask	= nCapacity - 1;
+		int nSize	= 0;
+
+		for ( long lnNumber : arrPackedNumbers )
+		{
+			if ( ! PackedPhoneNumber.isValid( lnNumber ) )
+			{
+				continue;
+			}
+
+			int nSlot = PhoneBlocklist.hash( lnNumber ) & nMask;
+			while ( 0 != arrSlots[ nSlot ] && lnNumber != arrSlots[ nSlot ] )
+			{
+				nSlot = ( nSlot + 1 ) & nMask;
+			}
+			if ( 0 == arrSlots[ nSlot ] )
+			{
+				arrSlots[ nSlot ] = lnNumber;
+				nSize ++;
+			}
+		}
+
+		return new PhoneBlocklist( LongBuffer.wrap( arrSlots ), nSize );
+	}
+
+	/**
+	 *	build a blocklist from phone numbers of a region, numbers which are not valid are skipped
+	 *	@param	listPhoneNumbers	-
+	 *	@param	sCountryRegion		-
+	 *	@return	PhoneBlocklist
+	 */
+	public static PhoneBlocklist build( Collection<String> listPhoneNumbers, String sCountryRegion )
+	{
+		if ( null == listPhoneNumbers )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.numbers" ) );
+		}
+
+		long[] arrPackedNumbers	= new long[ listPhoneNumbers.size() ];
+		int i			= 0;
+		for ( String sPhoneNumber : listPhoneNumbers )
+		{
+			arrPackedNumbers[ i ++ ] = LibPhone.toPackedNumber( sPhoneNumber, sCountryRegion );
+		}
+
+		return PhoneBlocklist.build( arrPackedNumbers );
+	}
+
+	/**
+	 *	map a file written by writeTo, read-only.
+	 *	the mapping outlives the file name, so a new snapshot should be written by writeTo
+	 *	and never by changing the mapped file in place.
+	 *	@param	file	-
+	 *	@return	PhoneBlocklist
+	 *	@throws	IOException	if reading fails
+	 */
+	public static PhoneBlocklist map( File file ) throws IOException
+	{
+		if ( null == file )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.file" ) );
+		}
+
+		try ( RandomAccessFile randomAccessFile = new RandomAccessFile( file, "r" );
+			FileChannel channel = randomAccessFile.getChannel() )
+		{
+			long lnFileSize = channel.size();
+			if ( lnFileSize < ( HEADER_LONGS + 2 ) * Long.BYTES || lnFileSize > ( HEADER_LONGS + (long) MAX_CAPACITY ) * Long.BYTES )
+			{
+				throw new IOException( LibCommon.calcErrorCode( new Object(){}, "invalid.size" ) );
+			}
+
+			MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, lnFileSize );
+			long lnMagic	= buffer.getLong( 0 );
+			long lnCapacity	= buffer.getLong( Long.BYTES );
+			long lnSize	= buffer.getLong( 2 * Long.BYTES );
+			if ( MAGIC != lnMagic ||
+				lnCapacity < 2 || 0 != ( lnCapacity & ( lnCapacity - 1 ) ) ||
+				lnSize < 0 || lnSize > lnCapacity / 2 ||
+				lnFileSize != ( HEADER_LONGS + lnCapacity ) * Long.BYTES )
+			{
+				throw new IOException( LibCommon.calcErrorCode( new Object(){}, "invalid.header" ) );
+			}
+
+			buffer.position( HEADER_LONGS * Long.BYTES );
+			return new PhoneBlocklist( buffer.slice().asLongBuffer(), (int) lnSize );
+		}
+	}
+
+	/**
+	 *	write the blocklist to a file, which is replaced at once by renaming a temporary file
+	 *	@param	file	-
+	 *	@throws	IOException	if writing fails
+	 */
+	public void writeTo( File file ) throws IOException
+	{
+		if ( null == file )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.file" ) );
+		}
+
+		File fileTemp = new File( file.getPath() + ".tmp" );
+		try ( RandomAccessFile randomAccessFile = new RandomAccessFile( fileTemp, "rw" );
+			FileChannel channel = randomAccessFile.getChannel() )
+		{
+			channel.truncate( 0 );
+
+			ByteBuffer buffer = ByteBuffer.allocate( WRITE_BUFFER_SIZE );
+			buffer.putLong( MAGIC ).putLong( this.slots.capacity() ).putLong( this.size );
+
+			for ( int i = 0; i < this.slots.capacity(); i ++ )
+			{
+				if ( ! buffer.hasRemaining() )
+				{
+					PhoneBlocklist.flush( buffer, channel );
+				}
+				buffer.putLong( this.slots.get( i ) );
+			}
+			PhoneBlocklist.flush( buffer, channel );
+			channel.force( true );
+		}
+
+		Files.move( fileTemp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	/**
+	 *	check if a packed number is in the blocklist
+	 *	@param	lnPackedNumber	-
+	 *	@return	boolean
+	 */
+	public boolean contains( long lnPackedNumber )
+	{
+		if ( PackedPhoneNumber.INVALID == lnPackedNumber )
+		{
+			return false;
+		}
+
+		//	a mapped file is not trusted to have an empty slot, so the probe is bounded
+		int nSlot = PhoneBlocklist.hash( lnPackedNumber ) & this.mask;
+		for ( int i = 0; i <= this.mask; i ++ )
+		{
+			long lnSlot = this.slots.get( nSlot );
+			if ( lnPackedNumber == lnSlot )
+			{
+				return true;
+			}
+			if ( 0 == lnSlot )
+			{
+				return false;
+			}
+			nSlot = ( nSlot + 1 ) & this.mask;
+		}
+
+		return false;
+	}
+
+	/**
+	 *	check if a phone number is in the blocklist
+	 *	@param	sPhoneNumber		-
+	 *	@param	sCountryRegion		-
+	 *	@return	boolean, false for numbers which are not valid
+	 */
+	public boolean contains( String sPhoneNumber, String sCountryRegion )
+	{
+		return this.contains( LibPhone.toPackedNumber( sPhoneNumber, sCountryRegion ) );
+	}
+
+	public int getSize()
+	{
+		return this.size;
+	}
+	public int getCapacity()
+	{
+		return this.slots.capacity();
+	}
+
+
+	/**
+	 *	@return	int, the smallest power of 2 holding nCount numbers at most half full, -1 if too large
+	 */
+	private static int calcCapacity( int nCount )
+	{
+		int nCapacity = 2;
+		while ( nCapacity / 2 < nCount )
+		{
+			if ( nCapacity >= MAX_CAPACITY )
+			{
+				return -1;
+			}
+			nCapacity <<= 1;
+		}
+
+		return nCapacity;
+	}
+
+	/**
+	 *	finalizer of MurmurHash3, packed numbers differ mostly in their low bits
+	 */
+	private static int hash( long lnKey )
+	{
+		return ( int ) LibHash.mix( lnKey );
+	}
+
+	private static void flush( ByteBuffer buffer, FileChannel channel ) throws IOException
+	{
+		buffer.flip();
+		while ( buffer.hasRemaining() )
+		{
+			channel.write( buffer );
+		}
+		buffer.clear();
+	}
+}
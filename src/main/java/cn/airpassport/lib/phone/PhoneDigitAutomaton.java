@@ -0,0 +1,126 @@
+package cn.airpassport.lib.phone;
+
+
+/**
+ *	@class	PhoneDigitAutomaton
+ *
+ *	deterministic automaton over the digits 0 - 9, compiled from one or more patterns by PhonePatternCompiler.
+ *	each state carries a bitmask of the patterns which accept the digits read so far,
+ *	so a single walk over a number tells which of the patterns match it.
+ */
+class PhoneDigitAutomaton
+{
+	static final int DEAD_STATE = -1;
+
+	private static final long[] POWERS_OF_10 = new long[ 19 ];
+
+	static
+	{
+		POWERS_OF_10[ 0 ] = 1;
+		for ( int i = 1; i < POWERS_OF_10.length; i ++ )
+		{
+			POWERS_OF_10[ i ] = POWERS_OF_10[ i - 1 ] * 10;
+		}
+	}
+
+	//	next state by state * 10 + digit, DEAD_STATE if no pattern can match any more
+	private final int[] transitions;
+
+	//	bit i is set if pattern i accepts in the state
+	private final int[] acceptMasks;
+
+
+	PhoneDigitAutomaton( int[] transitions, int[] acceptMasks )
+	{
+		this.transitions	= transitions;
+		this.acceptMasks	= acceptMasks;
+	}
+
+	/**
+	 *	match all patterns against a whole national significant number
+	 *	@param	nLeadingZeros		zeros in front of lnNationalNumber
+	 *	@param	lnNationalNumber	-
+	 *	@param	nDigits			digits of lnNationalNumber
+	 *	@return	int, bit i is set if pattern i matches the whole number
+	 */
+	int match( int nLeadingZeros, long lnNationalNumber, int nDigits )
+	{
+		int nState = 0;
+		for ( int i = 0; i < nLeadingZeros && DEAD_STATE != nState; i ++ )
+		{
+			nState = this.transitions[ nState * 10 ];
+		}
+
+		long lnDivisor = POWERS_OF_10[ nDigits - 1 ];
+		while ( lnDivisor > 0 && DEAD_STATE != nState )
+		{
+			nState		= this.transitions[ nState * 10 + (int)( lnNationalNumber / lnDivisor % 10 ) ];
+			lnDivisor	/= 10;
+		}
+
+		return DEAD_STATE == nState ? 0 : this.acceptMasks[ nState ];
+	}
+
+	/**
+	 *	check if pattern 0 matches a prefix of a national significant number, like Matcher.lookingAt
+	 *	@param	nLeadingZeros		zeros in front of lnNationalNumber
+	 *	@param	lnNationalNumber	-
+	 *	@param	nDigits			digits of lnNationalNumber
+	 *	@return	boolean
+	 */
+	boolean matchPrefix( int nLeadingZeros, long lnNationalNumber, int nDigits )
+	{
+		int nState = 0;
+		if ( 0 != this.acceptMasks[ nState ] )
+		{
+			return true;
+		}
+
+		long lnDivisor = POWERS_OF_10[ nDigits - 1 ];
+		for ( int i = 0; i < nLeadingZeros + nDigits; i ++ )
+		{
+			int nDigit;
+			if ( i < nLeadingZeros )
+			{
+				nDigit = 0;
+			}
+			else
+			{
+				nDigit		= (int)( lnNationalNumber / lnDivisor % 10 );
+				lnDivisor	/= 10;
+			}
+
+			nState = this.transitions[ nState * 10 + nDigit ];
+			if ( DEAD_STATE == nState )
+			{
+				return false;
+			}
+			if ( 0 != this.acceptMasks[ nState ] )
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	int getStateCount()
+	{
+		return this.acceptMasks.length;
+	}
+
+	/**
+	 *	@return	int, digits of a non-negative number, 1 for 0
+	 */
+	static int countDigits( long lnNumber )
+	{
+		int nDigits = 1;
+		while ( lnNumber >= 10 )
+		{
+			lnNumber /= 10;
+			nDigits ++;
+		}
+
+		return nDigits;
+	}
+}
@@ -0,0 +1,61 @@
+package cn.airpassport.lib.phone;
+
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonemetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+
+/**
+ *	@class	PhoneMetadataLoader
+ *	reads the metadata files shipped with libphonenumber,
+ *	PhoneNumberUtil keeps its own copy of them package-private.
+ */
+class PhoneMetadataLoader
+{
+	private static final String METADATA_FILE_PREFIX = "/com/google/i18n/phonenumbers/data/PhoneNumberMetadataProto_";
+
+
+	/**
+	 *	load the metadata of a region
+	 *	@param	sRegion		region code such as "CN", in upper case
+	 *	@return	PhoneMetadata, null if there is no metadata for the region
+	 */
+	static Phonemetadata.PhoneMetadata loadForRegion( String sRegion )
+	{
+		return PhoneMetadataLoader.load( sRegion );
+	}
+
+	/**
+	 *	load the metadata of a non-geographical entity such as +800
+	 *	@param	nCountryCode	-
+	 *	@return	PhoneMetadata, null if there is no metadata for the country calling code
+	 */
+	static Phonemetadata.PhoneMetadata loadForNonGeographicalRegion( int nCountryCode )
+	{
+		return PhoneMetadataLoader.load( String.valueOf( nCountryCode ) );
+	}
+
+
+	private static Phonemetadata.PhoneMetadata load( String sKey )
+	{
+		try ( InputStream inputStream = PhoneNumberUtil.class.getResourceAsStream( METADATA_FILE_PREFIX + sKey ) )
+		{
+			if ( null == inputStream )
+			{
+				return null;
+			}
+
+			Phonemetadata.PhoneMetadataCollection collection = new Phonemetadata.PhoneMetadataCollection();
+			collection.readExternal( new ObjectInputStream( inputStream ) );
+
+			return collection.getMetadataCount() > 0 ? collection.getMetadataList().get( 0 ) : null;
+		}
+		catch ( IOException e )
+		{
+			return null;
+		}
+	}
+}
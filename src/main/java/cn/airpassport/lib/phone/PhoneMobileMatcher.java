@@ -0,0 +1,276 @@
+package cn.airpassport.lib.phone;
+
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonemetadata;
+import com.google.i18n.phonenumbers.Phonenumber;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ *	@class	PhoneMobileMatcher
+ *
+ *	tells if a parsed number is a valid mobile number, with the same answer as
+ *	PhoneNumberUtil.getNumberType returning MOBILE or FIXED_LINE_OR_MOBILE.
+ *
+ *	the number descriptions of all regions sharing a country calling code are compiled
+ *	into one PhoneDigitAutomaton per region the first time the country calling code is seen,
+ *	so a check is a single walk over the digits plus a few bit operations:
+ *		1, pick the region like PhoneNumberUtil.getRegionCodeForNumber, by leading digits or by a valid type
+ *		2, drop the descriptions whose possible lengths do not contain the length of the number
+ *		3, decide the type in the order of PhoneNumberUtil.getNumberTypeHelper
+ *	a country calling code with a pattern PhonePatternCompiler does not understand falls back to getNumberType.
+ */
+class PhoneMobileMatcher
+{
+	//
+	//	bits of the accept masks, in the order getNumberTypeHelper checks the descriptions
+	//
+	private static final int GENERAL	= 1;
+	private static final int PREMIUM_RATE	= 1 << 1;
+	private static final int TOLL_FREE	= 1 << 2;
+	private static final int SHARED_COST	= 1 << 3;
+	private static final int VOIP		= 1 << 4;
+	private static final int PERSONAL_NUMBER	= 1 << 5;
+	private static final int PAGER		= 1 << 6;
+	private static final int UAN		= 1 << 7;
+	private static final int VOICEMAIL	= 1 << 8;
+	private static final int FIXED_LINE	= 1 << 9;
+	private static final int MOBILE		= 1 << 10;
+
+	//	types which are neither fixed line nor mobile
+	private static final int OTHER_TYPES	= PREMIUM_RATE | TOLL_FREE | SHARED_COST | VOIP | PERSONAL_NUMBER | PAGER | UAN | VOICEMAIL;
+
+	//	PhoneNumberUtil.MAX_LENGTH_FOR_NSN
+	private static final int MAX_LENGTH	= 17;
+
+	//	country calling codes have at most 3 digits
+	private static final int MAX_COUNTRY_CODE = 999;
+
+	//	marks a country calling code answered by getNumberType
+	private static final PhoneMobileMatcher FALLBACK = new PhoneMobileMatcher( new RegionMatcher[ 0 ] );
+
+	//	compiled at first use, by country calling code
+	private static final AtomicReferenceArray<PhoneMobileMatcher> MATCHERS = new AtomicReferenceArray<>( MAX_COUNTRY_CODE + 1 );
+
+	//	regions of the country calling code in the order of PhoneNumberUtil.getRegionCodesForCountryCode
+	private final RegionMatcher[] regions;
+
+
+	private PhoneMobileMatcher( RegionMatcher[] regions )
+	{
+		this.regions = regions;
+	}
+
+	/**
+	 *	compiled descriptions of one region
+	 */
+	private static class RegionMatcher
+	{
+		//	null if the region is chosen by a valid number type
+		final PhoneDigitAutomaton leadingDigits;
+		final PhoneDigitAutomaton descriptions;
+
+		//	bits of the descriptions accepting each length
+		final int[] lengthMasks;
+
+		final boolean bSameMobileAndFixedLine;
+
+		RegionMatcher( PhoneDigitAutomaton leadingDigits, PhoneDigitAutomaton descriptions, int[] lengthMasks, boolean bSameMobileAndFixedLine )
+		{
+			this.leadingDigits		= leadingDigits;
+			this.descriptions		= descriptions;
+			this.lengthMasks		= lengthMasks;
+			this.bSameMobileAndFixedLine	= bSameMobileAndFixedLine;
+		}
+	}
+
+	/**
+	 *	check if a parsed number is a valid mobile number
+	 *	@param	phoneUtil	-
+	 *	@param	oNumber		number returned by PhoneNumberUtil.parse
+	 *	@return	boolean
+	 */
+	static boolean isMobileNumber( PhoneNumberUtil phoneUtil, Phonenumber.PhoneNumber oNumber )
+	{
+		PhoneMobileMatcher matcher = PhoneMobileMatcher.getMatcher( phoneUtil, oNumber.getCountryCode() );
+		if ( FALLBACK == matcher )
+		{
+			PhoneNumberUtil.PhoneNumberType type = phoneUtil.getNumberType( oNumber );
+			return PhoneNumberUtil.PhoneNumberType.MOBILE == type || PhoneNumberUtil.PhoneNumberType.FIXED_LINE_OR_MOBILE == type;
+		}
+
+		int nLeadingZeros	= oNumber.isItalianLeadingZero() ? oNumber.getNumberOfLeadingZeros() : 0;
+		long lnNationalNumber	= oNumber.getNationalNumber();
+		int nDigits		= PhoneDigitAutomaton.countDigits( lnNationalNumber );
+		int nLength		= nLeadingZeros + nDigits;
+		if ( nLeadingZeros < 0 || nLength > MAX_LENGTH )
+		{
+			return false;
+		}
+
+		for ( RegionMatcher region : matcher.regions )
+		{
+			int nMask = region.descriptions.match( nLeadingZeros, lnNationalNumber, nDigits ) & region.lengthMasks[ nLength ];
+			if ( null != region.leadingDigits )
+			{
+				if ( region.leadingDigits.matchPrefix( nLeadingZeros, lnNationalNumber, nDigits ) )
+				{
+					return PhoneMobileMatcher.isMobile( nMask, region.bSameMobileAndFixedLine );
+				}
+			}
+			else if ( PhoneMobileMatcher.isValid( nMask, region.bSameMobileAndFixedLine ) )
+			{
+				return PhoneMobileMatcher.isMobile( nMask, region.bSameMobileAndFixedLine );
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 *	compile the matcher of a country calling code now, see LibPhone.warmUp
+	 *	@param	phoneUtil	-
+	 *	@param	nCountryCode	-
+	 *	@return	boolean, false if the country calling code falls back to getNumberType
+	 */
+	static boolean prepare( PhoneNumberUtil phoneUtil, int nCountryCode )
+	{
+		return FALLBACK != PhoneMobileMatcher.getMatcher( phoneUtil, nCountryCode );
+	}
+
+
+	/**
+	 *	getNumberTypeHelper returns something other than UNKNOWN
+	 */
+	private static boolean isValid( int nMask, boolean bSameMobileAndFixedLine )
+	{
+		if ( 0 == ( nMask & GENERAL ) )
+		{
+			return false;
+		}
+
+		return 0 != ( nMask & ( OTHER_TYPES | FIXED_LINE ) ) ||
+			( ! bSameMobileAndFixedLine && 0 != ( nMask & MOBILE ) );
+	}
+
+	/**
+	 *	getNumberTypeHelper returns MOBILE or FIXED_LINE_OR_MOBILE
+	 */
+	private static boolean isMobile( int nMask, boolean bSameMobileAndFixedLine )
+	{
+		if ( 0 == ( nMask & GENERAL ) || 0 != ( nMask & OTHER_TYPES ) )
+		{
+			return false;
+		}
+		if ( 0 != ( nMask & FIXED_LINE ) )
+		{
+			return bSameMobileAndFixedLine || 0 != ( nMask & MOBILE );
+		}
+
+		return ! bSameMobileAndFixedLine && 0 != ( nMask & MOBILE );
+	}
+
+	private static PhoneMobileMatcher getMatcher( PhoneNumberUtil phoneUtil, int nCountryCode )
+	{
+		if ( nCountryCode <= 0 || nCountryCode > MAX_COUNTRY_CODE )
+		{
+			return FALLBACK;
+		}
+
+		PhoneMobileMatcher matcher = MATCHERS.get( nCountryCode );
+		if ( null == matcher )
+		{
+			//	compiling twice in a race is harmless, the results are equal
+			matcher = PhoneMobileMatcher.compile( phoneUtil, nCountryCode );
+			MATCHERS.compareAndSet( nCountryCode, null, matcher );
+		}
+
+		return matcher;
+	}
+
+	private static PhoneMobileMatcher compile( PhoneNumberUtil phoneUtil, int nCountryCode )
+	{
+		List<String> listRegions = phoneUtil.getRegionCodesForCountryCode( nCountryCode );
+		if ( listRegions.isEmpty() )
+		{
+			return FALLBACK;
+		}
+
+		RegionMatcher[] arrRegions = new RegionMatcher[ listRegions.size() ];
+		for ( int i = 0; i < arrRegions.length; i ++ )
+		{
+			String sRegion = listRegions.get( i );
+			Phonemetadata.PhoneMetadata metadata = PhoneNumberUtil.REGION_CODE_FOR_NON_GEO_ENTITY.equals( sRegion ) ?
+				PhoneMetadataLoader.loadForNonGeographicalRegion( nCountryCode ) :
+				PhoneMetadataLoader.loadForRegion( sRegion );
+			if ( null == metadata )
+			{
+				return FALLBACK;
+			}
+
+			try
+			{
+				arrRegions[ i ] = PhoneMobileMatcher.compileRegion( metadata, 1 == arrRegions.length );
+			}
+			catch ( IllegalArgumentException e )
+			{
+				return FALLBACK;
+			}
+		}
+
+		return new PhoneMobileMatcher( arrRegions );
+	}
+
+	private static RegionMatcher compileRegion( Phonemetadata.PhoneMetadata metadata, boolean bOnlyRegion )
+	{
+		Phonemetadata.PhoneNumberDesc[] arrDescriptions = new Phonemetadata.PhoneNumberDesc[]
+			{
+				metadata.getGeneralDesc(),
+				metadata.getPremiumRate(),
+				metadata.getTollFree(),
+				metadata.getSharedCost(),
+				metadata.getVoip(),
+				metadata.getPersonalNumber(),
+				metadata.getPager(),
+				metadata.getUan(),
+				metadata.getVoicemail(),
+				metadata.getFixedLine(),
+				metadata.getMobile()
+			};
+
+		String[] arrPatterns	= new String[ arrDescriptions.length ];
+		int[] arrLengthMasks	= new int[ MAX_LENGTH + 1 ];
+
+		for ( int i = 0; i < arrDescriptions.length; i ++ )
+		{
+			arrPatterns[ i ] = arrDescriptions[ i ].getNationalNumberPattern();
+
+			//	no possible lengths means the lengths of the general description, which is checked first
+			List<Integer> listLengths = arrDescriptions[ i ].getPossibleLengthList();
+			for ( int nLength = 0; nLength <= MAX_LENGTH; nLength ++ )
+			{
+				if ( listLengths.isEmpty() || listLengths.contains( nLength ) )
+				{
+					arrLengthMasks[ nLength ] |= 1 << i;
+				}
+			}
+		}
+
+		//	getRegionCodeForNumber does not look at leading digits if the country calling code has a single region
+		PhoneDigitAutomaton leadingDigits = null;
+		if ( ! bOnlyRegion && metadata.hasLeadingDigits() )
+		{
+			leadingDigits = PhonePatternCompiler.compile( new String[]{ metadata.getLeadingDigits() } );
+		}
+
+		return new RegionMatcher
+			(
+				leadingDigits,
+				PhonePatternCompiler.compile( arrPatterns ),
+				arrLengthMasks,
+				metadata.getSameMobileAndFixedLinePattern()
+			);
+	}
+}
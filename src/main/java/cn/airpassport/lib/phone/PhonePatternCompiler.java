@@ -0,0 +1,512 @@
+package cn.airpassport.lib.phone;
+
+import cn.airpassport.lib.common.LibCommon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ *	@class	PhonePatternCompiler
+ *
+ *	compiles the national number patterns of libphonenumber metadata into a PhoneDigitAutomaton.
+ *	the patterns only use a small subset of java.util.regex over digits:
+ *		0-9  \d  [2-9]  (?:...)  |  ?  *  +  {n}  {n,}  {n,m}
+ *	the patterns are parsed into a tree, built into a nondeterministic automaton and then
+ *	made deterministic by subset construction.
+ *	anything else is rejected with IllegalArgumentException, so callers can fall back to java.util.regex.
+ */
+class PhonePatternCompiler
+{
+	//	the most patterns one automaton can tell apart, see PhoneDigitAutomaton.acceptMasks
+	static final int MAX_PATTERNS = 31;
+
+	//	bound of the subset construction, metadata patterns stay far below it
+	private static final int MAX_STATES = 100000;
+
+	private static final int ALL_DIGITS	= ( 1 << 10 ) - 1;
+	private static final int UNBOUNDED	= -1;
+
+	private static final int NODE_CLASS	= 0;
+	private static final int NODE_CONCAT	= 1;
+	private static final int NODE_ALTERNATION	= 2;
+	private static final int NODE_REPEAT	= 3;
+
+	//
+	//	parser state
+	//
+	private String sPattern;
+	private int nPosition;
+
+	//
+	//	nondeterministic automaton: a node either reads one digit of its mask and moves to its target,
+	//	or has a mask of 0 and moves along its epsilon edges
+	//
+	private int[] masks		= new int[ 256 ];
+	private int[] targets		= new int[ 256 ];
+	private int[] epsilonHeads	= new int[ 256 ];
+	private int nNodes		= 0;
+
+	private int[] edgeTargets	= new int[ 256 ];
+	private int[] edgeNexts		= new int[ 256 ];
+	private int nEdges		= 0;
+
+
+	private PhonePatternCompiler()
+	{
+	}
+
+	/**
+	 *	compile patterns into one automaton, pattern i sets bit i of the accept mask
+	 *	@param	arrPatterns	patterns matched against whole numbers, null or "" for a pattern which never matches
+	 *	@return	PhoneDigitAutomaton
+	 */
+	static PhoneDigitAutomaton compile( String[] arrPatterns )
+	{
+		if ( arrPatterns.length > MAX_PATTERNS )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "too.many.patterns" ) );
+		}
+
+		PhonePatternCompiler compiler	= new PhonePatternCompiler();
+		int nStart			= compiler.newNode( 0 );
+		int[] arrFinalTags		= new int[ 0 ];
+
+		for ( int i = 0; i < arrPatterns.length; i ++ )
+		{
+			if ( null == arrPatterns[ i ] || arrPatterns[ i ].isEmpty() )
+			{
+				continue;
+			}
+
+			int[] arrFragment = compiler.build( compiler.parse( arrPatterns[ i ] ) );
+			compiler.addEpsilon( nStart, arrFragment[ 0 ] );
+
+			if ( arrFinalTags.length < compiler.nNodes )
+			{
+				arrFinalTags = Arrays.copyOf( arrFinalTags, Math.max( compiler.nNodes, arrFinalTags.length * 2 ) );
+			}
+			arrFinalTags[ arrFragment[ 1 ] ] |= 1 << i;
+		}
+
+		return compiler.determinize( nStart, Arrays.copyOf( arrFinalTags, compiler.nNodes ) );
+	}
+
+
+	/**
+	 *	parse tree node, see NODE_*
+	 */
+	private static class Node
+	{
+		final int nType;
+		final int nMask;
+		final List<Node> listChildren;
+		final int nMin;
+		final int nMax;
+
+		Node( int nType, int nMask, List<Node> listChildren, int nMin, int nMax )
+		{
+			this.nType		= nType;
+			this.nMask		= nMask;
+			this.listChildren	= listChildren;
+			this.nMin		= nMin;
+			this.nMax		= nMax;
+		}
+	}
+
+	private Node parse( String sPattern )
+	{
+		this.sPattern	= sPattern;
+		this.nPosition	= 0;
+
+		Node node = this.parseAlternation();
+		if ( this.nPosition != sPattern.length() )
+		{
+			throw this.unsupported();
+		}
+
+		return node;
+	}
+
+	private Node parseAlternation()
+	{
+		List<Node> listAlternatives = new ArrayList<>();
+		listAlternatives.add( this.parseConcat() );
+		while ( this.peek() == '|' )
+		{
+			this.nPosition ++;
+			listAlternatives.add( this.parseConcat() );
+		}
+
+		return 1 == listAlternatives.size() ? listAlternatives.get( 0 ) : new Node( NODE_ALTERNATION, 0, listAlternatives, 0, 0 );
+	}
+
+	private Node parseConcat()
+	{
+		List<Node> listItems = new ArrayList<>();
+		while ( this.nPosition < this.sPattern.length() && '|' != this.peek() && ')' != this.peek() )
+		{
+			listItems.add( this.parseQuantifier( this.parseAtom() ) );
+		}
+
+		return 1 == listItems.size() ? listItems.get( 0 ) : new Node( NODE_CONCAT, 0, listItems, 0, 0 );
+	}
+
+	private Node parseAtom()
+	{
+		char c = this.sPattern.charAt( this.nPosition ++ );
+		if ( c >= '0' && c <= '9' )
+		{
+			return new Node( NODE_CLASS, 1 << ( c - '0' ), null, 0, 0 );
+		}
+
+		switch ( c )
+		{
+			case '\\':
+				this.expect( 'd' );
+				return new Node( NODE_CLASS, ALL_DIGITS, null, 0, 0 );
+			case '[':
+				return new Node( NODE_CLASS, this.parseClass(), null, 0, 0 );
+			case '(':
+				this.expect( '?' );
+				this.expect( ':' );
+				Node node = this.parseAlternation();
+				this.expect( ')' );
+				return node;
+			default:
+				throw this.unsupported();
+		}
+	}
+
+	/**
+	 *	@return	int, mask of the digits in a class such as [0-35-9], the '[' already read
+	 */
+	private int parseClass()
+	{
+		int nMask = 0;
+		while ( ']' != this.peek() )
+		{
+			if ( this.nPosition >= this.sPattern.length() )
+			{
+				throw this.unsupported();
+			}
+
+			char c = this.sPattern.charAt( this.nPosition ++ );
+			if ( '\\' == c )
+			{
+				this.expect( 'd' );
+				nMask |= ALL_DIGITS;
+				continue;
+			}
+			if ( c < '0' || c > '9' )
+			{
+				throw this.unsupported();
+			}
+
+			char cLast = c;
+			if ( '-' == this.peek() && this.nPosition + 1 < this.sPattern.length() && ']' != this.sPattern.charAt( this.nPosition + 1 ) )
+			{
+				this.nPosition ++;
+				cLast = this.sPattern.charAt( this.nPosition ++ );
+				if ( cLast < c || cLast > '9' )
+				{
+					throw this.unsupported();
+				}
+			}
+			for ( char cDigit = c; cDigit <= cLast; cDigit ++ )
+			{
+				nMask |= 1 << ( cDigit - '0' );
+			}
+		}
+		this.nPosition ++;
+
+		return nMask;
+	}
+
+	private Node parseQuantifier( Node node )
+	{
+		int nMin;
+		int nMax;
+		switch ( this.peek() )
+		{
+			case '?':
+				nMin = 0;
+				nMax = 1;
+				break;
+			case '*':
+				nMin = 0;
+				nMax = UNBOUNDED;
+				break;
+			case '+':
+				nMin = 1;
+				nMax = UNBOUNDED;
+				break;
+			case '{':
+				this.nPosition ++;
+				nMin = this.parseNumber();
+				nMax = nMin;
+				if ( ',' == this.peek() )
+				{
+					this.nPosition ++;
+					nMax = '}' == this.peek() ? UNBOUNDED : this.parseNumber();
+				}
+				if ( '}' != this.peek() || ( UNBOUNDED != nMax && nMax < nMin ) )
+				{
+					throw this.unsupported();
+				}
+				break;
+			default:
+				return node;
+		}
+		this.nPosition ++;
+
+		//	lazy and possessive quantifiers are not used by the metadata
+		char c = this.peek();
+		if ( '?' == c || '*' == c || '+' == c || '{' == c )
+		{
+			throw this.unsupported();
+		}
+
+		return new Node( NODE_REPEAT, 0, Arrays.asList( node ), nMin, nMax );
+	}
+
+	private int parseNumber()
+	{
+		int nStart	= this.nPosition;
+		int nNumber	= 0;
+		while ( this.peek() >= '0' && this.peek() <= '9' && this.nPosition - nStart < 3 )
+		{
+			nNumber = nNumber * 10 + this.sPattern.charAt( this.nPosition ++ ) - '0';
+		}
+		if ( nStart == this.nPosition )
+		{
+			throw this.unsupported();
+		}
+
+		return nNumber;
+	}
+
+	private char peek()
+	{
+		return this.nPosition < this.sPattern.length() ? this.sPattern.charAt( this.nPosition ) : '\0';
+	}
+
+	private void expect( char c )
+	{
+		if ( c != this.peek() )
+		{
+			throw this.unsupported();
+		}
+		this.nPosition ++;
+	}
+
+	private IllegalArgumentException unsupported()
+	{
+		return new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "unsupported.pattern" ) );
+	}
+
+	/**
+	 *	build a fresh copy of a parse tree into the nondeterministic automaton
+	 *	@return	int[], { start node, end node }, the end node has no edges yet
+	 */
+	private int[] build( Node node )
+	{
+		int nStart;
+		int nEnd;
+
+		switch ( node.nType )
+		{
+			case NODE_CLASS:
+				nStart			= this.newNode( node.nMask );
+				nEnd			= this.newNode( 0 );
+				this.targets[ nStart ]	= nEnd;
+				break;
+
+			case NODE_CONCAT:
+				nStart	= this.newNode( 0 );
+				nEnd	= nStart;
+				for ( Node child : node.listChildren )
+				{
+					int[] arrChild = this.build( child );
+					this.addEpsilon( nEnd, arrChild[ 0 ] );
+					nEnd = arrChild[ 1 ];
+				}
+				break;
+
+			case NODE_ALTERNATION:
+				nStart	= this.newNode( 0 );
+				nEnd	= this.newNode( 0 );
+				for ( Node child : node.listChildren )
+				{
+					int[] arrChild = this.build( child );
+					this.addEpsilon( nStart, arrChild[ 0 ] );
+					this.addEpsilon( arrChild[ 1 ], nEnd );
+				}
+				break;
+
+			default:
+				nStart	= this.newNode( 0 );
+				nEnd	= nStart;
+				Node child = node.listChildren.get( 0 );
+				for ( int i = 0; i < node.nMin; i ++ )
+				{
+					int[] arrChild = this.build( child );
+					this.addEpsilon( nEnd, arrChild[ 0 ] );
+					nEnd = arrChild[ 1 ];
+				}
+
+				if ( UNBOUNDED == node.nMax )
+				{
+					int nLoop = this.newNode( 0 );
+					int[] arrChild = this.build( child );
+					this.addEpsilon( nEnd, nLoop );
+					this.addEpsilon( nLoop, arrChild[ 0 ] );
+					this.addEpsilon( arrChild[ 1 ], nLoop );
+					nEnd = nLoop;
+				}
+				else if ( node.nMax > node.nMin )
+				{
+					//	each optional copy may skip to the end
+					int nSkip = this.newNode( 0 );
+					for ( int i = node.nMin; i < node.nMax; i ++ )
+					{
+						int[] arrChild = this.build( child );
+						this.addEpsilon( nEnd, nSkip );
+						this.addEpsilon( nEnd, arrChild[ 0 ] );
+						nEnd = arrChild[ 1 ];
+					}
+					this.addEpsilon( nEnd, nSkip );
+					nEnd = nSkip;
+				}
+				break;
+		}
+
+		return new int[]{ nStart, nEnd };
+	}
+
+	private int newNode( int nMask )
+	{
+		if ( this.nNodes == this.masks.length )
+		{
+			int nCapacity		= this.nNodes * 2;
+			this.masks		= Arrays.copyOf( this.masks, nCapacity );
+			this.targets		= Arrays.copyOf( this.targets, nCapacity );
+			this.epsilonHeads	= Arrays.copyOf( this.epsilonHeads, nCapacity );
+		}
+
+		this.masks[ this.nNodes ]		= nMask;
+		this.targets[ this.nNodes ]		= -1;
+		this.epsilonHeads[ this.nNodes ]	= -1;
+
+		return this.nNodes ++;
+	}
+
+	private void addEpsilon( int nFrom, int nTo )
+	{
+		if ( this.nEdges == this.edgeTargets.length )
+		{
+			this.edgeTargets	= Arrays.copyOf( this.edgeTargets, this.nEdges * 2 );
+			this.edgeNexts		= Arrays.copyOf( this.edgeNexts, this.nEdges * 2 );
+		}
+
+		this.edgeTargets[ this.nEdges ]	= nTo;
+		this.edgeNexts[ this.nEdges ]	= this.epsilonHeads[ nFrom ];
+		this.epsilonHeads[ nFrom ]	= this.nEdges ++;
+	}
+
+	/**
+	 *	subset construction, state 0 of the result is the closure of nStart
+	 */
+	private PhoneDigitAutomaton determinize( int nStart, int[] arrFinalTags )
+	{
+		List<BitSet> listStates		= new ArrayList<>();
+		Map<BitSet,Integer> mapStates	= new HashMap<>();
+		int[] arrStack			= new int[ this.nNodes ];
+
+		BitSet startSet = new BitSet( this.nNodes );
+		startSet.set( nStart );
+		this.closure( startSet, arrStack );
+		listStates.add( startSet );
+		mapStates.put( startSet, 0 );
+
+		int[] arrTransitions	= new int[ 64 * 10 ];
+		int[] arrAcceptMasks	= new int[ 64 ];
+
+		for ( int nState = 0; nState < listStates.size(); nState ++ )
+		{
+			if ( nState * 10 + 10 > arrTransitions.length )
+			{
+				arrTransitions	= Arrays.copyOf( arrTransitions, arrTransitions.length * 2 );
+				arrAcceptMasks	= Arrays.copyOf( arrAcceptMasks, arrAcceptMasks.length * 2 );
+			}
+
+			BitSet set = listStates.get( nState );
+			for ( int nNode = set.nextSetBit( 0 ); nNode >= 0; nNode = set.nextSetBit( nNode + 1 ) )
+			{
+				arrAcceptMasks[ nState ] |= arrFinalTags[ nNode ];
+			}
+
+			for ( int nDigit = 0; nDigit < 10; nDigit ++ )
+			{
+				BitSet next = new BitSet( this.nNodes );
+				for ( int nNode = set.nextSetBit( 0 ); nNode >= 0; nNode = set.nextSetBit( nNode + 1 ) )
+				{
+					if ( 0 != ( this.masks[ nNode ] & ( 1 << nDigit ) ) )
+					{
+						next.set( this.targets[ nNode ] );
+					}
+				}
+
+				if ( next.isEmpty() )
+				{
+					arrTransitions[ nState * 10 + nDigit ] = PhoneDigitAutomaton.DEAD_STATE;
+					continue;
+				}
+
+				this.closure( next, arrStack );
+				Integer nNext = mapStates.get( next );
+				if ( null == nNext )
+				{
+					if ( listStates.size() >= MAX_STATES )
+					{
+						throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "too.many.states" ) );
+					}
+					nNext = listStates.size();
+					listStates.add( next );
+					mapStates.put( next, nNext );
+				}
+				arrTransitions[ nState * 10 + nDigit ] = nNext;
+			}
+		}
+
+		int nStates = listStates.size();
+		return new PhoneDigitAutomaton( Arrays.copyOf( arrTransitions, nStates * 10 ), Arrays.copyOf( arrAcceptMasks, nStates ) );
+	}
+
+	private void closure( BitSet set, int[] arrStack )
+	{
+		int nTop = 0;
+		for ( int nNode = set.nextSetBit( 0 ); nNode >= 0; nNode = set.nextSetBit( nNode + 1 ) )
+		{
+			arrStack[ nTop ++ ] = nNode;
+		}
+
+		while ( nTop > 0 )
+		{
+			int nNode = arrStack[ -- nTop ];
+			for ( int nEdge = this.epsilonHeads[ nNode ]; nEdge >= 0; nEdge = this.edgeNexts[ nEdge ] )
+			{
+				int nTarget = this.edgeTargets[ nEdge ];
+				if ( ! set.get( nTarget ) )
+				{
+					set.set( nTarget );
+					arrStack[ nTop ++ ] = nTarget;
+				}
+			}
+		}
+	}
+}
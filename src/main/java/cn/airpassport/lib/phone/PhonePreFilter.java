@@ -0,0 +1,332 @@
+package cn.airpassport.lib.phone;
+
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonemetadata;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ *	@class	PhonePreFilter
+ *
+ *	cheap lexical checks run before PhoneNumberUtil.parse.
+ *	every input rejected here would make parse throw or isValidNumber return false,
+ *	so the verdict of isValidMobileNumber is the same with or without the filter.
+ *
+ *	characters:
+ *		parse keeps the text from the first digit or plus sign to the last letter, number or '#',
+ *		and fails with NOT_A_NUMBER if that range has a char its patterns never accept.
+ *		';' (RFC 3966 parameters), '/' and '\' (second number) can cut the range, inputs with them skip the check.
+ *	digits:
+ *		the national number can not have more digits than the input has digits and letters (vanity numbers)
+ *		plus what the national prefix transform rule inserts, so inputs shorter than the shortest possible
+ *		length of the region are rejected.
+ *		numbers written with digits and plain punctuation only can not have an extension,
+ *		so inputs with more digits than the longest possible length plus prefixes are rejected.
+ */
+class PhonePreFilter
+{
+	static final int PASSED			= 0;
+	static final int REJECTED_CHARACTERS	= 1;
+	static final int REJECTED_LENGTH	= 2;
+
+	//	the same as PhoneNumberUtil.MAX_INPUT_STRING_LENGTH
+	private static final int MAX_INPUT_LENGTH = 250;
+
+	//	digits parse may strip in front of the national number: international prefix, country code, national prefix
+	private static final int MAX_PREFIX_DIGITS = 16;
+
+	//	ASCII chars which never appear in a number accepted by PhoneNumberUtil
+	private static final boolean[] FORBIDDEN_CHARS = new boolean[ 128 ];
+
+	//	minimum digits of a valid number by default region, indexed by ( letter1 - 'A' ) * 26 + ( letter2 - 'A' )
+	private static final byte[] REGION_MIN_DIGITS = new byte[ 26 * 26 ];
+
+	//	minimum digits of a valid international number, and of any number for an unknown default region
+	private static final int INTERNATIONAL_MIN_DIGITS;
+
+	//	maximum digits of a valid number written with digits and plain punctuation only
+	private static final int MAX_PLAIN_DIGITS;
+
+	static
+	{
+		for ( int c = 0; c < 0x20; c ++ )
+		{
+			FORBIDDEN_CHARS[ c ] = '\t' != c;
+		}
+		for ( char c : "!\"$%&'<=>?@^_`{|}\u007f".toCharArray() )
+		{
+			FORBIDDEN_CHARS[ c ] = true;
+		}
+
+		//
+		//	the national number has a possible length of its region, and has lost the country code
+		//	and gained at most the literal digits of the national prefix transform rule
+		//
+		PhoneNumberUtil phoneUtil	= PhoneNumberUtil.getInstance();
+		int nInternationalMin		= Integer.MAX_VALUE;
+		int nGlobalMax			= 0;
+
+		//	each region is read once, regions sharing a country code look at each other below
+		Map<String,Phonemetadata.PhoneMetadata> mapMetadata = new HashMap<>();
+		for ( String sRegion : phoneUtil.getSupportedRegions() )
+		{
+			mapMetadata.put( sRegion, PhoneMetadataLoader.loadForRegion( sRegion ) );
+		}
+
+		for ( String sRegion : phoneUtil.getSupportedRegions() )
+		{
+			Phonemetadata.PhoneMetadata metadata = mapMetadata.get( sRegion );
+			int nCountryCodeDigits = String.valueOf( phoneUtil.getCountryCodeForRegion( sRegion ) ).length();
+
+			nInternationalMin	= Math.min( nInternationalMin, nCountryCodeDigits + getMinPossibleLength( metadata ) - getTransformDigits( metadata ) );
+			nGlobalMax		= Math.max( nGlobalMax, getMaxPossibleLength( metadata ) );
+		}
+		for ( int nCountryCode : phoneUtil.getSupportedGlobalNetworkCallingCodes() )
+		{
+			Phonemetadata.PhoneMetadata metadata = PhoneMetadataLoader.loadForNonGeographicalRegion( nCountryCode );
+			int nCountryCodeDigits = String.valueOf( nCountryCode ).length();
+
+			nInternationalMin	= Math.min( nInternationalMin, nCountryCodeDigits + getMinPossibleLength( metadata ) - getTransformDigits( metadata ) );
+			nGlobalMax		= Math.max( nGlobalMax, getMaxPossibleLength( metadata ) );
+		}
+
+		INTERNATIONAL_MIN_DIGITS	= Math.max( 0, nInternationalMin );
+		MAX_PLAIN_DIGITS		= nGlobalMax + MAX_PREFIX_DIGITS;
+
+		Arrays.fill( REGION_MIN_DIGITS, (byte) INTERNATIONAL_MIN_DIGITS );
+
+		for ( String sRegion : phoneUtil.getSupportedRegions() )
+		{
+			//
+			//	a national number may belong to any region sharing the country code,
+			//	and only the default region strips its national prefix from it
+			//
+			int nTransformDigits	= getTransformDigits( mapMetadata.get( sRegion ) );
+			int nMin		= INTERNATIONAL_MIN_DIGITS;
+
+			for ( String sSibling : phoneUtil.getRegionCodesForCountryCode( phoneUtil.getCountryCodeForRegion( sRegion ) ) )
+			{
+				nMin = Math.min( nMin, getMinPossibleLength( mapMetadata.get( sSibling ) ) - nTransformDigits );
+			}
+
+			REGION_MIN_DIGITS[ PhonePreFilter.upperCaseRegionIndexOf( sRegion ) ] = (byte) Math.max( 0, nMin );
+		}
+	}
+
+
+	/**
+	 *	run the static initializer, which reads the metadata of every supported region,
+	 *	so the first check does not pay for it
+	 */
+	static void initialize()
+	{
+	}
+
+	/**
+	 *	check the input before parsing it
+	 *	@param	sPhoneNumber	not blank
+	 *	@param	sRegion		default region passed to parse, not blank
+	 *	@return	int, PASSED or the stage which rejected the input
+	 */
+	static int check( String sPhoneNumber, String sRegion )
+	{
+		int nLength = sPhoneNumber.length();
+		if ( nLength > MAX_INPUT_LENGTH )
+		{
+			return REJECTED_LENGTH;
+		}
+
+		int nStart		= -1;
+		int nEnd		= -1;
+		int nDigits		= 0;
+		int nLetters		= 0;
+		boolean bPlain		= true;
+		boolean bCutting	= false;
+
+		for ( int i = 0; i < nLength; i ++ )
+		{
+			char c = sPhoneNumber.charAt( i );
+			if ( Character.isDigit( c ) )
+			{
+				nDigits ++;
+				nEnd = i;
+				if ( nStart < 0 )
+				{
+					nStart = i;
+				}
+				continue;
+			}
+
+			if ( '+' == c || '＋' == c )
+			{
+				if ( nStart < 0 )
+				{
+					nStart = i;
+				}
+				continue;
+			}
+
+			if ( Character.isLetter( c ) )
+			{
+				//	letters become digits when they map to A-Z, see PhoneNumberUtil.ALPHA_PHONE_MAPPINGS
+				char cUpper = Character.toUpperCase( c );
+				if ( cUpper >= 'A' && cUpper <= 'Z' )
+				{
+					nLetters ++;
+				}
+				bPlain	= false;
+				nEnd	= i;
+				continue;
+			}
+
+			switch ( c )
+			{
+				case ' ':
+				case '-':
+				case '.':
+				case '(':
+				case ')':
+					break;
+				case ';':
+				case '/':
+				case '\\':
+					bCutting	= true;
+					bPlain		= false;
+					break;
+				default:
+					bPlain = false;
+					if ( '#' == c || isNumber( c ) )
+					{
+						//	kept at the end of the number by parse
+						nEnd = i;
+					}
+					break;
+			}
+		}
+
+		if ( nDigits == 0 )
+		{
+			return REJECTED_CHARACTERS;
+		}
+
+		if ( ! bCutting )
+		{
+			for ( int i = nStart + 1; i < nEnd; i ++ )
+			{
+				char c = sPhoneNumber.charAt( i );
+				if ( c < 128 && FORBIDDEN_CHARS[ c ] )
+				{
+					return REJECTED_CHARACTERS;
+				}
+			}
+		}
+
+		if ( nDigits + nLetters < PhonePreFilter.getMinDigits( sRegion ) )
+		{
+			return REJECTED_LENGTH;
+		}
+		if ( bPlain && nDigits > MAX_PLAIN_DIGITS )
+		{
+			return REJECTED_LENGTH;
+		}
+
+		return PASSED;
+	}
+
+
+	private static int getMinDigits( String sRegion )
+	{
+		int nIndex = PhonePreFilter.upperCaseRegionIndexOf( sRegion );
+		return nIndex >= 0 ? REGION_MIN_DIGITS[ nIndex ] : INTERNATIONAL_MIN_DIGITS;
+	}
+
+	/**
+	 *	PhoneNumberUtil only knows regions in upper case, a lower case region is as unknown as "XX"
+	 */
+	private static int upperCaseRegionIndexOf( String sRegion )
+	{
+		if ( 2 != sRegion.length() )
+		{
+			return -1;
+		}
+
+		int nFirst	= sRegion.charAt( 0 ) - 'A';
+		int nSecond	= sRegion.charAt( 1 ) - 'A';
+		if ( nFirst < 0 || nFirst >= 26 || nSecond < 0 || nSecond >= 26 )
+		{
+			return -1;
+		}
+
+		return nFirst * 26 + nSecond;
+	}
+
+	private static boolean isNumber( char c )
+	{
+		int nType = Character.getType( c );
+		return Character.LETTER_NUMBER == nType || Character.OTHER_NUMBER == nType;
+	}
+
+	/**
+	 *	@return	int, 0 if unknown
+	 */
+	private static int getMinPossibleLength( Phonemetadata.PhoneMetadata metadata )
+	{
+		int nMin = Integer.MAX_VALUE;
+		if ( null != metadata )
+		{
+			for ( int nPossibleLength : metadata.getGeneralDesc().getPossibleLengthList() )
+			{
+				if ( nPossibleLength > 0 )
+				{
+					nMin = Math.min( nMin, nPossibleLength );
+				}
+			}
+		}
+
+		return Integer.MAX_VALUE == nMin ? 0 : nMin;
+	}
+
+	/**
+	 *	@return	int, MAX_LENGTH_FOR_NSN if unknown
+	 */
+	private static int getMaxPossibleLength( Phonemetadata.PhoneMetadata metadata )
+	{
+		int nMax = 0;
+		if ( null != metadata )
+		{
+			for ( int nPossibleLength : metadata.getGeneralDesc().getPossibleLengthList() )
+			{
+				nMax = Math.max( nMax, nPossibleLength );
+			}
+		}
+
+		return 0 == nMax ? 17 : nMax;
+	}
+
+	/**
+	 *	count the digits a national prefix transform rule such as "0549$1" inserts, group references excluded
+	 */
+	private static int getTransformDigits( Phonemetadata.PhoneMetadata metadata )
+	{
+		if ( null == metadata || ! metadata.hasNationalPrefixTransformRule() )
+		{
+			return 0;
+		}
+
+		String sRule	= metadata.getNationalPrefixTransformRule();
+		int nDigits	= 0;
+		for ( int i = 0; i < sRule.length(); i ++ )
+		{
+			char c = sRule.charAt( i );
+			if ( c >= '0' && c <= '9' && ( 0 == i || '$' != sRule.charAt( i - 1 ) ) )
+			{
+				nDigits ++;
+			}
+		}
+
+		return nDigits;
+	}
+}
@@ -0,0 +1,105 @@
+package cn.airpassport.lib.phone;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ *	@class	PhoneValidationStats
+ *	counts the stage at which LibPhone.isValidMobileNumber decided each input
+ */
+public class PhoneValidationStats
+{
+	public enum Stage
+	{
+		//	blank number or region
+		REJECTED_BLANK,
+
+		//	char not allowed in a phone number, or no digit at all
+		REJECTED_CHARACTERS,
+
+		//	too few or too many digits for the region
+		REJECTED_LENGTH,
+
+		//	answered by the validation cache
+		CACHE_HIT,
+
+		//	PhoneNumberUtil.parse threw NumberParseException
+		PARSE_ERROR,
+
+		//	parsed or looked up in the China prefix table, but not a valid mobile number
+		INVALID,
+
+		//	valid mobile number
+		VALID
+	}
+
+	private static final Stage[] STAGES = Stage.values();
+
+	private final LongAdder[] counters = new LongAdder[ STAGES.length ];
+
+
+	PhoneValidationStats()
+	{
+		for ( int i = 0; i < this.counters.length; i ++ )
+		{
+			this.counters[ i ] = new LongAdder();
+		}
+	}
+
+	void increment( Stage stage )
+	{
+		this.counters[ stage.ordinal() ].increment();
+	}
+
+	/**
+	 *	get the number of inputs decided at a stage
+	 *	@param	stage	-
+	 *	@return	long
+	 */
+	public long getCount( Stage stage )
+	{
+		return this.counters[ stage.ordinal() ].sum();
+	}
+
+	/**
+	 *	get the number of inputs seen by all stages
+	 *	@return	long
+	 */
+	public long getTotalCount()
+	{
+		long lnTotal = 0;
+		for ( LongAdder counter : this.counters )
+		{
+			lnTotal += counter.sum();
+		}
+
+		return lnTotal;
+	}
+
+	/**
+	 *	reset all counters to 0
+	 */
+	public void reset()
+	{
+		for ( LongAdder counter : this.counters )
+		{
+			counter.reset();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder( "PhoneValidationStats{" );
+		for ( Stage stage : STAGES )
+		{
+			if ( stage.ordinal() > 0 )
+			{
+				sb.append( ", " );
+			}
+			sb.append( stage ).append( '=' ).append( this.getCount( stage ) );
+		}
+
+		return sb.append( '}' ).toString();
+	}
+}
@@ -0,0 +1,105 @@
+package cn.airpassport.lib.phone;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonenumber;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ *	@class	PhoneWarmUp
+ *	background task behind LibPhone.warmUp.
+ *	PhoneNumberUtil loads the metadata of a region on first use and PhoneMobileMatcher compiles it on first use,
+ *	so every region is walked through the same calls isValidMobileNumber makes, with its example number.
+ *	PhonePreFilter reads the metadata of all regions at once, it is initialized before the first region.
+ *	the stats and the validation cache of LibPhone are not touched.
+ */
+class PhoneWarmUp
+{
+	static final String THREAD_NAME = "LibPhone-warm-up";
+
+	//	timing reported for regions PhoneNumberUtil does not support
+	static final long UNSUPPORTED_REGION = -1L;
+
+
+	/**
+	 *	start warming up on a new daemon thread
+	 *	@param	phoneUtil	-
+	 *	@param	listRegions	upper case regions, in the order to warm up
+	 *	@return	CompletableFuture, completed with the nanoseconds taken by each region
+	 */
+	static CompletableFuture<Map<String,Long>> start( PhoneNumberUtil phoneUtil, Collection<String> listRegions )
+	{
+		CompletableFuture<Map<String,Long>> future = new CompletableFuture<>();
+		Thread thread = new Thread( () ->
+		{
+			try
+			{
+				future.complete( PhoneWarmUp.run( phoneUtil, listRegions ) );
+			}
+			catch ( Throwable e )
+			{
+				future.completeExceptionally( e );
+			}
+		}, THREAD_NAME );
+
+		thread.setDaemon( true );
+		thread.start();
+
+		return future;
+	}
+
+	static Map<String,Long> run( PhoneNumberUtil phoneUtil, Collection<String> listRegions )
+	{
+		Map<String,Long> mapTimings = new LinkedHashMap<>();
+
+		//	the bounds of the pre-filter cover every region, they are computed once up front
+		//	instead of inside the timing of the first region
+		PhonePreFilter.initialize();
+
+		for ( String sRegion : listRegions )
+		{
+			long lnStart = System.nanoTime();
+			if ( ! phoneUtil.getSupportedRegions().contains( sRegion ) )
+			{
+				mapTimings.put( sRegion, UNSUPPORTED_REGION );
+				continue;
+			}
+
+			if ( "CN".equals( sRegion ) )
+			{
+				ChinaMobilePrefixTable.getCurrent();
+			}
+
+			Phonenumber.PhoneNumber example = phoneUtil.getExampleNumberForType( sRegion, PhoneNumberUtil.PhoneNumberType.MOBILE );
+			if ( null == example )
+			{
+				example = phoneUtil.getExampleNumber( sRegion );
+			}
+			if ( null != example )
+			{
+				String sNumber = phoneUtil.format( example, PhoneNumberUtil.PhoneNumberFormat.NATIONAL );
+				PhonePreFilter.check( sNumber, sRegion );
+				try
+				{
+					Phonenumber.PhoneNumber oNumber = phoneUtil.parse( sNumber, sRegion );
+					PhoneMobileMatcher.isMobileNumber( phoneUtil, oNumber );
+					phoneUtil.format( oNumber, PhoneNumberUtil.PhoneNumberFormat.E164 );
+				}
+				catch ( NumberParseException e )
+				{
+					//	the example is only a vehicle to load the region
+				}
+			}
+
+			mapTimings.put( sRegion, System.nanoTime() - lnStart );
+		}
+
+		return Collections.unmodifiableMap( mapTimings );
+	}
+}
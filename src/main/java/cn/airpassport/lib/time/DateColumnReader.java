@@ -0,0 +1,271 @@
+package cn.airpassport.lib.time;
+
+import cn.airpassport.lib.common.ByteText;
+import cn.airpassport.lib.common.LibCommon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ *	@class	DateColumnReader
+ *
+ *	streaming reader of one column of "yyyy-mm-dd" dates out of delimited ASCII or UTF-8 records,
+ *	such as CSV or TSV files and sockets, into days since 1970-01-01.
+ *	records end with '\n' or "\r\n", empty records are skipped, fields are split at every delimiter, quotes are not handled.
+ *	the bytes are parsed where they were read, a record only moves if it spans the end of the buffer,
+ *	and the buffer only grows for a record longer than itself.
+ *	a reader is not thread safe.
+ */
+public class DateColumnReader
+{
+	//	epoch day of a field which is not a date, or is out of the range of int, or of a record without the column
+	public static final int INVALID_EPOCH_DAY = Integer.MIN_VALUE;
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+
+	//	returned by readRecord at the end of the input, out of the range of int
+	private static final long END_OF_INPUT = Long.MIN_VALUE;
+
+	private final InputStream input;
+	private final byte delimiter;
+	private final int column;
+
+	private byte[] buffer;
+	private ByteBuffer byteBuffer;
+	private final ByteText text;
+
+	//	unread bytes are [ position, limit ) of buffer
+	private int position	= 0;
+	private int limit	= 0;
+	private boolean bEndOfInput = false;
+
+	private long records	= 0;
+	private long invalids	= 0;
+
+
+	/**
+	 *	@param	input		not closed by the reader
+	 *	@param	cDelimiter	ASCII delimiter of fields, such as ',' or '\t'
+	 *	@param	nColumn		0 based index of the date field
+	 */
+	public DateColumnReader( InputStream input, char cDelimiter, int nColumn )
+	{
+		this( input, cDelimiter, nColumn, DEFAULT_BUFFER_SIZE );
+	}
+
+	/**
+	 *	@param	input		not closed by the reader
+	 *	@param	cDelimiter	ASCII delimiter of fields, such as ',' or '\t'
+	 *	@param	nColumn		0 based index of the date field
+	 *	@param	nBufferSize	initial size of the buffer
+	 */
+	public DateColumnReader( InputStream input, char cDelimiter, int nColumn, int nBufferSize )
+	{
+		if ( null == input )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.input" ) );
+		}
+		if ( cDelimiter >= 0x80 || '\n' == cDelimiter || '\r' == cDelimiter )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.cDelimiter" ) );
+		}
+		if ( nColumn < 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nColumn" ) );
+		}
+		if ( nBufferSize <= 0 )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.nBufferSize" ) );
+		}
+
+		this.input	= input;
+		this.delimiter	= ( byte ) cDelimiter;
+		this.column	= nColumn;
+		this.buffer	= new byte[ nBufferSize ];
+		this.byteBuffer	= ByteBuffer.wrap( this.buffer );
+		this.text	= new ByteText();
+	}
+
+	/**
+	 *	read the dates of the next records
+	 *	@param	arrEpochDays	receives the epoch day of each record, INVALID_EPOCH_DAY if not valid
+	 *	@param	nOffset		-
+	 *	@param	nLength		maximum number of records to read
+	 *	@return	int, the number of records read, -1 at the end of the input
+	 *	@throws	IOException	if reading fails
+	 */
+	public int read( int[] arrEpochDays, int nOffset, int nLength ) throws IOException
+	{
+		if ( null == arrEpochDays || nOffset < 0 || nLength < 0 || nOffset > arrEpochDays.length - nLength )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.arrEpochDays" ) );
+		}
+
+		int nRead = 0;
+		while ( nRead < nLength )
+		{
+			long lnEpochDay = this.readRecord();
+			if ( END_OF_INPUT == lnEpochDay )
+			{
+				return 0 == nRead ? -1 : nRead;
+			}
+
+			arrEpochDays[ nOffset + nRead ] = ( int ) lnEpochDay;
+			nRead ++;
+		}
+
+		return nRead;
+	}
+
+	/**
+	 *	read the dates of all records left
+	 *	@return	int[], INVALID_EPOCH_DAY for the records not valid
+	 *	@throws	IOException	if reading fails
+	 */
+	public int[] readAll() throws IOException
+	{
+		int[] arrEpochDays	= new int[ 1024 ];
+		int nCount		= 0;
+		int nRead;
+		while ( ( nRead = this.read( arrEpochDays, nCount, arrEpochDays.length - nCount ) ) >= 0 )
+		{
+			nCount += nRead;
+			if ( nCount == arrEpochDays.length )
+			{
+				arrEpochDays = Arrays.copyOf( arrEpochDays, 2 * nCount );
+			}
+		}
+
+		return Arrays.copyOf( arrEpochDays, nCount );
+	}
+
+	/**
+	 *	get the number of records read
+	 *	@return	long
+	 */
+	public long getRecordCount()
+	{
+		return this.records;
+	}
+
+	/**
+	 *	get the number of records read whose date was not valid
+	 *	@return	long
+	 */
+	public long getInvalidCount()
+	{
+		return this.invalids;
+	}
+
+
+	/**
+	 *	parse the next record which is not empty
+	 *	@return	long, its epoch day or END_OF_INPUT
+	 */
+	private long readRecord() throws IOException
+	{
+		int nScanFrom = this.position;
+		while ( true )
+		{
+			int i = nScanFrom;
+			while ( i < this.limit && '\n' != this.buffer[ i ] )
+			{
+				i ++;
+			}
+
+			if ( i == this.limit && ! this.bEndOfInput )
+			{
+				//	the record goes on beyond the buffer, the bytes scanned need no second look
+				int nScanned	= i - this.position;
+				this.fill();
+				nScanFrom	= this.position + nScanned;
+				continue;
+			}
+			if ( i == this.position && i == this.limit )
+			{
+				return END_OF_INPUT;
+			}
+
+			int nStart	= this.position;
+			int nEnd	= i > nStart && '\r' == this.buffer[ i - 1 ] ? i - 1 : i;
+			this.position	= i < this.limit ? i + 1 : i;
+			nScanFrom	= this.position;
+			if ( nStart == nEnd )
+			{
+				continue;
+			}
+
+			this.records ++;
+			int nEpochDay = this.parseColumn( nStart, nEnd );
+			if ( INVALID_EPOCH_DAY == nEpochDay )
+			{
+				this.invalids ++;
+			}
+
+			return nEpochDay;
+		}
+	}
+
+	/**
+	 *	parse the field of the column of the record at buffer[ nStart, nEnd )
+	 */
+	private int parseColumn( int nStart, int nEnd )
+	{
+		int nFields	= 0;
+		int nFieldStart	= nStart;
+		for ( int i = nStart; i < nEnd; i ++ )
+		{
+			if ( this.delimiter == this.buffer[ i ] )
+			{
+				if ( nFields == this.column )
+				{
+					return this.parseField( nFieldStart, i );
+				}
+				nFields ++;
+				nFieldStart = i + 1;
+			}
+		}
+
+		return nFields == this.column ? this.parseField( nFieldStart, nEnd ) : INVALID_EPOCH_DAY;
+	}
+
+	private int parseField( int nStart, int nEnd )
+	{
+		long lnEpochDay = LibTime.parseEpochDay( this.text.reset( this.byteBuffer, nStart, nEnd - nStart ), 0, nEnd - nStart );
+
+		//	INVALID_EPOCH_DAY of LibTime is below the range of int as well
+		return lnEpochDay > INVALID_EPOCH_DAY && lnEpochDay <= Integer.MAX_VALUE ? ( int ) lnEpochDay : INVALID_EPOCH_DAY;
+	}
+
+	/**
+	 *	move the unread bytes to the start of the buffer, grow it if they fill it, and read more
+	 */
+	private void fill() throws IOException
+	{
+		int nUnread = this.limit - this.position;
+		if ( nUnread == this.buffer.length )
+		{
+			this.buffer	= Arrays.copyOf( this.buffer, 2 * this.buffer.length );
+			this.byteBuffer	= ByteBuffer.wrap( this.buffer );
+		}
+		else if ( this.position > 0 )
+		{
+			System.arraycopy( this.buffer, this.position, this.buffer, 0, nUnread );
+		}
+		this.position	= 0;
+		this.limit	= nUnread;
+
+		int nBytes = this.input.read( this.buffer, this.limit, this.buffer.length - this.limit );
+		if ( nBytes < 0 )
+		{
+			this.bEndOfInput = true;
+		}
+		else
+		{
+			this.limit += nBytes;
+		}
+	}
+}
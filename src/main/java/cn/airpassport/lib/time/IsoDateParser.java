@@ -0,0 +1,181 @@
+package cn.airpassport.lib.time;
+
+/**
+ *	@class	IsoDateParser
+ *
+ *	single pass parser of dates in the format of DateTimeFormatter.ISO_LOCAL_DATE, with the verdict of LocalDate.parse
+ *	but without DateTimeFormatter, a LocalDate or an exception:
+ *		year	4 ASCII digits, or '-' and 4 - 10 digits, or '+' and 5 - 10 digits, within Year.MIN_VALUE and Year.MAX_VALUE,
+ *			"-0000" is not a year
+ *		month	2 digits, 01 - 12
+ *		day	2 digits, 01 - the length of the month in the proleptic ISO calendar
+ *	separated by '-', with nothing before or after.
+ */
+class IsoDateParser
+{
+	static final long INVALID = Long.MIN_VALUE;
+
+	//	Year.MAX_VALUE, Year.MIN_VALUE is its negation
+	private static final int MAX_YEAR	= 999_999_999;
+
+	//	the same as DateTimeFormatter.ISO_LOCAL_DATE
+	private static final int MIN_YEAR_DIGITS	= 4;
+	private static final int MAX_YEAR_DIGITS	= 10;
+
+	//	days from 0000-01-01 to 1970-01-01, the same as LocalDate.DAYS_0000_TO_1970
+	private static final long DAYS_0000_TO_1970 = 719_528L;
+
+	//	bits of a packed date, year << YEAR_SHIFT | month << MONTH_SHIFT | day
+	private static final int YEAR_SHIFT	= 9;
+	private static final int MONTH_SHIFT	= 5;
+
+
+	/**
+	 *	parse sText[ nStart, nEnd ) into a packed date, see getYear, getMonth and getDay
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	exclusive
+	 *	@return	long, INVALID if not a date
+	 */
+	static long parse( CharSequence sText, int nStart, int nEnd )
+	{
+		//	the shortest date is "yyyy-mm-dd"
+		if ( nEnd - nStart < 10 )
+		{
+			return INVALID;
+		}
+
+		int i = nStart;
+		char cSign = sText.charAt( i );
+		if ( '+' == cSign || '-' == cSign )
+		{
+			i ++;
+		}
+
+		//	the year takes what is left before "-mm-dd"
+		int nYearEnd		= nEnd - 6;
+		int nYearDigits		= nYearEnd - i;
+		if ( nYearDigits < MIN_YEAR_DIGITS || nYearDigits > MAX_YEAR_DIGITS )
+		{
+			return INVALID;
+		}
+
+		//	a sign is a must for more than 4 digits, and '+' is only allowed then
+		if ( '+' == cSign ? MIN_YEAR_DIGITS == nYearDigits : '-' != cSign && MIN_YEAR_DIGITS != nYearDigits )
+		{
+			return INVALID;
+		}
+
+		long lnYear = 0;
+		for ( ; i < nYearEnd; i ++ )
+		{
+			int nDigit = sText.charAt( i ) - '0';
+			if ( nDigit < 0 || nDigit > 9 )
+			{
+				return INVALID;
+			}
+			lnYear = lnYear * 10 + nDigit;
+		}
+		if ( lnYear > MAX_YEAR || ( '-' == cSign && 0 == lnYear ) )
+		{
+			return INVALID;
+		}
+		if ( '-' == cSign )
+		{
+			lnYear = -lnYear;
+		}
+
+		if ( '-' != sText.charAt( nYearEnd ) || '-' != sText.charAt( nYearEnd + 3 ) )
+		{
+			return INVALID;
+		}
+		int nMonth	= IsoDateParser.parseTwoDigits( sText, nYearEnd + 1 );
+		int nDay	= IsoDateParser.parseTwoDigits( sText, nYearEnd + 4 );
+		if ( nMonth < 1 || nMonth > 12 || nDay < 1 || nDay > IsoDateParser.getMonthLength( lnYear, nMonth ) )
+		{
+			return INVALID;
+		}
+
+		return ( lnYear << YEAR_SHIFT ) | ( nMonth << MONTH_SHIFT ) | nDay;
+	}
+
+	static int getYear( long lnDate )
+	{
+		return ( int ) ( lnDate >> YEAR_SHIFT );
+	}
+
+	static int getMonth( long lnDate )
+	{
+		return ( int ) ( lnDate >>> MONTH_SHIFT ) & 0x0f;
+	}
+
+	static int getDay( long lnDate )
+	{
+		return ( int ) lnDate & 0x1f;
+	}
+
+	/**
+	 *	days since 1970-01-01, the same as LocalDate.toEpochDay
+	 *	@param	lnDate	packed date
+	 *	@return	long
+	 */
+	static long toEpochDay( long lnDate )
+	{
+		long lnYear	= IsoDateParser.getYear( lnDate );
+		int nMonth	= IsoDateParser.getMonth( lnDate );
+		long lnDays	= 365 * lnYear;
+		if ( lnYear >= 0 )
+		{
+			lnDays += ( lnYear + 3 ) / 4 - ( lnYear + 99 ) / 100 + ( lnYear + 399 ) / 400;
+		}
+		else
+		{
+			lnDays -= lnYear / -4 - lnYear / -100 + lnYear / -400;
+		}
+		lnDays += ( 367 * nMonth - 362 ) / 12;
+		lnDays += IsoDateParser.getDay( lnDate ) - 1;
+		if ( nMonth > 2 )
+		{
+			lnDays -= IsoDateParser.isLeapYear( lnYear ) ? 1 : 2;
+		}
+
+		return lnDays - DAYS_0000_TO_1970;
+	}
+
+	/**
+	 *	two ASCII digits
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@return	int, -1 if not
+	 */
+	static int parseTwoDigits( CharSequence sText, int nStart )
+	{
+		int nTens	= sText.charAt( nStart ) - '0';
+		int nOnes	= sText.charAt( nStart + 1 ) - '0';
+		if ( nTens < 0 || nTens > 9 || nOnes < 0 || nOnes > 9 )
+		{
+			return -1;
+		}
+
+		return nTens * 10 + nOnes;
+	}
+
+
+	private static int getMonthLength( long lnYear, int nMonth )
+	{
+		if ( 2 == nMonth )
+		{
+			return IsoDateParser.isLeapYear( lnYear ) ? 29 : 28;
+		}
+
+		return 4 == nMonth || 6 == nMonth || 9 == nMonth || 11 == nMonth ? 30 : 31;
+	}
+
+	/**
+	 *	the same as IsoChronology.isLeapYear
+	 */
+	private static boolean isLeapYear( long lnYear )
+	{
+		return 0 == ( lnYear & 3 ) && ( 0 != lnYear % 100 || 0 == lnYear % 400 );
+	}
+}
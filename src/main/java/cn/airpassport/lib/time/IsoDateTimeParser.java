@@ -0,0 +1,108 @@
+package cn.airpassport.lib.time;
+
+/**
+ *	@class	IsoDateTimeParser
+ *
+ *	single pass parser of date times in the format of DateTimeFormatter.ISO_LOCAL_DATE_TIME,
+ *	with the verdict of LocalDateTime.parse but without DateTimeFormatter, a LocalDateTime or an exception:
+ *		a date of IsoDateParser, 'T' in any case, then
+ *		"HH:mm", "HH:mm:ss" or "HH:mm:ss." and 0 - 9 digits of a fraction of the second, all ASCII,
+ *		hours 00 - 23, minutes and seconds 00 - 59.
+ */
+class IsoDateTimeParser
+{
+	static final long INVALID = -1L;
+
+	private static final long NANOS_PER_SECOND	= 1_000_000_000L;
+	private static final long NANOS_PER_MINUTE	= 60 * NANOS_PER_SECOND;
+	private static final long NANOS_PER_HOUR	= 60 * NANOS_PER_MINUTE;
+
+	//	"HH:mm", "HH:mm:ss", "HH:mm:ss." and 9 digits
+	private static final int MIN_TIME_LENGTH	= 5;
+	private static final int SECONDS_LENGTH		= 8;
+	private static final int MAX_TIME_LENGTH	= 18;
+
+	//	10^( 9 - digits of the fraction )
+	private static final int[] FRACTION_SCALES = { 1_000_000_000, 100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1 };
+
+
+	/**
+	 *	find the 'T' between the date and the time of sText[ nStart, nEnd )
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	exclusive
+	 *	@return	int, -1 if there is none
+	 */
+	static int findSeparator( CharSequence sText, int nStart, int nEnd )
+	{
+		//	neither a date nor a time has a letter, the shortest date is "yyyy-mm-dd"
+		for ( int i = nStart + 10; i < nEnd; i ++ )
+		{
+			char c = sText.charAt( i );
+			if ( 'T' == c || 't' == c )
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 *	parse a time of sText[ nStart, nEnd ) into nanoseconds since midnight
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	exclusive
+	 *	@return	long, INVALID if not a time
+	 */
+	static long parseNanoOfDay( CharSequence sText, int nStart, int nEnd )
+	{
+		int nLength = nEnd - nStart;
+		if ( nLength < MIN_TIME_LENGTH || nLength > MAX_TIME_LENGTH || ( nLength > MIN_TIME_LENGTH && nLength < SECONDS_LENGTH ) )
+		{
+			return INVALID;
+		}
+
+		int nHour	= IsoDateParser.parseTwoDigits( sText, nStart );
+		int nMinute	= IsoDateParser.parseTwoDigits( sText, nStart + 3 );
+		if ( ':' != sText.charAt( nStart + 2 ) || nHour < 0 || nHour > 23 || nMinute < 0 || nMinute > 59 )
+		{
+			return INVALID;
+		}
+
+		long lnNanos = nHour * NANOS_PER_HOUR + nMinute * NANOS_PER_MINUTE;
+		if ( MIN_TIME_LENGTH == nLength )
+		{
+			return lnNanos;
+		}
+
+		int nSecond = IsoDateParser.parseTwoDigits( sText, nStart + 6 );
+		if ( ':' != sText.charAt( nStart + 5 ) || nSecond < 0 || nSecond > 59 )
+		{
+			return INVALID;
+		}
+
+		lnNanos += nSecond * NANOS_PER_SECOND;
+		if ( SECONDS_LENGTH == nLength )
+		{
+			return lnNanos;
+		}
+		if ( '.' != sText.charAt( nStart + SECONDS_LENGTH ) )
+		{
+			return INVALID;
+		}
+
+		int nFraction = 0;
+		for ( int i = nStart + SECONDS_LENGTH + 1; i < nEnd; i ++ )
+		{
+			int nDigit = sText.charAt( i ) - '0';
+			if ( nDigit < 0 || nDigit > 9 )
+			{
+				return INVALID;
+			}
+			nFraction = nFraction * 10 + nDigit;
+		}
+
+		return lnNanos + ( long ) nFraction * FRACTION_SCALES[ nLength - SECONDS_LENGTH - 1 ];
+	}
+}
@@ -1,10 +1,17 @@
 package cn.airpassport.lib.time;
 
+import cn.airpassport.lib.common.ByteText;
+import cn.airpassport.lib.common.LibCommon;
 import cn.airpassport.lib.model.LocalDateInterval;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
 
 
 /**
@@ -12,6 +19,21 @@ import java.time.LocalDateTime;
  */
 public class LibTime
 {
+	//	returned by parseEpochDay for text which is not a date
+	public static final long INVALID_EPOCH_DAY = IsoDateParser.INVALID;
+
+	//	returned by parseEpochSecond for text which is not a date time
+	public static final long INVALID_EPOCH_SECOND = Long.MIN_VALUE;
+
+	private static final long SECONDS_PER_DAY	= 86_400L;
+	private static final long NANOS_PER_SECOND	= 1_000_000_000L;
+
+
+	/**
+	 *	parse a date in format "yyyy-mm-dd", the same as LocalDate.parse but without throwing
+	 *	@param	date	-
+	 *	@return	LocalDate, null if blank or not a date
+	 */
 	public static LocalDate fromDateString( String date )
 	{
 		if ( StringUtils.isBlank( date ) )
@@ -19,21 +41,109 @@ public class LibTime
 			return null;
 		}
 
-		LocalDate parsedDate = null;
+		long lnDate = IsoDateParser.parse( date, 0, date.length() );
+		if ( IsoDateParser.INVALID == lnDate )
+		{
+			return null;
+		}
+
+		return LocalDate.of( IsoDateParser.getYear( lnDate ), IsoDateParser.getMonth( lnDate ), IsoDateParser.getDay( lnDate ) );
+	}
+
+	/**
+	 *	parse a date in format "yyyy-mm-dd" out of a slice of text, without a substring
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	exclusive
+	 *	@return	LocalDate, null if not a date
+	 */
+	public static LocalDate fromDateString( CharSequence sText, int nStart, int nEnd )
+	{
+		long lnDate = IsoDateParser.parse( sText, nStart, nEnd );
+		if ( IsoDateParser.INVALID == lnDate )
+		{
+			return null;
+		}
+
+		return LocalDate.of( IsoDateParser.getYear( lnDate ), IsoDateParser.getMonth( lnDate ), IsoDateParser.getDay( lnDate ) );
+	}
+
+	/**
+	 *	parse a date in format "yyyy-mm-dd" into days since 1970-01-01, without a LocalDate
+	 *	@param	sDate	-
+	 *	@return	long, the same as LocalDate.parse( sDate ).toEpochDay(), or INVALID_EPOCH_DAY
+	 */
+	public static long parseEpochDay( CharSequence sDate )
+	{
+		return null == sDate ? INVALID_EPOCH_DAY : LibTime.parseEpochDay( sDate, 0, sDate.length() );
+	}
 
-		try
+	/**
+	 *	parse a date in format "yyyy-mm-dd" into days since 1970-01-01, without a LocalDate
+	 *	@param	sText	-
+	 *	@param	nStart	-
+	 *	@param	nEnd	exclusive
+	 *	@return	long, the same as LocalDate.parse( sText.subSequence( nStart, nEnd ) ).toEpochDay(), or INVALID_EPOCH_DAY
+	 */
+	public static long parseEpochDay( CharSequence sText, int nStart, int nEnd )
+	{
+		long lnDate = IsoDateParser.parse( sText, nStart, nEnd );
+		return IsoDateParser.INVALID == lnDate ? INVALID_EPOCH_DAY : IsoDateParser.toEpochDay( lnDate );
+	}
+
+	/**
+	 *	parse a date in format "yyyy-mm-dd" straight out of ASCII or UTF-8 bytes, without a String
+	 *	@param	arrBytes	-
+	 *	@param	nOffset		-
+	 *	@param	nLength		-
+	 *	@return	long, days since 1970-01-01 or INVALID_EPOCH_DAY
+	 */
+	public static long parseEpochDay( byte[] arrBytes, int nOffset, int nLength )
+	{
+		if ( null == arrBytes || nOffset < 0 || nLength < 0 || nOffset > arrBytes.length - nLength )
 		{
-			//	a date in format "yyyy-mm-dd".
-			parsedDate = LocalDate.parse( date );
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.arrBytes" ) );
 		}
-		catch ( Exception e )
+
+		return LibTime.parseEpochDay( ByteBuffer.wrap( arrBytes ), nOffset, nLength );
+	}
+
+	/**
+	 *	parse a date in format "yyyy-mm-dd" straight out of ASCII or UTF-8 bytes, without a String
+	 *	@param	buffer		its position and limit are neither used nor moved
+	 *	@param	nOffset		absolute index of the first byte
+	 *	@param	nLength		-
+	 *	@return	long, days since 1970-01-01 or INVALID_EPOCH_DAY
+	 */
+	public static long parseEpochDay( ByteBuffer buffer, int nOffset, int nLength )
+	{
+		if ( null == buffer || nOffset < 0 || nLength < 0 || nOffset > buffer.capacity() - nLength )
 		{
-			e.printStackTrace();
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.buffer" ) );
 		}
 
-		return parsedDate;
+		return LibTime.parseEpochDay( new ByteText().reset( buffer, nOffset, nLength ), 0, nLength );
+	}
+
+	/**
+	 *	read a column of dates in format "yyyy-mm-dd" out of delimited records, see DateColumnReader
+	 *	@param	input		not closed
+	 *	@param	cDelimiter	ASCII delimiter of fields, such as ',' or '\t'
+	 *	@param	nColumn		0 based index of the date field
+	 *	@return	int[], days since 1970-01-01 of each record, DateColumnReader.INVALID_EPOCH_DAY for those not valid
+	 *	@throws	IOException	if reading fails
+	 */
+	public static int[] readEpochDayColumn( InputStream input, char cDelimiter, int nColumn ) throws IOException
+	{
+		return new DateColumnReader( input, cDelimiter, nColumn ).readAll();
 	}
 
+	/**
+	 *	parse a date time in format "yyyy-mm-ddTHH:ii", "yyyy-mm-ddTHH:ii:ss" or "yyyy-mm-ddTHH:ii:ss.fffffffff",
+	 *	the same as LocalDateTime.parse but without throwing
+	 *	@param	datetime	-
+	 *	@return	LocalDateTime, null if blank or not a date time
+	 */
 	public static LocalDateTime fromDateTimeString( String datetime )
 	{
 		if ( StringUtils.isBlank( datetime ) )
@@ -41,21 +151,109 @@ public class LibTime
 			return null;
 		}
 
-		LocalDateTime parsedDate = null;
+		int nSeparator = IsoDateTimeParser.findSeparator( datetime, 0, datetime.length() );
+		if ( nSeparator < 0 )
+		{
+			return null;
+		}
+
+		long lnDate		= IsoDateParser.parse( datetime, 0, nSeparator );
+		long lnNanoOfDay	= IsoDateTimeParser.parseNanoOfDay( datetime, nSeparator + 1, datetime.length() );
+		if ( IsoDateParser.INVALID == lnDate || IsoDateTimeParser.INVALID == lnNanoOfDay )
+		{
+			return null;
+		}
+
+		return LocalDateTime.of
+			(
+				LocalDate.of( IsoDateParser.getYear( lnDate ), IsoDateParser.getMonth( lnDate ), IsoDateParser.getDay( lnDate ) ),
+				LocalTime.ofNanoOfDay( lnNanoOfDay )
+			);
+	}
+
+	/**
+	 *	parse a date time of fromDateTimeString into seconds since 1970-01-01T00:00, without a LocalDateTime
+	 *	@param	sDateTime	-
+	 *	@return	long, the same as LocalDateTime.parse( sDateTime ).toEpochSecond( ZoneOffset.UTC ), or INVALID_EPOCH_SECOND
+	 */
+	public static long parseEpochSecond( CharSequence sDateTime )
+	{
+		return null == sDateTime ? INVALID_EPOCH_SECOND : LibTime.parseEpochSecond( sDateTime, 0, sDateTime.length(), null );
+	}
+
+	/**
+	 *	parse a date time of fromDateTimeString into seconds since 1970-01-01T00:00, without a LocalDateTime
+	 *	@param	sText		-
+	 *	@param	nStart		-
+	 *	@param	nEnd		exclusive
+	 *	@param	arrNano		optional, [ 0 ] receives the nanosecond of the second if the text is a date time
+	 *	@return	long, the same as LocalDateTime.parse( sText.subSequence( nStart, nEnd ) ).toEpochSecond( ZoneOffset.UTC ),
+	 *		or INVALID_EPOCH_SECOND
+	 */
+	public static long parseEpochSecond( CharSequence sText, int nStart, int nEnd, int[] arrNano )
+	{
+		int nSeparator = IsoDateTimeParser.findSeparator( sText, nStart, nEnd );
+		if ( nSeparator < 0 )
+		{
+			return INVALID_EPOCH_SECOND;
+		}
+
+		long lnDate		= IsoDateParser.parse( sText, nStart, nSeparator );
+		long lnNanoOfDay	= IsoDateTimeParser.parseNanoOfDay( sText, nSeparator + 1, nEnd );
+		if ( IsoDateParser.INVALID == lnDate || IsoDateTimeParser.INVALID == lnNanoOfDay )
+		{
+			return INVALID_EPOCH_SECOND;
+		}
 
-		try
+		if ( null != arrNano )
 		{
-			//	the text to parse such as "2007-12-03T10:15:30", not null
-			//	a date time in format "yyyy-mm-ddTHH:ii:ss"
-			//	a date time in format "yyyy-mm-ddTHH:ii"
-			parsedDate = LocalDateTime.parse( datetime );
+			arrNano[ 0 ] = ( int ) ( lnNanoOfDay % NANOS_PER_SECOND );
 		}
-		catch ( Exception e )
+
+		return IsoDateParser.toEpochDay( lnDate ) * SECONDS_PER_DAY + lnNanoOfDay / NANOS_PER_SECOND;
+	}
+
+	/**
+	 *	parse a column of date times of fromDateTimeString into seconds since 1970-01-01T00:00
+	 *	@param	listDateTimes		-
+	 *	@param	arrEpochSeconds		receives the seconds of each date time, INVALID_EPOCH_SECOND for those not valid
+	 *	@param	arrNanos		optional, receives the nanosecond of the second of each date time, 0 for those not valid
+	 *	@return	int, the number of date times not valid
+	 */
+	public static int parseEpochSeconds( List<? extends CharSequence> listDateTimes, long[] arrEpochSeconds, int[] arrNanos )
+	{
+		if ( null == listDateTimes )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "null.listDateTimes" ) );
+		}
+		if ( null == arrEpochSeconds || arrEpochSeconds.length < listDateTimes.size() )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.arrEpochSeconds" ) );
+		}
+		if ( null != arrNanos && arrNanos.length < listDateTimes.size() )
+		{
+			throw new IllegalArgumentException( LibCommon.calcErrorCode( new Object(){}, "invalid.arrNanos" ) );
+		}
+
+		int[] arrNano	= new int[ 1 ];
+		int nInvalid	= 0;
+		int i		= 0;
+		for ( CharSequence sDateTime : listDateTimes )
 		{
-			e.printStackTrace();
+			arrNano[ 0 ]		= 0;
+			arrEpochSeconds[ i ]	= null == sDateTime ? INVALID_EPOCH_SECOND : LibTime.parseEpochSecond( sDateTime, 0, sDateTime.length(), arrNano );
+			if ( INVALID_EPOCH_SECOND == arrEpochSeconds[ i ] )
+			{
+				nInvalid ++;
+			}
+			if ( null != arrNanos )
+			{
+				arrNanos[ i ] = arrNano[ 0 ];
+			}
+			i ++;
 		}
 
-		return parsedDate;
+		return nInvalid;
 	}
 
 
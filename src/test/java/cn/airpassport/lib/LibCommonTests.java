@@ -1,9 +1,23 @@
 package cn.airpassport.lib;
 
+import cn.airpassport.lib.common.HeavyHitterSketch;
 import cn.airpassport.lib.common.LibCommon;
+import cn.airpassport.lib.common.LibHash;
+import cn.airpassport.lib.common.ScalableBloomFilter;
+import cn.airpassport.lib.common.VerdictCache;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -38,4 +52,264 @@ public class LibCommonTests
 		String sErrorCode2 = LibCommon.calcErrorCode( new Object(){}, "invalid.name" );
 		assertEquals( "LibCommonTests.testCalcErrorCode.invalid.name", sErrorCode2 );
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testVerdictCache()
+	{
+		VerdictCache cache = new VerdictCache( 64, 32 );
+		assertNull( cache.get( "a" ) );
+		cache.put( "a", true );
+		cache.put( "b", false );
+		assertEquals( Boolean.TRUE, cache.get( "a" ) );
+		assertEquals( Boolean.FALSE, cache.get( "b" ) );
+		assertEquals( 2, cache.getHitCount() );
+		assertEquals( 1, cache.getMissCount() );
+
+		//	a changed verdict moves the key to the other side
+		cache.put( "b", true );
+		assertEquals( Boolean.TRUE, cache.get( "b" ) );
+		assertEquals( 0, cache.getNegativeSize() );
+
+		//	negatives never evict positives
+		for ( int i = 0; i < 10000; i ++ )
+		{
+			cache.put( "junk" + i, false );
+		}
+		assertTrue( cache.getNegativeSize() <= 32 );
+		assertEquals( 2, cache.getPositiveSize() );
+		assertEquals( Boolean.TRUE, cache.get( "a" ) );
+		assertTrue( cache.getEvictionCount() > 0 );
+
+		cache.clear();
+		assertNull( cache.get( "a" ) );
+
+		VerdictCache disabled = new VerdictCache( 0, 0, VerdictCache.Eviction.FIFO );
+		disabled.put( "a", true );
+		assertNull( disabled.get( "a" ) );
+
+		//	the caps are exact, also below the number of stripes
+		VerdictCache bounded = new VerdictCache( 37, 5, VerdictCache.Eviction.FIFO );
+		for ( int i = 0; i < 10000; i ++ )
+		{
+			bounded.put( "key" + i, 0 == i % 2 );
+		}
+		assertEquals( 37, bounded.getPositiveSize() );
+		assertEquals( 5, bounded.getNegativeSize() );
+
+		//	verdicts expire after their own time to live, 0 keeps them until evicted
+		AtomicLong lnNow	= new AtomicLong();
+		VerdictCache expiring	= new VerdictCache( 64, 32, VerdictCache.Eviction.LRU, 0, 1000, lnNow::get );
+		expiring.put( "a", true );
+		expiring.put( "b", false );
+		lnNow.addAndGet( 999_000_000L );
+		assertEquals( Boolean.FALSE, expiring.get( "b" ) );
+		lnNow.addAndGet( 1_000_000L );
+		assertNull( expiring.get( "b" ) );
+		assertEquals( 0, expiring.getNegativeSize() );
+		lnNow.addAndGet( Long.MAX_VALUE );
+		assertEquals( Boolean.TRUE, expiring.get( "a" ) );
+		assertThrows( IllegalArgumentException.class, () -> new VerdictCache( 1, 1, VerdictCache.Eviction.LRU, -1, 0, lnNow::get ) );
+	}
+
+	@Test
+	public void testVerdictCacheConcurrent() throws InterruptedException
+	{
+		VerdictCache cache = new VerdictCache( 1000, 1000 );
+		AtomicInteger nMismatches = new AtomicInteger();
+		List<Thread> listThreads = new ArrayList<>();
+
+		for ( int t = 0; t < 8; t ++ )
+		{
+			final int nThread = t;
+			Thread thread = new Thread( () ->
+			{
+				for ( int i = 0; i < 20000; i ++ )
+				{
+					String sKey = "k" + ( ( i * 31 + nThread ) % 3000 );
+					Boolean bCached = cache.get( sKey );
+					boolean bVerdict = 0 == sKey.hashCode() % 2;
+					if ( null == bCached )
+					{
+						cache.put( sKey, bVerdict );
+					}
+					else if ( bCached != bVerdict )
+					{
+						nMismatches.incrementAndGet();
+					}
+				}
+			} );
+			listThreads.add( thread );
+			thread.start();
+		}
+		for ( Thread thread : listThreads )
+		{
+			thread.join();
+		}
+
+		assertEquals( 0, nMismatches.get() );
+		assertTrue( cache.getPositiveSize() + cache.getNegativeSize() <= 2000 + 32 );
+		assertEquals( 8 * 20000, cache.getHitCount() + cache.getMissCount() );
+	}
+
+	@Test
+	public void testScalableBloomFilter() throws InterruptedException, IOException
+	{
+		ScalableBloomFilter filter	= new ScalableBloomFilter( 10000, 0.01 );
+		AtomicInteger nNew		= new AtomicInteger();
+		List<Thread> listThreads	= new ArrayList<>();
+
+		//	8 threads add the keys 0 - 199999, each key twice
+		for ( int t = 0; t < 8; t ++ )
+		{
+			final int nThread = t;
+			Thread thread = new Thread( () ->
+			{
+				for ( long i = nThread % 4; i < 200000; i += 4 )
+				{
+					if ( filter.add( i ) )
+					{
+						nNew.incrementAndGet();
+					}
+				}
+			} );
+			listThreads.add( thread );
+			thread.start();
+		}
+		for ( Thread thread : listThreads )
+		{
+			thread.join();
+		}
+
+		//	no false negatives, a few keys lost to false positives or told new twice
+		for ( long i = 0; i < 200000; i ++ )
+		{
+			assertTrue( filter.mightContain( i ) );
+		}
+		assertTrue( Math.abs( nNew.get() - 200000 ) < 200000 * 0.01 );
+		assertEquals( nNew.get(), filter.getCount(), 200000 * 0.01 );
+		assertTrue( filter.getStageCount() > 1 );
+
+		int nFalsePositives = 0;
+		for ( long i = 200000; i < 400000; i ++ )
+		{
+			if ( filter.mightContain( i ) )
+			{
+				nFalsePositives ++;
+			}
+		}
+		assertTrue( nFalsePositives < 200000 * 0.01, "false positives: " + nFalsePositives );
+
+		//	snapshot
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		filter.writeTo( outputStream );
+		ScalableBloomFilter copy = ScalableBloomFilter.readFrom( new ByteArrayInputStream( outputStream.toByteArray() ) );
+		assertEquals( filter.getCount(), copy.getCount() );
+		assertEquals( filter.getBitCount(), copy.getBitCount() );
+		for ( long i = 0; i < 400000; i ++ )
+		{
+			assertEquals( filter.mightContain( i ), copy.mightContain( i ) );
+		}
+		assertFalse( copy.add( 12345 ) );
+
+		byte[] arrCorrupt = outputStream.toByteArray();
+		arrCorrupt[ 0 ] ^= 1;
+		assertThrows( IOException.class, () -> ScalableBloomFilter.readFrom( new ByteArrayInputStream( arrCorrupt ) ) );
+
+		//	the first stage starts after the 28 bytes of the header: capacity, count, hashes, words
+		byte[] arrTooManyHashes = outputStream.toByteArray();
+		ByteBuffer.wrap( arrTooManyHashes ).putInt( 44, 1000 );
+		assertThrows( IOException.class, () -> ScalableBloomFilter.readFrom( new ByteArrayInputStream( arrTooManyHashes ) ) );
+
+		byte[] arrTooManyWords = outputStream.toByteArray();
+		ByteBuffer.wrap( arrTooManyWords ).putInt( 48, Integer.MAX_VALUE - 16 );
+		assertThrows( IOException.class, () -> ScalableBloomFilter.readFrom( new ByteArrayInputStream( arrTooManyWords ) ) );
+		assertThrows( IllegalArgumentException.class, () -> new ScalableBloomFilter( 100, 1.0 ) );
+	}
+
+	@Test
+	public void testHeavyHitterSketch() throws InterruptedException
+	{
+		AtomicLong lnNow		= new AtomicLong( 1_000_000 );
+		HeavyHitterSketch sketch	= new HeavyHitterSketch( 4, 1 << 12, 3, 1000, 4, 0.5, lnNow::get );
+		List<Thread> listThreads	= new ArrayList<>();
+
+		//	two heavy domains in a flood of random ones
+		for ( int t = 0; t < 8; t ++ )
+		{
+			final int nThread = t;
+			Thread thread = new Thread( () ->
+			{
+				for ( int i = 0; i < 40000; i ++ )
+				{
+					if ( 0 == i % 8 )
+					{
+						sketch.add( "Heavy.example.com" );
+					}
+					else if ( 0 == i % 20 )
+					{
+						sketch.add( "second.example.com" );
+					}
+					else
+					{
+						sketch.add( "r" + nThread + "x" + i + ".example.com" );
+					}
+				}
+			} );
+			listThreads.add( thread );
+			thread.start();
+		}
+		for ( Thread thread : listThreads )
+		{
+			thread.join();
+		}
+
+		long lnHeavy	= 8 * 5000;
+		long lnSecond	= 8 * 1000;
+		assertEquals( 8 * 40000, sketch.getTotal() );
+		assertTrue( sketch.estimate( "heavy.EXAMPLE.com" ) >= lnHeavy );
+		assertTrue( sketch.estimate( "heavy.example.com" ) <= lnHeavy + 8 * 40000 * 3 / ( 1 << 12 ) );
+
+		List<Map.Entry<String,Long>> listTop = sketch.getTopK();
+		assertTrue( listTop.size() <= 3 );
+		assertEquals( "heavy.example.com", listTop.get( 0 ).getKey() );
+		assertEquals( "second.example.com", listTop.get( 1 ).getKey() );
+		assertTrue( listTop.get( 1 ).getValue() >= lnSecond );
+
+		//	older windows count half as much per window, and are gone after 4 windows
+		lnNow.addAndGet( 1000 );
+		sketch.add( "second.example.com" );
+		assertEquals( lnHeavy / 2, sketch.estimate( "heavy.example.com" ), lnHeavy / 100 );
+		lnNow.addAndGet( 2000 );
+		assertEquals( lnHeavy / 8, sketch.estimate( "heavy.example.com" ), lnHeavy / 100 );
+		lnNow.addAndGet( 1000 );
+		assertEquals( 0, sketch.estimate( "heavy.example.com" ) );
+		assertEquals( 0, sketch.getTotal() );
+
+		//	only ASCII letters are folded, in the key as in the hash
+		for ( int i = 0; i < 10; i ++ )
+		{
+			sketch.add( "\u00c9COLE.Example.com" );
+		}
+		assertEquals( "\u00c9cole.example.com", sketch.getTopK().get( 0 ).getKey() );
+		assertEquals( 10, sketch.estimate( "\u00c9cole.example.com" ) );
+
+		assertThrows( IllegalArgumentException.class, () -> new HeavyHitterSketch( 3, 1000, 4, 1.5 ) );
+		assertThrows( IllegalArgumentException.class, () -> new HeavyHitterSketch( 4, 1000, 3, 1, 4, 0.5, lnNow::get ) );
+	}
+
+	@Test
+	public void testLibHash()
+	{
+		//	each char is hashed as its low byte then its high byte
+		assertEquals( 0xcbf29ce484222325L, LibHash.fnv1a( "", 0, 0 ) );
+		assertEquals( 0x089be207b544f1e4L, LibHash.fnv1a( "a", 0, 1 ) );
+		assertEquals( LibHash.fnv1a( "a", 0, 1 ), LibHash.fnv1a( "xay", 1, 2 ) );
+		assertNotEquals( LibHash.fnv1a( "a", 0, 1 ), LibHash.fnv1a( "A", 0, 1 ) );
+		assertEquals( LibHash.fnv1a( "heavy.example.com", 0, 17 ), LibHash.fnv1aIgnoreAsciiCase( "Heavy.EXAMPLE.com", 0, 17 ) );
+		assertNotEquals( LibHash.fnv1a( "\u00c4", 0, 1 ), LibHash.fnv1aIgnoreAsciiCase( "\u00e4", 0, 1 ) );
+
+		assertEquals( 0, LibHash.mix( 0 ) );
+		assertNotEquals( LibHash.mix( 1 ), LibHash.mix( 2 ) );
+		assertTrue( Long.bitCount( LibHash.mix( 1 ) ^ LibHash.mix( 2 ) ) > 16 );
+	}
+}
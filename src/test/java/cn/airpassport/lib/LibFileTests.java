@@ -0,0 +1,148 @@
+package cn.airpassport.lib;
+
+import cn.airpassport.lib.file.FileValidationReport;
+import cn.airpassport.lib.file.LibFile;
+import cn.airpassport.lib.file.LineValidator;
+import cn.airpassport.lib.mail.LibMail;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LibFileTests
+{
+	@Test
+	public void testValidateLinesAgreesWithLineByLine() throws IOException
+	{
+		String[] arrFragments = new String[]
+			{
+				"liuqixing@me.com", "a.b@example.org", "x@y", "@example.com", "", " ", "user@[127.0.0.1]",
+				"用户@example.com", "café@example.com", "a@b.c.", "first.last@sub.example.co.uk", "\"q\"@example.net"
+			};
+
+		Random random				= new Random( 12 );
+		StringBuilder sbText			= new StringBuilder();
+		Map<Long,Long> mapExpected		= new TreeMap<>();
+		long lnOffset				= 0;
+		int nLines				= 20000;
+
+		for ( int i = 1; i <= nLines; i ++ )
+		{
+			String sLine	= arrFragments[ random.nextInt( arrFragments.length ) ];
+			String sBreak	= i == nLines ? "" : ( random.nextBoolean() ? "\n" : "\r\n" );
+			if ( ! LibMail.isValidEMail( sLine ) )
+			{
+				mapExpected.put( ( long ) i, lnOffset );
+			}
+			sbText.append( sLine ).append( sBreak );
+			lnOffset += ( sLine + sBreak ).getBytes( StandardCharsets.UTF_8 ).length;
+		}
+
+		File file = LibFileTests.writeTempFile( sbText.toString() );
+		try
+		{
+			for ( int nChunkSize : new int[]{ 1, 100, 4096, LibFile.DEFAULT_CHUNK_SIZE } )
+			{
+				Map<Long,Long> mapInvalid	= new ConcurrentSkipListMap<>();
+				FileValidationReport report	= LibFile.validateLines
+					(
+						file, LineValidator.eMail(), mapInvalid::put, ForkJoinPool.commonPool(), nChunkSize
+					);
+
+				assertEquals( nLines, report.getLines() );
+				assertEquals( file.length(), report.getBytes() );
+				assertEquals( mapExpected.size(), report.getInvalidLines() );
+				assertEquals( mapExpected, new TreeMap<>( mapInvalid ) );
+				assertTrue( report.getLinesPerSecond() > 0 );
+			}
+		}
+		finally
+		{
+			Files.delete( file.toPath() );
+		}
+	}
+
+	@Test
+	public void testValidateLinesOfPhoneNumbersAndIpAddresses() throws IOException
+	{
+		Map<Long,Long> mapInvalid = new ConcurrentSkipListMap<>();
+
+		File file = LibFileTests.writeTempFile( "13800138000\n1380013800\n\n+8613800138000\n18912345678\n" );
+		try
+		{
+			FileValidationReport report = LibFile.validateLines( file, LineValidator.mobileNumber( "CN" ), mapInvalid::put );
+			assertEquals( 5, report.getLines() );
+			assertEquals( Arrays.asList( 2L, 3L, 4L ), Arrays.asList( mapInvalid.keySet().toArray( new Long[ 0 ] ) ) );
+			assertEquals( Long.valueOf( 12 ), mapInvalid.get( 2L ) );
+			assertEquals( Long.valueOf( 23 ), mapInvalid.get( 3L ) );
+		}
+		finally
+		{
+			Files.delete( file.toPath() );
+		}
+
+		mapInvalid.clear();
+		file = LibFileTests.writeTempFile( "078 123 45 67\r\n044 668 18 00\r\n" );
+		try
+		{
+			FileValidationReport report = LibFile.validateLines( file, LineValidator.mobileNumber( "CH" ), mapInvalid::put );
+			assertEquals( 2, report.getLines() );
+			assertEquals( 1, report.getInvalidLines() );
+			assertEquals( Long.valueOf( 15 ), mapInvalid.get( 2L ) );
+		}
+		finally
+		{
+			Files.delete( file.toPath() );
+		}
+
+		mapInvalid.clear();
+		file = LibFileTests.writeTempFile( "127.0.0.1\n127.0.0.256\n2408:8207:24d1:6fb0:8f7:f7e:1550:e48a\n::1\nlocalhost" );
+		try
+		{
+			FileValidationReport report = LibFile.validateLines( file, LineValidator.ipAddress(), mapInvalid::put );
+			assertEquals( 5, report.getLines() );
+			assertEquals( Arrays.asList( 2L, 5L ), Arrays.asList( mapInvalid.keySet().toArray( new Long[ 0 ] ) ) );
+		}
+		finally
+		{
+			Files.delete( file.toPath() );
+		}
+
+		//	empty file, and a single empty line
+		mapInvalid.clear();
+		file = LibFileTests.writeTempFile( "" );
+		try
+		{
+			assertEquals( 0, LibFile.validateLines( file, LineValidator.ipAddress(), mapInvalid::put ).getLines() );
+			Files.write( file.toPath(), "\n".getBytes( StandardCharsets.UTF_8 ) );
+			assertEquals( 1, LibFile.validateLines( file, LineValidator.ipAddress(), mapInvalid::put ).getInvalidLines() );
+		}
+		finally
+		{
+			Files.delete( file.toPath() );
+		}
+
+		assertThrows( IllegalArgumentException.class, () -> LineValidator.mobileNumber( " " ) );
+		assertThrows( IOException.class, () -> LibFile.validateLines( new File( "no-such-file.txt" ), LineValidator.eMail(), ( n, o ) -> {} ) );
+	}
+
+
+	private static File writeTempFile( String sText ) throws IOException
+	{
+		File file = File.createTempFile( "LibFileTests", ".txt" );
+		Files.write( file.toPath(), sText.getBytes( StandardCharsets.UTF_8 ) );
+
+		return file;
+	}
+}
@@ -1,10 +1,28 @@
 package cn.airpassport.lib;
 
+import cn.airpassport.lib.common.HeavyHitterSketch;
+import cn.airpassport.lib.common.ScalableBloomFilter;
+import cn.airpassport.lib.common.VerdictCache;
+import cn.airpassport.lib.mail.DomainChecker;
+import cn.airpassport.lib.mail.DomainResolver;
 import cn.airpassport.lib.mail.LibMail;
+import cn.airpassport.lib.mail.TldTrie;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.validator.routines.DomainValidator;
+import org.apache.commons.validator.routines.EmailValidator;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 
 public class LibMailTests
@@ -17,4 +35,363 @@ public class LibMailTests
 		assertEquals( false, LibMail.isValidEMail( null ) );
 		assertEquals( true, LibMail.isValidEMail( "liuqixing@me.com" ) );
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testEMailScannerAgreesWithEmailValidator()
+	{
+		List<String> listInputs = new ArrayList<>();
+		String sLong63 = StringUtils.repeat( 'a', 63 );
+		String[] arrFixed =
+			{
+				"a@b.com", "A@B.COM", "a@b.com.", "a@b.com. ", "a@b.com.. ", "a@b.c", "a@b.xn--p1ai", "a@localhost", "a@b.localhost",
+				"a@b.invalidtld", "a@b.arpa", "a@-b.com", "a@b-.com", "a@b--c.com", "a@1b.com", "a@b.1com", "a@b..com", "a@.b.com",
+				"a.b@c.com", ".a@c.com", "a.@c.com", "a..b@c.com", "a'b@c.com", "'@c.com", "\"a b\"@c.com", "\"a\\\"b\"@c.com",
+				"\"a\\\"@c.com", "\"a\"\"b\"@c.com", "\"a\".b@c.com", "a.\"b\"@c.com", "\"a\"b@c.com", "a\\@b@c.com", "a\\ b@c.com",
+				"a\\.b@c.com", "a\\\\@c.com", "a\\@c.com", " a@c.com", "  a@c.com  ", "\na@c.com", "\r\n a@c.com\n", "a\n@c.com",
+				"a@c\n.com", " \n a@c.com", "a@ c.com", "a @c.com", "a@c.com @", "a@@c.com", "a@b@c.com", "@c.com", "a@", "a@ ",
+				"a@\n", "\t\u000ba@c.com\f", "a\u0001@c.com", "a\u007f@c.com", "a(b)@c.com", "a<b>@c.com", "a,b@c.com", "a;b@c.com",
+				"a:b@c.com", "a[b]@c.com", "a!#$%&*+/=?^_`{|}~-@c.com", "a@[127.0.0.1]", "a@[1.2.3.256]", "a@[01.2.3.4]", "a@[::1]",
+				"a@[1::2::3]", "a@[]", "a@[", "a@]", "a@[x]", "a@[127.0.0.1] ", "a@ [127.0.0.1]",
+				StringUtils.repeat( 'u', 64 ) + "@c.com", StringUtils.repeat( 'u', 65 ) + "@c.com", " " + StringUtils.repeat( 'u', 64 ) + "@c.com",
+				"a@" + sLong63 + ".com", "a@" + sLong63 + "a.com", "a@b." + sLong63, "a@b.c" + sLong63,
+				"a@" + StringUtils.repeat( sLong63 + ".", 3 ) + "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzab.com",
+				"a@" + StringUtils.repeat( sLong63 + ".", 3 ) + "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabc.com",
+				"a@" + StringUtils.repeat( sLong63 + ".", 3 ) + "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyza.com.",
+				"刘@c.com", "a@例子.中国", "a@b.中国", "a@b.com ", " a@c.com"
+			};
+		for ( String sInput : arrFixed )
+		{
+			listInputs.add( sInput );
+		}
+
+		//
+		//	random addresses built from fragments which hit the corners of the grammar
+		//
+		String[] arrUserParts	= { "a", "Z9", ".", "..", "'", "\"", "\"x y\"", "\\", "\\\"", "\\.", " ", "\t", "\n", "(", "@", "!", "~", "-", "_", "\u0002" };
+		String[] arrDomainParts	= { "b", "c0", ".", "-", "com", "COM", "cn", "xn--fiqs8s", "localhost", "zz", "arpa", "1", " ", "\r", "[", "]", "@", "_", "a-b" };
+		Random random = new Random( 20191203 );
+		for ( int i = 0; i < 200000; i ++ )
+		{
+			StringBuilder sb = new StringBuilder();
+			for ( int j = random.nextInt( 5 ); j >= 0; j -- )
+			{
+				sb.append( arrUserParts[ random.nextInt( arrUserParts.length ) ] );
+			}
+			sb.append( '@' );
+			for ( int j = random.nextInt( 6 ); j >= 0; j -- )
+			{
+				sb.append( arrDomainParts[ random.nextInt( arrDomainParts.length ) ] );
+			}
+			if ( random.nextInt( 4 ) == 0 )
+			{
+				sb.append( ".com" );
+			}
+			listInputs.add( sb.toString() );
+		}
+		String sAlphabet = "ab.@\"\\ \n[]1-";
+		for ( int i = 0; i < 50000; i ++ )
+		{
+			char[] arrChars = new char[ 1 + random.nextInt( 12 ) ];
+			for ( int j = 0; j < arrChars.length; j ++ )
+			{
+				arrChars[ j ] = sAlphabet.charAt( random.nextInt( sAlphabet.length() ) );
+			}
+			listInputs.add( new String( arrChars ) );
+		}
+
+		int nValid = 0;
+		for ( String sInput : listInputs )
+		{
+			boolean bExpected = ! StringUtils.isBlank( sInput ) && EmailValidator.getInstance().isValid( sInput );
+			assertEquals( bExpected, LibMail.isValidEMail( sInput ), sInput );
+			nValid += bExpected ? 1 : 0;
+		}
+		Assertions.assertTrue( nValid > 1000 );
+	}
+
+	@Test
+	public void testTldTrie()
+	{
+		TldTrie trie = TldTrie.getDefault();
+		for ( DomainValidator.ArrayType type : new DomainValidator.ArrayType[]{ DomainValidator.ArrayType.GENERIC_RO, DomainValidator.ArrayType.COUNTRY_CODE_RO, DomainValidator.ArrayType.INFRASTRUCTURE_RO } )
+		{
+			for ( String sTld : DomainValidator.getTLDEntries( type ) )
+			{
+				assertTrue( trie.contains( sTld ), sTld );
+				assertTrue( trie.contains( sTld.toUpperCase() ), sTld );
+				assertFalse( trie.contains( sTld + "-" ), sTld );
+			}
+		}
+		assertFalse( trie.contains( "" ) );
+		assertFalse( trie.contains( null ) );
+		assertFalse( trie.contains( "localhost" ) );
+		assertTrue( trie.contains( "xcomx", 1, 4 ) );
+		assertTrue( trie.getNodeCount() > trie.getSize() );
+
+		TldTrie small = TldTrie.parse( "# test list\nCOM\n  example \n\ncn\n" );
+		assertEquals( 3, small.getSize() );
+		assertTrue( small.contains( "example" ) );
+		assertFalse( small.contains( "exampl" ) );
+		assertFalse( small.contains( "org" ) );
+		assertThrows( IllegalArgumentException.class, () -> TldTrie.parse( "com\nco.uk" ) );
+
+		try
+		{
+			LibMail.setTldTrie( small );
+			assertTrue( LibMail.isValidEMail( "a@b.example" ) );
+			assertFalse( LibMail.isValidEMail( "a@b.org" ) );
+		}
+		finally
+		{
+			LibMail.setTldTrie( TldTrie.getDefault() );
+		}
+		assertFalse( LibMail.isValidEMail( "a@b.example" ) );
+		assertTrue( LibMail.isValidEMail( "a@b.org" ) );
+	}
+
+	@Test
+	public void testDomainCache()
+	{
+		VerdictCache cache = new VerdictCache( 100, 100 );
+		try
+		{
+			LibMail.setDomainCache( cache );
+
+			assertTrue( LibMail.isValidEMail( "a@qq.com" ) );
+			assertTrue( LibMail.isValidEMail( "b@qq.com" ) );
+			assertFalse( LibMail.isValidEMail( "c.@qq.com" ) );
+			assertFalse( LibMail.isValidEMail( "a@qq.comm" ) );
+			assertFalse( LibMail.isValidEMail( "a@qq.comm" ) );
+			assertEquals( 2, cache.getHitCount() );
+			assertEquals( 2, cache.getMissCount() );
+			assertEquals( 0.5, cache.getHitRate() );
+			assertEquals( 1, cache.getPositiveSize() );
+			assertEquals( 1, cache.getNegativeSize() );
+
+			//	a new trie makes the cached verdicts unreachable
+			LibMail.setTldTrie( TldTrie.parse( "comm" ) );
+			assertFalse( LibMail.isValidEMail( "a@qq.com" ) );
+			assertTrue( LibMail.isValidEMail( "a@qq.comm" ) );
+			assertEquals( 4, cache.getMissCount() );
+		}
+		finally
+		{
+			LibMail.setDomainCache( null );
+			LibMail.setTldTrie( TldTrie.getDefault() );
+		}
+
+		assertNull( LibMail.getDomainCache() );
+		assertTrue( LibMail.isValidEMail( "a@qq.com" ) );
+		assertEquals( 6, cache.getHitCount() + cache.getMissCount() );
+	}
+
+	@Test
+	public void testCanonicalizeEMail()
+	{
+		assertEquals( "liuqixing@me.com", LibMail.canonicalizeEMail( " LiuQiXing@ME.com " ) );
+		assertEquals( "name@example.com", LibMail.canonicalizeEMail( "Name+News@example.com" ) );
+		assertEquals( "firstlast@gmail.com", LibMail.canonicalizeEMail( "First.Last+promo@GoogleMail.com" ) );
+		assertEquals( "firstlast@gmail.com", LibMail.canonicalizeEMail( "f.i.r.s.t.l.a.s.t@gmail.com" ) );
+		assertEquals( "first.last@example.com", LibMail.canonicalizeEMail( "first.last@example.com" ) );
+		assertEquals( "\"a+b\"@example.com", LibMail.canonicalizeEMail( "\"A+B\"@example.com" ) );
+		assertNull( LibMail.canonicalizeEMail( "not an address" ) );
+		assertNull( LibMail.canonicalizeEMail( null ) );
+
+		assertEquals
+			(
+				LibMail.hashCanonicalEMail( LibMail.canonicalizeEMail( "First.Last+a@gmail.com" ) ),
+				LibMail.hashCanonicalEMail( LibMail.canonicalizeEMail( "firstlast+b@googlemail.com" ) )
+			);
+		assertNotEquals( LibMail.hashCanonicalEMail( "a@example.com" ), LibMail.hashCanonicalEMail( "b@example.com" ) );
+
+		//	duplicate signups are caught by the Bloom filter of the hashes
+		ScalableBloomFilter filter = new ScalableBloomFilter( 1000, 0.001 );
+		assertTrue( filter.add( LibMail.hashCanonicalEMail( LibMail.canonicalizeEMail( "First.Last@gmail.com" ) ) ) );
+		assertFalse( filter.add( LibMail.hashCanonicalEMail( LibMail.canonicalizeEMail( "firstlast+spam@googlemail.com" ) ) ) );
+		assertTrue( filter.add( LibMail.hashCanonicalEMail( LibMail.canonicalizeEMail( "other@gmail.com" ) ) ) );
+	}
+
+	@Test
+	public void testDomainSketch()
+	{
+		HeavyHitterSketch sketch = new HeavyHitterSketch( 2, 60000, 5, 1 );
+		LibMail.setDomainSketch( sketch );
+		try
+		{
+			for ( int i = 0; i < 100; i ++ )
+			{
+				LibMail.isValidEMail( "user" + i + "@Spiking.example.com " );
+				LibMail.isValidEMail( "user" + i + "@invalid..example.com" );
+				if ( 0 == i % 4 )
+				{
+					LibMail.isValidEMail( "user" + i + "@me.com" );
+				}
+			}
+			LibMail.isValidEMail( "用户@例子.广告" );
+		}
+		finally
+		{
+			LibMail.setDomainSketch( null );
+		}
+		LibMail.isValidEMail( "user@spiking.example.com" );
+
+		assertEquals( 125, sketch.getTotal() );
+		assertEquals( 100, sketch.estimate( "spiking.example.com" ) );
+		assertEquals( "spiking.example.com", sketch.getTopK().get( 0 ).getKey() );
+		assertEquals( "me.com", sketch.getTopK().get( 1 ).getKey() );
+		assertNull( LibMail.getDomainSketch() );
+	}
+
+	@Test
+	public void testIsValidEMailAsync() throws Exception
+	{
+		//	stub resolver, answered by the test
+		Map<String,CompletableFuture<Boolean>> mapLookups	= new ConcurrentHashMap<>();
+		DomainResolver resolver					= sDomain ->
+		{
+			CompletableFuture<Boolean> future = new CompletableFuture<>();
+			assertNull( mapLookups.put( sDomain, future ) );
+			return future;
+		};
+		AtomicLong lnNow	= new AtomicLong();
+		DomainChecker checker	= new DomainChecker( resolver, 200, 2, 100, 60000, 1000, 100, lnNow::get );
+		DomainChecker previous	= LibMail.getDomainChecker();
+		LibMail.setDomainChecker( checker );
+		try
+		{
+			//	bad syntax is answered at once
+			assertFalse( LibMail.isValidEMailAsync( "not an address" ).getNow( true ) );
+			assertTrue( LibMail.isValidEMailAsync( "user@[127.0.0.1]" ).getNow( false ) );
+			assertTrue( mapLookups.isEmpty() );
+
+			//	concurrent checks of a domain share one lookup
+			List<CompletableFuture<Boolean>> listFutures = new ArrayList<>();
+			for ( int i = 0; i < 10; i ++ )
+			{
+				listFutures.add( LibMail.isValidEMailAsync( "user" + i + "@Exists.example.com" ) );
+			}
+			assertEquals( 1, mapLookups.size() );
+			assertEquals( 9, checker.getCoalescedCount() );
+			assertFalse( listFutures.get( 0 ).isDone() );
+			mapLookups.get( "exists.example.com" ).complete( true );
+			for ( CompletableFuture<Boolean> future : listFutures )
+			{
+				assertTrue( future.getNow( false ) );
+			}
+
+			//	at most 2 lookups run at once, the third waits for a permit
+			CompletableFuture<Boolean> futureMissing	= LibMail.isValidEMailAsync( "user@missing.example.com" );
+			CompletableFuture<Boolean> futureFailing	= LibMail.isValidEMailAsync( "user@failing.example.com" );
+			CompletableFuture<Boolean> futureQueued		= LibMail.isValidEMailAsync( "user@queued.example.com" );
+			assertEquals( 3, mapLookups.size() );
+			assertEquals( 1, checker.getQueuedCount() );
+			mapLookups.get( "missing.example.com" ).complete( false );
+			assertFalse( futureMissing.getNow( true ) );
+			assertEquals( 4, mapLookups.size() );
+			mapLookups.get( "failing.example.com" ).completeExceptionally( new IllegalStateException() );
+			assertTrue( futureFailing.getNow( false ) );
+			mapLookups.get( "queued.example.com" ).complete( true );
+			assertTrue( futureQueued.getNow( false ) );
+
+			//	verdicts are cached until their time to live ends, failures are not cached
+			assertTrue( LibMail.isValidEMailAsync( "other@exists.example.com" ).getNow( false ) );
+			assertFalse( LibMail.isValidEMailAsync( "other@missing.example.com" ).getNow( true ) );
+			assertEquals( 2, checker.getCacheHitCount() );
+			assertEquals( 3, checker.getCacheSize() );
+			lnNow.addAndGet( TimeUnit.MILLISECONDS.toNanos( 1001 ) );
+			mapLookups.clear();
+			assertFalse( LibMail.isValidEMailAsync( "other@missing.example.com" ).isDone() );
+			assertFalse( LibMail.isValidEMailAsync( "other@failing.example.com" ).isDone() );
+			assertEquals( 2, mapLookups.size() );
+
+			//	a lookup taking longer than the timeout is answered with true
+			assertTrue( LibMail.isValidEMailAsync( "user@failing.example.com" ).get( 5, TimeUnit.SECONDS ) );
+			assertEquals( 3, checker.getFailureCount() );
+		}
+		finally
+		{
+			LibMail.setDomainChecker( previous );
+		}
+	}
+
+	@Test
+	public void testDomainCheckerSynchronousFailures()
+	{
+		//	a resolver failing at once, as JndiDomainResolver does when its executor rejects a lookup
+		CompletableFuture<Boolean> futureSlow	= new CompletableFuture<>();
+		DomainResolver resolver			= sDomain ->
+		{
+			if ( "slow.example.com".equals( sDomain ) )
+			{
+				return futureSlow;
+			}
+			if ( "fresh.example.com".equals( sDomain ) )
+			{
+				return CompletableFuture.completedFuture( true );
+			}
+			if ( sDomain.startsWith( "throwing" ) )
+			{
+				throw new IllegalStateException( sDomain );
+			}
+			CompletableFuture<Boolean> future = new CompletableFuture<>();
+			future.completeExceptionally( new IllegalStateException( sDomain ) );
+			return future;
+		};
+		DomainChecker checker = new DomainChecker( resolver, 60000, 1, 20000, 60000, 60000, 100 );
+
+		//	the only permit is held while 20000 domains queue up
+		assertFalse( checker.exists( "slow.example.com" ).isDone() );
+		List<CompletableFuture<Boolean>> listFutures = new ArrayList<>();
+		for ( int i = 0; i < 20000; i ++ )
+		{
+			listFutures.add( checker.exists( ( 0 == i % 2 ? "failing" : "throwing" ) + i + ".example.com" ) );
+		}
+		assertEquals( 20000, checker.getQueuedCount() );
+
+		//	answering the slow lookup drains the queue in a loop, not by recursion
+		futureSlow.complete( true );
+		for ( CompletableFuture<Boolean> future : listFutures )
+		{
+			assertTrue( future.getNow( false ) );
+		}
+		assertEquals( 0, checker.getQueuedCount() );
+		assertEquals( 20000, checker.getFailureCount() );
+
+		//	no permit leaked
+		assertTrue( checker.exists( "fresh.example.com" ).getNow( false ) );
+		assertEquals( 2, checker.getResolvedCount() );
+	}
+
+	@Test
+	public void testDomainCheckerQueueBounds() throws Exception
+	{
+		//	a resolver which never answers
+		DomainChecker checker = new DomainChecker( sDomain -> new CompletableFuture<>(), 200, 1, 2, 60000, 60000, 100 );
+
+		CompletableFuture<Boolean> futureRunning	= checker.exists( "running.example.com" );
+		CompletableFuture<Boolean> futureQueued		= checker.exists( "queued.example.com" );
+		assertFalse( checker.exists( "queued2.example.com" ).isDone() );
+		assertEquals( 2, checker.getQueuedCount() );
+
+		//	a full queue is answered as unknown at once
+		assertTrue( checker.exists( "overflow.example.com" ).getNow( false ) );
+		assertEquals( 1, checker.getFailureCount() );
+
+		//	the timeout counts from exists, also for a lookup which never got a permit
+		assertTrue( futureQueued.get( 5, TimeUnit.SECONDS ) );
+		assertTrue( futureRunning.get( 5, TimeUnit.SECONDS ) );
+		long lnDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( 5 );
+		while ( ( checker.getFailureCount() < 4 || checker.getQueuedCount() > 0 ) && System.nanoTime() < lnDeadline )
+		{
+			Thread.sleep( 10 );
+		}
+		assertEquals( 4, checker.getFailureCount() );
+		assertEquals( 0, checker.getQueuedCount() );
+		assertEquals( 0, checker.getResolvedCount() );
+
+		//	with no queue, lookups only start on a free permit
+		DomainChecker unqueued = new DomainChecker( sDomain -> CompletableFuture.completedFuture( false ), 200, 1, 0, 60000, 60000, 100 );
+		assertFalse( unqueued.exists( "missing.example.com" ).getNow( true ) );
+		assertEquals( 0, unqueued.getFailureCount() );
+	}
+}
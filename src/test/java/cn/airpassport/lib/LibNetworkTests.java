@@ -1,9 +1,25 @@
 package cn.airpassport.lib;
 
+import cn.airpassport.lib.network.IpRangeSet;
+import cn.airpassport.lib.network.IpRateLimiter;
+import cn.airpassport.lib.network.IpRegionTable;
 import cn.airpassport.lib.network.LibNetwork;
 import org.junit.Test;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.validator.routines.InetAddressValidator;
 import org.junit.jupiter.api.Assertions;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -29,4 +45,485 @@ public class LibNetworkTests
 		assertTrue( LibNetwork.isValidIpV4Address( "255.255.255.255" ) );
 		assertTrue( LibNetwork.isValidIpV4Address( "0.0.0.0" ) );
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testParseIpV4Address()
+	{
+		assertEquals( 0x7f000001L, LibNetwork.parseIpV4Address( "127.0.0.1" ) );
+		assertEquals( 0xffffffffL, LibNetwork.parseIpV4Address( "255.255.255.255" ) );
+		assertEquals( 0L, LibNetwork.parseIpV4Address( "0.0.0.0" ) );
+		assertEquals( 0x0a000102L, LibNetwork.parseIpV4Address( "x10.0.1.2y", 1, 9 ) );
+		assertEquals( LibNetwork.INVALID_IP_V4, LibNetwork.parseIpV4Address( "127.0.0.01" ) );
+		assertEquals( LibNetwork.INVALID_IP_V4, LibNetwork.parseIpV4Address( "127.0.0.256" ) );
+		assertEquals( LibNetwork.INVALID_IP_V4, LibNetwork.parseIpV4Address( "1.2.3.4." ) );
+		assertEquals( LibNetwork.INVALID_IP_V4, LibNetwork.parseIpV4Address( " 1.2.3.4" ) );
+		assertEquals( LibNetwork.INVALID_IP_V4, LibNetwork.parseIpV4Address( ( CharSequence ) null ) );
+
+		assertEquals( "127.0.0.1", LibNetwork.formatIpV4Address( 0x7f000001 ) );
+		assertEquals( "255.255.255.255", LibNetwork.formatIpV4Address( -1 ) );
+
+		Random random = new Random( 16 );
+		for ( int i = 0; i < 100000; i ++ )
+		{
+			int nAddress = random.nextInt();
+			assertEquals( nAddress, ( int ) LibNetwork.parseIpV4Address( LibNetwork.formatIpV4Address( nAddress ) ) );
+		}
+	}
+
+	@Test
+	public void testIpV4ParserAgreesWithInetAddressValidator()
+	{
+		String[] arrFragments	= new String[]{ "0", "1", "9", "00", "01", "10", "99", "100", "199", "255", "256", "300", "999", "0000", "1000", ".", ".", ".", "", " ", "\n", "-", "+", "a", "١" };
+		Random random		= new Random( 4 );
+
+		for ( int i = 0; i < 300000; i ++ )
+		{
+			StringBuilder sbAddress	= new StringBuilder();
+			int nParts		= 1 + random.nextInt( 9 );
+			for ( int j = 0; j < nParts; j ++ )
+			{
+				sbAddress.append( arrFragments[ random.nextInt( arrFragments.length ) ] );
+				if ( random.nextInt( 3 ) > 0 )
+				{
+					sbAddress.append( '.' );
+				}
+			}
+			if ( random.nextBoolean() && sbAddress.length() > 0 )
+			{
+				sbAddress.setLength( sbAddress.length() - 1 );
+			}
+
+			String sAddress = sbAddress.toString();
+			assertEquals
+				(
+					! StringUtils.isBlank( sAddress ) && InetAddressValidator.getInstance().isValidInet4Address( sAddress ),
+					LibNetwork.isValidIpV4Address( sAddress ),
+					sAddress
+				);
+		}
+	}
+
+	@Test
+	public void testParseIpV6Address()
+	{
+		long[] arrAddress = new long[ 2 ];
+		assertTrue( LibNetwork.parseIpV6Address( "2408:8207:24d1:6fb0:8f7:f7e:1550:e48a", arrAddress ) );
+		assertArrayEquals( new long[]{ 0x2408820724d16fb0L, 0x08f70f7e1550e48aL }, arrAddress );
+		assertTrue( LibNetwork.parseIpV6Address( "::", arrAddress ) );
+		assertArrayEquals( new long[]{ 0, 0 }, arrAddress );
+		assertTrue( LibNetwork.parseIpV6Address( "::1", arrAddress ) );
+		assertArrayEquals( new long[]{ 0, 1 }, arrAddress );
+		assertTrue( LibNetwork.parseIpV6Address( "FE80::", arrAddress ) );
+		assertArrayEquals( new long[]{ 0xfe80000000000000L, 0 }, arrAddress );
+		assertTrue( LibNetwork.parseIpV6Address( "1:2:3::4:5", arrAddress ) );
+		assertArrayEquals( new long[]{ 0x0001000200030000L, 0x0000000000040005L }, arrAddress );
+		assertTrue( LibNetwork.parseIpV6Address( "::ffff:192.168.0.1", arrAddress ) );
+		assertArrayEquals( new long[]{ 0, 0x0000ffffc0a80001L }, arrAddress );
+		assertTrue( LibNetwork.parseIpV6Address( "1:2:3:4:5:6:1.2.3.4", arrAddress ) );
+		assertArrayEquals( new long[]{ 0x0001000200030004L, 0x0005000601020304L }, arrAddress );
+
+		assertFalse( LibNetwork.parseIpV6Address( "1:2:3:4:5:6:7:8:9", null ) );
+		assertFalse( LibNetwork.parseIpV6Address( "1:2:3:4::5:6:7:8", null ) );
+		assertFalse( LibNetwork.parseIpV6Address( "1::2::3", null ) );
+		assertFalse( LibNetwork.parseIpV6Address( ":1::", null ) );
+		assertFalse( LibNetwork.parseIpV6Address( "1:", null ) );
+		assertFalse( LibNetwork.parseIpV6Address( "12345::", null ) );
+		assertFalse( LibNetwork.parseIpV6Address( "1.2.3.4::", null ) );
+		assertFalse( LibNetwork.parseIpV6Address( "::1.2.3.04", null ) );
+
+		//	zone ids only where allowed
+		String sLinkLocal = "fe80::1%eth0";
+		assertFalse( LibNetwork.isValidIpV6Address( sLinkLocal ) );
+		assertTrue( LibNetwork.parseIpV6Address( sLinkLocal, 0, sLinkLocal.length(), true, arrAddress ) );
+		assertArrayEquals( new long[]{ 0xfe80000000000000L, 1 }, arrAddress );
+		assertFalse( LibNetwork.parseIpV6Address( "fe80::1%", 0, 8, true, null ) );
+
+		//	Integer.parseInt lets InetAddressValidator accept signs and non-ASCII digits, the parser does not
+		assertTrue( InetAddressValidator.getInstance().isValidInet6Address( "+1::" ) );
+		assertFalse( LibNetwork.isValidIpV6Address( "+1::" ) );
+		assertFalse( LibNetwork.isValidIpV6Address( "-0::" ) );
+		assertFalse( LibNetwork.isValidIpV6Address( "١::" ) );
+	}
+
+	@Test
+	public void testFormatIpV6Address()
+	{
+		//	examples of RFC 5952
+		assertEquals( "2001:db8::1", LibNetwork.canonicalizeIpAddress( "2001:0db8:0000:0000:0000:0000:0000:0001" ) );
+		assertEquals( "2001:db8::2:1", LibNetwork.canonicalizeIpAddress( "2001:db8:0:0:0:0:2:1" ) );
+		assertEquals( "2001:db8:0:1:1:1:1:1", LibNetwork.canonicalizeIpAddress( "2001:db8::1:1:1:1:1" ) );
+		assertEquals( "2001:0:0:1::1", LibNetwork.canonicalizeIpAddress( "2001:0:0:1:0:0:0:1" ) );
+		assertEquals( "2001:db8::1:0:0:1", LibNetwork.canonicalizeIpAddress( "2001:db8:0:0:1:0:0:1" ) );
+		assertEquals( "2001:db8::aaaa:0:0:1", LibNetwork.canonicalizeIpAddress( "2001:DB8:0:0:AAAA::1" ) );
+		assertEquals( "::", LibNetwork.canonicalizeIpAddress( "0:0:0:0:0:0:0:0" ) );
+		assertEquals( "::1", LibNetwork.canonicalizeIpAddress( "::0:1" ) );
+		assertEquals( "1::", LibNetwork.canonicalizeIpAddress( "1:0:0:0:0:0:0:0" ) );
+
+		//	IpV4-mapped addresses become IpV4 keys
+		assertEquals( "192.168.0.1", LibNetwork.canonicalizeIpAddress( "::FFFF:c0a8:1" ) );
+		assertEquals( "192.168.0.1", LibNetwork.canonicalizeIpAddress( "192.168.0.1" ) );
+		assertEquals( "::ffff:192.168.0.1", LibNetwork.formatIpV6Address( 0, 0x0000ffffc0a80001L ) );
+		assertEquals( 0xc0a80001L, LibNetwork.toIpV4Address( 0, 0x0000ffffc0a80001L ) );
+		assertEquals( LibNetwork.INVALID_IP_V4, LibNetwork.toIpV4Address( 0, 0xc0a80001L ) );
+		assertNull( LibNetwork.canonicalizeIpAddress( "localhost" ) );
+
+		//	the canonical text parses back to the same address
+		Random random		= new Random( 17 );
+		long[] arrAddress	= new long[ 2 ];
+		for ( int i = 0; i < 100000; i ++ )
+		{
+			long lnHigh	= LibNetworkTests.randomHalf( random );
+			long lnLow	= LibNetworkTests.randomHalf( random );
+			String sText	= LibNetwork.formatIpV6Address( lnHigh, lnLow );
+			assertTrue( LibNetwork.parseIpV6Address( sText, arrAddress ), sText );
+			assertArrayEquals( new long[]{ lnHigh, lnLow }, arrAddress, sText );
+			assertTrue( InetAddressValidator.getInstance().isValidInet6Address( sText ), sText );
+		}
+	}
+
+	@Test
+	public void testIpV6ParserAgreesWithInetAddressValidator()
+	{
+		String[] arrFragments	= new String[]{ "0", "1", "ab", "fFf", "0000", "ffff", "10000", "g", ":", ":", ":", "::", ".", "1.2.3.4", "255.0.0.255", "1.2.3.04", " ", "%" };
+		Random random		= new Random( 6 );
+
+		for ( int i = 0; i < 300000; i ++ )
+		{
+			StringBuilder sbAddress	= new StringBuilder();
+			int nParts		= 1 + random.nextInt( 14 );
+			for ( int j = 0; j < nParts; j ++ )
+			{
+				sbAddress.append( arrFragments[ random.nextInt( arrFragments.length ) ] );
+				if ( random.nextInt( 3 ) > 0 )
+				{
+					sbAddress.append( ':' );
+				}
+			}
+
+			String sAddress = sbAddress.toString();
+			assertEquals
+				(
+					! StringUtils.isBlank( sAddress ) && InetAddressValidator.getInstance().isValidInet6Address( sAddress ),
+					LibNetwork.isValidIpV6Address( sAddress ),
+					sAddress
+				);
+			assertEquals
+				(
+					! StringUtils.isBlank( sAddress ) && InetAddressValidator.getInstance().isValid( sAddress ),
+					LibNetwork.isValidIpAddress( sAddress ),
+					sAddress
+				);
+		}
+	}
+
+
+	@Test
+	public void testIpRangeSet()
+	{
+		IpRangeSet set = IpRangeSet.parse
+			(
+				"# office\n" +
+				"10.0.0.0/8\n" +
+				"10.1.0.0/16\n" +
+				"10.1.2.3\n" +
+				"192.168.1.77/24\n" +
+				"2001:db8::/32\n" +
+				"2001:db8:1::/48\n" +
+				"0.0.0.0/0\n"
+			);
+		assertEquals( 7, set.getSize() );
+		assertEquals( "192.168.1.0/24", set.getRange( 3 ) );
+		assertEquals( "2001:db8:1::/48", set.getRange( 5 ) );
+		assertEquals( 1, set.longestPrefixMatchIpV4( ( int ) LibNetwork.parseIpV4Address( "10.1.9.9" ) ) );
+		assertEquals( 2, set.longestPrefixMatchIpV4( ( int ) LibNetwork.parseIpV4Address( "10.1.2.3" ) ) );
+		assertEquals( 0, set.longestPrefixMatchIpV4( ( int ) LibNetwork.parseIpV4Address( "10.2.0.1" ) ) );
+		assertEquals( 6, set.longestPrefixMatchIpV4( ( int ) LibNetwork.parseIpV4Address( "8.8.8.8" ) ) );
+		assertTrue( set.contains( "::ffff:10.1.2.3" ) );
+		assertTrue( set.contains( "2001:db8:1:2::1" ) );
+		assertFalse( set.contains( "2001:db9::1" ) );
+		assertFalse( set.contains( "not an address" ) );
+
+		long[] arrAddress = new long[ 2 ];
+		assertTrue( LibNetwork.parseIpV6Address( "2001:db8:1:2::1", arrAddress ) );
+		assertEquals( 5, set.longestPrefixMatch( arrAddress[ 0 ], arrAddress[ 1 ] ) );
+
+		assertThrows( IllegalArgumentException.class, () -> IpRangeSet.parse( "10.0.0.0/33" ) );
+		assertThrows( IllegalArgumentException.class, () -> IpRangeSet.parse( "::/129" ) );
+		assertThrows( IllegalArgumentException.class, () -> IpRangeSet.parse( "10.0.0.0/" ) );
+		assertFalse( IpRangeSet.empty().contains( "10.0.0.1" ) );
+	}
+
+	@Test
+	public void testIpRangeSetAgreesWithLinearScan()
+	{
+		Random random		= new Random( 18 );
+		List<String> listRanges	= new ArrayList<>();
+		List<long[]> listKeys	= new ArrayList<>();
+
+		//	nested prefixes of a few bases, so ranges overlap
+		long[] arrBases = new long[ 16 ];
+		for ( int i = 0; i < arrBases.length; i ++ )
+		{
+			arrBases[ i ] = random.nextLong();
+		}
+		for ( int i = 0; i < 20000; i ++ )
+		{
+			long lnHigh		= arrBases[ random.nextInt( arrBases.length ) ] ^ ( random.nextLong() >>> ( 8 + random.nextInt( 56 ) ) );
+			long lnLow		= random.nextLong();
+			int nPrefixLength	= random.nextInt( 129 );
+			listRanges.add( LibNetwork.formatIpV6Address( lnHigh, lnLow ) + "/" + nPrefixLength );
+			listKeys.add( new long[]{ lnHigh, lnLow, nPrefixLength } );
+		}
+		IpRangeSet set = IpRangeSet.build( listRanges );
+		LibNetwork.setDenyList( set );
+
+		for ( int i = 0; i < 2000; i ++ )
+		{
+			long[] arrKey	= listKeys.get( random.nextInt( listKeys.size() ) );
+			long lnHigh	= arrKey[ 0 ] ^ ( random.nextLong() >>> random.nextInt( 64 ) );
+			long lnLow	= arrKey[ 1 ] ^ random.nextLong();
+
+			int nExpected		= -1;
+			long lnExpectedLength	= -1;
+			for ( int j = 0; j < listKeys.size(); j ++ )
+			{
+				long[] arrRange	= listKeys.get( j );
+				int nLength	= ( int ) arrRange[ 2 ];
+				if ( nLength > lnExpectedLength && LibNetworkTests.matches( arrRange[ 0 ], arrRange[ 1 ], lnHigh, lnLow, nLength ) )
+				{
+					nExpected		= j;
+					lnExpectedLength	= nLength;
+				}
+			}
+
+			int nMatch = LibNetwork.getDenyList().longestPrefixMatch( lnHigh, lnLow );
+			assertEquals( nExpected < 0 ? -1 : lnExpectedLength, nMatch < 0 ? -1 : listKeys.get( nMatch )[ 2 ] );
+			assertEquals( nExpected >= 0, LibNetwork.isDeniedIpAddress( LibNetwork.formatIpV6Address( lnHigh, lnLow ) ) );
+		}
+
+		LibNetwork.setDenyList( IpRangeSet.empty() );
+		assertFalse( LibNetwork.isAllowedIpAddress( "127.0.0.1" ) );
+	}
+
+	@Test
+	public void testIpRegionTable() throws IOException
+	{
+		String sCsv =
+			"# first,last,region\n" +
+			"1.0.1.0,1.0.3.255,cn\n" +
+			"1.0.0.0,1.0.0.255,AU\n" +
+			"1.0.4.0/22,CN\n" +
+			"2001:db8::/32,US\n" +
+			"8.8.8.8,US\n" +
+			"240e::,240e:ffff:ffff:ffff:ffff:ffff:ffff:ffff,CN\n";
+
+		File file = File.createTempFile( "LibNetworkTests", ".bin" );
+		IpRegionTable previous = IpRegionTable.getCurrent();
+		try
+		{
+			//	the 2 CN ranges of IpV4 are merged
+			assertEquals( 5, IpRegionTable.compile( new StringReader( sCsv ), file ) );
+			IpRegionTable table = IpRegionTable.map( file );
+			assertEquals( 5, table.getSize() );
+
+			assertEquals( "AU", table.getRegion( "1.0.0.0" ) );
+			assertEquals( "AU", table.getRegion( "1.0.0.255" ) );
+			assertEquals( "CN", table.getRegion( "1.0.1.0" ) );
+			assertEquals( "CN", table.getRegion( "1.0.7.255" ) );
+			assertNull( table.getRegion( "1.0.8.0" ) );
+			assertNull( table.getRegion( "0.255.255.255" ) );
+			assertEquals( "US", table.getRegion( "8.8.8.8" ) );
+			assertNull( table.getRegion( "8.8.8.9" ) );
+			assertEquals( "US", table.getRegion( "::ffff:8.8.8.8" ) );
+			assertEquals( "US", table.getRegion( "2001:db8:ffff::1" ) );
+			assertEquals( "CN", table.getRegion( "240e:3b0::1" ) );
+			assertNull( table.getRegion( "2409::1" ) );
+			assertNull( table.getRegion( "localhost" ) );
+			assertSame( table.getRegion( "1.0.1.0" ), table.getRegion( "240e::1" ) );
+
+			assertNull( LibNetwork.getRegionByIpAddress( "8.8.8.8" ) );
+			IpRegionTable.setCurrent( table );
+			assertEquals( "US", LibNetwork.getRegionByIpAddress( "8.8.8.8" ) );
+			assertEquals( "AU", LibNetwork.getRegionByIpAddress( "::ffff:1.0.0.1" ) );
+
+			assertThrows( IllegalArgumentException.class, () -> IpRegionTable.compile( new StringReader( "1.0.0.0/8,CN\n1.2.3.4,AU\n" ), file ) );
+			assertThrows( IllegalArgumentException.class, () -> IpRegionTable.compile( new StringReader( "1.0.0.0,::1,CN\n" ), file ) );
+			assertThrows( IllegalArgumentException.class, () -> IpRegionTable.compile( new StringReader( "1.0.0.0,CHN\n" ), file ) );
+
+			//	a failed compile leaves the mapped file alone, a truncated file is refused
+			assertEquals( "CN", table.getRegion( "1.0.5.5" ) );
+			try ( RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" ) )
+			{
+				randomAccessFile.setLength( randomAccessFile.length() - 1 );
+			}
+			assertThrows( IOException.class, () -> IpRegionTable.map( file ) );
+
+			//	a table which can not be moved into place leaves no temporary file behind
+			File directory = new File( file.getPath() + ".dir" );
+			File fileInside = new File( directory, "inside" );
+			assertTrue( directory.mkdir() && fileInside.createNewFile() );
+			try
+			{
+				assertThrows( IOException.class, () -> IpRegionTable.compile( new StringReader( sCsv ), directory ) );
+				assertFalse( new File( directory.getPath() + ".tmp" ).exists() );
+			}
+			finally
+			{
+				fileInside.delete();
+				directory.delete();
+			}
+		}
+		finally
+		{
+			IpRegionTable.setCurrent( previous );
+			Files.deleteIfExists( file.toPath() );
+			Files.deleteIfExists( new File( file.getPath() + ".tmp" ).toPath() );
+		}
+	}
+
+	@Test
+	public void testIpRateLimiter()
+	{
+		AtomicLong clock	= new AtomicLong( 1_000_000L );
+		IpRateLimiter limiter	= new IpRateLimiter( 64, 2, 3, 64, clock::get );
+
+		//	a burst of 3, then 2 tokens a second
+		assertTrue( limiter.tryAcquire( "10.0.0.1" ) );
+		assertTrue( limiter.tryAcquire( "10.0.0.1" ) );
+		assertTrue( limiter.tryAcquire( "::ffff:10.0.0.1" ) );
+		assertFalse( limiter.tryAcquire( "10.0.0.1" ) );
+		assertTrue( limiter.tryAcquire( "10.0.0.2" ) );
+		clock.addAndGet( 499 );
+		assertFalse( limiter.tryAcquire( "10.0.0.1" ) );
+		clock.addAndGet( 1 );
+		assertTrue( limiter.tryAcquire( "10.0.0.1" ) );
+		assertFalse( limiter.tryAcquire( "10.0.0.1" ) );
+
+		//	a slow rate is not lost to rounding when hit every millisecond
+		for ( int i = 0; i < 499; i ++ )
+		{
+			clock.incrementAndGet();
+			assertFalse( limiter.tryAcquire( "10.0.0.1" ) );
+		}
+		clock.incrementAndGet();
+		assertTrue( limiter.tryAcquire( "10.0.0.1" ) );
+
+		//	addresses of the same /64 share a bucket
+		assertTrue( limiter.tryAcquire( "2001:db8::1" ) );
+		assertTrue( limiter.tryAcquire( "2001:db8::2" ) );
+		assertTrue( limiter.tryAcquire( "2001:db8:0:0:ffff::" ) );
+		assertFalse( limiter.tryAcquire( "2001:db8::3" ) );
+		assertTrue( limiter.tryAcquire( "2001:db8:0:1::1" ) );
+
+		assertFalse( limiter.tryAcquire( "10.0.0.256" ) );
+		assertFalse( limiter.tryAcquire( null ) );
+		assertEquals( 10, limiter.getAllowedCount() );
+		assertEquals( 505, limiter.getDeniedCount() );
+		assertEquals( 0, limiter.getEvictedCount() );
+		assertEquals( 64, limiter.getCapacity() );
+
+		//	full buckets are idle, their slots free for other addresses
+		assertEquals( 3, limiter.getActiveCount() );
+		clock.addAndGet( 1500 );
+		assertEquals( 0, limiter.getActiveCount() );
+		for ( int i = 0; i < 1000; i ++ )
+		{
+			assertTrue( limiter.tryAcquireIpV4( i ) );
+			clock.addAndGet( 1500 );
+		}
+		assertEquals( 0, limiter.getEvictedCount() );
+
+		//	a table in use drops the buckets touched longest ago
+		for ( int i = 0; i < 1000; i ++ )
+		{
+			assertTrue( limiter.tryAcquireIpV4( i ) );
+		}
+		assertEquals( 64, limiter.getActiveCount() );
+		assertEquals( 1000 - 64, limiter.getEvictedCount() );
+		assertEquals( 2.0, limiter.getTokens( 0L, 0xffffL << 32 | 999 ) );
+
+		assertThrows( IllegalArgumentException.class, () -> new IpRateLimiter( 0, 1, 1 ) );
+		assertThrows( IllegalArgumentException.class, () -> new IpRateLimiter( 64, 0, 1 ) );
+		assertThrows( IllegalArgumentException.class, () -> new IpRateLimiter( 64, 1, 65536 ) );
+	}
+
+	@Test
+	public void testIpRateLimiterUnderContention() throws InterruptedException
+	{
+		//	with the clock stopped every address gets its burst, no matter how many threads race for it
+		int nThreads		= 16;
+		int nAddresses		= 1000;
+		int nRounds		= 20;
+		IpRateLimiter limiter	= new IpRateLimiter( 1 << 16, 1, 5, 64, () -> 0L );
+		CountDownLatch latchStart	= new CountDownLatch( 1 );
+		List<Thread> listThreads	= new ArrayList<>();
+
+		for ( int t = 0; t < nThreads; t ++ )
+		{
+			int nOffset = t;
+			Thread thread = new Thread( () ->
+			{
+				try
+				{
+					latchStart.await();
+				}
+				catch ( InterruptedException e )
+				{
+					return;
+				}
+				for ( int i = 0; i < nAddresses * nRounds; i ++ )
+				{
+					limiter.tryAcquireIpV4( 0x0a000000 + ( i + nOffset * 37 ) % nAddresses );
+				}
+			} );
+			thread.start();
+			listThreads.add( thread );
+		}
+
+		long lnStart = System.nanoTime();
+		latchStart.countDown();
+		for ( Thread thread : listThreads )
+		{
+			thread.join();
+		}
+		long lnNanos = System.nanoTime() - lnStart;
+
+		long lnRequests = ( long ) nThreads * nAddresses * nRounds;
+		assertEquals( lnRequests, limiter.getAllowedCount() + limiter.getDeniedCount() );
+		assertEquals( 5L * nAddresses, limiter.getAllowedCount(), () -> lnRequests * 1_000_000_000L / Math.max( 1, lnNanos ) + " requests/s" );
+		assertEquals( 0, limiter.getEvictedCount() );
+	}
+
+	private static boolean matches( long lnHigh1, long lnLow1, long lnHigh2, long lnLow2, int nLength )
+	{
+		for ( int i = 0; i < nLength; i ++ )
+		{
+			long lnBit1 = i < 64 ? lnHigh1 >>> ( 63 - i ) : lnLow1 >>> ( 127 - i );
+			long lnBit2 = i < 64 ? lnHigh2 >>> ( 63 - i ) : lnLow2 >>> ( 127 - i );
+			if ( ( lnBit1 & 1 ) != ( lnBit2 & 1 ) )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 *	64 random bits, with runs of zero groups
+	 */
+	private static long randomHalf( Random random )
+	{
+		long lnHalf = random.nextLong();
+		for ( int g = 0; g < 4; g ++ )
+		{
+			if ( random.nextBoolean() )
+			{
+				lnHalf &= ~( 0xffffL << ( 16 * g ) );
+			}
+		}
+
+		return lnHalf;
+	}
+}
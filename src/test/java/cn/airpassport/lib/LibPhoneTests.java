@@ -1,9 +1,29 @@
 package cn.airpassport.lib;
 
+import cn.airpassport.lib.common.VerdictCache;
+import cn.airpassport.lib.phone.ChinaMobileCarrier;
+import cn.airpassport.lib.phone.ChinaMobilePrefixTable;
 import cn.airpassport.lib.phone.LibPhone;
+import cn.airpassport.lib.phone.PackedPhoneNumber;
+import cn.airpassport.lib.phone.PhoneBlocklist;
+import cn.airpassport.lib.phone.PhoneValidationStats;
+import com.google.i18n.phonenumbers.NumberParseException;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonenumber;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -211,4 +231,515 @@ public class LibPhoneTests
 		assertTrue( "CN".equalsIgnoreCase( LibPhone.getRegionByCountryCode( 86 ) ) );
 		assertFalse( "CN".equalsIgnoreCase( LibPhone.getRegionByCountryCode( 11 ) ) );
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testChinaMobilePrefixTableAgreesWithRegex()
+	{
+		//	the regex used by isValidMobileNumber before the prefix table
+		Pattern pattern = Pattern.compile( "^((13[0-9])|(14[5|7])|(15([0-3]|[5-9]))|(16[0-9])|(17[013678])|(18[0,4-9])|(19[0-9]))\\d{8}$" );
+		String[] arrSuffixes = { "0000000", "1055056", "9999999" };
+
+		for ( int nPrefix = 0; nPrefix < 10000; nPrefix ++ )
+		{
+			for ( String sSuffix : arrSuffixes )
+			{
+				String sPhoneNumber = String.format( "%04d%s", nPrefix, sSuffix );
+				assertEquals( pattern.matcher( sPhoneNumber ).matches(), LibPhone.isValidChinaMobileNumber( sPhoneNumber ), sPhoneNumber );
+			}
+		}
+
+		assertFalse( LibPhone.isValidChinaMobileNumber( "1381055056" ) );
+		assertFalse( LibPhone.isValidChinaMobileNumber( "138105505690" ) );
+		assertFalse( LibPhone.isValidChinaMobileNumber( "1381055056a" ) );
+		assertFalse( LibPhone.isValidChinaMobileNumber( "138 1055056" ) );
+	}
+
+	@Test
+	public void testGetChinaMobileCarrier()
+	{
+		assertEquals( ChinaMobileCarrier.CHINA_MOBILE, LibPhone.getChinaMobileCarrier( "13810550569" ) );
+		assertEquals( ChinaMobileCarrier.CHINA_UNICOM, LibPhone.getChinaMobileCarrier( "18610550569" ) );
+		assertEquals( ChinaMobileCarrier.CHINA_TELECOM, LibPhone.getChinaMobileCarrier( "18910550569" ) );
+		assertEquals( ChinaMobileCarrier.VIRTUAL, LibPhone.getChinaMobileCarrier( "17010550569" ) );
+		assertEquals( ChinaMobileCarrier.UNKNOWN, LibPhone.getChinaMobileCarrier( "16010550569" ) );
+		assertNull( LibPhone.getChinaMobileCarrier( "17510550569" ) );
+		assertNull( LibPhone.getChinaMobileCarrier( null ) );
+	}
+
+	@Test
+	public void testChinaMobilePrefixTableReload()
+	{
+		ChinaMobilePrefixTable table = ChinaMobilePrefixTable.parse
+			(
+				"# test table\n" +
+				"138	CHINA_MOBILE\n" +
+				"175	CHINA_UNICOM\n" +
+				"1385	VIRTUAL\n"
+			);
+		assertEquals( ChinaMobileCarrier.CHINA_MOBILE, table.getCarrier( "13810550569" ) );
+		assertEquals( ChinaMobileCarrier.VIRTUAL, table.getCarrier( "13850550569" ) );
+		assertEquals( ChinaMobileCarrier.CHINA_UNICOM, table.getCarrier( "17510550569" ) );
+		assertNull( table.getCarrier( "13910550569" ) );
+
+		try
+		{
+			ChinaMobilePrefixTable.setCurrent( table );
+			assertTrue( LibPhone.isValidChinaMobileNumber( "17510550569" ) );
+			assertFalse( LibPhone.isValidChinaMobileNumber( "13910550569" ) );
+		}
+		finally
+		{
+			ChinaMobilePrefixTable.setCurrent( ChinaMobilePrefixTable.getDefault() );
+		}
+
+		assertThrows( IllegalArgumentException.class, () -> ChinaMobilePrefixTable.parse( "13 CHINA_MOBILE" ) );
+		assertThrows( IllegalArgumentException.class, () -> ChinaMobilePrefixTable.parse( "138 NOBODY" ) );
+	}
+
+	@Test
+	public void testIsValidMobileNumbersBulk()
+	{
+		String[] arrSamples = { "13810550569", "17510550569", "", null, "abc", "+86 138 1055 0569", "078 123 45 67", "+41 78 123 45 67", "12345" };
+		Random random = new Random( 20191201 );
+
+		String[] arrPhoneNumbers = new String[ 5000 ];
+		for ( int i = 0; i < arrPhoneNumbers.length; i ++ )
+		{
+			arrPhoneNumbers[ i ] = arrSamples[ random.nextInt( arrSamples.length ) ];
+		}
+
+		for ( String sRegion : new String[]{ "CN", "CH" } )
+		{
+			String[] arrNormalized = new String[ arrPhoneNumbers.length ];
+			BitSet bitSet = LibPhone.isValidMobileNumbers( arrPhoneNumbers, sRegion, arrNormalized );
+
+			for ( int i = 0; i < arrPhoneNumbers.length; i ++ )
+			{
+				boolean bValid = LibPhone.isValidMobileNumber( arrPhoneNumbers[ i ], sRegion );
+				assertEquals( bValid, bitSet.get( i ) );
+				assertEquals( bValid, null != arrNormalized[ i ] );
+			}
+		}
+
+		List<String> listPhoneNumbers = new ArrayList<>();
+		listPhoneNumbers.add( "13810550569" );
+		listPhoneNumbers.add( "17510550569" );
+		listPhoneNumbers.add( "18811070903" );
+		BitSet bitSet = LibPhone.isValidMobileNumbers( listPhoneNumbers, "CN" );
+		assertTrue( bitSet.get( 0 ) );
+		assertFalse( bitSet.get( 1 ) );
+		assertTrue( bitSet.get( 2 ) );
+		assertEquals( 2, bitSet.cardinality() );
+	}
+
+	@Test
+	public void testIsValidMobileNumbersBulkPerRegion()
+	{
+		String[] arrPhoneNumbers	= { "13810550569", "078 123 45 67", "13810550569", "(201) 555-0123" };
+		String[] arrRegions		= { "CN", "CH", "CH", "US" };
+		String[] arrNormalized		= new String[ arrPhoneNumbers.length ];
+
+		BitSet bitSet = LibPhone.isValidMobileNumbers( arrPhoneNumbers, arrRegions, arrNormalized );
+		assertTrue( bitSet.get( 0 ) );
+		assertTrue( bitSet.get( 1 ) );
+		assertFalse( bitSet.get( 2 ) );
+		assertTrue( bitSet.get( 3 ) );
+
+		assertEquals( "+8613810550569", arrNormalized[ 0 ] );
+		assertEquals( "+41781234567", arrNormalized[ 1 ] );
+		assertNull( arrNormalized[ 2 ] );
+		assertEquals( "+12015550123", arrNormalized[ 3 ] );
+
+		assertThrows( IllegalArgumentException.class, () -> LibPhone.isValidMobileNumbers( arrPhoneNumbers, new String[ 1 ], null ) );
+		assertTrue( LibPhone.isValidMobileNumbers( new String[ 0 ], "CN", null ).isEmpty() );
+	}
+
+	@Test
+	public void testValidationCache()
+	{
+		VerdictCache cache = new VerdictCache( 100, 10 );
+		try
+		{
+			LibPhone.setValidationCache( cache );
+
+			assertTrue( LibPhone.isValidMobileNumber( "078 123 45 67", "CH" ) );
+			assertTrue( LibPhone.isValidMobileNumber( "078 123 45 67", "CH" ) );
+			assertFalse( LibPhone.isValidMobileNumber( "078 123 45", "CH" ) );
+			assertFalse( LibPhone.isValidMobileNumber( "078 123 45", "CH" ) );
+			assertEquals( 2, cache.getHitCount() );
+			assertEquals( 2, cache.getMissCount() );
+			assertEquals( 1, cache.getPositiveSize() );
+			assertEquals( 1, cache.getNegativeSize() );
+
+			//	CN numbers and inputs without digits never reach libphonenumber
+			assertTrue( LibPhone.isValidMobileNumber( "13810550569", "CN" ) );
+			assertFalse( LibPhone.isValidMobileNumber( "abc", "CH" ) );
+			assertEquals( 4, cache.getHitCount() + cache.getMissCount() );
+		}
+		finally
+		{
+			LibPhone.setValidationCache( null );
+		}
+
+		assertNull( LibPhone.getValidationCache() );
+		assertTrue( LibPhone.isValidMobileNumber( "078 123 45 67", "CH" ) );
+		assertEquals( 4, cache.getHitCount() + cache.getMissCount() );
+	}
+
+	@Test
+	public void testRegionLookupTablesAgreeWithLibphonenumber()
+	{
+		PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+
+		for ( String sRegion : phoneUtil.getSupportedRegions() )
+		{
+			assertEquals( phoneUtil.getCountryCodeForRegion( sRegion ), LibPhone.getCountryCodeByRegion( sRegion ), sRegion );
+			assertEquals( phoneUtil.getCountryCodeForRegion( sRegion ), LibPhone.getCountryCodeByRegion( sRegion.toLowerCase() ), sRegion );
+			assertTrue( LibPhone.isValidRegion( sRegion ) );
+		}
+		for ( int nCountryCode = -1; nCountryCode <= 1000; nCountryCode ++ )
+		{
+			assertEquals( phoneUtil.getRegionCodeForCountryCode( nCountryCode ), LibPhone.getRegionByCountryCode( nCountryCode ) );
+		}
+
+		assertEquals( 86, LibPhone.getCountryCodeByRegion( "cn" ) );
+		assertEquals( 41, LibPhone.getCountryCodeByRegion( "cH" ) );
+		assertEquals( 0, LibPhone.getCountryCodeByRegion( "ZZ" ) );
+		assertEquals( 0, LibPhone.getCountryCodeByRegion( "C" ) );
+		assertEquals( 0, LibPhone.getCountryCodeByRegion( "C@" ) );
+		assertEquals( 0, LibPhone.getCountryCodeByRegion( null ) );
+		assertFalse( LibPhone.isValidRegion( "001" ) );
+		assertEquals( "ZZ", LibPhone.getRegionByCountryCode( Integer.MAX_VALUE ) );
+		assertTrue( LibPhone.getLookupTablesBuildNanos() > 0 );
+	}
+
+	@Test
+	public void testPreFilterKeepsLibphonenumberVerdicts()
+	{
+		PhoneNumberUtil phoneUtil	= PhoneNumberUtil.getInstance();
+		Random random			= new Random( 20200101 );
+		String sAlphabet		= "0123456789 +-().#;/\\xX*~,:ABCext<>'\"=@!?|{}_\t\u00a0\uff10\u0663";
+		PhoneValidationStats stats	= LibPhone.getValidationStats();
+		stats.reset();
+
+		List<String> listRegions = new ArrayList<>( phoneUtil.getSupportedRegions() );
+		listRegions.remove( "CN" );
+		listRegions.add( "us" );
+		listRegions.add( "XX" );
+		listRegions.add( "001" );
+
+		for ( String sRegion : listRegions )
+		{
+			List<String> listInputs = new ArrayList<>();
+			for ( PhoneNumberUtil.PhoneNumberType type : PhoneNumberUtil.PhoneNumberType.values() )
+			{
+				if ( ! phoneUtil.getSupportedRegions().contains( sRegion.toUpperCase() ) )
+				{
+					break;
+				}
+
+				Phonenumber.PhoneNumber example = phoneUtil.getExampleNumberForType( sRegion.toUpperCase(), type );
+				if ( null == example )
+				{
+					continue;
+				}
+				for ( PhoneNumberUtil.PhoneNumberFormat format : PhoneNumberUtil.PhoneNumberFormat.values() )
+				{
+					String sFormatted = phoneUtil.format( example, format );
+					listInputs.add( sFormatted );
+					listInputs.add( sFormatted.substring( 0, sFormatted.length() - 1 ) );
+					listInputs.add( sFormatted.substring( 0, Math.max( 1, sFormatted.length() - 3 ) ) );
+					listInputs.add( sFormatted + "1" );
+					listInputs.add( sFormatted + " ext. 123" );
+					listInputs.add( sFormatted + "<" );
+					listInputs.add( "<b>" + sFormatted );
+					listInputs.add( sFormatted.substring( 0, 2 ) + "'" + sFormatted.substring( 2 ) );
+					listInputs.add( sFormatted.substring( 0, 2 ) + "/x" + sFormatted.substring( 2 ) + "<" );
+					listInputs.add( sFormatted.replace( '1', 'A' ) );
+				}
+			}
+			for ( int i = 0; i < 60; i ++ )
+			{
+				StringBuilder sb = new StringBuilder();
+				int nLength = 1 + random.nextInt( 40 );
+				for ( int j = 0; j < nLength; j ++ )
+				{
+					sb.append( sAlphabet.charAt( random.nextInt( sAlphabet.length() ) ) );
+				}
+				listInputs.add( sb.toString() );
+			}
+			for ( int nDigits = 1; nDigits <= 40; nDigits ++ )
+			{
+				listInputs.add( "+" + "1234567890123456789012345678901234567890".substring( 0, nDigits ) );
+			}
+			listInputs.add( "1-800-FLOWERS" );
+			listInputs.add( "tel:+1-201-555-0123;phone-context=+1" );
+
+			for ( String sInput : listInputs )
+			{
+				boolean bExpected;
+				try
+				{
+					PhoneNumberUtil.PhoneNumberType type = phoneUtil.getNumberType( phoneUtil.parse( sInput, sRegion ) );
+					bExpected = PhoneNumberUtil.PhoneNumberType.MOBILE == type || PhoneNumberUtil.PhoneNumberType.FIXED_LINE_OR_MOBILE == type;
+				}
+				catch ( NumberParseException e )
+				{
+					bExpected = false;
+				}
+
+				assertEquals( bExpected, LibPhone.isValidMobileNumber( sInput, sRegion ), sRegion + " " + sInput );
+			}
+		}
+
+		assertTrue( stats.getCount( PhoneValidationStats.Stage.REJECTED_CHARACTERS ) > 0 );
+		assertTrue( stats.getCount( PhoneValidationStats.Stage.REJECTED_LENGTH ) > 0 );
+		assertTrue( stats.getCount( PhoneValidationStats.Stage.PARSE_ERROR ) > 0 );
+		assertTrue( stats.getCount( PhoneValidationStats.Stage.VALID ) > 0 );
+	}
+
+	@Test
+	public void testValidationStats()
+	{
+		PhoneValidationStats stats = LibPhone.getValidationStats();
+		stats.reset();
+
+		LibPhone.isValidMobileNumber( "", "CH" );
+		LibPhone.isValidMobileNumber( "13810550569", "CN" );
+		LibPhone.isValidMobileNumber( "17510550569", "CN" );
+		LibPhone.isValidMobileNumber( "078 123 <script>", "CH" );
+		LibPhone.isValidMobileNumber( "12", "CH" );
+		LibPhone.isValidMobileNumber( "078 123 45 67", "CH" );
+
+		assertEquals( 1, stats.getCount( PhoneValidationStats.Stage.REJECTED_BLANK ) );
+		assertEquals( 1, stats.getCount( PhoneValidationStats.Stage.REJECTED_CHARACTERS ) );
+		assertEquals( 1, stats.getCount( PhoneValidationStats.Stage.REJECTED_LENGTH ) );
+		assertEquals( 1, stats.getCount( PhoneValidationStats.Stage.INVALID ) );
+		assertEquals( 2, stats.getCount( PhoneValidationStats.Stage.VALID ) );
+		assertEquals( 6, stats.getTotalCount() );
+	}
+
+	@Test
+	public void testPackedNumber()
+	{
+		long lnPacked = LibPhone.toPackedNumber( "13810550569", "CN" );
+		assertTrue( PackedPhoneNumber.isValid( lnPacked ) );
+		assertEquals( 86, PackedPhoneNumber.getCountryCode( lnPacked ) );
+		assertEquals( 13810550569L, PackedPhoneNumber.getNationalNumber( lnPacked ) );
+		assertEquals( "+8613810550569", LibPhone.fromPackedNumber( lnPacked ) );
+
+		assertEquals( PackedPhoneNumber.INVALID, LibPhone.toPackedNumber( "17510550569", "CN" ) );
+		assertEquals( PackedPhoneNumber.INVALID, LibPhone.toPackedNumber( null, "CN" ) );
+		assertEquals( PackedPhoneNumber.INVALID, LibPhone.toPackedNumber( "abc", "CH" ) );
+		assertNull( LibPhone.fromPackedNumber( PackedPhoneNumber.INVALID ) );
+		assertNull( LibPhone.fromPackedNumber( -1L ) );
+
+		//	the same number written in different ways packs to the same value
+		assertEquals( LibPhone.toPackedNumber( "078 123 45 67", "CH" ), LibPhone.toPackedNumber( "+41 78 123 45 67", "US" ) );
+
+		//	leading zeros survive the round trip
+		long lnItalian = PackedPhoneNumber.pack( 39, 612345678L, 1 );
+		assertEquals( "+390612345678", PackedPhoneNumber.formatE164( lnItalian ) );
+		assertEquals( 1, PackedPhoneNumber.getLeadingZeros( lnItalian ) );
+
+		//	sorted by country calling code first
+		assertTrue( PackedPhoneNumber.pack( 1, 999999999999999L, 0 ) < PackedPhoneNumber.pack( 7, 1L, 0 ) );
+		assertThrows( IllegalArgumentException.class, () -> PackedPhoneNumber.pack( 1000, 1L, 0 ) );
+		assertThrows( IllegalArgumentException.class, () -> PackedPhoneNumber.pack( 1, 1000000000000000L, 0 ) );
+	}
+
+	@Test
+	public void testPackedNumberAgreesWithE164()
+	{
+		PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+
+		for ( String sRegion : phoneUtil.getSupportedRegions() )
+		{
+			for ( PhoneNumberUtil.PhoneNumberType type : PhoneNumberUtil.PhoneNumberType.values() )
+			{
+				Phonenumber.PhoneNumber example = phoneUtil.getExampleNumberForType( sRegion, type );
+				if ( null == example )
+				{
+					continue;
+				}
+
+				String sInternational	= phoneUtil.format( example, PhoneNumberUtil.PhoneNumberFormat.INTERNATIONAL );
+				long lnPacked		= LibPhone.toPackedNumber( sInternational, sRegion );
+				if ( LibPhone.isValidMobileNumber( sInternational, sRegion ) && ! "CN".equals( sRegion ) &&
+					phoneUtil.getNationalSignificantNumber( example ).length() <= 15 )
+				{
+					assertEquals( phoneUtil.format( example, PhoneNumberUtil.PhoneNumberFormat.E164 ), LibPhone.fromPackedNumber( lnPacked ), sInternational );
+				}
+				else if ( ! "CN".equals( sRegion ) )
+				{
+					assertEquals( PackedPhoneNumber.INVALID, lnPacked, sInternational );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPhoneBlocklist() throws IOException
+	{
+		Random random		= new Random( 7 );
+		long[] arrNumbers	= new long[ 100000 ];
+		for ( int i = 0; i < arrNumbers.length; i ++ )
+		{
+			arrNumbers[ i ] = PackedPhoneNumber.pack( 86, 13000000000L + random.nextInt( 1000000000 ), 0 );
+		}
+
+		PhoneBlocklist blocklist = PhoneBlocklist.build( arrNumbers );
+		assertEquals( Arrays.stream( arrNumbers ).distinct().count(), blocklist.getSize() );
+		assertTrue( blocklist.getCapacity() >= 2 * blocklist.getSize() );
+
+		File file = File.createTempFile( "blocklist", ".bin" );
+		try
+		{
+			blocklist.writeTo( file );
+			PhoneBlocklist mapped = PhoneBlocklist.map( file );
+			assertEquals( blocklist.getSize(), mapped.getSize() );
+
+			for ( long lnNumber : arrNumbers )
+			{
+				assertTrue( mapped.contains( lnNumber ) );
+			}
+			for ( int i = 0; i < 100000; i ++ )
+			{
+				long lnNumber = PackedPhoneNumber.pack( 86, 13000000000L + random.nextInt( 1000000000 ), 0 );
+				assertEquals( blocklist.contains( lnNumber ), mapped.contains( lnNumber ) );
+			}
+			assertFalse( mapped.contains( PackedPhoneNumber.INVALID ) );
+
+			//	the mapping stays valid while a new snapshot replaces the file
+			PhoneBlocklist.build( new long[ 0 ] ).writeTo( file );
+			assertTrue( mapped.contains( arrNumbers[ 0 ] ) );
+			assertEquals( 0, PhoneBlocklist.map( file ).getSize() );
+
+			try ( FileOutputStream outputStream = new FileOutputStream( file ) )
+			{
+				outputStream.write( new byte[ 64 ] );
+			}
+			assertThrows( IOException.class, () -> PhoneBlocklist.map( file ) );
+		}
+		finally
+		{
+			assertTrue( file.delete() );
+		}
+
+		PhoneBlocklist previous = PhoneBlocklist.getCurrent();
+		try
+		{
+			assertFalse( PhoneBlocklist.isBlocked( "13810550569", "CN" ) );
+			PhoneBlocklist.setCurrent( PhoneBlocklist.build( Arrays.asList( "13810550569", "+41 78 123 45 67", "bad" ), "CN" ) );
+			assertEquals( 1, PhoneBlocklist.getCurrent().getSize() );
+			assertTrue( PhoneBlocklist.isBlocked( "13810550569", "CN" ) );
+			assertTrue( PhoneBlocklist.isBlocked( LibPhone.toPackedNumber( "13810550569", "CN" ) ) );
+			assertFalse( PhoneBlocklist.isBlocked( "13810550568", "CN" ) );
+		}
+		finally
+		{
+			PhoneBlocklist.setCurrent( previous );
+		}
+	}
+
+	@Test
+	public void testWarmUp()
+	{
+		Map<String,Long> mapTimings = LibPhone.warmUp( Arrays.asList( "ch", "US", "XX" ) ).join();
+		assertEquals( Arrays.asList( "CH", "US", "XX" ), new ArrayList<>( mapTimings.keySet() ) );
+		assertTrue( mapTimings.get( "CH" ) >= 0 );
+		assertTrue( mapTimings.get( "US" ) >= 0 );
+		assertEquals( -1L, mapTimings.get( "XX" ) );
+		assertTrue( LibPhone.getWarmUpFuture().isDone() );
+
+		long lnValid = LibPhone.getValidationStats().getCount( PhoneValidationStats.Stage.VALID );
+		Map<String,Long> mapAll = LibPhone.warmUp().join();
+		assertEquals( PhoneNumberUtil.getInstance().getSupportedRegions().size(), mapAll.size() );
+		assertEquals( lnValid, LibPhone.getValidationStats().getCount( PhoneValidationStats.Stage.VALID ) );
+
+		assertThrows( IllegalArgumentException.class, () -> LibPhone.warmUp( Arrays.asList( "CN", " " ) ) );
+	}
+
+	@Test
+	public void testMobileMatcherAgreesWithGetNumberType() throws NumberParseException
+	{
+		PhoneNumberUtil phoneUtil	= PhoneNumberUtil.getInstance();
+		Random random			= new Random( 20191209 );
+
+		List<Phonenumber.PhoneNumber> listExamples = new ArrayList<>();
+		for ( String sRegion : phoneUtil.getSupportedRegions() )
+		{
+			for ( PhoneNumberUtil.PhoneNumberType type : PhoneNumberUtil.PhoneNumberType.values() )
+			{
+				Phonenumber.PhoneNumber example = phoneUtil.getExampleNumberForType( sRegion, type );
+				if ( null != example )
+				{
+					listExamples.add( example );
+				}
+			}
+		}
+		for ( int nCountryCode : phoneUtil.getSupportedGlobalNetworkCallingCodes() )
+		{
+			Phonenumber.PhoneNumber example = phoneUtil.getExampleNumberForNonGeoEntity( nCountryCode );
+			if ( null != example )
+			{
+				listExamples.add( example );
+			}
+		}
+
+		int nMobiles = 0;
+		for ( Phonenumber.PhoneNumber example : listExamples )
+		{
+			String sNationalNumber = phoneUtil.getNationalSignificantNumber( example );
+			for ( int i = 0; i < 24; i ++ )
+			{
+				//	the example itself, then random digits changed, dropped or added
+				StringBuilder sb = new StringBuilder( sNationalNumber );
+				if ( i > 0 )
+				{
+					int nPosition = random.nextInt( sb.length() );
+					switch ( i % 3 )
+					{
+						case 0:
+							sb.setCharAt( nPosition, (char)( '0' + random.nextInt( 10 ) ) );
+							break;
+						case 1:
+							sb.deleteCharAt( nPosition );
+							break;
+						default:
+							sb.insert( nPosition, (char)( '0' + random.nextInt( 10 ) ) );
+							break;
+					}
+				}
+				if ( 0 == sb.length() )
+				{
+					continue;
+				}
+
+				String sInput = "+" + example.getCountryCode() + sb;
+				boolean bExpected;
+				try
+				{
+					PhoneNumberUtil.PhoneNumberType type = phoneUtil.getNumberType( phoneUtil.parse( sInput, "ZZ" ) );
+					bExpected = PhoneNumberUtil.PhoneNumberType.MOBILE == type || PhoneNumberUtil.PhoneNumberType.FIXED_LINE_OR_MOBILE == type;
+				}
+				catch ( NumberParseException e )
+				{
+					bExpected = false;
+				}
+
+				assertEquals( bExpected, LibPhone.isValidMobileNumber( sInput, "ZZ" ), sInput );
+				nMobiles += bExpected ? 1 : 0;
+			}
+		}
+		assertTrue( nMobiles > 1000 );
+
+		//	landlines are not mobile numbers
+		assertTrue( phoneUtil.isValidNumber( phoneUtil.parse( "044 668 18 00", "CH" ) ) );
+		assertFalse( LibPhone.isValidMobileNumber( "044 668 18 00", "CH" ) );
+		assertTrue( LibPhone.isValidMobileNumber( "078 123 45 67", "CH" ) );
+		assertTrue( LibPhone.isValidMobileNumber( "+39 312 345 6789", "IT" ) );
+		assertFalse( LibPhone.isValidMobileNumber( "06 6982 1234", "IT" ) );
+		assertTrue( LibPhone.isValidMobileNumber( "+1 268 464 1234", "US" ) );
+	}
+}
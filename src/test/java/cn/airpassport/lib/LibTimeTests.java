@@ -1,11 +1,29 @@
 package cn.airpassport.lib;
 
 import cn.airpassport.lib.model.LocalDateInterval;
+import cn.airpassport.lib.model.IntervalArray;
+import cn.airpassport.lib.model.LocalDateIntervalIndex;
+import cn.airpassport.lib.model.PackedDateInterval;
+import cn.airpassport.lib.time.DateColumnReader;
 import cn.airpassport.lib.time.LibTime;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -141,4 +159,476 @@ public class LibTimeTests
 			)
 		);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testFromDateString()
+	{
+		assertEquals( LocalDate.of( 2019, 12, 1 ), LibTime.fromDateString( "2019-12-01" ) );
+		assertEquals( LocalDate.of( 2020, 2, 29 ), LibTime.fromDateString( "2020-02-29" ) );
+		assertEquals( LocalDate.of( -1, 1, 1 ), LibTime.fromDateString( "-0001-01-01" ) );
+		assertEquals( LocalDate.of( 12020, 1, 1 ), LibTime.fromDateString( "+12020-01-01" ) );
+		assertNull( LibTime.fromDateString( null ) );
+		assertNull( LibTime.fromDateString( " " ) );
+		assertNull( LibTime.fromDateString( "2019-02-29" ) );
+		assertNull( LibTime.fromDateString( "1900-02-29" ) );
+		assertNull( LibTime.fromDateString( "2019-13-01" ) );
+		assertNull( LibTime.fromDateString( "2019-1-01" ) );
+		assertNull( LibTime.fromDateString( "2019-01-01 " ) );
+		assertNull( LibTime.fromDateString( "+2019-01-01" ) );
+		assertNull( LibTime.fromDateString( "12019-01-01" ) );
+		assertNull( LibTime.fromDateString( "-0000-01-01" ) );
+		assertNull( LibTime.fromDateString( "+1000000000-01-01" ) );
+		assertNull( LibTime.fromDateString( "\u0662\u0660\u0661\u0669-01-01" ) );
+
+		assertEquals( 0, LibTime.parseEpochDay( "1970-01-01" ) );
+		assertEquals( 18262, LibTime.parseEpochDay( "2020-01-01" ) );
+		assertEquals( LocalDate.MIN.toEpochDay(), LibTime.parseEpochDay( "-999999999-01-01" ) );
+		assertEquals( LocalDate.MAX.toEpochDay(), LibTime.parseEpochDay( "+999999999-12-31" ) );
+		assertEquals( 18262, LibTime.parseEpochDay( "from 2020-01-01 on", 5, 15 ) );
+		assertEquals( LibTime.INVALID_EPOCH_DAY, LibTime.parseEpochDay( "2020-01-32" ) );
+		assertEquals( LibTime.INVALID_EPOCH_DAY, LibTime.parseEpochDay( null ) );
+	}
+
+	@Test
+	public void testFromDateStringAgreesWithLocalDateParse()
+	{
+		Random random		= new Random( 20201017L );
+		String[] arrYears	= { "0000", "0004", "1600", "1900", "1969", "1970", "2000", "2024", "9999", "-0001", "-0100", "-0400", "-12345", "+10000", "+999999999", "-999999999", "+1000000000", "0400" };
+		String sChars		= "0123456789-+ T/";
+
+		for ( int i = 0; i < 200_000; i ++ )
+		{
+			StringBuilder sbDate = new StringBuilder();
+			sbDate.append( 0 == random.nextInt( 4 ) ? String.valueOf( random.nextInt( 20000 ) - 5000 ) : arrYears[ random.nextInt( arrYears.length ) ] );
+			sbDate.append( '-' ).append( String.format( "%02d", random.nextInt( 14 ) ) );
+			sbDate.append( '-' ).append( String.format( "%02d", random.nextInt( 33 ) ) );
+
+			//	some of the dates are broken by a random char
+			if ( 0 == random.nextInt( 3 ) )
+			{
+				int nAt		= random.nextInt( sbDate.length() + 1 );
+				char c		= sChars.charAt( random.nextInt( sChars.length() ) );
+				switch ( random.nextInt( 3 ) )
+				{
+					case 0:
+						sbDate.insert( nAt, c );
+						break;
+					case 1:
+						if ( nAt < sbDate.length() )
+						{
+							sbDate.setCharAt( nAt, c );
+						}
+						break;
+					default:
+						if ( nAt < sbDate.length() )
+						{
+							sbDate.deleteCharAt( nAt );
+						}
+				}
+			}
+
+			String sDate = sbDate.toString();
+			LocalDate expected;
+			try
+			{
+				expected = LocalDate.parse( sDate );
+			}
+			catch ( DateTimeParseException e )
+			{
+				expected = null;
+			}
+
+			assertEquals( expected, LibTime.fromDateString( sDate ), sDate );
+			assertEquals( null == expected ? LibTime.INVALID_EPOCH_DAY : expected.toEpochDay(), LibTime.parseEpochDay( sDate ), sDate );
+		}
+	}
+
+	@Test
+	public void testFromDateTimeString()
+	{
+		assertEquals( LocalDateTime.of( 2007, 12, 3, 10, 15 ), LibTime.fromDateTimeString( "2007-12-03T10:15" ) );
+		assertEquals( LocalDateTime.of( 2007, 12, 3, 10, 15, 30 ), LibTime.fromDateTimeString( "2007-12-03t10:15:30" ) );
+		assertEquals( LocalDateTime.of( 2007, 12, 3, 10, 15, 30, 120_000_000 ), LibTime.fromDateTimeString( "2007-12-03T10:15:30.12" ) );
+		assertEquals( LocalDateTime.of( 2007, 12, 3, 10, 15, 30, 999_999_999 ), LibTime.fromDateTimeString( "2007-12-03T10:15:30.999999999" ) );
+		assertEquals( LocalDateTime.of( 2007, 12, 3, 10, 15, 30 ), LibTime.fromDateTimeString( "2007-12-03T10:15:30." ) );
+		assertNull( LibTime.fromDateTimeString( null ) );
+		assertNull( LibTime.fromDateTimeString( "2007-12-03" ) );
+		assertNull( LibTime.fromDateTimeString( "2007-12-03 10:15" ) );
+		assertNull( LibTime.fromDateTimeString( "2007-12-03T24:00" ) );
+		assertNull( LibTime.fromDateTimeString( "2007-12-03T23:59:60" ) );
+		assertNull( LibTime.fromDateTimeString( "2007-12-03T10:15:30.1234567890" ) );
+		assertNull( LibTime.fromDateTimeString( "2007-12-03T10:1" ) );
+		assertNull( LibTime.fromDateTimeString( "2007-02-30T10:15" ) );
+
+		int[] arrNano = new int[ 1 ];
+		assertEquals( 0, LibTime.parseEpochSecond( "1970-01-01T00:00" ) );
+		assertEquals( -1, LibTime.parseEpochSecond( "1969-12-31T23:59:59.5", 0, 21, arrNano ) );
+		assertEquals( 500_000_000, arrNano[ 0 ] );
+		assertEquals( LocalDateTime.MAX.toEpochSecond( ZoneOffset.UTC ), LibTime.parseEpochSecond( "+999999999-12-31T23:59:59" ) );
+		assertEquals( LibTime.INVALID_EPOCH_SECOND, LibTime.parseEpochSecond( "1970-01-01T00:60" ) );
+
+		long[] arrEpochSeconds	= new long[ 4 ];
+		int[] arrNanos		= new int[ 4 ];
+		assertEquals( 2, LibTime.parseEpochSeconds( Arrays.asList( "1970-01-02T00:00:01.25", null, "1970-01-01", "1970-01-01T00:01" ), arrEpochSeconds, arrNanos ) );
+		assertArrayEquals( new long[]{ 86_401, LibTime.INVALID_EPOCH_SECOND, LibTime.INVALID_EPOCH_SECOND, 60 }, arrEpochSeconds );
+		assertArrayEquals( new int[]{ 250_000_000, 0, 0, 0 }, arrNanos );
+		assertThrows( IllegalArgumentException.class, () -> LibTime.parseEpochSeconds( Arrays.asList( "", "" ), new long[ 1 ], null ) );
+	}
+
+	@Test
+	public void testFromDateTimeStringAgreesWithLocalDateTimeParse()
+	{
+		//	half valid and half broken, like a column of an audit log with garbage in it
+		Random random		= new Random( 20201018L );
+		List<String> listTexts	= new ArrayList<>();
+		String sChars		= "0123456789-+:.tT ";
+		for ( int i = 0; i < 100_000; i ++ )
+		{
+			LocalDateTime dateTime = LocalDateTime.ofEpochSecond( random.nextLong() % 40_000_000_000L, random.nextInt( 1_000_000_000 ), ZoneOffset.UTC );
+			String sText = dateTime.toString();
+			switch ( random.nextInt( 4 ) )
+			{
+				case 0:
+					sText = sText.replace( 'T', 't' );
+					break;
+				case 1:
+					StringBuilder sbText = new StringBuilder( sText );
+					sbText.setCharAt( random.nextInt( sbText.length() ), sChars.charAt( random.nextInt( sChars.length() ) ) );
+					sText = sbText.toString();
+					break;
+				case 2:
+					sText = sText.substring( 0, random.nextInt( sText.length() + 1 ) );
+					break;
+				default:
+			}
+			listTexts.add( sText );
+		}
+
+		long[] arrEpochSeconds	= new long[ listTexts.size() ];
+		int[] arrNanos		= new int[ listTexts.size() ];
+		int nInvalid		= LibTime.parseEpochSeconds( listTexts, arrEpochSeconds, arrNanos );
+
+		int nExpectedInvalid = 0;
+		for ( int i = 0; i < listTexts.size(); i ++ )
+		{
+			String sText = listTexts.get( i );
+			LocalDateTime expected;
+			try
+			{
+				expected = LocalDateTime.parse( sText );
+			}
+			catch ( DateTimeParseException e )
+			{
+				expected = null;
+				nExpectedInvalid ++;
+			}
+
+			assertEquals( expected, LibTime.fromDateTimeString( sText ), sText );
+			assertEquals( null == expected ? LibTime.INVALID_EPOCH_SECOND : expected.toEpochSecond( ZoneOffset.UTC ), arrEpochSeconds[ i ], sText );
+			assertEquals( null == expected ? 0 : expected.getNano(), arrNanos[ i ], sText );
+		}
+		assertEquals( nExpectedInvalid, nInvalid );
+	}
+
+	@Test
+	public void testParseEpochDayFromBytes()
+	{
+		byte[] arrBytes = "id=7;date=2020-01-01;valid=2020-02-30;name=\u674e".getBytes( StandardCharsets.UTF_8 );
+		assertEquals( 18262, LibTime.parseEpochDay( arrBytes, 10, 10 ) );
+		assertEquals( LibTime.INVALID_EPOCH_DAY, LibTime.parseEpochDay( arrBytes, 27, 10 ) );
+		assertEquals( LibTime.INVALID_EPOCH_DAY, LibTime.parseEpochDay( arrBytes, arrBytes.length - 3, 3 ) );
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect( arrBytes.length );
+		buffer.put( arrBytes );
+		assertEquals( 18262, LibTime.parseEpochDay( buffer, 10, 10 ) );
+		assertEquals( arrBytes.length, buffer.position() );
+
+		assertEquals( LocalDate.of( 2020, 1, 1 ), LibTime.fromDateString( "date=2020-01-01;", 5, 15 ) );
+		assertNull( LibTime.fromDateString( "date=2020-01-01;", 5, 16 ) );
+		assertThrows( IllegalArgumentException.class, () -> LibTime.parseEpochDay( arrBytes, 40, 10 ) );
+		assertThrows( IllegalArgumentException.class, () -> LibTime.parseEpochDay( ( ByteBuffer ) null, 0, 0 ) );
+	}
+
+	@Test
+	public void testDateColumnReader() throws IOException
+	{
+		String sCsv =
+			"1,2019-12-01,x\r\n" +
+			"\n" +
+			"2,2020-02-29\n" +
+			"3,2019-02-29,y\n" +
+			"4\n" +
+			"5,\u674e,z\n" +
+			"6,+999999999-12-31\n" +
+			"7,1970-01-01";
+		int[] arrExpected = { 18231, 18321, DateColumnReader.INVALID_EPOCH_DAY, DateColumnReader.INVALID_EPOCH_DAY, DateColumnReader.INVALID_EPOCH_DAY, DateColumnReader.INVALID_EPOCH_DAY, 0 };
+		byte[] arrBytes = sCsv.getBytes( StandardCharsets.UTF_8 );
+
+		assertArrayEquals( arrExpected, LibTime.readEpochDayColumn( new ByteArrayInputStream( arrBytes ), ',', 1 ) );
+
+		//	a buffer of 4 bytes moves and grows records, in reads of 3 records
+		DateColumnReader reader	= new DateColumnReader( new ByteArrayInputStream( arrBytes ), ',', 1, 4 );
+		int[] arrEpochDays	= new int[ 10 ];
+		assertEquals( 3, reader.read( arrEpochDays, 0, 3 ) );
+		assertEquals( 3, reader.read( arrEpochDays, 3, 3 ) );
+		assertEquals( 1, reader.read( arrEpochDays, 6, 3 ) );
+		assertEquals( -1, reader.read( arrEpochDays, 7, 3 ) );
+		assertArrayEquals( arrExpected, Arrays.copyOf( arrEpochDays, 7 ) );
+		assertEquals( 7, reader.getRecordCount() );
+		assertEquals( 4, reader.getInvalidCount() );
+
+		//	the same as parsing Strings, column by column
+		StringBuilder sbTsv = new StringBuilder();
+		Random random = new Random( 20201019L );
+		List<String> listDates = new ArrayList<>();
+		for ( int i = 0; i < 10_000; i ++ )
+		{
+			String sDate = LocalDate.ofEpochDay( random.nextInt( 100_000 ) - 50_000 ).toString();
+			if ( 0 == random.nextInt( 5 ) )
+			{
+				sDate = sDate.substring( 1 );
+			}
+			listDates.add( sDate );
+			sbTsv.append( i ).append( '\t' ).append( sDate ).append( '\n' );
+		}
+		int[] arrParsed = LibTime.readEpochDayColumn( new ByteArrayInputStream( sbTsv.toString().getBytes( StandardCharsets.US_ASCII ) ), '\t', 1 );
+		assertEquals( listDates.size(), arrParsed.length );
+		for ( int i = 0; i < arrParsed.length; i ++ )
+		{
+			LocalDate date = LibTime.fromDateString( listDates.get( i ) );
+			assertEquals( null == date ? DateColumnReader.INVALID_EPOCH_DAY : date.toEpochDay(), arrParsed[ i ], listDates.get( i ) );
+		}
+	}
+
+	@Test
+	public void testLocalDateIntervalIndex()
+	{
+		LocalDateIntervalIndex<String> index = new LocalDateIntervalIndex<>();
+		long lnDecember	= index.add( LocalDate.parse( "2019-12-01" ), LocalDate.parse( "2019-12-22" ), "december" );
+		long lnYear	= index.add( LocalDateInterval.create( LocalDate.parse( "2019-12-20" ), LocalDate.parse( "2020-12-31" ) ), "year" );
+		long lnDay	= index.add( LocalDate.parse( "2019-12-22" ), LocalDate.parse( "2019-12-22" ), "day" );
+		assertEquals( 3, index.size() );
+
+		assertEquals( Arrays.asList( "december", "year", "day" ), LibTimeTests.valuesOf( index.findOverlapping( LocalDate.parse( "2019-12-21" ), LocalDate.parse( "2019-12-25" ) ) ) );
+		assertEquals( Arrays.asList( "december" ), LibTimeTests.valuesOf( index.findOverlapping( LocalDate.parse( "2019-11-01" ), LocalDate.parse( "2019-12-20" ) ) ) );
+		assertEquals( Arrays.asList( "year" ), LibTimeTests.valuesOf( index.findOverlapping( LocalDateInterval.create( LocalDate.parse( "2019-12-22" ), LocalDate.parse( "2019-12-22" ) ) ) ) );
+		assertEquals( Arrays.asList( "december", "year", "day" ), LibTimeTests.valuesOf( index.findContaining( LocalDate.parse( "2019-12-22" ) ) ) );
+		assertEquals( Arrays.asList( "year" ), LibTimeTests.valuesOf( index.findContaining( LocalDate.parse( "2019-12-22" ), LocalDate.parse( "2020-01-01" ) ) ) );
+		assertEquals( Arrays.asList( "december", "day" ), LibTimeTests.valuesOf( index.findContainedIn( LocalDate.parse( "2019-12-01" ), LocalDate.parse( "2019-12-31" ) ) ) );
+		assertTrue( index.findOverlapping( null, LocalDate.parse( "2019-12-31" ) ).isEmpty() );
+		assertTrue( index.findOverlapping( new LocalDateInterval() ).isEmpty() );
+
+		assertEquals( "day", index.get( lnDay ).getValue() );
+		assertTrue( index.get( lnYear ).getInterval().equals( LocalDateInterval.create( LocalDate.parse( "2019-12-20" ), LocalDate.parse( "2020-12-31" ) ) ) );
+		assertTrue( index.remove( lnDecember ) );
+		assertFalse( index.remove( lnDecember ) );
+		assertNull( index.get( lnDecember ) );
+		assertEquals( Arrays.asList( "year", "day" ), LibTimeTests.valuesOf( index.findContaining( LocalDate.parse( "2019-12-22" ) ) ) );
+		assertEquals( 2, index.size() );
+
+		assertThrows( IllegalArgumentException.class, () -> index.add( LocalDate.parse( "2019-12-02" ), LocalDate.parse( "2019-12-01" ), "" ) );
+		assertThrows( IllegalArgumentException.class, () -> index.add( new LocalDateInterval(), "" ) );
+	}
+
+	@Test
+	public void testLocalDateIntervalIndexAgreesWithLinearScan()
+	{
+		Random random					= new Random( 20201020L );
+		LocalDateIntervalIndex<Integer> index		= new LocalDateIntervalIndex<>();
+		List<LocalDateIntervalIndex.Entry<Integer>> listEntries = new ArrayList<>();
+		LocalDate base					= LocalDate.parse( "2020-01-01" );
+
+		for ( int nRound = 0; nRound < 20_000; nRound ++ )
+		{
+			if ( listEntries.isEmpty() || random.nextInt( 3 ) > 0 )
+			{
+				LocalDate begin = base.plusDays( random.nextInt( 2000 ) );
+				long lnId = index.add( begin, begin.plusDays( random.nextInt( 0 == random.nextInt( 10 ) ? 1000 : 30 ) ), nRound );
+				listEntries.add( index.get( lnId ) );
+			}
+			else
+			{
+				LocalDateIntervalIndex.Entry<Integer> entry = listEntries.remove( random.nextInt( listEntries.size() ) );
+				assertTrue( index.remove( entry.getId() ) );
+			}
+
+			if ( 0 != nRound % 100 )
+			{
+				continue;
+			}
+
+			LocalDate begin	= base.plusDays( random.nextInt( 2100 ) - 50 );
+			LocalDate end	= begin.plusDays( random.nextInt( 60 ) );
+			assertEquals( listEntries.size(), index.size() );
+			assertEquals
+				(
+					listEntries.stream().filter( e -> LibTime.isDateIntervalsOverlapped( e.getBegin(), e.getEnd(), begin, end ) ).map( e -> e.getId() ).sorted().collect( Collectors.toList() ),
+					index.findOverlapping( begin, end ).stream().map( e -> e.getId() ).sorted().collect( Collectors.toList() )
+				);
+			assertEquals
+				(
+					listEntries.stream().filter( e -> ! e.getBegin().isAfter( begin ) && ! e.getEnd().isBefore( end ) ).map( e -> e.getId() ).sorted().collect( Collectors.toList() ),
+					index.findContaining( begin, end ).stream().map( e -> e.getId() ).sorted().collect( Collectors.toList() )
+				);
+			assertEquals
+				(
+					listEntries.stream().filter( e -> ! e.getBegin().isBefore( begin ) && ! e.getEnd().isAfter( end ) ).map( e -> e.getId() ).sorted().collect( Collectors.toList() ),
+					index.findContainedIn( begin, end ).stream().map( e -> e.getId() ).sorted().collect( Collectors.toList() )
+				);
+		}
+	}
+
+	@Test
+	public void testLocalDateIntervalIndexConcurrentReaders() throws InterruptedException
+	{
+		//	a writer adds and removes intervals around two which stay, readers must always see both
+		LocalDateIntervalIndex<String> index	= new LocalDateIntervalIndex<>();
+		LocalDate base				= LocalDate.parse( "2020-01-01" );
+		index.add( base, base.plusDays( 10 ), "stay" );
+		index.add( base.plusDays( 5 ), base.plusDays( 500 ), "stay" );
+
+		AtomicBoolean bDone			= new AtomicBoolean( false );
+		AtomicReference<String> failure		= new AtomicReference<>();
+		List<Thread> listReaders		= new ArrayList<>();
+		for ( int t = 0; t < 4; t ++ )
+		{
+			Thread thread = new Thread( () ->
+			{
+				while ( ! bDone.get() )
+				{
+					long lnStays = index.findContaining( base.plusDays( 7 ) ).stream().filter( e -> "stay".equals( e.getValue() ) ).count();
+					if ( 2 != lnStays )
+					{
+						failure.set( "stays: " + lnStays );
+					}
+				}
+			} );
+			thread.start();
+			listReaders.add( thread );
+		}
+
+		Random random		= new Random( 20201021L );
+		List<Long> listIds	= new ArrayList<>();
+		for ( int i = 0; i < 50_000; i ++ )
+		{
+			if ( listIds.size() < 1000 )
+			{
+				LocalDate begin = base.plusDays( random.nextInt( 30 ) );
+				listIds.add( index.add( begin, begin.plusDays( random.nextInt( 30 ) ), "temp" ) );
+			}
+			else
+			{
+				index.remove( listIds.remove( random.nextInt( listIds.size() ) ) );
+			}
+		}
+		bDone.set( true );
+		for ( Thread thread : listReaders )
+		{
+			thread.join();
+		}
+
+		assertNull( failure.get() );
+		assertEquals( 2 + listIds.size(), index.size() );
+	}
+
+	@Test
+	public void testPackedDateInterval()
+	{
+		long lnPacked = PackedDateInterval.pack( LocalDate.parse( "2019-12-01" ), LocalDate.parse( "2019-12-22" ) );
+		assertTrue( PackedDateInterval.isValid( lnPacked ) );
+		assertEquals( LocalDate.parse( "2019-12-01" ).toEpochDay(), PackedDateInterval.getBeginDay( lnPacked ) );
+		assertEquals( LocalDate.parse( "2019-12-22" ), PackedDateInterval.getEndDate( lnPacked ) );
+		assertEquals( "2019-12-01/2019-12-22", PackedDateInterval.format( lnPacked ) );
+		assertTrue( LocalDateInterval.create( LocalDate.parse( "2019-12-01" ), LocalDate.parse( "2019-12-22" ) ).equals( PackedDateInterval.toInterval( lnPacked ) ) );
+
+		assertFalse( PackedDateInterval.isValid( PackedDateInterval.NONE ) );
+		assertNull( PackedDateInterval.toInterval( PackedDateInterval.NONE ) );
+		assertEquals( PackedDateInterval.NONE, PackedDateInterval.fromInterval( new LocalDateInterval() ) );
+		assertEquals( PackedDateInterval.NONE, PackedDateInterval.fromInterval( LocalDateInterval.create( LocalDate.MIN, LocalDate.MAX ) ) );
+		assertThrows( IllegalArgumentException.class, () -> PackedDateInterval.pack( 2, 1 ) );
+		assertThrows( IllegalArgumentException.class, () -> PackedDateInterval.pack( Integer.MIN_VALUE, 1 ) );
+
+		//	packed intervals sort by begin, then by end, negative days included
+		long[] arrSorted = { PackedDateInterval.NONE, PackedDateInterval.pack( -5, -3 ), PackedDateInterval.pack( -5, 7 ), PackedDateInterval.pack( 0, 0 ), PackedDateInterval.pack( 0, Integer.MAX_VALUE ), PackedDateInterval.pack( 1, 1 ) };
+		for ( int i = 1; i < arrSorted.length; i ++ )
+		{
+			assertTrue( arrSorted[ i - 1 ] < arrSorted[ i ], PackedDateInterval.format( arrSorted[ i ] ) );
+		}
+		assertEquals( -3, PackedDateInterval.getEndDay( arrSorted[ 1 ] ) );
+		assertEquals( Integer.MAX_VALUE, PackedDateInterval.getEndDay( arrSorted[ 4 ] ) );
+
+		//	the same answers as LibTime
+		Random random = new Random( 20201022L );
+		for ( int i = 0; i < 100_000; i ++ )
+		{
+			LocalDate begin1	= LocalDate.ofEpochDay( random.nextInt( 100 ) - 50 );
+			LocalDate end1		= begin1.plusDays( random.nextInt( 30 ) );
+			LocalDate begin2	= LocalDate.ofEpochDay( random.nextInt( 100 ) - 50 );
+			LocalDate end2		= begin2.plusDays( random.nextInt( 30 ) );
+			long lnPacked1		= PackedDateInterval.pack( begin1, end1 );
+			long lnPacked2		= PackedDateInterval.pack( begin2, end2 );
+
+			assertEquals( LibTime.isDateIntervalsOverlapped( begin1, end1, begin2, end2 ), PackedDateInterval.isOverlapped( lnPacked1, lnPacked2 ) );
+			LocalDateInterval overlapped = LibTime.getOverlapped( begin1, end1, begin2, end2 );
+			assertEquals( null == overlapped ? PackedDateInterval.NONE : PackedDateInterval.fromInterval( overlapped ), PackedDateInterval.getOverlapped( lnPacked1, lnPacked2 ) );
+			assertEquals( ! begin1.isAfter( begin2 ) && ! end2.isAfter( end1 ), PackedDateInterval.contains( lnPacked1, lnPacked2 ) );
+			assertEquals( ! begin1.isAfter( begin2 ) && ! begin2.isAfter( end1 ), PackedDateInterval.containsDay( lnPacked1, begin2.toEpochDay() ) );
+		}
+	}
+
+	@Test
+	public void testIntervalArray()
+	{
+		Random random				= new Random( 20201023L );
+		List<LocalDateInterval> listIntervals	= new ArrayList<>();
+		for ( int i = 0; i < 1000; i ++ )
+		{
+			LocalDate begin = LocalDate.parse( "2020-01-01" ).plusDays( random.nextInt( 365 ) );
+			listIntervals.add( LocalDateInterval.create( begin, begin.plusDays( random.nextInt( 60 ) ) ) );
+		}
+
+		IntervalArray array = IntervalArray.from( listIntervals.subList( 0, 10 ) );
+		for ( LocalDateInterval interval : listIntervals.subList( 10, listIntervals.size() ) )
+		{
+			array.add( interval );
+		}
+		assertEquals( listIntervals.size(), array.size() );
+		assertTrue( listIntervals.get( 500 ).equals( array.get( 500 ) ) );
+		assertEquals( PackedDateInterval.fromInterval( listIntervals.get( 7 ) ), array.getPacked( 7 ) );
+		assertEquals( listIntervals.get( 999 ).getEnd().toEpochDay(), array.getEndDay( 999 ) );
+		List<LocalDateInterval> listCopies = array.toList();
+		for ( int i = 0; i < listIntervals.size(); i ++ )
+		{
+			assertTrue( listIntervals.get( i ).equals( listCopies.get( i ) ) );
+		}
+
+		LocalDateInterval query	= LocalDateInterval.create( LocalDate.parse( "2020-03-01" ), LocalDate.parse( "2020-03-15" ) );
+		List<Integer> listExpected = new ArrayList<>();
+		for ( int i = 0; i < listIntervals.size(); i ++ )
+		{
+			if ( LibTime.isDateIntervalsOverlapped( listIntervals.get( i ), query ) )
+			{
+				listExpected.add( i );
+			}
+		}
+		List<Integer> listFound = new ArrayList<>();
+		array.forEachOverlapping( PackedDateInterval.fromInterval( query ), listFound::add );
+		assertEquals( listExpected, listFound );
+		assertEquals( listExpected.size(), array.countOverlapping( PackedDateInterval.fromInterval( query ) ) );
+		assertEquals( 0, array.countOverlapping( PackedDateInterval.NONE ) );
+		assertEquals
+			(
+				listIntervals.stream().filter( e -> ! e.getBegin().isAfter( query.getBegin() ) && ! query.getBegin().isAfter( e.getEnd() ) ).count(),
+				array.countContaining( query.getBegin().toEpochDay() )
+			);
+
+		assertThrows( IndexOutOfBoundsException.class, () -> array.get( 1000 ) );
+		assertThrows( IllegalArgumentException.class, () -> array.add( new LocalDateInterval() ) );
+		assertThrows( IllegalArgumentException.class, () -> array.addPacked( PackedDateInterval.NONE ) );
+	}
+
+	private static List<String> valuesOf( List<LocalDateIntervalIndex.Entry<String>> listEntries )
+	{
+		return listEntries.stream().map( LocalDateIntervalIndex.Entry::getValue ).collect( Collectors.toList() );
+	}
+}